@@ -159,12 +159,11 @@ then
     exit 1
 fi
 
-# update serialization on mgi_reference_assoc, seq_source_assoc
+# update serialization on seq_source_assoc (the load keeps the
+# sequences of the tables it writes to in step itself)
 cat - <<EOSQL | ${PG_DBUTILS}/bin/doisql.csh $0 | tee -a ${LOG_DIAG}
 
-select setval('mgi_reference_assoc_seq', (select max(_Assoc_key) from MGI_Reference_Assoc));
 select setval('seq_source_assoc_seq', (select max(_Assoc_key) from SEQ_Source_Assoc));
-select setval('all_allele_cellline_seq', (select max(_Assoc_key) from ALL_Allele_CellLine));
 
 EOSQL
 
@@ -208,12 +207,11 @@ then
     exit 1
 fi
 
-# update serialization on mgi_reference_assoc, seq_source_assoc, all_allele_cellline
+# update serialization on seq_source_assoc (the load keeps the
+# sequences of the tables it writes to in step itself)
 cat - <<EOSQL | ${PG_DBUTILS}/bin/doisql.csh $0 | tee -a ${LOG_DIAG}
 
-select setval('mgi_reference_assoc_seq', (select max(_Assoc_key) from MGI_Reference_Assoc));
 select setval('seq_source_assoc_seq', (select max(_Assoc_key) from SEQ_Source_Assoc));
-select setval('all_allele_cellline_seq', (select max(_Assoc_key) from ALL_Allele_CellLine));
 
 EOSQL
 
@@ -0,0 +1,236 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import org.jax.mgi.dbs.mgd.dao.ACC_AccessionState;
+import org.jax.mgi.shr.config.ConfigException;
+import org.jax.mgi.shr.config.DatabaseCfg;
+import org.jax.mgi.shr.config.TargetedAlleleLoadCfg;
+import org.jax.mgi.shr.dbutils.DBException;
+import org.jax.mgi.shr.dbutils.ResultsNavigator;
+import org.jax.mgi.shr.dbutils.SQLDataManager;
+import org.jax.mgi.shr.dla.log.DLALogger;
+import org.jax.mgi.shr.dla.log.DLALoggingException;
+
+/**
+ * @is An object that hands out new MGI accession IDs from blocks reserved
+ *     in ACC_AccessionMax
+ * @has <UL>
+ *      <LI>the reserved range of MGI numbers and the last one handed out
+ *      <LI>its own database connection, so a reservation is committed
+ *      right away and does not hold ACC_AccessionMax locked for the rest
+ *      of the load
+ *      </UL>
+ * @does <UL>
+ *       <LI>Reserves a block of MGI numbers by moving the maximum in
+ *       ACC_AccessionMax past the block, and another block when one is
+ *       used up
+ *       <LI>Creates ACC_AccessionState objects with the accession ID,
+ *       prefix part and numeric part filled in
+ *       <LI>At commit moves the maximum back to the last number handed
+ *       out, unless something else has reserved numbers since
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class AccessionAllocator {
+
+	private static final String MGI_PREFIX = "MGI:";
+
+	private static AccessionAllocator _instance;
+
+	private SQLDataManager accDBMgr;
+	private DLALogger logger;
+	private boolean preventExecute;
+	private int blockSize;
+	private boolean synthetic = false;
+
+	// The last number handed out and the end of the reserved block
+	private int last = 0;
+	private int end = 0;
+
+	/**
+	 * get the allocator, creating it on first use
+	 *
+	 * @return the allocator
+	 * @throws ConfigException
+	 *             thrown if the configuration cannot be read
+	 * @throws DBException
+	 *             thrown if the database cannot be reached
+	 */
+	public static AccessionAllocator getInstance() throws ConfigException,
+			DBException {
+		if (_instance == null) {
+			_instance = new AccessionAllocator();
+		}
+		return _instance;
+	}
+
+	/**
+	 * This implements the singleton pattern, so the constructor is private
+	 * and can only be called by the class method "getInstance"
+	 */
+	private AccessionAllocator() throws ConfigException, DBException {
+		TargetedAlleleLoadCfg cfg = null;
+		try {
+			cfg = new TargetedAlleleLoadCfg();
+			logger = DLALogger.getInstance();
+		} catch (DLALoggingException e) {
+			throw new ConfigException("AccessionAllocator DLALoggingException",
+					false);
+		}
+		preventExecute = cfg.getPreventBcpExecute();
+		blockSize = cfg.getAccessionBlockSize();
+		if (blockSize < 1) {
+			blockSize = 1;
+		}
+		accDBMgr = new SQLDataManager(new DatabaseCfg("MGD"));
+	}
+
+	/**
+	 * Create the accession state for the next MGI ID
+	 *
+	 * @return an ACC_AccessionState with the accession ID, prefix part and
+	 *         numeric part set
+	 * @throws DBException
+	 *             thrown if another block cannot be reserved
+	 */
+	public ACC_AccessionState next() throws DBException {
+		if (last >= end) {
+			reserve();
+		}
+		last++;
+
+		ACC_AccessionState state = new ACC_AccessionState();
+		state.setAccID(MGI_PREFIX + last);
+		state.setPrefixPart(MGI_PREFIX);
+		state.setNumericPart(new Integer(last));
+		return state;
+	}
+
+	/**
+	 * Hand out synthetic MGI numbers far above the real ones instead of
+	 * reserving numbers in ACC_AccessionMax, for a load that is discarded
+	 */
+	public void setSynthetic() {
+		synthetic = true;
+		last = (int) NullStream.SYNTHETIC_BASE;
+		end = last + blockSize;
+	}
+
+	/**
+	 * get the last MGI number handed out
+	 *
+	 * @return the last number, 0 if none have been handed out
+	 */
+	public int getLast() {
+		return last;
+	}
+
+	/**
+	 * Check that ACC_AccessionMax has reached an MGI number, as it should
+	 * have when resuming from a checkpoint
+	 *
+	 * @param number
+	 *            the highest MGI number used before the checkpoint
+	 * @throws DBException
+	 *             thrown if the maximum is below the number, or if it
+	 *             cannot be queried
+	 */
+	public void checkCommitted(int number) throws DBException {
+		if (preventExecute || synthetic || number == 0) {
+			return;
+		}
+		ResultsNavigator rn = accDBMgr.executeQuery("SELECT maxNumericPart"
+				+ " FROM ACC_AccessionMax WHERE prefixPart = '" + MGI_PREFIX
+				+ "'");
+		try {
+			if (!rn.next()) {
+				throw new DBException("No ACC_AccessionMax row for "
+						+ MGI_PREFIX, false);
+			}
+			int max = rn.getRowReference().getInt(1).intValue();
+			if (max < number) {
+				throw new DBException("MGI IDs only go up to " + MGI_PREFIX
+						+ max + ", the checkpoint used " + MGI_PREFIX + number,
+						false);
+			}
+		} finally {
+			rn.close();
+		}
+	}
+
+	/**
+	 * Move the maximum MGI number back to the last one handed out and
+	 * release the connection
+	 *
+	 * @throws DBException
+	 *             thrown if ACC_AccessionMax cannot be updated
+	 */
+	public void commit() throws DBException {
+		if (end == 0) {
+			return;
+		}
+		if (synthetic) {
+			logger.logdInfo("Synthetic MGI IDs used up to " + MGI_PREFIX
+					+ last, false);
+			end = 0;
+			accDBMgr.closeResources();
+			return;
+		}
+		String sql = "UPDATE ACC_AccessionMax SET maxNumericPart = " + last
+				+ " WHERE prefixPart = '" + MGI_PREFIX + "'"
+				+ " AND maxNumericPart = " + end;
+		if (preventExecute) {
+			logger.logdInfo("SQL prevented by CFG. Would have run: " + sql,
+					false);
+		} else {
+			logger.logdInfo("Ran: " + sql, false);
+			accDBMgr.executeUpdate(sql);
+		}
+		logger.logdInfo("MGI IDs used up to " + MGI_PREFIX + last, false);
+		end = 0;
+		accDBMgr.closeResources();
+	}
+
+	/**
+	 * reserve the next block of MGI numbers. If execution is prevented,
+	 * numbers are handed out above the current maximum without reserving
+	 * them
+	 */
+	private void reserve() throws DBException {
+		if ((preventExecute || synthetic) && end != 0) {
+			end += blockSize;
+			return;
+		}
+
+		String sql;
+		if (preventExecute) {
+			sql = "SELECT maxNumericPart + " + blockSize
+					+ " FROM ACC_AccessionMax WHERE prefixPart = '"
+					+ MGI_PREFIX + "'";
+		} else {
+			sql = "UPDATE ACC_AccessionMax SET maxNumericPart = "
+					+ "maxNumericPart + " + blockSize
+					+ " WHERE prefixPart = '" + MGI_PREFIX + "'"
+					+ " RETURNING maxNumericPart";
+			logger.logdInfo("Ran: " + sql, false);
+		}
+
+		ResultsNavigator rn = accDBMgr.executeQuery(sql);
+		try {
+			if (!rn.next()) {
+				throw new DBException("No ACC_AccessionMax row for "
+						+ MGI_PREFIX, false);
+			}
+			int reserved = rn.getRowReference().getInt(1).intValue();
+			if (end == 0 || reserved - blockSize > end) {
+				// First block, or something else reserved numbers after
+				// the last block
+				last = reserved - blockSize;
+			}
+			end = reserved;
+		} finally {
+			rn.close();
+		}
+	}
+
+}
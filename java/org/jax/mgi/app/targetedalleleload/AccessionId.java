@@ -138,11 +138,8 @@ public class AccessionId {
 			// as the accession ID
 
 			// Get an ACC_AccessionState object that contains a new MGI ID
-			accState = AccessionLib.getNextAccState();
-
-			Vector vParts = AccessionLib.splitAccID(accState.getAccID());
-			accState.setPrefixPart((String) vParts.get(0));
-			accState.setNumericPart((Integer) vParts.get(1));
+			// with the prefix and numeric parts filled in
+			accState = AccessionAllocator.getInstance().next();
 
 		} else {
 
@@ -0,0 +1,246 @@
+package org.jax.mgi.app.targetedalleleload;
+
+/**
+ * @is A compact, read-only view of an allele record in MGD
+ * @has <UL>
+ *      <LI>the allele attributes the load compares against the input:
+ *      keys, symbol, name, project ID, molecular note and J-numbers
+ *      <LI>the fingerprint of the molecular note
+ *      </UL>
+ * @does <UL>
+ *       <LI>Holds the cached database state of an existing allele. The
+ *       allele caches hold hundreds of thousands of these, so keys are
+ *       stored as primitives and the project IDs and J-numbers, which
+ *       many alleles share, are interned. Nothing
+ *       here can write to the database; a KnockoutAllele is created from
+ *       the view when an existing allele has to be modified
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class AlleleView
+implements Comparable
+{
+	// Keys of 0 stand for "not set"
+	protected int key = 0;
+	protected int markerKey = 0;
+	protected int typeKey = 0;
+	protected int statusKey = Constants.ALLELE_STATUS_APPROVED;
+	protected int transmissionKey = Constants.ALLELE_TRANSMISSION_CELLLINE;
+	protected int noteKey = 0;
+	protected int noteModifiedByKey = 0;
+
+	protected String symbol;
+	protected String name;
+	protected String projectId;
+	protected String note;
+	protected long noteFingerprint = Fingerprint.ofNote(null);
+	protected String[] jNumbers;
+
+	/**
+	 * constructor for subclasses that set the attributes themselves
+	 */
+	protected AlleleView() {
+	}
+
+	/**
+	 * constructor
+	 *
+	 * @param key the allele key
+	 * @param markerKey the marker key
+	 * @param typeKey the allele type key
+	 * @param transmissionKey the transmission key
+	 * @param symbol the allele symbol
+	 * @param name the allele name
+	 * @param projectId the project ID
+	 * @param note the molecular note, null if there is none
+	 * @param noteKey the molecular note key, null if there is none
+	 * @param noteModifiedByKey the user that last modified the note
+	 * @param jNumbers the J-numbers associated to the allele, interned in
+	 *            place
+	 */
+	public AlleleView(Integer key, Integer markerKey, Integer typeKey,
+			Integer transmissionKey, String symbol, String name,
+			String projectId, String note, Integer noteKey,
+			Integer noteModifiedByKey, String[] jNumbers) {
+		this.key = intValue(key);
+		this.markerKey = intValue(markerKey);
+		this.typeKey = intValue(typeKey);
+		this.transmissionKey = intValue(transmissionKey);
+		this.symbol = symbol;
+		this.name = name;
+		this.projectId = projectId == null ? null : projectId.intern();
+		this.note = note;
+		this.noteFingerprint = Fingerprint.ofNote(note);
+		this.noteKey = intValue(noteKey);
+		this.noteModifiedByKey = intValue(noteModifiedByKey);
+		this.jNumbers = intern(jNumbers);
+	}
+
+	/**
+	 * copy an allele, with a new set of J-numbers
+	 *
+	 * @param that the allele to copy
+	 * @param jNumbers the J-numbers associated to the copy, interned in
+	 *            place
+	 */
+	public AlleleView(AlleleView that, String[] jNumbers) {
+		this.key = that.key;
+		this.markerKey = that.markerKey;
+		this.typeKey = that.typeKey;
+		this.statusKey = that.statusKey;
+		this.transmissionKey = that.transmissionKey;
+		this.noteKey = that.noteKey;
+		this.noteModifiedByKey = that.noteModifiedByKey;
+		this.symbol = that.symbol;
+		this.name = that.name;
+		this.projectId = that.projectId;
+		this.note = that.note;
+		this.noteFingerprint = that.noteFingerprint;
+		this.jNumbers = intern(jNumbers);
+	}
+
+	// Getters
+	public Integer getKey() {
+		return toInteger(key);
+	}
+
+	public Integer getMarkerKey() {
+		return toInteger(markerKey);
+	}
+
+	public Integer getTypeKey() {
+		return toInteger(typeKey);
+	}
+
+	public Integer getStatus() {
+		return new Integer(statusKey);
+	}
+
+	public Integer getTransmissionKey() {
+		return new Integer(transmissionKey);
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getProjectId() {
+		return projectId;
+	}
+
+	public String getNote() {
+		return note;
+	}
+
+	public Integer getNoteKey() {
+		return toInteger(noteKey);
+	}
+
+	public Integer getNoteModifiedByKey() {
+		return toInteger(noteModifiedByKey);
+	}
+
+	public String[] getJNumbers() {
+		return jNumbers;
+	}
+
+	/**
+	 * get the fingerprint of the molecular note, computed when the note
+	 * is set
+	 *
+	 * @return the fingerprint of the note ignoring spaces and newlines
+	 */
+	public long getNoteFingerprint() {
+		return noteFingerprint;
+	}
+
+	/**
+	 * get a fingerprint of everything the update mode QC compares: the
+	 * marker, project ID, symbol and note of the allele and the derivation
+	 * of the cell line being checked
+	 *
+	 * @param derivationKey
+	 *            the derivation key of the cell line
+	 * @return the combined fingerprint
+	 */
+	public long getFingerprint(Integer derivationKey) {
+		long h = Fingerprint.start();
+		h = Fingerprint.combine(h, getMarkerKey());
+		h = Fingerprint.combine(h, projectId);
+		h = Fingerprint.combine(h, symbol);
+		h = Fingerprint.combine(h, derivationKey);
+		return Fingerprint.combine(h, noteFingerprint);
+	}
+
+	// @Override
+	public String toString() {
+		String jnumString = "";
+		if (this.jNumbers != null) {
+			jnumString = this.jNumbers.toString();
+		}
+		return "Allele key: " + this.key + "\n" + "name: " + this.name + "\n"
+				+ "symbol: " + this.symbol + "\n" + "note: " + this.note + "\n"
+				+ "J Numbers: " + jnumString + "\n";
+	}
+
+	// @Override
+	public boolean equals(Object that) {
+		if (!(that instanceof AlleleView)) {
+			return false;
+		}
+
+		String thatSymbol = ((AlleleView) that).getSymbol();
+		return symbol == null ? thatSymbol == null : symbol.equals(thatSymbol);
+	}
+
+	// @Override
+	public int hashCode() {
+		return symbol == null ? 0 : symbol.hashCode();
+	}
+
+	// @Override
+	public int compareTo(Object that)
+	throws ClassCastException
+	{
+		if (!(that instanceof AlleleView)) {
+			throw new ClassCastException("An allele object expected.");
+		}
+
+		String thatSymbol = ((AlleleView) that).getSymbol();
+		return this.getSymbol().compareTo(thatSymbol);
+	}
+
+	/**
+	 * unbox a key, null becomes 0
+	 */
+	protected static int intValue(Integer i) {
+		return i == null ? 0 : i.intValue();
+	}
+
+	/**
+	 * box a key, 0 becomes null
+	 */
+	protected static Integer toInteger(int i) {
+		return i == 0 ? null : new Integer(i);
+	}
+
+	/**
+	 * intern the strings of an array in place
+	 */
+	protected static String[] intern(String[] strings) {
+		if (strings != null) {
+			for (int i = 0; i < strings.length; i++) {
+				if (strings[i] != null) {
+					strings[i] = strings[i].intern();
+				}
+			}
+		}
+		return strings;
+	}
+
+}
@@ -0,0 +1,359 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jax.mgi.shr.config.ConfigException;
+import org.jax.mgi.shr.config.DatabaseCfg;
+import org.jax.mgi.shr.dbutils.DBException;
+import org.jax.mgi.shr.dbutils.SQLDataManager;
+import org.jax.mgi.shr.dbutils.Table;
+import org.jax.mgi.shr.dbutils.dao.BCPTranslatable;
+import org.jax.mgi.shr.dbutils.dao.DAO;
+import org.jax.mgi.shr.dbutils.dao.SQLStream;
+import org.jax.mgi.shr.dla.log.DLALogger;
+
+/**
+ * @is An SQLStream that writes BCP files on a background writer per table
+ *     and loads them when it is closed
+ * @has <UL>
+ *      <LI>a BcpTableWriter for each table, in the order the tables were
+ *      registered
+ *      <LI>the BCP directory, the number of shards each table is split
+ *      into and whether loading is prevented by the configuration
+ *      </UL>
+ * @does <UL>
+ *       <LI>Hands each inserted DAO to the writer of its table, so
+ *       formatting and file I/O happen off the load thread
+ *       <LI>closeWriters() is the barrier after which every file is
+ *       complete; close() then loads the tables in registration order (the
+ *       same order the BCP stream loads them in) with COPY ... FROM STDIN.
+ *       The shards of a table are loaded at the same time, each on its own
+ *       connection, and a table is complete before the next one starts.
+ *       <LI>Checks that every shard loaded the rows written to it and that
+ *       the table grew by the number of rows written
+ *       <LI>Only inserts are supported; the load runs its updates and
+ *       deletes through the StatementBatcher
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class AsyncBcpStream extends SQLStream {
+
+	private DLALogger logger;
+	private File bcpDir;
+	private int bufferSize;
+	private int shards;
+	private long shardRange;
+	private boolean preventExecute;
+	private boolean writersClosed = false;
+
+	// Writers by table name
+	private Map writers = new LinkedHashMap();
+
+	/**
+	 * constructor
+	 *
+	 * @param tables
+	 *            the Table objects the load writes to, in load order
+	 * @param logger
+	 *            the logger
+	 * @param bcpPath
+	 *            the directory to write the BCP files to
+	 * @param bufferSize
+	 *            the write buffer size of each shard in bytes
+	 * @param shards
+	 *            the number of files each table is split into
+	 * @param shardRange
+	 *            the number of consecutive keys that go to the same shard
+	 * @param preventExecute
+	 *            true if the files should be written but not loaded
+	 */
+	public AsyncBcpStream(Vector tables, DLALogger logger, String bcpPath,
+			int bufferSize, int shards, long shardRange,
+			boolean preventExecute) {
+		this.logger = logger;
+		this.bcpDir = new File(bcpPath);
+		this.bufferSize = bufferSize;
+		this.shards = shards < 1 ? 1 : shards;
+		this.shardRange = shardRange;
+		this.preventExecute = preventExecute;
+
+		for (Iterator it = tables.iterator(); it.hasNext();) {
+			getWriter(((Table) it.next()).getName());
+		}
+	}
+
+	/**
+	 * hand the DAO to the writer of its table
+	 *
+	 * @param dao
+	 *            the DAO, which must be BCPTranslatable
+	 * @throws DBException
+	 *             thrown if the writers are closed or the writer has failed
+	 */
+	public void insert(DAO dao) throws DBException {
+		if (writersClosed) {
+			throw new DBException("Insert after the BCP writers were closed",
+					false);
+		}
+		if (!(dao instanceof BCPTranslatable)) {
+			throw new DBException("Cannot write " + dao.getClass().getName()
+					+ " to a BCP file", false);
+		}
+
+		BCPTranslatable bcp = (BCPTranslatable) dao;
+		BcpTableWriter writer = getWriter(bcp.getBCPTable().getName());
+		if (writer.getFailure() != null) {
+			throw new DBException("Cannot write " + writer.getTable()
+					+ " BCP files: " + writer.getFailure().getMessage(), false);
+		}
+		writer.add(bcp);
+	}
+
+	public void update(DAO dao) throws DBException {
+		throw new DBException("AsyncBcpStream does not support updates",
+				false);
+	}
+
+	public void delete(DAO dao) throws DBException {
+		throw new DBException("AsyncBcpStream does not support deletes",
+				false);
+	}
+
+	public boolean isBCP() {
+		return false;
+	}
+
+	/**
+	 * Wait for every writer to write all its rows and close its file
+	 *
+	 * @throws DBException
+	 *             thrown if a writer failed
+	 */
+	public void closeWriters() throws DBException {
+		if (writersClosed) {
+			return;
+		}
+		writersClosed = true;
+
+		DBException failed = null;
+		for (Iterator it = writers.values().iterator(); it.hasNext();) {
+			BcpTableWriter writer = (BcpTableWriter) it.next();
+			try {
+				writer.close();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new DBException("Interrupted while closing the "
+						+ writer.getTable() + " BCP files", false);
+			}
+			if (writer.getFailure() != null && failed == null) {
+				failed = new DBException("Cannot write " + writer.getTable()
+						+ " BCP files: " + writer.getFailure().getMessage(),
+						false);
+			}
+		}
+		if (failed != null) {
+			throw failed;
+		}
+	}
+
+	/**
+	 * close the writers and load the BCP files
+	 *
+	 * @throws DBException
+	 *             thrown if a file cannot be written or loaded, or if the
+	 *             number of rows loaded does not match the number written
+	 */
+	public void close() throws DBException {
+		closeWriters();
+
+		if (preventExecute) {
+			for (Iterator it = writers.values().iterator(); it.hasNext();) {
+				BcpTableWriter writer = (BcpTableWriter) it.next();
+				logger.logdInfo("BCP prevented by CFG. Would have loaded "
+						+ writer.getRowCount() + " rows into "
+						+ writer.getTable() + " from " + shards + " file(s)",
+						false);
+			}
+			return;
+		}
+
+		SQLDataManager[] copyDBMgrs = new SQLDataManager[shards];
+		ExecutorService loaders = Executors.newFixedThreadPool(shards);
+		try {
+			Connection[] conns = new Connection[shards];
+			for (int i = 0; i < shards; i++) {
+				copyDBMgrs[i] = new SQLDataManager(new DatabaseCfg("MGD"));
+				conns[i] = copyDBMgrs[i].getConnection();
+			}
+
+			for (Iterator it = writers.values().iterator(); it.hasNext();) {
+				BcpTableWriter writer = (BcpTableWriter) it.next();
+				if (writer.getRowCount() == 0) {
+					continue;
+				}
+				long before = count(conns[0], writer.getTable());
+				long loaded = loadShards(loaders, conns, writer);
+				long after = count(conns[0], writer.getTable());
+
+				// Final consistency check of the table as a whole
+				if (after - before != writer.getRowCount()) {
+					throw new DBException(writer.getTable() + " grew by "
+							+ (after - before) + " rows, "
+							+ writer.getRowCount() + " were written", true);
+				}
+				logger.logdInfo("Rows loaded to " + writer.getTable() + ": "
+						+ loaded, false);
+			}
+		} catch (ConfigException e) {
+			throw new DBException("Cannot connect to load the BCP files: "
+					+ e.getMessage(), false);
+		} finally {
+			loaders.shutdown();
+			for (int i = 0; i < shards; i++) {
+				if (copyDBMgrs[i] != null) {
+					copyDBMgrs[i].closeResources();
+				}
+			}
+		}
+	}
+
+	/**
+	 * load the shards of a table at the same time, one per connection
+	 *
+	 * @return the number of rows loaded
+	 */
+	private long loadShards(ExecutorService loaders, Connection[] conns,
+			final BcpTableWriter writer) throws DBException {
+		Future[] results = new Future[writer.getShardCount()];
+		for (int i = 0; i < results.length; i++) {
+			final Connection conn = conns[i];
+			final File file = writer.getFile(i);
+			results[i] = loaders.submit(new Callable() {
+				public Object call() throws DBException {
+					return new Long(load(conn, writer.getTable(), file));
+				}
+			});
+		}
+
+		long total = 0;
+		DBException failed = null;
+		for (int i = 0; i < results.length; i++) {
+			try {
+				long loaded = ((Long) results[i].get()).longValue();
+				if (loaded != writer.getRowCount(i)) {
+					throw new DBException("Loaded " + loaded + " of "
+							+ writer.getRowCount(i) + " rows from "
+							+ writer.getFile(i), true);
+				}
+				total += loaded;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new DBException("Interrupted while loading "
+						+ writer.getTable(), false);
+			} catch (ExecutionException e) {
+				if (failed == null) {
+					failed = new DBException("Cannot load "
+							+ writer.getFile(i) + ": "
+							+ e.getCause().getMessage(), true);
+				}
+			} catch (DBException e) {
+				if (failed == null) {
+					failed = e;
+				}
+			}
+		}
+		if (failed != null) {
+			throw failed;
+		}
+		return total;
+	}
+
+	/**
+	 * count the rows of a table
+	 */
+	private static long count(Connection conn, String table)
+			throws DBException {
+		Statement stmt = null;
+		try {
+			stmt = conn.createStatement();
+			ResultSet rs = stmt.executeQuery("SELECT count(*) FROM " + table);
+			rs.next();
+			return rs.getLong(1);
+		} catch (SQLException e) {
+			throw new DBException("Cannot count " + table + ": "
+					+ e.getMessage(), true);
+		} finally {
+			if (stmt != null) {
+				try {
+					stmt.close();
+				} catch (SQLException e) {
+					// pass
+				}
+			}
+		}
+	}
+
+	/**
+	 * copy a BCP file into its table
+	 *
+	 * @return the number of rows copied
+	 */
+	static long load(Connection conn, String table, File file)
+			throws DBException {
+		Reader in = null;
+		try {
+			in = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), "UTF-8"));
+			return CopyIn.copy(conn, "COPY " + table + " FROM STDIN", in);
+		} catch (IOException e) {
+			throw new DBException("Cannot read " + file + ": "
+					+ e.getMessage(), false);
+		} catch (SQLException e) {
+			throw new DBException("Cannot load " + file + ": "
+					+ e.getMessage(), true);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// pass
+				}
+			}
+		}
+	}
+
+	private BcpTableWriter getWriter(String table) {
+		BcpTableWriter writer = (BcpTableWriter) writers.get(table);
+		if (writer == null) {
+			File[] files = new File[shards];
+			for (int i = 0; i < shards; i++) {
+				String name = shards == 1 ? table + ".bcp" : table + ".bcp."
+						+ i;
+				files[i] = new File(bcpDir, name);
+			}
+			writer = new BcpTableWriter(table, files, bufferSize, shardRange);
+			writers.put(table, writer);
+		}
+		return writer;
+	}
+
+}
@@ -0,0 +1,248 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jax.mgi.shr.dbutils.Table;
+import org.jax.mgi.shr.dbutils.dao.BCPTranslatable;
+
+/**
+ * @is A background writer for the BCP files of one table
+ * @has <UL>
+ *      <LI>a lock-free queue of the DAOs waiting to be written
+ *      <LI>for each shard of the table, the file channel and a large byte
+ *      buffer for its BCP file
+ *      <LI>the thread that formats and writes the rows
+ *      </UL>
+ * @does <UL>
+ *       <LI>Takes DAOs from the load thread without blocking it, formats
+ *       each as a row in the COPY text format and writes the rows through
+ *       the buffers, in the order they were added. A DAO must not be
+ *       changed after it is added.
+ *       <LI>With more than one shard, rows are split by key range: keys
+ *       (the first BCP column) are cut into ranges of the shard range
+ *       size and the ranges are dealt to the shards in turn
+ *       <LI>close() is a barrier: it returns once every row added has been
+ *       written and the files are closed
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class BcpTableWriter implements Runnable {
+
+	// How long the writer sleeps when its queue is empty
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private String table;
+	private File[] files;
+	private int bufferSize;
+	private long shardRange;
+	private ConcurrentLinkedQueue queue = new ConcurrentLinkedQueue();
+	private Thread thread;
+	private volatile boolean closing = false;
+	private volatile Exception failure = null;
+	private int added = 0;
+	private int[] written;
+
+	/**
+	 * constructor, starts the writer thread
+	 *
+	 * @param table
+	 *            the table name
+	 * @param files
+	 *            the BCP file to write for each shard
+	 * @param bufferSize
+	 *            the size of the write buffer of each shard in bytes
+	 * @param shardRange
+	 *            the number of consecutive keys that go to the same shard
+	 */
+	public BcpTableWriter(String table, File[] files, int bufferSize,
+			long shardRange) {
+		this.table = table;
+		this.files = files;
+		this.bufferSize = bufferSize;
+		this.shardRange = shardRange < 1 ? 1 : shardRange;
+		this.written = new int[files.length];
+		this.thread = new Thread(this, "bcp-" + table);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	public int getShardCount() {
+		return files.length;
+	}
+
+	public File getFile(int shard) {
+		return files[shard];
+	}
+
+	/**
+	 * get the number of rows written, only valid after close()
+	 *
+	 * @return the number of rows in all the files
+	 */
+	public int getRowCount() {
+		int total = 0;
+		for (int i = 0; i < written.length; i++) {
+			total += written[i];
+		}
+		return total;
+	}
+
+	/**
+	 * get the number of rows written to one shard, only valid after close()
+	 *
+	 * @param shard
+	 *            the shard
+	 * @return the number of rows in the shard's file
+	 */
+	public int getRowCount(int shard) {
+		return written[shard];
+	}
+
+	/**
+	 * get the exception that stopped the writer
+	 *
+	 * @return the failure, or null if the writer has not failed
+	 */
+	public Exception getFailure() {
+		return failure;
+	}
+
+	/**
+	 * hand a DAO to the writer
+	 *
+	 * @param dao
+	 *            the DAO to write
+	 */
+	public void add(BCPTranslatable dao) {
+		queue.add(dao);
+		added++;
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * wait for all added rows to be written and close the files
+	 *
+	 * @throws InterruptedException
+	 *             thrown if interrupted while waiting
+	 */
+	public void close() throws InterruptedException {
+		closing = true;
+		LockSupport.unpark(thread);
+		thread.join();
+		if (failure == null && getRowCount() != added) {
+			failure = new IOException("Wrote " + getRowCount() + " of "
+					+ added + " rows for " + table);
+		}
+	}
+
+	public void run() {
+		FileOutputStream[] out = new FileOutputStream[files.length];
+		try {
+			FileChannel[] channels = new FileChannel[files.length];
+			ByteBuffer[] buffers = new ByteBuffer[files.length];
+			for (int i = 0; i < files.length; i++) {
+				out[i] = new FileOutputStream(files[i]);
+				channels[i] = out[i].getChannel();
+				buffers[i] = ByteBuffer.allocateDirect(bufferSize);
+			}
+			StringBuffer row = new StringBuffer();
+
+			while (true) {
+				BCPTranslatable dao = (BCPTranslatable) queue.poll();
+				if (dao == null) {
+					if (closing && queue.isEmpty()) {
+						break;
+					}
+					LockSupport.parkNanos(this, IDLE_NANOS);
+					continue;
+				}
+
+				Table t = dao.getBCPTable();
+				Vector values = dao.getBCPVector(t);
+				row.setLength(0);
+				CopyIn.appendRow(row, values);
+				int shard = getShard(values);
+				put(channels[shard], buffers[shard], encode(row));
+				written[shard]++;
+			}
+
+			for (int i = 0; i < files.length; i++) {
+				drain(channels[i], buffers[i]);
+			}
+		} catch (Exception e) {
+			failure = e;
+		} finally {
+			for (int i = 0; i < out.length; i++) {
+				if (out[i] == null) {
+					continue;
+				}
+				try {
+					out[i].close();
+				} catch (IOException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * get the shard of a row from its key
+	 */
+	private int getShard(Vector values) {
+		if (files.length == 1 || values.isEmpty()
+				|| !(values.get(0) instanceof Number)) {
+			return 0;
+		}
+		long key = ((Number) values.get(0)).longValue();
+		return (int) ((key / shardRange) % files.length);
+	}
+
+	private static byte[] encode(StringBuffer row)
+			throws UnsupportedEncodingException {
+		return row.toString().getBytes("UTF-8");
+	}
+
+	/**
+	 * add bytes to the buffer, writing the buffer out when it is full
+	 */
+	private static void put(FileChannel channel, ByteBuffer buffer,
+			byte[] bytes) throws IOException {
+		if (bytes.length > buffer.remaining()) {
+			drain(channel, buffer);
+		}
+		if (bytes.length > buffer.remaining()) {
+			ByteBuffer large = ByteBuffer.wrap(bytes);
+			while (large.hasRemaining()) {
+				channel.write(large);
+			}
+			return;
+		}
+		buffer.put(bytes);
+	}
+
+	private static void drain(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+}
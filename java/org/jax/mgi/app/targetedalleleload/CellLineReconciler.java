@@ -0,0 +1,354 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.jax.mgi.shr.config.DatabaseCfg;
+import org.jax.mgi.shr.dbutils.SQLDataManager;
+import org.jax.mgi.shr.dla.log.DLALogger;
+import org.jax.mgi.shr.exception.MGIException;
+import org.jax.mgi.shr.ioutils.RecordDataInterpreter;
+
+/**
+ * @is A reconciliation of the cell lines of the input file with the cell
+ *     lines of the provider in MGD, made by merging two sorted streams
+ * @has <UL>
+ *      <LI>the number of input cell lines in each class
+ *      <LI>a temporary file of the cell lines only found in MGD
+ *      </UL>
+ * @does <UL>
+ *       <LI>Sorts the cell line names of the input records with an
+ *       external sort, and reads the cell lines associated to the alleles
+ *       of the primary J number from MGD through a server-side cursor,
+ *       sorted by name
+ *       <LI>Merges the two streams, classing each cell line as new,
+ *       existing with the same marker and project ID, existing with a
+ *       different marker or project ID, or only in MGD. Memory does not
+ *       grow with the input or the database, only one record of each
+ *       stream and one sort run are held at a time.
+ *       <LI>Writes the cell lines only in MGD to a temporary file, in the
+ *       format of the anomaly report, and deletes it when closed
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class CellLineReconciler {
+
+	// The classes of a cell line
+	public static final int NEW = 0;
+	public static final int UNCHANGED = 1;
+	public static final int CHANGED = 2;
+	public static final int DATABASE_ONLY = 3;
+
+	private DLALogger logger;
+	private int sortRecords;
+	private File sortDir;
+	private int fetchSize;
+
+	private int[] counts = new int[4];
+	private File databaseOnly = null;
+
+	/**
+	 * A cell line read from one of the streams
+	 */
+	private static class CellLine {
+		String key;
+		String name;
+		String geneId;
+		String projectId;
+		String symbol;
+	}
+
+	/**
+	 * constructor
+	 *
+	 * @param logger
+	 *            the logger
+	 * @param sortRecords
+	 *            the number of input records sorted in memory at a time
+	 * @param sortDir
+	 *            the directory of the temporary files, null for the system
+	 *            temporary directory
+	 * @param fetchSize
+	 *            the number of MGD rows fetched from the cursor at a time
+	 */
+	public CellLineReconciler(DLALogger logger, int sortRecords,
+			File sortDir, int fetchSize) {
+		this.logger = logger;
+		this.sortRecords = sortRecords;
+		this.sortDir = sortDir;
+		this.fetchSize = fetchSize < 1 ? 1 : fetchSize;
+	}
+
+	/**
+	 * Reconcile the input records with MGD
+	 *
+	 * @param records
+	 *            the index of the input records, records that cannot be
+	 *            interpreted are left out
+	 * @param interpreter
+	 *            the interpreter of the input records
+	 * @param jnumber
+	 *            the primary J number of the provider's alleles
+	 * @param projectLogicalDb
+	 *            the logical DB of the project IDs
+	 * @throws MGIException
+	 *             thrown if the input cannot be sorted, MGD cannot be read
+	 *             or the MGD rows are not sorted the way the input is
+	 */
+	public void reconcile(InputIndex records,
+			RecordDataInterpreter interpreter, String jnumber,
+			Integer projectLogicalDb) throws MGIException {
+		ExternalSort sort = new ExternalSort(sortRecords, sortDir);
+		SQLDataManager dbMgr = null;
+		Statement stmt = null;
+		BufferedWriter out = null;
+		try {
+			sortInput(sort, records, interpreter);
+
+			databaseOnly = File.createTempFile("tal_mgd_only", ".txt",
+					sortDir);
+			out = new BufferedWriter(new FileWriter(databaseOnly));
+
+			// A cursor is only used outside autocommit
+			dbMgr = new SQLDataManager(new DatabaseCfg("MGD"));
+			Connection conn = dbMgr.getConnection();
+			conn.setAutoCommit(false);
+			stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			stmt.setFetchSize(fetchSize);
+			ResultSet rs = stmt.executeQuery(getQuery(jnumber,
+					projectLogicalDb));
+
+			merge(sort, rs, out);
+			rs.close();
+			conn.commit();
+		} catch (IOException e) {
+			throw new MGIException("Cannot reconcile the cell lines: "
+					+ e.getMessage());
+		} catch (SQLException e) {
+			throw new MGIException("Cannot read the MGD cell lines: "
+					+ e.getMessage());
+		} finally {
+			sort.close();
+			try {
+				if (out != null) {
+					out.close();
+				}
+				if (stmt != null) {
+					stmt.close();
+				}
+			} catch (Exception e) {
+				// Nothing more can be done
+			}
+			if (dbMgr != null) {
+				dbMgr.closeResources();
+			}
+		}
+
+		logger.logdInfo("Reconciled cell lines: " + counts[NEW] + " new, "
+				+ counts[UNCHANGED] + " with the same marker and project, "
+				+ counts[CHANGED] + " with a different marker or project, "
+				+ counts[DATABASE_ONLY] + " only in MGI\n", true);
+	}
+
+	/**
+	 * Get the number of cell lines in a class
+	 *
+	 * @param classification
+	 *            the class
+	 * @return the number of cell lines
+	 */
+	public int getCount(int classification) {
+		return counts[classification];
+	}
+
+	/**
+	 * Get the number of provider cell lines in MGD
+	 *
+	 * @return the number of cell lines
+	 */
+	public int getDatabaseCellLines() {
+		return counts[UNCHANGED] + counts[CHANGED] + counts[DATABASE_ONLY];
+	}
+
+	/**
+	 * Open the cell lines only found in MGD, one per line as the allele
+	 * symbol, the project ID and the cell line, sorted by cell line
+	 *
+	 * @return a reader of the lines
+	 * @throws IOException
+	 *             thrown if the file cannot be opened
+	 */
+	public BufferedReader openDatabaseOnly() throws IOException {
+		return new BufferedReader(new FileReader(databaseOnly));
+	}
+
+	/**
+	 * delete the temporary file
+	 */
+	public void close() {
+		if (databaseOnly != null) {
+			databaseOnly.delete();
+			databaseOnly = null;
+		}
+	}
+
+	/**
+	 * add a line for each input record to the sort: the cell line name in
+	 * lower case, the marker MGI ID and the project ID
+	 */
+	private void sortInput(ExternalSort sort, InputIndex records,
+			RecordDataInterpreter interpreter) throws IOException,
+			MGIException {
+		StringBuffer line = new StringBuffer();
+		for (int i = 0; i < records.size(); i++) {
+			Object next = records.read(i, interpreter);
+			if (!(next instanceof KnockoutAlleleInput)) {
+				continue;
+			}
+			KnockoutAlleleInput in = (KnockoutAlleleInput) next;
+			line.setLength(0);
+			CopyIn.append(line, in.getMutantCellLine().toLowerCase(), true);
+			CopyIn.append(line, in.getGeneId(), false);
+			CopyIn.append(line, in.getProjectId(), false);
+			sort.add(line.toString());
+		}
+	}
+
+	/**
+	 * merge the sorted input with the sorted MGD rows
+	 */
+	private void merge(ExternalSort sort, ResultSet rs, BufferedWriter out)
+			throws IOException, SQLException, MGIException {
+		CellLine in = nextInput(sort, null);
+		CellLine db = nextDatabase(rs, null);
+		while (in != null || db != null) {
+			int c;
+			if (in == null) {
+				c = 1;
+			} else if (db == null) {
+				c = -1;
+			} else {
+				c = in.key.compareTo(db.key);
+			}
+
+			if (c < 0) {
+				counts[NEW]++;
+				in = nextInput(sort, in);
+			} else if (c > 0) {
+				counts[DATABASE_ONLY]++;
+				out.write(db.symbol + "\t" + db.projectId + "\t"
+						+ db.name.toUpperCase());
+				out.write('\n');
+				db = nextDatabase(rs, db);
+			} else {
+				if (in.geneId.equals(db.geneId)
+						&& in.projectId.equals(db.projectId)) {
+					counts[UNCHANGED]++;
+				} else {
+					counts[CHANGED]++;
+				}
+				in = nextInput(sort, in);
+				db = nextDatabase(rs, db);
+			}
+		}
+	}
+
+	/**
+	 * read the next input cell line, skipping later records of the same
+	 * cell line
+	 */
+	private CellLine nextInput(ExternalSort sort, CellLine last)
+			throws IOException {
+		String line;
+		while ((line = sort.readLine()) != null) {
+			String[] values = line.split("\t", -1);
+			if (last != null && values[0].equals(last.key)) {
+				continue;
+			}
+			CellLine in = new CellLine();
+			in.key = values[0];
+			in.geneId = values[1];
+			in.projectId = values[2];
+			return in;
+		}
+		return null;
+	}
+
+	/**
+	 * read the next MGD cell line, skipping later rows of the same cell
+	 * line, and check the rows are sorted the way the input is
+	 */
+	private CellLine nextDatabase(ResultSet rs, CellLine last)
+			throws SQLException, MGIException {
+		while (rs.next()) {
+			String name = rs.getString("cellLine");
+			StringBuffer key = new StringBuffer();
+			CopyIn.append(key, name.toLowerCase(), true);
+			if (last != null) {
+				int c = key.toString().compareTo(last.key);
+				if (c == 0) {
+					continue;
+				}
+				if (c < 0) {
+					throw new MGIException("MGD cell lines are not sorted: "
+							+ name + " after " + last.name);
+				}
+			}
+			CellLine db = new CellLine();
+			db.key = key.toString();
+			db.name = name;
+			db.symbol = rs.getString("symbol");
+			db.geneId = notNull(rs.getString("geneMgiid"));
+			db.projectId = notNull(rs.getString("projectId"));
+			return db;
+		}
+		return null;
+	}
+
+	private static String notNull(String s) {
+		return s == null ? "" : s;
+	}
+
+	/**
+	 * The cell lines of the alleles of the J number, sorted by name in
+	 * lower case. The "C" collation sorts by character code, the way the
+	 * input is sorted.
+	 */
+	private static String getQuery(String jnumber, Integer projectLogicalDb) {
+		return "SELECT ac.cellLine, a.symbol, "
+				+ "mrkacc.accID as geneMgiid, prjacc.accID as projectId "
+				+ "FROM ALL_Allele_Cellline aac "
+				+ "JOIN ALL_Cellline ac "
+				+ "    ON (aac._MutantCellLine_key = ac._CellLine_key) "
+				+ "JOIN ALL_Allele a ON (aac._Allele_key = a._Allele_key) "
+				+ "JOIN MGI_Reference_Assoc mra "
+				+ "    ON (mra._Object_key = aac._Allele_key "
+				+ "    AND mra._MGIType_key = 11) "
+				+ "JOIN BIB_Citation_Cache bcc "
+				+ "    ON (mra._Refs_key = bcc._Refs_key) "
+				+ "LEFT OUTER JOIN ACC_Accession mrkacc "
+				+ "    ON (mrkacc._Object_key = a._Marker_key "
+				+ "    AND mrkacc._MGIType_key = 2 "
+				+ "    AND mrkacc._LogicalDB_key = 1 "
+				+ "    AND mrkacc.prefixPart = 'MGI:' "
+				+ "    AND mrkacc.preferred = 1) "
+				+ "LEFT OUTER JOIN ACC_Accession prjacc "
+				+ "    ON (prjacc._Object_key = a._Allele_key "
+				+ "    AND prjacc._MGIType_key = 11 "
+				+ "    AND prjacc._LogicalDB_key = " + projectLogicalDb
+				+ "    AND prjacc.preferred = 1) "
+				+ "WHERE bcc.jnumid = '" + jnumber + "' "
+				+ "ORDER BY lower(ac.cellLine) COLLATE \"C\"";
+	}
+
+}
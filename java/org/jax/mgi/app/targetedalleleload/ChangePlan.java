@@ -0,0 +1,260 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @is A file of the changes a load applied, one line per input record, for
+ *     auditing and for replaying the changes
+ * @has <UL>
+ *      <LI>the writer of the file
+ *      </UL>
+ * @does <UL>
+ *       <LI>Writes a tab delimited line for each planned change: the
+ *       position of the input record, the cell line, the decision, the
+ *       attributes that changed, and the symbol and project ID of the
+ *       existing and the constructed allele. Values are escaped the way
+ *       COPY rows are, so a line never contains a stray tab or newline.
+ *       <LI>Leaves out the records that did not change
+ *       <LI>Reads a plan file back by input record position. A resumed
+ *       load appends to its plan, the last line for a position wins.
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class ChangePlan {
+
+	// The columns of a plan line
+	private static final int POSITION = 0;
+	private static final int CELLLINE = 1;
+	private static final int DECISION = 2;
+	private static final int CHANGES = 3;
+	private static final int COLUMNS = 8;
+
+	// The names of the attribute changes of a re-association
+	private static final String TYPE = "type";
+	private static final String GROUP = "group";
+	private static final String CREATOR = "creator";
+	private static final String NUMBER = "number";
+
+	private Writer out;
+	private StringBuffer line = new StringBuffer();
+
+	/**
+	 * A change read back from a plan file
+	 */
+	public static class PlannedChange {
+		private int position;
+		private String cellLine;
+		private int decision;
+		private String changes;
+
+		private PlannedChange(int position, String cellLine, int decision,
+				String changes) {
+			this.position = position;
+			this.cellLine = cellLine;
+			this.decision = decision;
+			this.changes = changes == null ? "" : changes;
+		}
+
+		public int getPosition() {
+			return position;
+		}
+
+		public String getCellLine() {
+			return cellLine;
+		}
+
+		public int getDecision() {
+			return decision;
+		}
+
+		public boolean isTypeChange() {
+			return hasChange(TYPE);
+		}
+
+		public boolean isGroupChange() {
+			return hasChange(GROUP);
+		}
+
+		public boolean isCreatorChange() {
+			return hasChange(CREATOR);
+		}
+
+		public boolean isNumberChange() {
+			return hasChange(NUMBER);
+		}
+
+		private boolean hasChange(String name) {
+			return ("," + changes + ",").indexOf("," + name + ",") >= 0;
+		}
+	}
+
+	/**
+	 * constructor
+	 *
+	 * @param file
+	 *            the plan file
+	 * @param append
+	 *            true to add to the plan of an interrupted run
+	 * @throws IOException
+	 *             thrown if the file cannot be opened
+	 */
+	public ChangePlan(File file, boolean append) throws IOException {
+		out = new BufferedWriter(new FileWriter(file, append));
+	}
+
+	/**
+	 * Write the planned changes of a window of input records
+	 *
+	 * @param cases
+	 *            the planned changes, in input order
+	 * @throws IOException
+	 *             thrown if the file cannot be written
+	 */
+	public void write(List cases) throws IOException {
+		for (Iterator it = cases.iterator(); it.hasNext();) {
+			QcCase c = (QcCase) it.next();
+			if (c.getDecision() == QcCase.NONE
+					|| c.getDecision() == QcCase.UNCHANGED) {
+				continue;
+			}
+			AlleleView existing = c.getExisting();
+			KnockoutAllele constructed = c.getConstructed();
+
+			line.setLength(0);
+			CopyIn.append(line, new Integer(c.getPosition()), true);
+			CopyIn.append(line, c.getInput().getMutantCellLine(), false);
+			CopyIn.append(line, QcCase.getDecisionName(c.getDecision()),
+					false);
+			CopyIn.append(line, getChanges(c), false);
+			CopyIn.append(line, existing == null ? null : existing
+					.getSymbol(), false);
+			CopyIn.append(line, constructed.getSymbol(), false);
+			CopyIn.append(line, existing == null ? null : existing
+					.getProjectId(), false);
+			CopyIn.append(line, constructed.getProjectId(), false);
+			line.append('\n');
+			out.write(line.toString());
+		}
+		out.flush();
+	}
+
+	/**
+	 * close the plan file
+	 *
+	 * @throws IOException
+	 *             thrown if the file cannot be closed
+	 */
+	public void close() throws IOException {
+		out.close();
+	}
+
+	/**
+	 * Read a plan file
+	 *
+	 * @param file
+	 *            the plan file
+	 * @return the planned changes (PlannedChange) by input record position
+	 *         (Integer), in input order
+	 * @throws IOException
+	 *             thrown if the file cannot be read or a line is not a plan
+	 *             line
+	 */
+	public static Map read(File file) throws IOException {
+		Map plan = new TreeMap();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String s;
+			int lineNumber = 0;
+			while ((s = in.readLine()) != null) {
+				lineNumber++;
+				String[] values = s.split("\t", -1);
+				int decision = values.length == COLUMNS ? QcCase
+						.getDecision(values[DECISION]) : -1;
+				if (decision < 0) {
+					throw new IOException("Line " + lineNumber + " of "
+							+ file + " is not a plan line");
+				}
+				int position;
+				try {
+					position = Integer.parseInt(values[POSITION]);
+				} catch (NumberFormatException e) {
+					throw new IOException("Line " + lineNumber + " of "
+							+ file + " has no input record position");
+				}
+				plan.put(new Integer(position), new PlannedChange(position,
+						unescape(values[CELLLINE]), decision,
+						unescape(values[CHANGES])));
+			}
+		} finally {
+			in.close();
+		}
+		return plan;
+	}
+
+	/**
+	 * list the attributes that changed for a re-association
+	 */
+	private static String getChanges(QcCase c) {
+		StringBuffer changes = new StringBuffer();
+		if (c.isTypeChange()) {
+			changes.append(",").append(TYPE);
+		}
+		if (c.isGroupChange()) {
+			changes.append(",").append(GROUP);
+		}
+		if (c.isCreatorChange()) {
+			changes.append(",").append(CREATOR);
+		}
+		if (c.isNumberChange()) {
+			changes.append(",").append(NUMBER);
+		}
+		return changes.length() == 0 ? "" : changes.substring(1);
+	}
+
+	/**
+	 * undo the COPY escaping of a value
+	 */
+	private static String unescape(String value) {
+		if (value.equals("\\N")) {
+			return null;
+		}
+		if (value.indexOf('\\') < 0) {
+			return value;
+		}
+		StringBuffer s = new StringBuffer(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c != '\\' || i + 1 == value.length()) {
+				s.append(c);
+				continue;
+			}
+			c = value.charAt(++i);
+			switch (c) {
+			case 't':
+				s.append('\t');
+				break;
+			case 'n':
+				s.append('\n');
+				break;
+			case 'r':
+				s.append('\r');
+				break;
+			default:
+				s.append(c);
+			}
+		}
+		return s.toString();
+	}
+
+}
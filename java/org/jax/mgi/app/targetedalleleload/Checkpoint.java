@@ -0,0 +1,258 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * @is A snapshot of the state of a load at a point where everything written
+ *     for the input records before it has been committed
+ * @has <UL>
+ *      <LI>the number of input records in the file and the number processed,
+ *      and whether they were processed in input order or grouped by marker
+ *      <LI>copies of the QC statistics and of the sets and maps the load
+ *      builds up while processing records and applies at the end
+ *      <LI>the highest key used in each table and the highest MGI number
+ *      used when the snapshot was taken
+ *      </UL>
+ * @does <UL>
+ *       <LI>Copies the collections it is given, so the load can keep
+ *       changing them after the snapshot is taken
+ *       <LI>Writes itself to a file, replacing the previous checkpoint only
+ *       once the new one is complete, and reads itself back
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class Checkpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private int inputSize;
+	private int position;
+	private boolean grouped = false;
+	private Map statistics;
+	private Map alleleProjects;
+	private Map alleleNotes;
+	private Set alreadyProcessed;
+	private Set alleleProjectIdUpdated;
+	private Set databaseProjectIds;
+	private Set databaseCellLines;
+	private Map references;
+	private Map keys;
+	private int accession;
+
+	/**
+	 * constructor
+	 *
+	 * @param inputSize
+	 *            the number of records in the input file
+	 * @param position
+	 *            the number of input records processed
+	 */
+	public Checkpoint(int inputSize, int position) {
+		this.inputSize = inputSize;
+		this.position = position;
+	}
+
+	public int getInputSize() {
+		return inputSize;
+	}
+
+	public int getPosition() {
+		return position;
+	}
+
+	public boolean isGrouped() {
+		return grouped;
+	}
+
+	/**
+	 * @param grouped
+	 *            true if the position is in the order of the records sorted
+	 *            by marker rather than in input order
+	 */
+	public void setGrouped(boolean grouped) {
+		this.grouped = grouped;
+	}
+
+	public Map getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * @param statistics
+	 *            QC statistics by level, each a map of counts by name
+	 */
+	public void setStatistics(Map statistics) {
+		this.statistics = new TreeMap();
+		for (Iterator it = statistics.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			this.statistics.put(entry.getKey(), new TreeMap((Map) entry
+					.getValue()));
+		}
+	}
+
+	public Map getAlleleProjects() {
+		return alleleProjects;
+	}
+
+	public void setAlleleProjects(Map alleleProjects) {
+		this.alleleProjects = copySets(alleleProjects);
+	}
+
+	public Map getAlleleNotes() {
+		return alleleNotes;
+	}
+
+	public void setAlleleNotes(Map alleleNotes) {
+		this.alleleNotes = copySets(alleleNotes);
+	}
+
+	public Set getAlreadyProcessed() {
+		return alreadyProcessed;
+	}
+
+	public void setAlreadyProcessed(Set alreadyProcessed) {
+		this.alreadyProcessed = new HashSet(alreadyProcessed);
+	}
+
+	public Set getAlleleProjectIdUpdated() {
+		return alleleProjectIdUpdated;
+	}
+
+	public void setAlleleProjectIdUpdated(Set alleleProjectIdUpdated) {
+		this.alleleProjectIdUpdated = new TreeSet(alleleProjectIdUpdated);
+	}
+
+	public Set getDatabaseProjectIds() {
+		return databaseProjectIds;
+	}
+
+	public void setDatabaseProjectIds(Set databaseProjectIds) {
+		this.databaseProjectIds = new HashSet(databaseProjectIds);
+	}
+
+	public Set getDatabaseCellLines() {
+		return databaseCellLines;
+	}
+
+	public void setDatabaseCellLines(Set databaseCellLines) {
+		this.databaseCellLines = new HashSet(databaseCellLines);
+	}
+
+	public Map getReferences() {
+		return references;
+	}
+
+	/**
+	 * @param references
+	 *            the missing references of the checked alleles, as kept by
+	 *            the ReferenceNormalizer
+	 */
+	public void setReferences(Map references) {
+		this.references = new LinkedHashMap(references);
+	}
+
+	public Map getKeys() {
+		return keys;
+	}
+
+	/**
+	 * @param keys
+	 *            the highest key used by table name
+	 */
+	public void setKeys(Map keys) {
+		this.keys = new LinkedHashMap(keys);
+	}
+
+	public int getAccession() {
+		return accession;
+	}
+
+	/**
+	 * @param accession
+	 *            the highest MGI number used
+	 */
+	public void setAccession(int accession) {
+		this.accession = accession;
+	}
+
+	/**
+	 * Write the checkpoint to a file. It is written to a temporary file
+	 * first and renamed, so the file always holds a complete checkpoint.
+	 *
+	 * @param file
+	 *            the checkpoint file
+	 * @throws IOException
+	 *             thrown if the file cannot be written
+	 */
+	public void write(File file) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		ObjectOutputStream out = new ObjectOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeObject(this);
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(file)) {
+			file.delete();
+			if (!tmp.renameTo(file)) {
+				throw new IOException("Cannot rename " + tmp + " to " + file);
+			}
+		}
+	}
+
+	/**
+	 * Read a checkpoint file
+	 *
+	 * @param file
+	 *            the checkpoint file
+	 * @return the checkpoint, or null if there is no checkpoint file
+	 * @throws IOException
+	 *             thrown if the file cannot be read
+	 */
+	public static Checkpoint read(File file) throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+		ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			return (Checkpoint) in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Cannot read checkpoint " + file + ": "
+					+ e.getMessage());
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * copy a map of sets, copying the sets too
+	 */
+	private static Map copySets(Map map) {
+		Map copy = new HashMap();
+		for (Iterator it = map.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			copy.put(entry.getKey(), new HashSet((Set) entry.getValue()));
+		}
+		return copy;
+	}
+
+}
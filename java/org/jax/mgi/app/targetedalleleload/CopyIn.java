@@ -0,0 +1,165 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @is A collection of static methods that stream rows into a PostgreSQL
+ *     table with COPY ... FROM STDIN
+ * @has <UL>
+ *      <LI>nothing
+ *      </UL>
+ * @does <UL>
+ *       <LI>Formats BCP rows and values in the COPY text format
+ *       <LI>Hands a COPY statement and its data to the copy API of the
+ *       PostgreSQL JDBC driver. The driver is only on the runtime class
+ *       path, so it is reached by reflection; callers fall back to plain
+ *       INSERTs when the connection is not a PostgreSQL connection
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class CopyIn {
+
+	private static final String PG_CONNECTION = "org.postgresql.PGConnection";
+
+	private CopyIn() {
+	}
+
+	/**
+	 * Is COPY ... FROM STDIN available on a connection?
+	 *
+	 * @param conn
+	 *            the connection
+	 * @return true if the connection is (or wraps) a PostgreSQL connection
+	 */
+	public static boolean isSupported(Connection conn) {
+		return getCopyApi(conn) != null;
+	}
+
+	/**
+	 * Run a COPY ... FROM STDIN statement
+	 *
+	 * @param conn
+	 *            the connection, which must support COPY
+	 * @param sql
+	 *            the COPY statement
+	 * @param data
+	 *            the rows in the COPY text format
+	 * @return the number of rows copied
+	 * @throws SQLException
+	 *             thrown if the copy fails or COPY is not supported
+	 */
+	public static long copy(Connection conn, String sql, Reader data)
+			throws SQLException {
+		Object api = getCopyApi(conn);
+		if (api == null) {
+			throw new SQLException("COPY is not supported by " + conn);
+		}
+		try {
+			Method copyIn = api.getClass().getMethod("copyIn",
+					new Class[] { String.class, Reader.class });
+			Object rows = copyIn.invoke(api, new Object[] { sql, data });
+			return ((Number) rows).longValue();
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getTargetException();
+			if (cause instanceof SQLException) {
+				throw (SQLException) cause;
+			}
+			throw new SQLException("COPY failed: " + cause);
+		} catch (Exception e) {
+			throw new SQLException("COPY failed: " + e);
+		}
+	}
+
+	/**
+	 * append a BCP row to a buffer in the COPY text format, formatting the
+	 * values the way the BCP writer does
+	 *
+	 * @param buffer
+	 *            the buffer
+	 * @param values
+	 *            the BCP values of the row
+	 */
+	public static void appendRow(StringBuffer buffer, List values) {
+		for (int i = 0; i < values.size(); i++) {
+			Object value = values.get(i);
+			if (value instanceof Boolean) {
+				value = ((Boolean) value).booleanValue() ? "1" : "0";
+			} else if (value instanceof Date && !(value instanceof Timestamp)) {
+				value = new Timestamp(((Date) value).getTime());
+			}
+			append(buffer, value, i == 0);
+		}
+		buffer.append('\n');
+	}
+
+	/**
+	 * append a value to a row in the COPY text format
+	 *
+	 * @param row
+	 *            the row so far
+	 * @param value
+	 *            the value, null is written as \N
+	 * @param first
+	 *            true if this is the first column of the row
+	 */
+	public static void append(StringBuffer row, Object value, boolean first) {
+		if (!first) {
+			row.append('\t');
+		}
+		if (value == null) {
+			row.append("\\N");
+			return;
+		}
+		String s = value.toString();
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '\\':
+				row.append("\\\\");
+				break;
+			case '\t':
+				row.append("\\t");
+				break;
+			case '\n':
+				row.append("\\n");
+				break;
+			case '\r':
+				row.append("\\r");
+				break;
+			default:
+				row.append(c);
+			}
+		}
+	}
+
+	/**
+	 * get the copy API of the PostgreSQL connection, or null if the
+	 * driver is not available or this is not a PostgreSQL connection
+	 */
+	private static Object getCopyApi(Connection conn) {
+		try {
+			Class pg = Class.forName(PG_CONNECTION);
+			Object pgConn = null;
+			if (pg.isInstance(conn)) {
+				pgConn = conn;
+			} else if (conn.isWrapperFor(pg)) {
+				pgConn = conn.unwrap(pg);
+			} else {
+				return null;
+			}
+			Method getCopyAPI = pg.getMethod("getCopyAPI", new Class[0]);
+			return getCopyAPI.invoke(pgConn, new Object[0]);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,490 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.jax.mgi.shr.config.ConfigException;
+import org.jax.mgi.shr.config.DatabaseCfg;
+import org.jax.mgi.shr.dbutils.DBException;
+import org.jax.mgi.shr.dbutils.SQLDataManager;
+import org.jax.mgi.shr.dbutils.Table;
+import org.jax.mgi.shr.dbutils.dao.BCPTranslatable;
+import org.jax.mgi.shr.dbutils.dao.DAO;
+import org.jax.mgi.shr.dbutils.dao.SQLStream;
+import org.jax.mgi.shr.dla.log.DLALogger;
+
+/**
+ * @is An SQLStream that streams inserted rows into PostgreSQL with
+ *     COPY ... FROM STDIN while the load runs, instead of writing BCP files
+ *     that are loaded at the end
+ * @has <UL>
+ *      <LI>a buffer of COPY text for each table, in the order the tables
+ *      were registered
+ *      <LI>a background thread and its own database connection that run
+ *      the COPY statements
+ *      <LI>a pool of recycled buffers and a limit on the number of filled
+ *      buffers waiting to be copied
+ *      </UL>
+ * @does <UL>
+ *       <LI>Formats each inserted DAO as a row of its BCP table. When the
+ *       buffered rows reach the buffer size, the buffers of all tables are
+ *       handed to the background thread in registration order (the same
+ *       order the BCP files are loaded in), so a row is never copied
+ *       before the rows it refers to
+ *       <LI>In pipelined mode the buffers are only handed over at record
+ *       boundaries, after a given number of records, and the copies of one
+ *       batch of records run in a single transaction, followed by the
+ *       UPDATE and DELETE statements the StatementBatcher held for the
+ *       batch. Batches are copied one at a time in the order they were
+ *       made, so a batch is only committed after every batch it can depend
+ *       on, and a failed batch commits none of its rows or statements.
+ *       <LI>Runs tasks after the batches handed over before them have been
+ *       committed, such as writing a checkpoint of the load
+ *       <LI>Only inserts are supported; the load runs its updates and
+ *       deletes through the StatementBatcher, on the stream's connection
+ *       in pipelined mode
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class CopyStream extends SQLStream {
+
+	private SQLDataManager copyDBMgr;
+	private Connection conn;
+	private DLALogger logger;
+	private int bufferSize;
+
+	// COPY buffers and row counts by table name
+	private Map buffers = new LinkedHashMap();
+	private Map rowCounts = new LinkedHashMap();
+	private int buffered = 0;
+
+	// Records per committed batch in pipelined mode, 0 if not pipelined
+	private int batchRecords;
+	private int records = 0;
+	private volatile int batchesCommitted = 0;
+
+	// The statements run in each batch's transaction in pipelined mode
+	private StatementBatcher statements = null;
+
+	private ConcurrentLinkedQueue freeBuffers = new ConcurrentLinkedQueue();
+	private Semaphore inFlight;
+	private ExecutorService copier = Executors.newSingleThreadExecutor();
+	private volatile Exception failure = null;
+
+	/**
+	 * runs a COPY statement on a connection
+	 */
+	interface CopyRunner {
+		void copy(Connection conn, String sql, Reader data)
+				throws SQLException;
+	}
+
+	private CopyRunner copyRunner = new CopyRunner() {
+		public void copy(Connection conn, String sql, Reader data)
+				throws SQLException {
+			CopyIn.copy(conn, sql, data);
+		}
+	};
+
+	/**
+	 * constructor
+	 *
+	 * @param tables
+	 *            the Table objects the load writes to, in load order
+	 * @param logger
+	 *            the logger
+	 * @param bufferSize
+	 *            the number of characters to buffer before copying
+	 * @param maxBuffers
+	 *            the number of filled buffers (or batches, in pipelined
+	 *            mode) that may wait to be copied before inserts block
+	 * @param batchRecords
+	 *            the number of records to commit at a time, 0 to copy
+	 *            whenever the buffers are full
+	 * @throws ConfigException
+	 *             thrown if the database configuration cannot be read
+	 * @throws DBException
+	 *             thrown if the connection cannot be made or does not
+	 *             support COPY
+	 */
+	public CopyStream(Vector tables, DLALogger logger, int bufferSize,
+			int maxBuffers, int batchRecords) throws ConfigException,
+			DBException {
+		this.logger = logger;
+		this.bufferSize = bufferSize;
+		this.batchRecords = batchRecords < 0 ? 0 : batchRecords;
+		this.inFlight = new Semaphore(maxBuffers < 1 ? 1 : maxBuffers);
+
+		copyDBMgr = new SQLDataManager(new DatabaseCfg("MGD"));
+		conn = copyDBMgr.getConnection();
+		if (!CopyIn.isSupported(conn)) {
+			throw new DBException("COPY is not supported by the MGD "
+					+ "connection", false);
+		}
+
+		for (Iterator it = tables.iterator(); it.hasNext();) {
+			register(((Table) it.next()).getName());
+		}
+	}
+
+	/**
+	 * constructor for a stream on a connection of the caller's, which
+	 * runs its COPY statements with the given runner
+	 *
+	 * @param conn
+	 *            the connection
+	 * @param copyRunner
+	 *            runs the COPY statements
+	 * @param logger
+	 *            the logger
+	 * @param bufferSize
+	 *            the number of characters to buffer before copying
+	 * @param maxBuffers
+	 *            the number of filled buffers or batches that may wait
+	 * @param batchRecords
+	 *            the number of records to commit at a time, 0 to copy
+	 *            whenever the buffers are full
+	 */
+	CopyStream(Connection conn, CopyRunner copyRunner, DLALogger logger,
+			int bufferSize, int maxBuffers, int batchRecords) {
+		this.conn = conn;
+		this.copyRunner = copyRunner;
+		this.logger = logger;
+		this.bufferSize = bufferSize;
+		this.batchRecords = batchRecords < 0 ? 0 : batchRecords;
+		this.inFlight = new Semaphore(maxBuffers < 1 ? 1 : maxBuffers);
+	}
+
+	/**
+	 * Run the statements of a StatementBatcher in the transactions of the
+	 * batches, after the batch's copies, instead of on the batcher's own
+	 * connection. Only used in pipelined mode; the batcher holds its
+	 * statements from now on.
+	 *
+	 * @param statements
+	 *            the batcher
+	 */
+	public void setStatements(StatementBatcher statements) {
+		if (batchRecords == 0) {
+			return;
+		}
+		this.statements = statements;
+		statements.hold();
+	}
+
+	/**
+	 * add the row of a DAO to the buffer of its table
+	 *
+	 * @param dao
+	 *            the DAO, which must be BCPTranslatable
+	 * @throws DBException
+	 *             thrown if the row cannot be formatted or an earlier
+	 *             copy failed
+	 */
+	public void insert(DAO dao) throws DBException {
+		checkFailure();
+		if (!(dao instanceof BCPTranslatable)) {
+			throw new DBException("Cannot stream " + dao.getClass().getName()
+					+ " with COPY", false);
+		}
+
+		BCPTranslatable bcp = (BCPTranslatable) dao;
+		Table table = bcp.getBCPTable();
+		Vector values = null;
+		try {
+			values = bcp.getBCPVector(table);
+		} catch (ConfigException e) {
+			throw new DBException("Cannot format " + table.getName() + " row: "
+					+ e.getMessage(), false);
+		}
+
+		insert(table.getName(), values);
+	}
+
+	/**
+	 * add a row to the buffer of a table
+	 *
+	 * @param name
+	 *            the table name
+	 * @param values
+	 *            the column values of the row
+	 * @throws DBException
+	 *             thrown if the full buffers cannot be handed over
+	 */
+	void insert(String name, List values) throws DBException {
+		if (!buffers.containsKey(name)) {
+			register(name);
+		}
+		StringBuffer buffer = (StringBuffer) buffers.get(name);
+		if (buffer == null) {
+			buffer = takeBuffer();
+			buffers.put(name, buffer);
+		}
+
+		int before = buffer.length();
+		CopyIn.appendRow(buffer, values);
+		buffered += buffer.length() - before;
+
+		Integer count = (Integer) rowCounts.get(name);
+		rowCounts.put(name, new Integer(count.intValue() + 1));
+
+		if (batchRecords == 0 && buffered >= bufferSize) {
+			flush();
+		}
+	}
+
+	/**
+	 * Mark a record boundary: every row inserted so far belongs to a
+	 * completely processed record. In pipelined mode, once enough records
+	 * have completed (or the buffers are full) they are handed to the
+	 * background thread to be committed as one batch.
+	 *
+	 * @param n
+	 *            the number of records completed since the last boundary
+	 * @return true if a batch was handed over
+	 * @throws DBException
+	 *             thrown if an earlier batch failed
+	 */
+	public boolean endRecords(int n) throws DBException {
+		checkFailure();
+		if (batchRecords == 0) {
+			return false;
+		}
+		records += n;
+		if (records < batchRecords && buffered < bufferSize) {
+			return false;
+		}
+		flushBatch();
+		return true;
+	}
+
+	/**
+	 * get the number of batches committed so far in pipelined mode
+	 *
+	 * @return the number of committed batches
+	 */
+	public int getBatchesCommitted() {
+		return batchesCommitted;
+	}
+
+	/**
+	 * Run a task on the background thread once every batch handed over so
+	 * far has been committed. The task is not run if a copy has failed; if
+	 * the task fails, the stream fails.
+	 *
+	 * @param task
+	 *            the task
+	 */
+	public void afterCommit(final Callable task) {
+		copier.execute(new Runnable() {
+			public void run() {
+				try {
+					if (failure == null) {
+						task.call();
+					}
+				} catch (Exception e) {
+					failure = e;
+				}
+			}
+		});
+	}
+
+	public void update(DAO dao) throws DBException {
+		throw new DBException("CopyStream does not support updates", false);
+	}
+
+	public void delete(DAO dao) throws DBException {
+		throw new DBException("CopyStream does not support deletes", false);
+	}
+
+	public boolean isBCP() {
+		return false;
+	}
+
+	/**
+	 * copy the remaining rows, wait for all copies to finish and release
+	 * the connection
+	 *
+	 * @throws DBException
+	 *             thrown if any copy failed
+	 */
+	public void close() throws DBException {
+		try {
+			if (batchRecords == 0) {
+				flush();
+			} else {
+				flushBatch();
+			}
+		} finally {
+			copier.shutdown();
+			try {
+				while (!copier.awaitTermination(60, TimeUnit.SECONDS)) {
+					logger.logdInfo("Waiting for COPY to finish", true);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (copyDBMgr != null) {
+				copyDBMgr.closeResources();
+			}
+		}
+		checkFailure();
+
+		for (Iterator it = rowCounts.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			logger.logdInfo("Rows copied to " + entry.getKey() + ": "
+					+ entry.getValue(), false);
+		}
+	}
+
+	/**
+	 * hand the buffers of all tables to the copier, in table order
+	 */
+	private void flush() throws DBException {
+		for (Iterator it = buffers.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			StringBuffer buffer = (StringBuffer) entry.getValue();
+			if (buffer == null || buffer.length() == 0) {
+				continue;
+			}
+			entry.setValue(null);
+			submit((String) entry.getKey(), buffer);
+		}
+		buffered = 0;
+	}
+
+	/**
+	 * hand the buffers of all tables to the copier as one batch, copied in
+	 * table order in a single transaction with the held statements
+	 */
+	private void flushBatch() throws DBException {
+		final List tables = new ArrayList();
+		final List batch = new ArrayList();
+		for (Iterator it = buffers.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			StringBuffer buffer = (StringBuffer) entry.getValue();
+			if (buffer == null || buffer.length() == 0) {
+				continue;
+			}
+			entry.setValue(null);
+			tables.add(entry.getKey());
+			batch.add(buffer);
+		}
+		final List held = statements == null ? new ArrayList()
+				: statements.takeHeld();
+		buffered = 0;
+		records = 0;
+		if (batch.isEmpty() && held.isEmpty()) {
+			return;
+		}
+
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DBException("Interrupted while copying a batch", false);
+		}
+		copier.execute(new Runnable() {
+			public void run() {
+				try {
+					if (failure == null) {
+						copyBatch(tables, batch, held);
+					}
+				} catch (Exception e) {
+					failure = e;
+				} finally {
+					for (Iterator it = batch.iterator(); it.hasNext();) {
+						StringBuffer buffer = (StringBuffer) it.next();
+						buffer.setLength(0);
+						freeBuffers.add(buffer);
+					}
+					inFlight.release();
+				}
+			}
+		});
+	}
+
+	/**
+	 * copy a batch and run its statements in one transaction, on the
+	 * copier thread
+	 */
+	private void copyBatch(List tables, List batch, List held)
+			throws SQLException {
+		conn.setAutoCommit(false);
+		try {
+			for (int i = 0; i < tables.size(); i++) {
+				copyRunner.copy(conn, "COPY " + tables.get(i) + " FROM STDIN",
+						new StringReader(batch.get(i).toString()));
+			}
+			if (!held.isEmpty()) {
+				statements.runHeld(conn, held);
+			}
+			conn.commit();
+			batchesCommitted++;
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			conn.setAutoCommit(true);
+		}
+	}
+
+	private void submit(final String table, final StringBuffer buffer)
+			throws DBException {
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DBException("Interrupted while copying " + table, false);
+		}
+		copier.execute(new Runnable() {
+			public void run() {
+				try {
+					if (failure == null) {
+						copyRunner.copy(conn, "COPY " + table + " FROM STDIN",
+								new StringReader(buffer.toString()));
+					}
+				} catch (Exception e) {
+					failure = e;
+				} finally {
+					buffer.setLength(0);
+					freeBuffers.add(buffer);
+					inFlight.release();
+				}
+			}
+		});
+	}
+
+	private StringBuffer takeBuffer() {
+		StringBuffer buffer = (StringBuffer) freeBuffers.poll();
+		return buffer != null ? buffer : new StringBuffer(bufferSize);
+	}
+
+	private void register(String table) {
+		buffers.put(table, null);
+		rowCounts.put(table, new Integer(0));
+	}
+
+	private void checkFailure() throws DBException {
+		if (failure != null) {
+			throw new DBException("COPY failed: " + failure.getMessage(),
+					true);
+		}
+	}
+
+}
@@ -0,0 +1,261 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.jax.mgi.shr.config.DatabaseCfg;
+import org.jax.mgi.shr.config.TargetedAlleleLoadCfg;
+import org.jax.mgi.shr.dbutils.DBException;
+import org.jax.mgi.shr.dbutils.SQLDataManager;
+import org.jax.mgi.shr.exception.MGIException;
+
+/**
+ * @is An executor of the concurrent queries of the lookups, each made on a
+ *     connection of its own
+ * @has <UL>
+ *      <LI>an executor that runs each call on a virtual thread when the
+ *      JVM has them, or on a pool of one thread per connection when it
+ *      does not
+ *      <LI>a fixed number of connection permits, and the MGD data managers
+ *      opened so far that are not in use
+ *      </UL>
+ * @does <UL>
+ *       <LI>Runs calls concurrently, each holding a permit and a data
+ *       manager of its own while it runs. The permits bound the number of
+ *       connections, so callers can submit any number of calls without
+ *       sizing a thread pool: with virtual threads a call waiting for a
+ *       permit or for the database does not hold an operating system
+ *       thread.
+ *       <LI>Opens a data manager the first time all the open ones are in
+ *       use, and reuses it afterwards
+ *       <LI>Closes the executor and the data managers when it is closed
+ *       <LI>Serves the reads of the lookups: the partitioned initialization
+ *       of their caches and the prefetching of the keys a window of input
+ *       records needs. The writes of the load do not go through it. The
+ *       statement batcher and the COPY streams each keep one connection,
+ *       so their statements stay in one transaction and in order.
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class DbExecutor {
+
+	private static DbExecutor _instance;
+
+	private ExecutorService executor;
+	private boolean virtual;
+	private int connections;
+	private Semaphore permits;
+
+	// Data managers not in use, and all those opened
+	private ConcurrentLinkedQueue idle = new ConcurrentLinkedQueue();
+	private ConcurrentLinkedQueue opened = new ConcurrentLinkedQueue();
+
+	/**
+	 * A database call, made with a data manager no other call is using
+	 */
+	public interface Call {
+		public Object call(SQLDataManager dbMgr) throws Exception;
+	}
+
+	/**
+	 * get the executor of this run, creating it on first use with the
+	 * configured number of connections
+	 *
+	 * @return the executor
+	 * @throws MGIException
+	 *             thrown if the configuration cannot be read
+	 */
+	public static synchronized DbExecutor getInstance() throws MGIException {
+		if (_instance == null) {
+			TargetedAlleleLoadCfg cfg = new TargetedAlleleLoadCfg();
+			_instance = new DbExecutor(cfg.getDbConnections());
+		}
+		return _instance;
+	}
+
+	/**
+	 * This implements the singleton pattern, so the constructor is private
+	 * and can only be called by the class method "getInstance"
+	 */
+	private DbExecutor(int connections) {
+		this.connections = connections < 1 ? 1 : connections;
+		this.permits = new Semaphore(this.connections, true);
+
+		executor = newVirtualThreadExecutor();
+		virtual = executor != null;
+		if (!virtual) {
+			// Only as many calls as there are permits can run, the
+			// others wait in the queue instead of on a thread
+			executor = Executors.newFixedThreadPool(this.connections,
+					new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "tal-db");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+		}
+	}
+
+	/**
+	 * Are the calls run on virtual threads?
+	 *
+	 * @return true if they are, false if they run on a pool of platform
+	 *         threads
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * get the number of connections calls run on at a time
+	 *
+	 * @return the number of connections
+	 */
+	public int getConnections() {
+		return connections;
+	}
+
+	/**
+	 * Start a call
+	 *
+	 * @param call
+	 *            the call
+	 * @return the result of the call, when it is done
+	 */
+	public Future submit(final Call call) {
+		return executor.submit(new Callable() {
+			public Object call() throws Exception {
+				return run(call);
+			}
+		});
+	}
+
+	/**
+	 * Make calls concurrently and wait for all of them
+	 *
+	 * @param calls
+	 *            the calls (Call)
+	 * @return the results of the calls, in the order of the calls
+	 * @throws MGIException
+	 *             thrown if a call fails, with the failure of the first
+	 *             failed call in the list
+	 */
+	public List invokeAll(List calls) throws MGIException {
+		List futures = new ArrayList(calls.size());
+		for (Iterator it = calls.iterator(); it.hasNext();) {
+			futures.add(submit((Call) it.next()));
+		}
+
+		List results = new ArrayList(calls.size());
+		MGIException failure = null;
+		for (Iterator it = futures.iterator(); it.hasNext();) {
+			Future f = (Future) it.next();
+			try {
+				results.add(f.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MGIException("Interrupted waiting for database "
+						+ "calls");
+			} catch (ExecutionException e) {
+				results.add(null);
+				if (failure == null) {
+					failure = toMGIException(e.getCause());
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return results;
+	}
+
+	/**
+	 * Make a call on the calling thread, waiting for a permit
+	 *
+	 * @param call
+	 *            the call
+	 * @return the result of the call
+	 * @throws Exception
+	 *             thrown if the call fails or no data manager can be opened
+	 */
+	public Object run(Call call) throws Exception {
+		permits.acquire();
+		SQLDataManager dbMgr = null;
+		try {
+			dbMgr = (SQLDataManager) idle.poll();
+			if (dbMgr == null) {
+				dbMgr = new SQLDataManager(new DatabaseCfg("MGD"));
+				opened.add(dbMgr);
+			}
+			return call.call(dbMgr);
+		} finally {
+			if (dbMgr != null) {
+				idle.add(dbMgr);
+			}
+			permits.release();
+		}
+	}
+
+	/**
+	 * stop the executor and close the data managers
+	 */
+	public void close() {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Iterator it = opened.iterator(); it.hasNext();) {
+			try {
+				((SQLDataManager) it.next()).closeResources();
+			} catch (DBException e) {
+				// Nothing more can be done
+			}
+		}
+		opened.clear();
+		idle.clear();
+		synchronized (DbExecutor.class) {
+			if (_instance == this) {
+				_instance = null;
+			}
+		}
+	}
+
+	/**
+	 * the executor of a virtual thread per call, or null if the JVM has
+	 * no virtual threads. It is looked up by name so the load still builds
+	 * and runs on a JVM without them.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method m = Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor", new Class[0]);
+			return (ExecutorService) m.invoke(null, new Object[0]);
+		} catch (Exception e) {
+			// Not in this JVM, or a preview that is not enabled
+			return null;
+		}
+	}
+
+	private static MGIException toMGIException(Throwable t) {
+		if (t instanceof MGIException) {
+			return (MGIException) t;
+		}
+		return new MGIException("Database call failed: " + t);
+	}
+
+}
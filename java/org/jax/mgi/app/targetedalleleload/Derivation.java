@@ -1,6 +1,6 @@
 package org.jax.mgi.app.targetedalleleload;
 
-import org.jax.mgi.app.targetedalleleload.lookups.LookupDerivationByVectorCreatorParentType;
+import org.jax.mgi.app.targetedalleleload.lookups.AlleleGraph;
 import org.jax.mgi.dbs.mgd.dao.ALL_CellLine_DerivationDAO;
 import org.jax.mgi.dbs.mgd.dao.ALL_CellLine_DerivationState;
 import org.jax.mgi.shr.dbutils.dao.SQLStream;
@@ -18,13 +18,13 @@ public class Derivation
 extends org.jax.mgi.dbs.mgd.loads.Alo.Derivation 
 {
 
-	LookupDerivationByVectorCreatorParentType lookup;
+	AlleleGraph alleleGraph;
 
 	public Derivation() 
 	throws MGIException 
 	{
 		super();
-		lookup = LookupDerivationByVectorCreatorParentType.getInstance();
+		alleleGraph = AlleleGraph.getInstance();
 	}
 
 	/**
@@ -60,7 +60,7 @@ extends org.jax.mgi.dbs.mgd.loads.Alo.Derivation
 		this.setDerivationKey(dao.getKey().getKey());
 
 		// Add this new derivation to the lookup
-		lookup.addToCache(this);
+		alleleGraph.addDerivation(this);
 	}
 
 	/**
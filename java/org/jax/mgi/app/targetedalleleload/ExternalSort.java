@@ -0,0 +1,189 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * @is A sort of text lines that keeps a bounded number of lines in memory
+ * @has <UL>
+ *      <LI>the lines added since the last run was written
+ *      <LI>the temporary files of the sorted runs
+ *      </UL>
+ * @does <UL>
+ *       <LI>Collects lines until the run size is reached, then sorts them
+ *       and writes them to a temporary file as a sorted run
+ *       <LI>Merges the runs, reading one line of each at a time, so the
+ *       sorted lines are read back with one line per run in memory
+ *       <LI>Sorts lines by their characters. A tab sorts before any
+ *       printable character, so lines made of tab delimited keys sort by
+ *       the first key, then the second, and so on.
+ *       <LI>Deletes its temporary files when it is closed
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class ExternalSort {
+
+	private int runSize;
+	private File dir;
+	private List lines = new ArrayList();
+	private List runs = new ArrayList();
+
+	// The merge of the runs, a reader for each run ordered by its
+	// current line
+	private PriorityQueue merge = null;
+
+	/**
+	 * A sorted run being merged
+	 */
+	private static class Run implements Comparable {
+		private BufferedReader in;
+		private String line;
+
+		Run(File file) throws IOException {
+			in = new BufferedReader(new FileReader(file));
+			line = in.readLine();
+		}
+
+		void advance() throws IOException {
+			line = in.readLine();
+		}
+
+		public int compareTo(Object o) {
+			return line.compareTo(((Run) o).line);
+		}
+	}
+
+	/**
+	 * constructor
+	 *
+	 * @param runSize
+	 *            the number of lines sorted in memory at a time
+	 * @param dir
+	 *            the directory of the temporary files, null for the system
+	 *            temporary directory
+	 */
+	public ExternalSort(int runSize, File dir) {
+		this.runSize = runSize < 1 ? 1 : runSize;
+		this.dir = dir;
+	}
+
+	/**
+	 * add a line to sort
+	 *
+	 * @param line
+	 *            the line, which must not contain a newline
+	 * @throws IOException
+	 *             thrown if a sorted run cannot be written
+	 */
+	public void add(String line) throws IOException {
+		lines.add(line);
+		if (lines.size() >= runSize) {
+			writeRun();
+		}
+	}
+
+	/**
+	 * Read the next line in sorted order. No lines can be added once the
+	 * first line is read.
+	 *
+	 * @return the line, or null when all lines have been read
+	 * @throws IOException
+	 *             thrown if a sorted run cannot be read
+	 */
+	public String readLine() throws IOException {
+		if (merge == null) {
+			startMerge();
+		}
+		Run run = (Run) merge.poll();
+		if (run == null) {
+			return null;
+		}
+		String line = run.line;
+		run.advance();
+		if (run.line != null) {
+			merge.add(run);
+		} else {
+			run.in.close();
+		}
+		return line;
+	}
+
+	/**
+	 * Get the number of sorted runs written to disk
+	 *
+	 * @return the number of runs
+	 */
+	public int getRuns() {
+		return runs.size();
+	}
+
+	/**
+	 * close the runs and delete the temporary files
+	 */
+	public void close() {
+		if (merge != null) {
+			for (Iterator it = merge.iterator(); it.hasNext();) {
+				try {
+					((Run) it.next()).in.close();
+				} catch (IOException e) {
+					// The file is deleted regardless
+				}
+			}
+			merge.clear();
+		}
+		for (Iterator it = runs.iterator(); it.hasNext();) {
+			((File) it.next()).delete();
+		}
+		runs.clear();
+		lines.clear();
+	}
+
+	/**
+	 * sort the lines in memory and write them as a run
+	 */
+	private void writeRun() throws IOException {
+		if (lines.isEmpty()) {
+			return;
+		}
+		Collections.sort(lines);
+		File file = File.createTempFile("tal_sort", ".run", dir);
+		runs.add(file);
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		try {
+			for (Iterator it = lines.iterator(); it.hasNext();) {
+				out.write((String) it.next());
+				out.write('\n');
+			}
+		} finally {
+			out.close();
+		}
+		lines.clear();
+	}
+
+	/**
+	 * write the last run and open every run for merging
+	 */
+	private void startMerge() throws IOException {
+		writeRun();
+		merge = new PriorityQueue(Math.max(1, runs.size()));
+		for (Iterator it = runs.iterator(); it.hasNext();) {
+			Run run = new Run((File) it.next());
+			if (run.line != null) {
+				merge.add(run);
+			} else {
+				run.in.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+package org.jax.mgi.app.targetedalleleload;
+
+/**
+ * @is A collection of static methods that compute 64 bit fingerprints of
+ *     allele attributes
+ * @has <UL>
+ *      <LI>nothing
+ *      </UL>
+ * @does <UL>
+ *       <LI>Hashes molecular notes ignoring spaces and newlines, the same
+ *       normalization the QC note comparison has always used
+ *       <LI>Compares two notes under that normalization without building
+ *       the normalized strings
+ *       <LI>Combines several attributes into a single fingerprint so an
+ *       unchanged allele can be detected with one comparison
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class Fingerprint {
+
+	// 64 bit FNV-1a parameters
+	private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	// Mixed in between combined values so that ("ab", "c") and
+	// ("a", "bc") do not collide
+	private static final long SEPARATOR = 0x1fL;
+
+	private Fingerprint() {
+	}
+
+	/**
+	 * the fingerprint every combination starts from
+	 *
+	 * @return the initial fingerprint value
+	 */
+	public static long start() {
+		return OFFSET_BASIS;
+	}
+
+	/**
+	 * fingerprint a molecular note, ignoring spaces and newlines
+	 *
+	 * @param note
+	 *            the note, a null note hashes the same as an empty one
+	 * @return the fingerprint of the normalized note
+	 */
+	public static long ofNote(String note) {
+		long h = OFFSET_BASIS;
+		if (note == null) {
+			return h;
+		}
+		for (int i = 0; i < note.length(); i++) {
+			char c = note.charAt(i);
+			if (!isIgnored(c)) {
+				h = (h ^ c) * PRIME;
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * compare two molecular notes, ignoring spaces and newlines
+	 *
+	 * @param first
+	 *            a note, null is treated as empty
+	 * @param second
+	 *            a note, null is treated as empty
+	 * @return true if the notes are the same after normalization
+	 */
+	public static boolean sameNote(String first, String second) {
+		if (first == null) {
+			first = "";
+		}
+		if (second == null) {
+			second = "";
+		}
+		int i = 0;
+		int j = 0;
+		while (true) {
+			while (i < first.length() && isIgnored(first.charAt(i))) {
+				i++;
+			}
+			while (j < second.length() && isIgnored(second.charAt(j))) {
+				j++;
+			}
+			if (i == first.length() || j == second.length()) {
+				return i == first.length() && j == second.length();
+			}
+			if (first.charAt(i++) != second.charAt(j++)) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * add a value to a fingerprint
+	 *
+	 * @param h
+	 *            the fingerprint so far
+	 * @param value
+	 *            the value to add, null is allowed
+	 * @return the combined fingerprint
+	 */
+	public static long combine(long h, Object value) {
+		if (value != null) {
+			String s = value.toString();
+			for (int i = 0; i < s.length(); i++) {
+				h = (h ^ s.charAt(i)) * PRIME;
+			}
+		}
+		return (h ^ SEPARATOR) * PRIME;
+	}
+
+	/**
+	 * add another fingerprint to a fingerprint
+	 *
+	 * @param h
+	 *            the fingerprint so far
+	 * @param value
+	 *            the fingerprint to add
+	 * @return the combined fingerprint
+	 */
+	public static long combine(long h, long value) {
+		for (int i = 0; i < 8; i++) {
+			h = (h ^ (value & 0xff)) * PRIME;
+			value >>>= 8;
+		}
+		return (h ^ SEPARATOR) * PRIME;
+	}
+
+	private static boolean isIgnored(char c) {
+		return c == ' ' || c == '\n';
+	}
+
+}
@@ -0,0 +1,187 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import org.jax.mgi.shr.exception.MGIException;
+import org.jax.mgi.shr.ioutils.RecordDataInterpreter;
+
+/**
+ * @is An index of the records of an input file by their position
+ * @has <UL>
+ *      <LI>the input file, open for reading at any offset
+ *      <LI>the offset of each record the interpreter accepted as valid
+ *      <LI>the part of the file read last
+ *      </UL>
+ * @does <UL>
+ *       <LI>Reads the file once when it is created, keeping only the offset
+ *       of each valid record, so the input is never held in memory
+ *       <LI>Reads a record again by its position and interprets it. Records
+ *       read in file order are served from the part of the file read last.
+ *       <LI>A record is a line, with its line terminator
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class InputIndex {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private RandomAccessFile file;
+	private long[] offsets = new long[1024];
+	private int size = 0;
+
+	// The part of the file read last and its offset
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private long bufferOffset = 0;
+	private int bufferLength = 0;
+
+	/**
+	 * constructor, reads the offsets of the valid records of the file
+	 *
+	 * @param fileName
+	 *            the input file
+	 * @param interpreter
+	 *            decides which records are valid, as the input iterator
+	 *            does
+	 * @throws IOException
+	 *             thrown if the file cannot be read
+	 */
+	public InputIndex(String fileName, RecordDataInterpreter interpreter)
+			throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(
+				fileName), BUFFER_SIZE);
+		try {
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			long offset = 0;
+			long start = 0;
+			int b;
+			while ((b = in.read()) != -1) {
+				line.write(b);
+				offset++;
+				if (b == '\n') {
+					add(start, line.toString(), interpreter);
+					line.reset();
+					start = offset;
+				}
+			}
+			if (line.size() > 0) {
+				add(start, line.toString(), interpreter);
+			}
+		} finally {
+			in.close();
+		}
+		file = new RandomAccessFile(fileName, "r");
+	}
+
+	/**
+	 * Get the number of valid records
+	 *
+	 * @return the number of records
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Read the record at a position
+	 *
+	 * @param position
+	 *            the position of the record among the valid records
+	 * @return the record, with its line terminator
+	 * @throws IOException
+	 *             thrown if the file cannot be read
+	 */
+	public String getRecord(int position) throws IOException {
+		if (position < 0 || position >= size) {
+			throw new IndexOutOfBoundsException("No input record "
+					+ position + ", the input has " + size);
+		}
+		long offset = offsets[position];
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		while (true) {
+			if (offset < bufferOffset
+					|| offset >= bufferOffset + bufferLength) {
+				file.seek(offset);
+				bufferOffset = offset;
+				bufferLength = Math.max(0, file.read(buffer));
+				if (bufferLength == 0) {
+					// The last record has no line terminator
+					return line.toString();
+				}
+			}
+			int from = (int) (offset - bufferOffset);
+			for (int i = from; i < bufferLength; i++) {
+				if (buffer[i] == '\n') {
+					line.write(buffer, from, i + 1 - from);
+					return line.toString();
+				}
+			}
+			line.write(buffer, from, bufferLength - from);
+			offset = bufferOffset + bufferLength;
+		}
+	}
+
+	/**
+	 * Read the record at a position and interpret it
+	 *
+	 * @param position
+	 *            the position of the record among the valid records
+	 * @param interpreter
+	 *            the interpreter
+	 * @return the interpreted record, or the exception thrown
+	 *         interpreting it
+	 * @throws MGIException
+	 *             thrown if the file cannot be read
+	 */
+	public Object read(int position, RecordDataInterpreter interpreter)
+			throws MGIException {
+		String record;
+		try {
+			record = getRecord(position);
+		} catch (IOException e) {
+			throw new MGIException("Cannot read input record " + position
+					+ ": " + e.getMessage());
+		}
+		try {
+			return interpreter.interpret(record);
+		} catch (MGIException e) {
+			return e;
+		}
+	}
+
+	/**
+	 * close the file
+	 */
+	public void close() {
+		try {
+			if (file != null) {
+				file.close();
+			}
+		} catch (IOException e) {
+			// Nothing more can be done
+		}
+		file = null;
+	}
+
+	/**
+	 * add the offset of a record if it is valid
+	 */
+	private void add(long offset, String record,
+			RecordDataInterpreter interpreter) {
+		if (!interpreter.isValid(record)) {
+			return;
+		}
+		if (size == offsets.length) {
+			long[] grown = new long[size * 2];
+			System.arraycopy(offsets, 0, grown, 0, size);
+			offsets = grown;
+		}
+		offsets[size++] = offset;
+	}
+
+}
@@ -0,0 +1,313 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jax.mgi.shr.dbutils.DBException;
+import org.jax.mgi.shr.dbutils.ResultsNavigator;
+import org.jax.mgi.shr.dbutils.SQLDataManager;
+import org.jax.mgi.shr.dla.log.DLALogger;
+
+/**
+ * @is An object that reserves blocks of keys from the database sequences
+ *     of the tables the load creates records in
+ * @has <UL>
+ *      <LI>for each table: its key column, its sequence, the reserved key
+ *      range and the highest key the load has used
+ *      </UL>
+ * @does <UL>
+ *       <LI>Before the load runs, moves each sequence past a block of keys
+ *       above the current maximum key of its table, so nothing else that
+ *       draws keys from the sequence while the load runs can take a key the
+ *       load is about to use. Another block is reserved when the load
+ *       uses up a block.
+ *       <LI>Records the keys the load writes and fails on a key outside
+ *       the reserved blocks, which something other than the load's own
+ *       key generation must have handed out. At commit each sequence is
+ *       moved back to the highest key the load used, returning the unused
+ *       part of the block, unless something else has drawn from the
+ *       sequence since, in which case the sequence is left where it is.
+ *       This replaces the setval fix-ups the load script used to run
+ *       after the load.
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class KeyAllocator {
+
+	// Table, key column and sequence of each table the load creates
+	// records in
+	private static final String[][] SEQUENCES = {
+			{ "ALL_CellLine_Derivation", "_Derivation_key",
+					"all_cellline_derivation_seq" },
+			{ "ALL_CellLine", "_CellLine_key", "all_cellline_seq" },
+			{ "ALL_Allele", "_Allele_key", "all_allele_seq" },
+			{ "ALL_Allele_CellLine", "_Assoc_key", "all_allele_cellline_seq" },
+			{ "VOC_Annot", "_Annot_key", "voc_annot_seq" },
+			{ "MGI_Note", "_Note_key", "mgi_note_seq" },
+			{ "MGI_Reference_Assoc", "_Assoc_key", "mgi_reference_assoc_seq" } };
+
+	private SQLDataManager sqlDBMgr;
+	private DLALogger logger;
+	private boolean preventExecute;
+	private int blockSize;
+
+	// The stream handing out synthetic keys, if the load is discarded
+	private NullStream synthetic;
+
+	// Key blocks by table name
+	private Map blocks = new LinkedHashMap();
+
+	/**
+	 * the keys reserved for and used by one table
+	 */
+	private static class Block {
+		String table;
+		String column;
+		String sequence;
+		long start = 0;
+		long end = 0;
+		long used = 0;
+	}
+
+	/**
+	 * constructor
+	 *
+	 * @param sqlDBMgr
+	 *            the data manager to run the sequence statements with
+	 * @param logger
+	 *            the logger
+	 * @param preventExecute
+	 *            true if the sequences should not be changed
+	 * @param blockSize
+	 *            the number of keys to reserve at a time
+	 */
+	public KeyAllocator(SQLDataManager sqlDBMgr, DLALogger logger,
+			boolean preventExecute, int blockSize) {
+		this.sqlDBMgr = sqlDBMgr;
+		this.logger = logger;
+		this.preventExecute = preventExecute;
+		this.blockSize = blockSize < 1 ? 1 : blockSize;
+
+		for (int i = 0; i < SEQUENCES.length; i++) {
+			Block b = new Block();
+			b.table = SEQUENCES[i][0];
+			b.column = SEQUENCES[i][1];
+			b.sequence = SEQUENCES[i][2];
+			blocks.put(b.table, b);
+		}
+	}
+
+	/**
+	 * Take key blocks from a NullStream instead of the table sequences,
+	 * which are then left alone. The first block of a table starts at
+	 * the first key the load writes to it.
+	 *
+	 * @param synthetic
+	 *            the stream to take keys from
+	 */
+	public void setSynthetic(NullStream synthetic) {
+		this.synthetic = synthetic;
+	}
+
+	/**
+	 * Reserve the first block of keys for every table
+	 *
+	 * @throws DBException
+	 *             thrown if a sequence cannot be moved
+	 */
+	public void reserve() throws DBException {
+		if (synthetic != null) {
+			return;
+		}
+		for (Iterator it = blocks.values().iterator(); it.hasNext();) {
+			reserve((Block) it.next(), 0);
+		}
+	}
+
+	/**
+	 * Is a table's key tracked?
+	 *
+	 * @param table
+	 *            the table name
+	 * @return true if the table's keys come from a reserved block
+	 */
+	public boolean isTracked(String table) {
+		return blocks.containsKey(table);
+	}
+
+	/**
+	 * Record a key the load has written, reserving another block if the
+	 * current one is used up
+	 *
+	 * @param table
+	 *            the table name
+	 * @param key
+	 *            the key of the new record
+	 * @throws DBException
+	 *             thrown if the key is outside the reserved blocks, or if
+	 *             another block cannot be reserved right after the used one
+	 */
+	public void record(String table, Object key) throws DBException {
+		Block b = (Block) blocks.get(table);
+		if (b == null || !(key instanceof Number)) {
+			return;
+		}
+		long k = ((Number) key).longValue();
+		if (b.end == 0) {
+			if (synthetic == null) {
+				// Execution is prevented, no block was reserved
+				return;
+			}
+			reserve(b, k - 1);
+		}
+		if (k < b.start || k > b.end) {
+			throw new DBException(b.table + " key " + k
+					+ " is outside the keys reserved for the load, " + b.start
+					+ " to " + b.end, false);
+		}
+		if (k > b.used) {
+			b.used = k;
+		}
+		if (k == b.end) {
+			reserve(b, k);
+		}
+	}
+
+	/**
+	 * Get the highest key the load has used in each table
+	 *
+	 * @return the highest key used (a Long) by table name, for the tables
+	 *         the load has written to
+	 */
+	public Map getUsed() {
+		Map used = new LinkedHashMap();
+		for (Iterator it = blocks.values().iterator(); it.hasNext();) {
+			Block b = (Block) it.next();
+			if (b.used > 0) {
+				used.put(b.table, new Long(b.used));
+			}
+		}
+		return used;
+	}
+
+	/**
+	 * Check that the rows up to the given keys are in the database, as
+	 * they should be when resuming from a checkpoint
+	 *
+	 * @param used
+	 *            the highest key used (a Long) by table name
+	 * @throws DBException
+	 *             thrown if a table does not reach its key, or if it
+	 *             cannot be queried
+	 */
+	public void checkCommitted(Map used) throws DBException {
+		if (preventExecute || synthetic != null) {
+			return;
+		}
+		for (Iterator it = used.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			Block b = (Block) blocks.get(entry.getKey());
+			if (b == null) {
+				continue;
+			}
+			long key = ((Long) entry.getValue()).longValue();
+			long max = select("SELECT coalesce(max(" + b.column + "), 0) FROM "
+					+ b.table);
+			if (max < key) {
+				throw new DBException(b.table + " keys only go up to " + max
+						+ ", the checkpoint used " + key, false);
+			}
+		}
+	}
+
+	/**
+	 * Move each sequence back to the highest key the load used
+	 *
+	 * @throws DBException
+	 *             thrown if a sequence cannot be moved
+	 */
+	public void commit() throws DBException {
+		for (Iterator it = blocks.values().iterator(); it.hasNext();) {
+			Block b = (Block) it.next();
+			if (b.end == 0) {
+				continue;
+			}
+			if (synthetic != null) {
+				logger.logdInfo(b.table + " keys used up to " + b.used
+						+ ", none written", false);
+				continue;
+			}
+			long floor = Math.max(b.start - 1, 1);
+			String sql = "SELECT setval('" + b.sequence + "', CASE"
+					+ " WHEN last_value = " + b.end + " THEN greatest("
+					+ b.used + ", " + floor + ")" + " ELSE greatest(last_value, "
+					+ b.used + ") END) FROM " + b.sequence;
+			long value = select(sql);
+			logger.logdInfo(b.table + " keys used up to " + b.used + ", "
+					+ b.sequence + " set to " + value, false);
+		}
+	}
+
+	/**
+	 * move a sequence past a block of keys above the table maximum, the
+	 * current sequence value and the floor. A block after the first must
+	 * follow the previous one, the keys between start and end are all
+	 * taken to be the load's
+	 */
+	private void reserve(Block b, long floor) throws DBException {
+		long end;
+		if (synthetic != null) {
+			end = synthetic.reserve(b.table, floor, blockSize);
+		} else {
+			String sql = "SELECT setval('" + b.sequence + "', greatest("
+					+ "(SELECT last_value FROM " + b.sequence + "), "
+					+ "(SELECT coalesce(max(" + b.column + "), 0) FROM "
+					+ b.table + "), " + floor + ") + " + blockSize + ")";
+			end = select(sql);
+			if (end == 0) {
+				return;
+			}
+		}
+
+		long start = end - blockSize + 1;
+		if (b.start == 0) {
+			b.start = start;
+		} else if (start != b.end + 1) {
+			throw new DBException(b.table + " keys " + start + " to " + end
+					+ " do not follow the keys reserved for the load, "
+					+ b.start + " to " + b.end + ", " + b.sequence
+					+ " was drawn from while the load ran", false);
+		}
+		b.end = end;
+		if (synthetic == null) {
+			logger.logdDebug("Reserved " + b.table + " keys up to " + end,
+					false);
+		}
+	}
+
+	/**
+	 * run a query that returns one number, 0 if execution is prevented
+	 */
+	private long select(String sql) throws DBException {
+		if (preventExecute) {
+			logger.logdInfo("SQL prevented by CFG. Would have run: " + sql,
+					false);
+			return 0;
+		}
+		ResultsNavigator rn = sqlDBMgr.executeQuery(sql);
+		long value;
+		try {
+			if (!rn.next()) {
+				throw new DBException("No result from " + sql, false);
+			}
+			value = Long.parseLong(rn.getRowReference().getString(1));
+		} finally {
+			rn.close();
+		}
+		logger.logdInfo("Ran: " + sql, false);
+		return value;
+	}
+
+}
@@ -0,0 +1,83 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.util.Vector;
+
+import org.jax.mgi.shr.config.ConfigException;
+import org.jax.mgi.shr.dbutils.DBException;
+import org.jax.mgi.shr.dbutils.Table;
+import org.jax.mgi.shr.dbutils.dao.BCPTranslatable;
+import org.jax.mgi.shr.dbutils.dao.DAO;
+import org.jax.mgi.shr.dbutils.dao.SQLStream;
+
+/**
+ * @is An SQLStream that passes everything to another stream and tells a
+ *     KeyAllocator about the key of every record inserted
+ * @has <UL>
+ *      <LI>the stream that writes the records
+ *      <LI>the key allocator
+ *      </UL>
+ * @does <UL>
+ *       <LI>Records the key (the first BCP column) of each row inserted
+ *       into a table whose keys come from a sequence
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class KeyTrackingStream extends SQLStream {
+
+	private SQLStream stream;
+	private KeyAllocator keys;
+
+	/**
+	 * constructor
+	 *
+	 * @param stream
+	 *            the stream that writes the records
+	 * @param keys
+	 *            the allocator to record the keys with
+	 */
+	public KeyTrackingStream(SQLStream stream, KeyAllocator keys) {
+		this.stream = stream;
+		this.keys = keys;
+	}
+
+	public void insert(DAO dao) throws DBException {
+		stream.insert(dao);
+
+		if (dao instanceof BCPTranslatable) {
+			BCPTranslatable bcp = (BCPTranslatable) dao;
+			Table table = bcp.getBCPTable();
+			if (keys.isTracked(table.getName())) {
+				try {
+					Vector values = bcp.getBCPVector(table);
+					keys.record(table.getName(), values.get(0));
+				} catch (ConfigException e) {
+					throw new DBException("Cannot get the key of a "
+							+ table.getName() + " row: " + e.getMessage(),
+							false);
+				}
+			}
+		}
+	}
+
+	public void update(DAO dao) throws DBException {
+		stream.update(dao);
+	}
+
+	public void delete(DAO dao) throws DBException {
+		stream.delete(dao);
+	}
+
+	public void close() throws DBException {
+		stream.close();
+	}
+
+	public boolean isBCP() {
+		return stream.isBCP();
+	}
+
+	public boolean isScript() {
+		return stream.isScript();
+	}
+
+}
@@ -2,16 +2,12 @@ package org.jax.mgi.app.targetedalleleload;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 import java.util.Vector;
 
-import org.jax.mgi.app.targetedalleleload.lookups.LookupAlleleByKey;
-import org.jax.mgi.app.targetedalleleload.lookups.LookupJNumbersByAlleleKey;
 import org.jax.mgi.dbs.mgd.dao.ALL_AlleleDAO;
 import org.jax.mgi.dbs.mgd.dao.ALL_AlleleState;
 import org.jax.mgi.dbs.mgd.dao.ALL_Allele_MutationDAO;
@@ -28,7 +24,6 @@ import org.jax.mgi.dbs.mgd.lookup.JNumberLookup;
 import org.jax.mgi.shr.cache.CacheException;
 import org.jax.mgi.shr.config.ConfigException;
 import org.jax.mgi.shr.config.RecordStampCfg;
-import org.jax.mgi.shr.config.TargetedAlleleLoadCfg;
 import org.jax.mgi.shr.dbutils.DBException;
 import org.jax.mgi.shr.dbutils.dao.SQLStream;
 import org.jax.mgi.shr.exception.MGIException;
@@ -36,39 +31,27 @@ import org.jax.mgi.shr.exception.MGIException;
 /**
  * A plain old java object for representing an allele record in MGD
  * (specifically used for loading the knockout alleles created by the targeted
- * allele load).
+ * allele load). Only created for alleles that are inserted or modified, the
+ * cached database state of existing alleles is held in AlleleView objects.
  */
 
 public class KnockoutAllele 
-implements Comparable 
+extends AlleleView 
 {
 	private RecordStampCfg rdCfg;
 	private JNumberLookup jnumLookup;
-	private LookupJNumbersByAlleleKey lookupJNumbersByAlleleKey;
-	private LookupAlleleByKey lookupAlleleByKey;
 	private Timestamp currentTime = new Timestamp(new Date().getTime());
 
 	// We will need to compare and save these types of objects to the
 	// database. Here are the minimum required fields for saving to MGD
-	private Integer key = new Integer(0);
-	private Integer markerKey = new Integer(0);
+	// that are not part of the view
 	private Integer strainKey = new Integer(0);
-	private String symbol;
-	private String name;
-	private String note;
-	private Integer noteKey;
-	private Integer noteModifiedByKey;
-	private String projectId;
 
 	// From cfg file
-	private String[] jNumbers;
 	private Integer projectLogicalDb;
 	private List mutationTypes = new ArrayList();
 
 	private Integer modeKey = new Integer(Constants.ALLELE_MODE);
-	private Integer typeKey;
-	private Integer statusKey = new Integer(Constants.ALLELE_STATUS_APPROVED);
-	private Integer transmissionKey = new Integer(Constants.ALLELE_TRANSMISSION_CELLLINE);
 	private Integer markeralleleStatusKey = new Integer(Constants.MARKER_ALLELE_STATUS);
 	private Boolean isWildType = new Boolean(false);
 	private Boolean isExtinct = new Boolean(false);
@@ -95,18 +78,49 @@ implements Comparable
 	{
 		// To lookup the JNumber Key from the database
 		jnumLookup = new JNumberLookup();
-		lookupJNumbersByAlleleKey = LookupJNumbersByAlleleKey.getInstance();
 		
 		// To get the approvedBy user key from the database
 		rdCfg = new RecordStampCfg();
 	}
 
-	// Getters / Setters
-	public void setStatus(Integer key) {
-		this.statusKey = key;
+	/**
+	 * Constructs a Knockout Allele object to modify an existing allele
+	 * @param existing the cached state of the allele
+	 * @throws MGIException 
+	 * 
+	 * @assumes Nothing
+	 * @effects Set the class variables from the existing allele.
+	 */
+	public KnockoutAllele(AlleleView existing) 
+	throws MGIException 
+	{
+		this();
+		key = existing.key;
+		markerKey = existing.markerKey;
+		typeKey = existing.typeKey;
+		statusKey = existing.statusKey;
+		transmissionKey = existing.transmissionKey;
+		noteKey = existing.noteKey;
+		noteModifiedByKey = existing.noteModifiedByKey;
+		symbol = existing.symbol;
+		name = existing.name;
+		projectId = existing.projectId;
+		note = existing.note;
+		noteFingerprint = existing.noteFingerprint;
+		jNumbers = existing.jNumbers;
 	}
-	public Integer getStatus() {
-		return this.statusKey;
+
+	/**
+	 * Get a compact copy of this allele to keep in the allele caches
+	 * @return the read-only view of this allele
+	 */
+	public AlleleView toView() {
+		return new AlleleView(this, jNumbers);
+	}
+
+	// Setters
+	public void setStatus(Integer key) {
+		this.statusKey = key.intValue();
 	}
         public void setCollection(Integer key) {
                 this.collectionKey = key;
@@ -116,11 +130,7 @@ implements Comparable
         }
 
 	public void setTransmissionKey(Integer key) {
-		this.transmissionKey = key;
-	}
-
-	public Integer getTransmissionKey() {
-		return this.transmissionKey;
+		this.transmissionKey = key.intValue();
 	}
 
 	public void setMarkeralleleStatusKey(Integer key) {
@@ -131,20 +141,12 @@ implements Comparable
 		return this.markeralleleStatusKey;
 	}
 
-	public Integer getKey() {
-		return key;
-	}
-
 	public void setKey(Integer key) {
-		this.key = key;
+		this.key = key.intValue();
 	}
 
 	public void setTypeKey(Integer key) {
-		this.typeKey = key;
-	}
-
-	public Integer getTypeKey() {
-		return this.typeKey;
+		this.typeKey = intValue(key);
 	}
 
         public void addSubTypeKey(Integer key) {
@@ -155,12 +157,8 @@ implements Comparable
                 return this.subTypeKeySet;
         }
 
-	public Integer getMarkerKey() {
-		return markerKey;
-	}
-
 	public void setMarkerKey(Integer key) {
-		this.markerKey = key;
+		this.markerKey = key.intValue();
 	}
 
 	public Integer getStrainKey() {
@@ -171,34 +169,18 @@ implements Comparable
 		this.strainKey = key;
 	}
 
-	public String getSymbol() {
-		return symbol;
-	}
-
 	public void setSymbol(String symbol) {
 		this.symbol = symbol;
 	}
 
-	public String getName() {
-		return name;
-	}
-
 	public void setName(String name) {
 		this.name = name;
 	}
 
-	public String getProjectId() {
-		return projectId;
-	}
-
 	public void setProjectId(String projectId) {
 		this.projectId = projectId;
 	}
 
-	public String[] getJNumbers() {
-		return jNumbers;
-	}
-
 	public void setJNumbers(String[] jNumbers) {
 		this.jNumbers = jNumbers;
 	}
@@ -215,121 +197,17 @@ implements Comparable
 		this.projectLogicalDb = projectLogicalDb;
 	}
 
-	public String getNote() {
-		return note;
-	}
-
 	public void setNote(String note) {
 		this.note = note;
-	}
-
-	public Integer getNoteKey() {
-		return noteKey;
+		this.noteFingerprint = Fingerprint.ofNote(note);
 	}
 
 	public void setNoteKey(Integer key) {
-		this.noteKey = key;
-	}
-
-	public Integer getNoteModifiedByKey() {
-		return noteModifiedByKey;
+		this.noteKey = intValue(key);
 	}
 
 	public void setNoteModifiedByKey(Integer noteModifiedByKey) {
-		this.noteModifiedByKey = noteModifiedByKey;
-	}
-
-	// @Override
-	public String toString() {
-		String jnumString = "";
-		if (this.jNumbers != null) {
-			jnumString = this.jNumbers.toString();
-		}
-		return "Allele key: " + this.key + "\n" + "name: " + this.name + "\n"
-				+ "symbol: " + this.symbol + "\n" + "note: " + this.note + "\n"
-				+ "J Numbers: " + jnumString + "\n";
-	}
-
-	// @Override
-	public boolean equals(Object that) throws ClassCastException {
-		if (!(that instanceof KnockoutAllele)) {
-			throw new ClassCastException("A KnockoutAllele object expected.");
-		}
-
-		String thatSymbol = ((KnockoutAllele) that).getSymbol();
-		return this.getSymbol().equals(thatSymbol);
-	}
-
-	// @Override
-	public int compareTo(Object that) 
-	throws ClassCastException 
-	{
-		if (!(that instanceof KnockoutAllele)) {
-			throw new ClassCastException("A KnockoutAllele object expected.");
-		}
-
-		String thatSymbol = ((KnockoutAllele) that).getSymbol();
-		return this.getSymbol().compareTo(thatSymbol);
-	}
-
-	/**
-	 * This method returns the difference between jnumbers indicated
-	 * in the configuration that should be associated to this allele
-	 * and actual jnumber associations
-	 * 
-	 * to this allele already, and  
-	 * @return set of strings indicating which jnumbers
-	 * 			need to be associated to this allele but aren't 
-	 * @throws ClassCastException
-	 * @throws MGIException
-	 */
-	public Set getJNumSetDifference() 
-	throws MGIException 
-	{
-		TargetedAlleleLoadCfg cfg = new TargetedAlleleLoadCfg();
-		
-		Set difference = new HashSet(Arrays.asList(cfg.getJNumbers()));
-		Set theseJNums = new HashSet(Arrays.asList(this.getJNumbers()));
-		difference.removeAll(theseJNums);
-		return difference;
-	}
-	
-	/**
-	 * This method enforce that all the references indicated
-	 * in the CFG are associated to this allele
-	 * @param stream SQL stream to use to create the missing associations
-	 * @throws MGIException
-	 */
-	public void normalizeReferences(SQLStream stream) 
-	throws MGIException
-	{
-		Set jnumbers = getJNumSetDifference();
-		if (jnumbers.size() != 0)
-		{
-			for (Iterator it = jnumbers.iterator(); it.hasNext();) {
-				String jNumber = (String) it.next();
-				createReference(stream, Constants.MOLECULAR_REFERENCE, jNumber);
-				
-				// Add the new reference association to the lookup 
-				// to make sure the it's only recorded the first time 
-				List update = new ArrayList(Arrays.asList(this.jNumbers));
-				update.add(jNumber);
-				this.setJNumbers((String [])update.toArray(new String [0]));
-
-				lookupJNumbersByAlleleKey.addToCache(
-					key, 
-					this.getJNumbers()
-					);
-			}
-			
-			// Do NOT initialize this in the constructor or it leads to
-			// a circular initialization death spiral.
-			if (lookupAlleleByKey == null)
-			{
-				lookupAlleleByKey = LookupAlleleByKey.getInstance();				
-			}
-			lookupAlleleByKey.addToCache(key, this);			
-		}
+		this.noteModifiedByKey = intValue(noteModifiedByKey);
 	}
 
 	/**
@@ -353,7 +231,7 @@ implements Comparable
 
 		// Create the Note and attach it to this Allele
 		MGI_NoteState nState = new MGI_NoteState();
-		nState.setObjectKey(key);
+		nState.setObjectKey(getKey());
 		nState.setMGITypeKey(new Integer(Constants.ALLELE_MGI_TYPE));
 		nState.setNotetypeKey(new Integer(Constants.NOTE_TYPE_MOLECULAR));
 
@@ -361,11 +239,11 @@ implements Comparable
 		stream.insert(nDAO);
 
 		// get note key for the newly created note 
-		noteKey = new Integer(nDAO.getKey().getKey().intValue());
+		noteKey = nDAO.getKey().getKey().intValue();
 
 		// Create the note chunk
 		MGI_NoteChunkState ncState = new MGI_NoteChunkState();
-		ncState.setNoteKey(noteKey);
+		ncState.setNoteKey(getNoteKey());
 		ncState.setSequenceNum(new Integer(1));
 		ncState.setNote(newNote);
 		MGI_NoteChunkDAO ncDAO = new MGI_NoteChunkDAO(ncState);
@@ -396,13 +274,13 @@ implements Comparable
 		// Create this allele in the database, attaching the (possibly new)
 		// mutant es cell to the allele
 		ALL_AlleleState aState = new ALL_AlleleState();
-		aState.setMarkerKey(markerKey);
+		aState.setMarkerKey(getMarkerKey());
 		aState.setStrainKey(strainKey);
 		aState.setModeKey(modeKey);
-		aState.setAlleleTypeKey(typeKey);
-		aState.setAlleleStatusKey(statusKey);
+		aState.setAlleleTypeKey(getTypeKey());
+		aState.setAlleleStatusKey(getStatus());
 		aState.setCollectionKey(collectionKey);
-		aState.setTransmissionKey(transmissionKey);
+		aState.setTransmissionKey(getTransmissionKey());
 		aState.setMarkeralleleStatusKey(markeralleleStatusKey);
 		aState.setSymbol(symbol);
 		aState.setName(name);
@@ -416,13 +294,13 @@ implements Comparable
 		stream.insert(aDAO);
 
 		// Set this object key to the newly created allele key from the DB
-		key = new Integer(aDAO.getKey().getKey().intValue());
+		key = aDAO.getKey().getKey().intValue();
 
 		// create the subtype annotations
 		for (Iterator i = subTypeKeySet.iterator(); i.hasNext();) {
 		    Integer subTypeKey = (Integer) i.next();
 		    VOC_AnnotState annotState = new VOC_AnnotState();
-		    annotState.setObjectKey(key);
+		    annotState.setObjectKey(getKey());
 		    annotState.setAnnottypeKey(annotTypeKey);
 		    annotState.setQualifierKey(qualifierKey);
 		    annotState.setTermKey(subTypeKey);
@@ -436,7 +314,7 @@ implements Comparable
 			Integer typeKey = (Integer) i.next();
 
 			ALL_Allele_MutationState amState = new ALL_Allele_MutationState();
-			amState.setAlleleKey(key);
+			amState.setAlleleKey(getKey());
 			amState.setMutationKey(typeKey);
 
 			ALL_Allele_MutationDAO amDAO = new ALL_Allele_MutationDAO(amState);
@@ -472,7 +350,7 @@ implements Comparable
 		// note the missing AccID parameter which indicates this is an MGI ID
 		AccessionId alleleAccId = new AccessionId(new Integer(
 				Constants.LOGICALDB_MGI), // Logical DB
-				key, // Allele object key
+				getKey(), // Allele object key
 				new Integer(Constants.ALLELE_MGI_TYPE), // MGI type
 				Boolean.FALSE, // Private?
 				Boolean.TRUE // Preferred?
@@ -483,7 +361,7 @@ implements Comparable
 		// Create the Project (private) Accession object
 		AccessionId projectAccId = new AccessionId(projectId,
 				projectLogicalDb, // Logical DB for these project IDs
-				key, // Allele object key
+				getKey(), // Allele object key
 				new Integer(Constants.ALLELE_MGI_TYPE), // MGI type
 				Boolean.TRUE, // Private?
 				Boolean.TRUE // Preferred?
@@ -505,7 +383,7 @@ implements Comparable
 			throws DBException, CacheException, ConfigException {
 		MGI_Reference_AssocState raState = new MGI_Reference_AssocState();
 		raState.setRefsKey(jnumLookup.lookup(jNumber));
-		raState.setObjectKey(key);
+		raState.setObjectKey(getKey());
 		raState.setMGITypeKey(new Integer(Constants.ALLELE_MGI_TYPE));
 		raState.setRefAssocTypeKey(new Integer(type));
 
@@ -35,9 +35,11 @@ abstract class KnockoutAlleleFactory
 		throw new MGIException("Provider not found. Check cfg file.");
 	}
 
-	public abstract KnockoutAlleleInterpreter getInterpreter()
+	public abstract KnockoutAlleleInterpreter getInterpreter(
+			QualityControlStatistics qcStatistics)
 	throws MGIException;
 
-	public abstract KnockoutAlleleProcessor getProcessor() 
+	public abstract KnockoutAlleleProcessor getProcessor(
+			QualityControlStatistics qcStatistics) 
 	throws MGIException;
 }
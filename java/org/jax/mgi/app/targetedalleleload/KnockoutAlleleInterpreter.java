@@ -21,4 +21,14 @@ public abstract class KnockoutAlleleInterpreter implements RecordDataInterpreter
 
 	protected QualityControlStatistics qcStatistics = new QualityControlStatistics();
 
+	/**
+	 * set the statistics of the load run the records are read for
+	 *
+	 * @param qcStatistics
+	 *            the statistics
+	 */
+	public void setStatistics(QualityControlStatistics qcStatistics) {
+		this.qcStatistics = qcStatistics;
+	}
+
 }
\ No newline at end of file
@@ -29,14 +29,43 @@ abstract class KnockoutAlleleProcessor {
 	protected QualityControlStatistics qcStatistics = null;
         protected DLALogger logger =  null;
 
+	// The alleles planned for the marker of the record being processed
+	protected MarkerGroup group = null;
+
+	// Serializes the sequence assignment of the records of a marker
+	protected MarkerLocks markerLocks = null;
+
 	public KnockoutAlleleProcessor() throws MGIException {
 	    qcStatistics = new QualityControlStatistics();
 	    logger = DLALogger.getInstance();
+	    markerLocks = MarkerLocks.getInstance();
 
 	}
-	public abstract KnockoutAllele process(KnockoutAlleleInput in)
+	public abstract KnockoutAllele process(KnockoutAlleleInput in,
+			ResolvedRecord resolved)
 			throws RecordFormatException, ConfigException,
 			KeyNotFoundException, DBException, CacheException,
 			TranslationException, DLALoggingException, MGIException;
 
+	/**
+	 * set the statistics of the load run the records are processed for
+	 *
+	 * @param qcStatistics
+	 *            the statistics
+	 */
+	public void setStatistics(QualityControlStatistics qcStatistics) {
+		this.qcStatistics = qcStatistics;
+	}
+
+	/**
+	 * set the alleles planned for the marker of the next records, so
+	 * their sequence numbers can be assigned before the alleles exist
+	 *
+	 * @param group
+	 *            the planned alleles, null if there are none
+	 */
+	public void setGroup(MarkerGroup group) {
+		this.group = group;
+	}
+
 }
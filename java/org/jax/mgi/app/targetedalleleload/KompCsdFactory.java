@@ -4,12 +4,18 @@ import org.jax.mgi.shr.exception.MGIException;
 
 public class KompCsdFactory extends KnockoutAlleleFactory {
 
-	public KnockoutAlleleInterpreter getInterpreter() throws MGIException {
-		return new KompCsdInterpreter();
+	public KnockoutAlleleInterpreter getInterpreter(
+			QualityControlStatistics qcStatistics) throws MGIException {
+		KnockoutAlleleInterpreter interpreter = new KompCsdInterpreter();
+		interpreter.setStatistics(qcStatistics);
+		return interpreter;
 	}
 
-	public KnockoutAlleleProcessor getProcessor() throws MGIException {
-		return new KompCsdProcessor();
+	public KnockoutAlleleProcessor getProcessor(
+			QualityControlStatistics qcStatistics) throws MGIException {
+		KnockoutAlleleProcessor processor = new KompCsdProcessor();
+		processor.setStatistics(qcStatistics);
+		return processor;
 	}
 
 }
@@ -1,15 +1,16 @@
 package org.jax.mgi.app.targetedalleleload;
 
 import java.lang.Integer;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Iterator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 import java.util.regex.*;
 
 import org.jax.mgi.shr.config.TargetedAlleleLoadCfg;
+import org.jax.mgi.app.targetedalleleload.lookups.AlleleGraph;
 import org.jax.mgi.app.targetedalleleload.lookups.LookupAlleleByKey;
 import org.jax.mgi.app.targetedalleleload.lookups.LookupAllelesByMarker;
 import org.jax.mgi.app.targetedalleleload.lookups.LookupAllelesByProjectId;
@@ -46,19 +47,14 @@ extends KnockoutAlleleProcessor
 {
 
     private TargetedAlleleLoadCfg cfg;
-    private LookupMarkerByMGIID lookupMarkerByMGIID;
-    private VocabKeyLookup vocabLookup;
     private LookupAllelesByProjectId lookupAllelesByProjectId;
     private LookupAllelesByMarker lookupAllelesByMarker;
-    private ParentStrainLookupByParentKey parentStrainLookupByParentKey;
-    private StrainKeyLookup strainKeyLookup;
     private LookupAlleleByKey lookupAlleleByKey;
 
     private String PROMOTER_DRIVEN = "";
     private String PROMOTER_LESS = "";
 
     private Pattern alleleSequencePattern = Pattern.compile(".*tm(\\d{1,2})[ae]{0,1}.*");
-    private Matcher regexMatcher;
 
     /**
      * Constructs a KnockoutAllele processor object.
@@ -83,10 +79,6 @@ extends KnockoutAlleleProcessor
 
 	lookupAllelesByProjectId = LookupAllelesByProjectId.getInstance();
 	lookupAllelesByMarker = LookupAllelesByMarker.getInstance();
-	lookupMarkerByMGIID = LookupMarkerByMGIID.getInstance();
-	vocabLookup = new VocabKeyLookup(Constants.ALLELE_VOCABULARY);
-	parentStrainLookupByParentKey = new ParentStrainLookupByParentKey();
-	strainKeyLookup = new StrainKeyLookup();
 	lookupAlleleByKey = LookupAlleleByKey.getInstance();
     }
 
@@ -117,6 +109,8 @@ extends KnockoutAlleleProcessor
      * @effects Loads the clone object.
      * @param inputData
      *            A record from the Sanger allele input file
+     * @param resolved
+     *            The keys already resolved for the record
      * @return An KnockoutAllele object
      * @throws RecordFormatException
      * @throws ConfigException
@@ -124,7 +118,8 @@ extends KnockoutAlleleProcessor
      * @throws CacheException
      * @throws TranslationException
      */
-    public KnockoutAllele process(KnockoutAlleleInput inputData)
+    public KnockoutAllele process(KnockoutAlleleInput inputData,
+	ResolvedRecord resolved)
     throws MGIException 
     {
 
@@ -133,10 +128,8 @@ extends KnockoutAlleleProcessor
 	KnockoutAllele koAllele = new KnockoutAllele();
 
 	// Get the external dependencies referenced in this row
-	Marker marker = lookupMarkerByMGIID.lookup(in.getGeneId());
-	Integer strainKey = strainKeyLookup
-	    .lookup(parentStrainLookupByParentKey.lookup(cfg
-		.getParentalKey(in.getParentCellLine())));
+	Marker marker = resolved.getMarker();
+	Integer strainKey = resolved.getStrainKey();
 
 	koAllele.setMarkerKey(marker.getKey());
 	koAllele.setProjectId(in.getProjectId());
@@ -144,12 +137,7 @@ extends KnockoutAlleleProcessor
 	koAllele.setStrainKey(strainKey);
 
 	// CSD Specific Mutation types
-	List mutationTypeKeys = new ArrayList();
-	String[] types = cfg.getMutationTypes(in.getMutationType()).split(",");
-	for (int i = 0; i < types.length; i++) {
-	    Integer key = vocabLookup.lookup(types[i].trim());
-	    mutationTypeKeys.add(key);
-	}
+	List mutationTypeKeys = resolved.getMutationTypeKeys();
 	koAllele.setMutationTypes(mutationTypeKeys);
         koAllele.setCollection(Constants.COLLECTION_KOMP_CSD);
 
@@ -215,82 +203,103 @@ extends KnockoutAlleleProcessor
 	}
 
 	int seq = 1;
-	HashSet existingAlleles = lookupAllelesByMarker.lookup(marker
-	    .getSymbol());
-
-	// If this marker has existing alleles already, default
-	// the sequence to the next one which will be used only
-	// if there is not a good match to an existing allele
-	if (existingAlleles != null) {
-	    // Loop through the existing alleles counting them up
-	    Iterator alleleSetIt = existingAlleles.iterator();
-	    while (alleleSetIt.hasNext()) {
-		Integer nextKey = (Integer) alleleSetIt.next();
-		KnockoutAllele existingKoAllele = lookupAlleleByKey
-			.lookup(nextKey);
-		if (existingKoAllele == null) 
-		{
-		    String m = "Unable to find allele for key ";
-		    m += nextKey;
-		    m += " (for cellline ";
-		    m += in.getMutantCellLine();
-		    m += ")";
-		    throw new MGIException(m);
-		}
-		String allSymbol = existingKoAllele.getSymbol();
-
-		// Get the map version of the allele
-		Map alleles = lookupAllelesByProjectId.lookup(in.getProjectId());
-		Map allele = null;
-
-		// Find the matching allele record in the alleleByProject
-		// set
-		if (alleles != null) {
-		    Iterator aIt = alleles.entrySet().iterator();
-		    while (aIt.hasNext() && allele == null) {
-			Map.Entry entry = (Map.Entry) aIt.next();
-			Map tmpAllele = (HashMap) entry.getValue();
-			if (((String) tmpAllele.get("symbol"))
-				.equals(allSymbol)) {
-			    allele = tmpAllele;
-			}
+	boolean matched = false;
+	// Serialize the sequence assignment with the other records of
+	// this marker, the lock is held again while the allele is created.
+	// The alleles of the marker, by key and by project are read under
+	// the read lock of the graph, so they agree with each other
+	Lock markerLock = markerLocks.lock(marker.getKey());
+	Lock graphLock = AlleleGraph.getInstance().readLock();
+	graphLock.lock();
+	try {
+	    Matcher regexMatcher;
+
+	    HashSet existingAlleles = lookupAllelesByMarker.lookup(marker
+		.getSymbol());
+
+	    // If this marker has existing alleles already, default
+	    // the sequence to the next one which will be used only
+	    // if there is not a good match to an existing allele
+	    if (existingAlleles != null) {
+		// Loop through the existing alleles counting them up
+		Iterator alleleSetIt = existingAlleles.iterator();
+		while (alleleSetIt.hasNext()) {
+		    Integer nextKey = (Integer) alleleSetIt.next();
+		    AlleleView existingKoAllele = lookupAlleleByKey
+			    .lookup(nextKey);
+		    if (existingKoAllele == null) 
+		    {
+			String m = "Unable to find allele for key ";
+			m += nextKey;
+			m += " (for cellline ";
+			m += in.getMutantCellLine();
+			m += ")";
+			throw new MGIException(m);
 		    }
+		    String allSymbol = existingKoAllele.getSymbol();
+
+		    // Get the map version of the allele
+		    Map alleles = lookupAllelesByProjectId.lookup(in.getProjectId());
+		    Map allele = null;
+
+		    // Find the matching allele record in the alleleByProject
+		    // set
+		    if (alleles != null) {
+			Iterator aIt = alleles.entrySet().iterator();
+			while (aIt.hasNext() && allele == null) {
+			    Map.Entry entry = (Map.Entry) aIt.next();
+			    Map tmpAllele = (HashMap) entry.getValue();
+			    if (((String) tmpAllele.get("symbol"))
+				    .equals(allSymbol)) {
+				allele = tmpAllele;
+			    }
+			}
 
-		    if (allele != null) {
-			String extProjID = existingKoAllele.getProjectId();
-			String inProjID = in.getProjectId();
-			Integer extParentKey = (Integer) allele
-			    .get("parentCellLineKey");
-			Integer inParentKey = cfg.getParentalKey(in
-			    .getParentCellLine());
-
-			// Check if the project ID and the parental is the
-			// same as the allele being constructed
-			if (extProjID.equals(inProjID)
-				&& extParentKey.equals(inParentKey)) {
-			    // If the project IDs and parental match, then
-			    // use this allele sequence number as the default
-			    regexMatcher = alleleSequencePattern
-				.matcher(allSymbol);
-			    if (regexMatcher.find()) {
-				seq = Integer.parseInt(regexMatcher.group(1));
-				break;
+			if (allele != null) {
+			    String extProjID = existingKoAllele.getProjectId();
+			    String inProjID = in.getProjectId();
+			    Integer extParentKey = (Integer) allele
+				.get("parentCellLineKey");
+			    Integer inParentKey = resolved.getParentalKey();
+
+			    // Check if the project ID and the parental is the
+			    // same as the allele being constructed
+			    if (extProjID.equals(inProjID)
+				    && extParentKey.equals(inParentKey)) {
+				// If the project IDs and parental match, then
+				// use this allele sequence number as the default
+				regexMatcher = alleleSequencePattern
+				    .matcher(allSymbol);
+				if (regexMatcher.find()) {
+				    seq = Integer.parseInt(regexMatcher.group(1));
+				    matched = true;
+				    break;
+				}
 			    }
 			}
 		    }
-		}
 
-		// bump up the sequence if this allele is larger than the
-		// largest seen so far
-		regexMatcher = alleleSequencePattern.matcher(allSymbol);
-		if (regexMatcher.find()) {
-		    if (Integer.parseInt(regexMatcher.group(1)) >= seq) {
-			seq = Integer.parseInt(regexMatcher.group(1)) + 1;
+		    // bump up the sequence if this allele is larger than the
+		    // largest seen so far
+		    regexMatcher = alleleSequencePattern.matcher(allSymbol);
+		    if (regexMatcher.find()) {
+			if (Integer.parseInt(regexMatcher.group(1)) >= seq) {
+			    seq = Integer.parseInt(regexMatcher.group(1)) + 1;
+			}
 		    }
 		}
 	    }
-	}
         
+	    // Alleles planned for this marker but not created yet count too
+	    if (!matched && group != null) {
+		seq = group.getSequence(seq, in.getProjectId(),
+		    resolved.getParentalKey(), alleleSequencePattern);
+	    }
+	} finally {
+	    graphLock.unlock();
+	    markerLock.unlock();
+	}
+
 	String finalSequence = new Integer(seq).toString() + let;
 
 	// Set the clone's constructed values
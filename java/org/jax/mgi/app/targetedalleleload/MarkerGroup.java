@@ -0,0 +1,108 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @is The alleles planned for a marker that have not been created yet
+ * @has <UL>
+ *      <LI>the symbol, project ID and parental cell line key of each
+ *      planned allele
+ *      </UL>
+ * @does <UL>
+ *       <LI>Lets the processor assign the sequence numbers of all the
+ *       records of a marker in one step, before any of their alleles are
+ *       created. A planned allele counts the same as an existing allele of
+ *       the marker: a record of the same project and parental cell line
+ *       gets its number, any other record a higher one.
+ *       <LI>Tells whether an allele of a project has already been planned
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class MarkerGroup {
+
+	private List symbols = new ArrayList();
+	private List projectIds = new ArrayList();
+	private List parentKeys = new ArrayList();
+
+	/**
+	 * add a planned allele
+	 *
+	 * @param constructed
+	 *            the allele to be created
+	 * @param parentKey
+	 *            the key of its parental cell line
+	 */
+	public void add(KnockoutAllele constructed, Integer parentKey) {
+		symbols.add(constructed.getSymbol());
+		projectIds.add(constructed.getProjectId());
+		parentKeys.add(parentKey);
+	}
+
+	/**
+	 * Is an allele with this symbol planned for the project?
+	 *
+	 * @param projectId
+	 *            the project ID
+	 * @param symbol
+	 *            the allele symbol
+	 * @return true if the allele is planned
+	 */
+	public boolean contains(String projectId, String symbol) {
+		for (int i = 0; i < symbols.size(); i++) {
+			if (symbols.get(i).equals(symbol)
+					&& projectIds.get(i).equals(projectId)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the sequence number of a record, taking the planned alleles into
+	 * account
+	 *
+	 * @param seq
+	 *            the sequence number from the existing alleles, which had
+	 *            no allele of the same project and parental cell line
+	 * @param projectId
+	 *            the project ID of the record
+	 * @param parentKey
+	 *            the parental cell line key of the record
+	 * @param sequencePattern
+	 *            the pattern of the sequence number in an allele symbol
+	 * @return the sequence number
+	 */
+	public int getSequence(int seq, String projectId, Integer parentKey,
+			Pattern sequencePattern) {
+		for (int i = 0; i < symbols.size(); i++) {
+			Matcher m = sequencePattern.matcher((String) symbols.get(i));
+			if (!m.find()) {
+				continue;
+			}
+			int planned = Integer.parseInt(m.group(1));
+			if (projectIds.get(i).equals(projectId)
+					&& parentKeys.get(i).equals(parentKey)) {
+				// Same project and parental, use its number
+				return planned;
+			}
+			if (planned >= seq) {
+				seq = planned + 1;
+			}
+		}
+		return seq;
+	}
+
+	/**
+	 * get the number of planned alleles
+	 *
+	 * @return the number of alleles
+	 */
+	public int size() {
+		return symbols.size();
+	}
+
+}
@@ -0,0 +1,138 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jax.mgi.shr.config.TargetedAlleleLoadCfg;
+import org.jax.mgi.shr.exception.MGIException;
+
+/**
+ * @is A striped set of locks by marker key
+ * @has <UL>
+ *      <LI>a fixed number of reentrant locks, each shared by the markers
+ *      whose keys hash to it
+ *      <LI>counts of the acquisitions, the contended acquisitions and the
+ *      time spent waiting, in total and by stripe
+ *      </UL>
+ * @does <UL>
+ *       <LI>Serializes the sequence number assignment and the allele
+ *       creation of the records of a marker, so two records of a marker
+ *       never get the same number, while the records of markers on other
+ *       stripes go ahead in parallel
+ *       <LI>Reports the contention of the locks, so the number of stripes
+ *       can be sized: a stripe is only ever waited on by another thread
+ *       holding it for the same marker or for a marker that shares it
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class MarkerLocks {
+
+	private static MarkerLocks _instance;
+
+	private ReentrantLock[] stripes;
+
+	private LongAdder acquisitions = new LongAdder();
+	private LongAdder contended = new LongAdder();
+	private LongAdder waitNanos = new LongAdder();
+	private AtomicLongArray stripeContended;
+
+	/**
+	 * get the locks of this run, creating them on first use with the
+	 * configured number of stripes
+	 *
+	 * @return the locks
+	 * @throws MGIException
+	 *             thrown if the configuration cannot be read
+	 */
+	public static synchronized MarkerLocks getInstance() throws MGIException {
+		if (_instance == null) {
+			TargetedAlleleLoadCfg cfg = new TargetedAlleleLoadCfg();
+			_instance = new MarkerLocks(cfg.getMarkerLockStripes());
+		}
+		return _instance;
+	}
+
+	/**
+	 * constructor. The load gets its locks from the class method
+	 * "getInstance", other instances are only created by the tests.
+	 *
+	 * @param n
+	 *            the number of stripes
+	 */
+	MarkerLocks(int n) {
+		stripes = new ReentrantLock[n < 1 ? 1 : n];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+		stripeContended = new AtomicLongArray(stripes.length);
+	}
+
+	/**
+	 * Acquire the lock of a marker, waiting if another thread holds it.
+	 * The lock is reentrant, a thread already holding it gets it at once.
+	 *
+	 * @param markerKey
+	 *            the marker key
+	 * @return the acquired lock, to be unlocked by the caller
+	 */
+	public Lock lock(Integer markerKey) {
+		int stripe = getStripe(markerKey);
+		ReentrantLock lock = stripes[stripe];
+		acquisitions.increment();
+		if (!lock.tryLock()) {
+			long start = System.nanoTime();
+			lock.lock();
+			waitNanos.add(System.nanoTime() - start);
+			contended.increment();
+			stripeContended.incrementAndGet(stripe);
+		}
+		return lock;
+	}
+
+	/**
+	 * Get the contention of the locks so far: the number of stripes,
+	 * acquisitions, contended acquisitions and the time waited, and how
+	 * the contended acquisitions are spread over the stripes
+	 *
+	 * @return the report, one line
+	 */
+	public String getReport() {
+		long total = acquisitions.sum();
+		long waited = contended.sum();
+		int busiest = 0;
+		int contendedStripes = 0;
+		for (int i = 0; i < stripes.length; i++) {
+			long n = stripeContended.get(i);
+			if (n > 0) {
+				contendedStripes++;
+			}
+			if (n > stripeContended.get(busiest)) {
+				busiest = i;
+			}
+		}
+		return "Marker locks: " + stripes.length + " stripes, " + total
+				+ " acquisitions, " + waited + " contended ("
+				+ (total == 0 ? 0 : waited * 100 / total) + "%), "
+				+ waitNanos.sum() / 1000000 + " ms waiting, "
+				+ contendedStripes + " stripes contended, busiest stripe "
+				+ busiest + " with " + stripeContended.get(busiest)
+				+ " contended acquisitions\n";
+	}
+
+	/**
+	 * the stripe of a marker key, with the high bits of the hash spread
+	 * over the low ones
+	 */
+	private int getStripe(Integer markerKey) {
+		if (markerKey == null) {
+			return 0;
+		}
+		int h = markerKey.hashCode();
+		h ^= h >>> 16;
+		return (h & 0x7fffffff) % stripes.length;
+	}
+
+}
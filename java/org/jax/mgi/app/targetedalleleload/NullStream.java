@@ -0,0 +1,181 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import org.jax.mgi.shr.config.ConfigException;
+import org.jax.mgi.shr.dbutils.DBException;
+import org.jax.mgi.shr.dbutils.SQLDataManager;
+import org.jax.mgi.shr.dbutils.dao.BCPTranslatable;
+import org.jax.mgi.shr.dbutils.dao.DAO;
+import org.jax.mgi.shr.dbutils.dao.SQLStream;
+import org.jax.mgi.shr.dla.log.DLALogger;
+import org.jax.mgi.shr.dla.log.DLALoggingException;
+
+/**
+ * @is An SQLStream that discards everything written to it, for measuring
+ *     the load without writing to the database
+ * @has <UL>
+ *      <LI>the number of rows inserted, updated and deleted and the number
+ *      of bytes inserted for each table
+ *      <LI>the last key reserved for each table
+ *      </UL>
+ * @does <UL>
+ *       <LI>Counts each inserted row and the size of the row in the COPY
+ *       text format, then drops it. One row buffer is reused, so nothing is
+ *       kept and nothing is written to disk.
+ *       <LI>Reserves blocks of keys for each table in memory, so the load
+ *       never has to reserve keys from the MGD sequences
+ *       <LI>Logs the counts when it is closed
+ *       <LI>Is selected by naming it in DLA_LOAD_STREAM
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class NullStream extends SQLStream {
+
+	// Synthetic MGI numbers start here, well above any real one
+	public static final long SYNTHETIC_BASE = 1000000000L;
+
+	private DLALogger logger;
+
+	// Counts by table name
+	private Map inserted = new LinkedHashMap();
+	private Map bytes = new LinkedHashMap();
+	private Map updated = new LinkedHashMap();
+	private Map deleted = new LinkedHashMap();
+
+	// The last key reserved by table name
+	private Map keys = new LinkedHashMap();
+
+	private StringBuffer row = new StringBuffer();
+
+	/**
+	 * constructor
+	 *
+	 * @throws DLALoggingException
+	 *             thrown if the logger cannot be created
+	 */
+	public NullStream() throws DLALoggingException {
+		logger = DLALogger.getInstance();
+	}
+
+	/**
+	 * constructor for the DLA loader, which creates the load stream from
+	 * DLA_LOAD_STREAM with the load data manager. Nothing is written to it.
+	 *
+	 * @param sqlMgr
+	 *            the load data manager, not used
+	 * @throws DLALoggingException
+	 *             thrown if the logger cannot be created
+	 */
+	public NullStream(SQLDataManager sqlMgr) throws DLALoggingException {
+		this();
+	}
+
+	/**
+	 * count a row and its size, then drop it
+	 *
+	 * @param dao
+	 *            the DAO to insert
+	 * @throws DBException
+	 *             thrown if the row cannot be formatted
+	 */
+	public void insert(DAO dao) throws DBException {
+		String table = getTableName(dao);
+		if (dao instanceof BCPTranslatable) {
+			BCPTranslatable bcp = (BCPTranslatable) dao;
+			Vector values;
+			try {
+				values = bcp.getBCPVector(bcp.getBCPTable());
+			} catch (ConfigException e) {
+				throw new DBException("Cannot format " + table + " row: "
+						+ e.getMessage(), false);
+			}
+			row.setLength(0);
+			CopyIn.appendRow(row, values);
+			add(bytes, table, row.length());
+		}
+		add(inserted, table, 1);
+	}
+
+	public void update(DAO dao) throws DBException {
+		add(updated, getTableName(dao), 1);
+	}
+
+	public void delete(DAO dao) throws DBException {
+		add(deleted, getTableName(dao), 1);
+	}
+
+	public boolean isBCP() {
+		return false;
+	}
+
+	/**
+	 * Reserve a block of keys for a table, following the last block
+	 * reserved for it
+	 *
+	 * @param table
+	 *            the table name
+	 * @param floor
+	 *            the block starts above this key and the last block
+	 * @param count
+	 *            the number of keys in the block
+	 * @return the last key of the block
+	 */
+	public long reserve(String table, long floor, int count) {
+		Long last = (Long) keys.get(table);
+		long start = last == null ? floor : last.longValue();
+		long end = Math.max(start, floor) + count;
+		keys.put(table, new Long(end));
+		return end;
+	}
+
+	/**
+	 * log what would have been written
+	 */
+	public void close() throws DBException {
+		long totalRows = 0;
+		long totalBytes = 0;
+		for (Iterator it = inserted.keySet().iterator(); it.hasNext();) {
+			String table = (String) it.next();
+			long n = get(inserted, table);
+			long b = get(bytes, table);
+			logger.logdInfo("Rows discarded for " + table + ": " + n + " ("
+					+ b + " bytes)", false);
+			totalRows += n;
+			totalBytes += b;
+		}
+		logUpdates("Updates", updated);
+		logUpdates("Deletes", deleted);
+		logger.logdInfo("Rows discarded: " + totalRows + " (" + totalBytes
+				+ " bytes)", false);
+	}
+
+	private void logUpdates(String label, Map counts) {
+		for (Iterator it = counts.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			logger.logdInfo(label + " discarded for " + entry.getKey() + ": "
+					+ entry.getValue(), false);
+		}
+	}
+
+	private static String getTableName(DAO dao) {
+		if (dao instanceof BCPTranslatable) {
+			return ((BCPTranslatable) dao).getBCPTable().getName();
+		}
+		return dao.getClass().getName();
+	}
+
+	private static void add(Map counts, String table, long n) {
+		counts.put(table, new Long(get(counts, table) + n));
+	}
+
+	private static long get(Map counts, String table) {
+		Long count = (Long) counts.get(table);
+		return count == null ? 0 : count.longValue();
+	}
+
+}
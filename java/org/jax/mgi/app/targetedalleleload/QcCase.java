@@ -0,0 +1,237 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import org.jax.mgi.shr.exception.MGIException;
+
+/**
+ * @is The planned change of an input record: the QC checks of a cell line
+ *     that is already in the database, or the creation of a new one
+ * @has <UL>
+ *      <LI>the position of the input record, its resolved keys, the allele
+ *      constructed from it, the existing cell line and the allele the cell
+ *      line is associated with (neither exists for a creation)
+ *      <LI>the outcome of the planning: a decision, which attributes
+ *      changed, or the exception the checks threw
+ *      </UL>
+ * @does <UL>
+ *       <LI>Carries a record from the plan phase of the load, where it is
+ *       decided what changes, to the apply phase, where the change is
+ *       written, so the decisions can be made apart from the writes
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class QcCase {
+
+	// The decisions of the QC checks
+	public static final int NONE = 0;
+	public static final int UNCHANGED = 1;
+	public static final int MARKER_CHANGED = 2;
+	public static final int PROJECT_UPDATE = 3;
+	public static final int REASSOCIATE = 4;
+	public static final int DERIVATION_CHANGE = 5;
+	public static final int NOTE_UPDATE = 6;
+	public static final int CREATE_ALLELE = 7;
+	public static final int CREATE_CELLLINE = 8;
+
+	// The decision names, as written to a change plan
+	private static final String[] DECISIONS = { "NONE", "UNCHANGED",
+			"MARKER_CHANGED", "PROJECT_UPDATE", "REASSOCIATE",
+			"DERIVATION_CHANGE", "NOTE_UPDATE", "CREATE_ALLELE",
+			"CREATE_CELLLINE" };
+
+	private int position;
+
+	private ResolvedRecord resolved;
+	private KnockoutAllele constructed;
+	private MutantCellLine esCell;
+	private AlleleView existing;
+
+	private boolean evaluated = false;
+	private int decision = NONE;
+	private boolean typeChange = false;
+	private boolean groupChange = false;
+	private boolean creatorChange = false;
+	private boolean numberChange = false;
+	private MGIException failure = null;
+
+	/**
+	 * constructor
+	 *
+	 * @param position
+	 *            the position of the input record in the input file
+	 * @param resolved
+	 *            the input record and its resolved keys
+	 * @param constructed
+	 *            the allele constructed from the input record
+	 * @param esCell
+	 *            the existing cell line, null for a new cell line
+	 * @param existing
+	 *            the allele the cell line is associated with, null for a
+	 *            new cell line
+	 */
+	public QcCase(int position, ResolvedRecord resolved,
+			KnockoutAllele constructed, MutantCellLine esCell,
+			AlleleView existing) {
+		this.position = position;
+		this.resolved = resolved;
+		this.constructed = constructed;
+		this.esCell = esCell;
+		this.existing = existing;
+	}
+
+	public int getPosition() {
+		return position;
+	}
+
+	public KnockoutAlleleInput getInput() {
+		return resolved.getInput();
+	}
+
+	public ResolvedRecord getResolved() {
+		return resolved;
+	}
+
+	public KnockoutAllele getConstructed() {
+		return constructed;
+	}
+
+	public void setConstructed(KnockoutAllele constructed) {
+		this.constructed = constructed;
+	}
+
+	public MutantCellLine getEsCell() {
+		return esCell;
+	}
+
+	public AlleleView getExisting() {
+		return existing;
+	}
+
+	public void setExisting(AlleleView existing) {
+		this.existing = existing;
+	}
+
+	/**
+	 * get the partition of the record. Records of different markers never
+	 * touch the same alleles, so they are partitioned by the marker of the
+	 * existing allele, or of the constructed allele for a new cell line
+	 *
+	 * @return the marker key
+	 */
+	public Integer getPartition() {
+		if (existing == null) {
+			return constructed.getMarkerKey();
+		}
+		return existing.getMarkerKey();
+	}
+
+	/**
+	 * Is this the creation of a new cell line?
+	 *
+	 * @return true if the cell line (and maybe its allele) is created
+	 */
+	public boolean isCreate() {
+		return decision == CREATE_ALLELE || decision == CREATE_CELLLINE;
+	}
+
+	public boolean isEvaluated() {
+		return evaluated;
+	}
+
+	public int getDecision() {
+		return decision;
+	}
+
+	/**
+	 * get the name of a decision
+	 *
+	 * @param decision
+	 *            the decision
+	 * @return the name
+	 */
+	public static String getDecisionName(int decision) {
+		return DECISIONS[decision];
+	}
+
+	/**
+	 * get a decision by name
+	 *
+	 * @param name
+	 *            the name
+	 * @return the decision, or -1 if the name is unknown
+	 */
+	public static int getDecision(String name) {
+		for (int i = 0; i < DECISIONS.length; i++) {
+			if (DECISIONS[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * set the outcome of the checks, which marks the record as evaluated
+	 *
+	 * @param decision
+	 *            the decision
+	 */
+	public void setDecision(int decision) {
+		this.decision = decision;
+		this.evaluated = true;
+	}
+
+	public boolean isTypeChange() {
+		return typeChange;
+	}
+
+	public boolean isGroupChange() {
+		return groupChange;
+	}
+
+	public boolean isCreatorChange() {
+		return creatorChange;
+	}
+
+	public boolean isNumberChange() {
+		return numberChange;
+	}
+
+	/**
+	 * record which allele attributes changed for a re-association
+	 */
+	public void setChanges(boolean typeChange, boolean groupChange,
+			boolean creatorChange, boolean numberChange) {
+		this.typeChange = typeChange;
+		this.groupChange = groupChange;
+		this.creatorChange = creatorChange;
+		this.numberChange = numberChange;
+	}
+
+	public MGIException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * set the exception the checks threw, which marks the record as
+	 * evaluated
+	 *
+	 * @param failure
+	 *            the exception
+	 */
+	public void setFailure(MGIException failure) {
+		this.failure = failure;
+		this.decision = NONE;
+		this.evaluated = true;
+	}
+
+	/**
+	 * forget the outcome, so the record is checked again
+	 */
+	public void reset() {
+		evaluated = false;
+		decision = NONE;
+		failure = null;
+		setChanges(false, false, false, false);
+	}
+
+}
@@ -0,0 +1,175 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.jax.mgi.shr.exception.MGIException;
+
+/**
+ * @is An engine that runs the QC checks of the records planned by an
+ *     update mode load, on several threads
+ * @has <UL>
+ *      <LI>the checks to run, and a fork-join pool to run them on when
+ *      there is more than one thread
+ *      </UL>
+ * @does <UL>
+ *       <LI>Partitions the planned records by marker. The records of a
+ *       partition are checked in input order on one thread, remembering
+ *       the alleles whose project ID or note the partition has updated;
+ *       partitions are checked at the same time.
+ *       <LI>Stops checking a partition at a record that could not be
+ *       checked on its own, or after a record whose cell line is
+ *       re-associated, since that changes the allele caches. The load
+ *       checks the rest of the partition when it applies them.
+ *       <LI>Leaves the records that already have a decision alone
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class QcEngine {
+
+	/**
+	 * The QC checks of a record
+	 */
+	public interface Checks {
+
+		/**
+		 * Can the checks of a record run on another thread?
+		 *
+		 * @param c
+		 *            the record
+		 * @return false if checking the record could log or write
+		 */
+		boolean isIndependent(QcCase c);
+
+		/**
+		 * Check a record and set its decision. This must not log or write.
+		 *
+		 * @param c
+		 *            the record
+		 * @param projects
+		 *            keys of the alleles whose project ID earlier records
+		 *            of the partition updated
+		 * @param notes
+		 *            keys of the alleles whose note earlier records of the
+		 *            partition updated
+		 */
+		void evaluate(QcCase c, Set projects, Set notes);
+	}
+
+	private Checks checks;
+	private ForkJoinPool pool;
+
+	/**
+	 * constructor
+	 *
+	 * @param checks
+	 *            the checks
+	 * @param threads
+	 *            the number of threads to check records on
+	 */
+	public QcEngine(Checks checks, int threads) {
+		this.checks = checks;
+		if (threads > 1) {
+			this.pool = new ForkJoinPool(threads);
+		}
+	}
+
+	/**
+	 * Check the planned records that have no decision yet
+	 *
+	 * @param cases
+	 *            the planned records, in input order
+	 * @throws MGIException
+	 *             thrown if a check failed unexpectedly
+	 */
+	public void plan(List cases) throws MGIException {
+		Map partitions = new LinkedHashMap();
+		for (Iterator it = cases.iterator(); it.hasNext();) {
+			QcCase c = (QcCase) it.next();
+			if (c.isEvaluated()) {
+				continue;
+			}
+			List partition = (List) partitions.get(c.getPartition());
+			if (partition == null) {
+				partition = new ArrayList();
+				partitions.put(c.getPartition(), partition);
+			}
+			partition.add(c);
+		}
+
+		if (pool == null) {
+			for (Iterator it = partitions.values().iterator(); it.hasNext();) {
+				evaluate((List) it.next());
+			}
+			return;
+		}
+
+		List tasks = new ArrayList();
+		for (Iterator it = partitions.values().iterator(); it.hasNext();) {
+			final List partition = (List) it.next();
+			tasks.add(new Callable() {
+				public Object call() {
+					evaluate(partition);
+					return null;
+				}
+			});
+		}
+
+		List results = pool.invokeAll(tasks);
+		for (Iterator it = results.iterator(); it.hasNext();) {
+			try {
+				((Future) it.next()).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MGIException("Interrupted while running QC checks");
+			} catch (ExecutionException e) {
+				throw new MGIException("QC checks failed: "
+						+ e.getCause().getMessage());
+			}
+		}
+	}
+
+	/**
+	 * shut the pool down
+	 */
+	public void close() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * check the records of one partition in input order, stopping at the
+	 * first record that cannot be checked on its own
+	 */
+	private void evaluate(List partition) {
+		Set projects = new HashSet();
+		Set notes = new HashSet();
+		for (Iterator it = partition.iterator(); it.hasNext();) {
+			QcCase c = (QcCase) it.next();
+			if (!checks.isIndependent(c)) {
+				return;
+			}
+			checks.evaluate(c, projects, notes);
+			if (c.getDecision() == QcCase.PROJECT_UPDATE) {
+				projects.add(c.getExisting().getKey());
+			} else if (c.getDecision() == QcCase.NOTE_UPDATE) {
+				notes.add(c.getExisting().getKey());
+			} else if (c.getDecision() == QcCase.REASSOCIATE) {
+				// The later records are checked as they are applied
+				return;
+			}
+		}
+	}
+
+}
@@ -1,15 +1,25 @@
 package org.jax.mgi.app.targetedalleleload;
 
-import java.lang.Integer;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * @is An object that maintains a static record of quality control statistics
- *     that gets updated throughout the load process
- * @has nothing
+ * @is An object that maintains the record of quality control statistics of
+ *     a load run that gets updated throughout the load process
+ * @has <UL>
+ *      <LI>a counter for each quality control string, by level
+ *      </UL>
  * @does <UL>
  *       <LI>Maintains a list of quality control strings, and associated counts
+ *       <LI>Hands out counter handles, so a statistic recorded often is
+ *       looked up once. Counters can be updated from any thread without
+ *       locking, and once a counter exists recording allocates nothing.
+ *       <LI>Each load run creates its own statistics and hands them to the
+ *       objects that record in them
+ *       <LI>Reports the statistics sorted by level and name
  *       </UL>
  * @company The Jackson Laboratory
  * @author jmason
@@ -17,71 +27,146 @@ import java.util.TreeMap;
 
 class QualityControlStatistics {
 
-	static protected Map stats = new TreeMap();
+	// Counters by level, each a map of counters by name
+	private ConcurrentHashMap levels = new ConcurrentHashMap();
 
 	/**
-	 * Record an entry in the Quality Control statistic tracking object
-	 * 
+	 * A counter of one quality control statistic
+	 */
+	static final class Counter {
+		private final AtomicLong count = new AtomicLong();
+
+		// Only counters that have been recorded are reported
+		private volatile boolean recorded = false;
+
+		public void increment() {
+			count.incrementAndGet();
+			markRecorded();
+		}
+
+		public void add(long n) {
+			count.addAndGet(n);
+			markRecorded();
+		}
+
+		/**
+		 * override the count
+		 *
+		 * @param n
+		 *            the new count
+		 */
+		public void set(long n) {
+			count.set(n);
+			markRecorded();
+		}
+
+		public long get() {
+			return count.get();
+		}
+
+		public boolean isRecorded() {
+			return recorded;
+		}
+
+		private void markRecorded() {
+			if (!recorded) {
+				recorded = true;
+			}
+		}
+	}
+
+	/**
+	 * constructor
+	 */
+	public QualityControlStatistics() {
+	}
+
+	/**
+	 * Get the counter of a statistic, registering it if it is new. It is
+	 * only reported once something has been recorded with it.
+	 *
 	 * @param levelName
 	 *            the statistic level to which this QC entry belongs
 	 * @param qcParameter
 	 *            a string describing the statistic being tracked
-	 * @param qty
-	 *            override the count for this statistic
+	 * @return the counter
 	 */
-	protected void record(String levelName, String qcParameter, int qty) {
-		Map statLevel = (Map) stats.get(levelName);
-
-		if (statLevel == null) {
+	protected Counter counter(String levelName, String qcParameter) {
+		ConcurrentHashMap level = (ConcurrentHashMap) levels.get(levelName);
+		if (level == null) {
 			// First time seeing this level
-			statLevel = new TreeMap();
+			ConcurrentHashMap created = new ConcurrentHashMap();
+			level = (ConcurrentHashMap) levels.putIfAbsent(levelName, created);
+			if (level == null) {
+				level = created;
+			}
 		}
 
-		// This replaced the current value!
-		statLevel.put(qcParameter, new Integer(qty));
-		stats.put(levelName, statLevel);
+		Counter counter = (Counter) level.get(qcParameter);
+		if (counter == null) {
+			// First time seeing this qc parameter
+			Counter created = new Counter();
+			counter = (Counter) level.putIfAbsent(qcParameter, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		return counter;
 	}
 
 	/**
 	 * Record an entry in the Quality Control statistic tracking object
-	 * 
+	 *
 	 * @param levelName
 	 *            the statistic level to which this QC entry belongs
 	 * @param qcParameter
 	 *            a string describing the statistic being tracked
+	 * @param qty
+	 *            override the count for this statistic
 	 */
-	protected void record(String levelName, String qcParameter) {
-		if (stats.containsKey(levelName)) {
-			Map statLevel = (Map) stats.get(levelName);
-			if (statLevel.containsKey(qcParameter)) {
-				Integer oldLevel = (Integer) statLevel.get(qcParameter);
-				Integer newLevel = new Integer(oldLevel.intValue() + 1);
-				statLevel.put(qcParameter, newLevel);
-
-			} else {
-				// First time seeing this qc parameter
-				statLevel.put(qcParameter, new Integer(1));
-			}
-			stats.put(levelName, statLevel);
-		} else {
-			// First time seeing this level
-			Map statLevel = new TreeMap();
-			statLevel.put(qcParameter, new Integer(1));
-			stats.put(levelName, statLevel);
-		}
+	protected void record(String levelName, String qcParameter, int qty) {
+		// This replaces the current value!
+		counter(levelName, qcParameter).set(qty);
 	}
 
 	/**
 	 * Record an entry in the Quality Control statistic tracking object
-	 * 
+	 *
 	 * @param levelName
 	 *            the statistic level to which this QC entry belongs
 	 * @param qcParameter
 	 *            a string describing the statistic being tracked
-	 * @return a map of maps containing the QC statistics
+	 */
+	protected void record(String levelName, String qcParameter) {
+		counter(levelName, qcParameter).increment();
+	}
+
+	/**
+	 * Get a sorted snapshot of the recorded statistics
+	 *
+	 * @return a map by level of maps of the counts (Integers) by
+	 *         statistic, both sorted
 	 */
 	public Map getStatistics() {
+		Map stats = new TreeMap();
+		for (Iterator it = levels.entrySet().iterator(); it.hasNext();) {
+			Map.Entry level = (Map.Entry) it.next();
+			Map statLevel = new TreeMap();
+			Iterator counters = ((Map) level.getValue()).entrySet()
+					.iterator();
+			while (counters.hasNext()) {
+				Map.Entry entry = (Map.Entry) counters.next();
+				Counter counter = (Counter) entry.getValue();
+				if (counter.isRecorded()) {
+					statLevel.put(entry.getKey(), new Integer((int) counter
+							.get()));
+				}
+			}
+			if (!statLevel.isEmpty()) {
+				stats.put(level.getKey(), statLevel);
+			}
+		}
 		return stats;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,245 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jax.mgi.app.targetedalleleload.lookups.LookupDerivationByVectorCreatorParentType;
+import org.jax.mgi.app.targetedalleleload.lookups.LookupMarkerByMGIID;
+import org.jax.mgi.app.targetedalleleload.lookups.LookupVectorKeyByTerm;
+import org.jax.mgi.dbs.mgd.lookup.ParentStrainLookupByParentKey;
+import org.jax.mgi.dbs.mgd.lookup.StrainKeyLookup;
+import org.jax.mgi.dbs.mgd.lookup.VocabKeyLookup;
+import org.jax.mgi.shr.config.TargetedAlleleLoadCfg;
+import org.jax.mgi.shr.exception.MGIException;
+
+/**
+ * @is An object that resolves every foreign key an input record refers to
+ * @has <UL>
+ *      <LI>the lookups needed to find the marker, parental cell line,
+ *      strain, vector, derivation and mutation types of a record
+ *      <LI>per-value caches of everything resolved so far
+ *      </UL>
+ * @does <UL>
+ *       <LI>Builds a ResolvedRecord for an input record. The input file
+ *       only has a handful of distinct parental cell lines, cassettes and
+ *       mutation types, so each of those is resolved once for the whole
+ *       file and every later record reuses the result (including a
+ *       failed lookup, which is rethrown by the ResolvedRecord)
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class RecordResolver {
+
+	private TargetedAlleleLoadCfg cfg;
+	private LookupMarkerByMGIID lookupMarkerByMGIID;
+	private LookupVectorKeyByTerm lookupVectorKeyByTerm;
+	private LookupDerivationByVectorCreatorParentType derivationLookup;
+	private ParentStrainLookupByParentKey parentStrainLookupByParentKey;
+	private StrainKeyLookup strainKeyLookup;
+	private VocabKeyLookup vocabLookup;
+
+	private Integer creatorKey;
+
+	// Resolved values (and failures) by parental cell line name,
+	// cassette and mutation type
+	private Map parentalKeys = new HashMap();
+	private Map parentalErrors = new HashMap();
+	private Map strainKeys = new HashMap();
+	private Map strainErrors = new HashMap();
+	private Map vectorKeys = new HashMap();
+	private Map vectorErrors = new HashMap();
+	private Map mutationTypeKeys = new HashMap();
+	private Map mutationTypeErrors = new HashMap();
+
+	/**
+	 * constructor
+	 *
+	 * @throws MGIException
+	 *             thrown if the configuration or any of the lookups cannot
+	 *             be initialized
+	 */
+	public RecordResolver() throws MGIException {
+		cfg = new TargetedAlleleLoadCfg();
+		creatorKey = new Integer(cfg.getCreatorKey());
+
+		lookupMarkerByMGIID = LookupMarkerByMGIID.getInstance();
+		lookupVectorKeyByTerm = new LookupVectorKeyByTerm();
+		derivationLookup = LookupDerivationByVectorCreatorParentType
+				.getInstance();
+		parentStrainLookupByParentKey = new ParentStrainLookupByParentKey();
+		strainKeyLookup = new StrainKeyLookup();
+		vocabLookup = new VocabKeyLookup(Constants.ALLELE_VOCABULARY);
+	}
+
+	/**
+	 * Look up the markers of the next records at once, so resolving them
+	 * does not wait on a query per marker
+	 *
+	 * @param geneIds
+	 *            the marker MGI IDs of the records
+	 * @throws MGIException
+	 *             thrown if the markers cannot be looked up
+	 */
+	public void prefetchMarkers(Collection geneIds) throws MGIException {
+		lookupMarkerByMGIID.prefetch(geneIds);
+	}
+
+	/**
+	 * Resolve all the keys the input record refers to
+	 *
+	 * @param in
+	 *            the input record
+	 * @return the resolved keys for the record
+	 */
+	public ResolvedRecord resolve(KnockoutAlleleInput in) {
+		ResolvedRecord resolved = new ResolvedRecord(in);
+
+		// The marker lookup only includes preferred IDs. A secondary or
+		// unknown ID resolves to null and the caller reports it
+		Marker marker = null;
+		MGIException markerError = null;
+		try {
+			marker = lookupMarkerByMGIID.lookup(in.getGeneId());
+		} catch (MGIException e) {
+			markerError = e;
+		}
+		resolved.setMarker(marker, markerError);
+
+		String parent = in.getParentCellLine();
+		if (!parentalKeys.containsKey(parent)) {
+			resolveParent(parent);
+		}
+		Integer parentalKey = (Integer) parentalKeys.get(parent);
+		resolved.setParentalKey(parentalKey,
+				(MGIException) parentalErrors.get(parent));
+		if (parentalKey != null) {
+			resolved.setStrainKey((Integer) strainKeys.get(parentalKey),
+					(MGIException) strainErrors.get(parentalKey));
+		}
+
+		// An unknown cassette is reported when the derivation is needed
+		String cassette = in.getCassette();
+		if (!vectorKeys.containsKey(cassette)) {
+			resolveVector(cassette);
+		}
+		Integer vectorKey = (Integer) vectorKeys.get(cassette);
+		resolved.setVectorKey(vectorKey,
+				(MGIException) vectorErrors.get(cassette));
+
+		if (vectorKey != null && parentalKey != null) {
+			try {
+				resolved.setDerivationKey(lookupDerivationKey(vectorKey,
+						parentalKey));
+			} catch (MGIException e) {
+				// Leave the derivation unresolved, it is looked up
+				// again when it is needed
+			}
+		}
+
+		String type = in.getMutationType();
+		if (!mutationTypeKeys.containsKey(type)) {
+			resolveMutationType(type);
+		}
+		resolved.setMutationTypeKeys((List) mutationTypeKeys.get(type),
+				(MGIException) mutationTypeErrors.get(type));
+
+		return resolved;
+	}
+
+	/**
+	 * get the creator key all derivations created by this load use
+	 *
+	 * @return the configured derivation creator key
+	 */
+	public Integer getCreatorKey() {
+		return this.creatorKey;
+	}
+
+	/**
+	 * find the existing derivation for a vector and parental cell line
+	 * created by the configured creator for the targeted allele type
+	 *
+	 * @param vectorKey
+	 *            the vector key
+	 * @param parentalKey
+	 *            the parental cell line key
+	 * @return the derivation key, or null if there is no such derivation
+	 * @throws MGIException
+	 *             thrown if there is an error accessing the lookup
+	 */
+	public Integer lookupDerivationKey(Integer vectorKey, Integer parentalKey)
+			throws MGIException {
+		return derivationLookup.lookup(getDerivationCompoundKey(vectorKey,
+				parentalKey));
+	}
+
+	/**
+	 * get the key the derivation lookup uses to identify a derivation
+	 *
+	 * @param vectorKey
+	 *            the vector key
+	 * @param parentalKey
+	 *            the parental cell line key
+	 * @return the compound vector|creator|parent|type key
+	 */
+	public String getDerivationCompoundKey(Integer vectorKey,
+			Integer parentalKey) {
+		String dCompoundKey = vectorKey.toString();
+		dCompoundKey += "|" + creatorKey.toString();
+		dCompoundKey += "|" + parentalKey.toString();
+		dCompoundKey += "|" + Constants.ALLELE_TYPE_KEY.toString();
+		return dCompoundKey;
+	}
+
+	private void resolveParent(String parent) {
+		Integer parentalKey = null;
+		try {
+			parentalKey = cfg.getParentalKey(parent);
+		} catch (MGIException e) {
+			parentalErrors.put(parent, e);
+		}
+		parentalKeys.put(parent, parentalKey);
+
+		if (parentalKey != null && !strainKeys.containsKey(parentalKey)) {
+			Integer strainKey = null;
+			try {
+				strainKey = strainKeyLookup
+						.lookup(parentStrainLookupByParentKey
+								.lookup(parentalKey));
+			} catch (MGIException e) {
+				strainErrors.put(parentalKey, e);
+			}
+			strainKeys.put(parentalKey, strainKey);
+		}
+	}
+
+	private void resolveVector(String cassette) {
+		Integer vectorKey = null;
+		try {
+			vectorKey = lookupVectorKeyByTerm.lookup(cassette);
+		} catch (MGIException e) {
+			vectorErrors.put(cassette, e);
+		}
+		vectorKeys.put(cassette, vectorKey);
+	}
+
+	private void resolveMutationType(String type) {
+		List keys = null;
+		try {
+			keys = new ArrayList();
+			String[] types = cfg.getMutationTypes(type).split(",");
+			for (int i = 0; i < types.length; i++) {
+				keys.add(vocabLookup.lookup(types[i].trim()));
+			}
+		} catch (MGIException e) {
+			keys = null;
+			mutationTypeErrors.put(type, e);
+		}
+		mutationTypeKeys.put(type, keys);
+	}
+
+}
@@ -0,0 +1,193 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jax.mgi.app.targetedalleleload.lookups.AlleleGraph;
+import org.jax.mgi.app.targetedalleleload.lookups.LookupAlleleByKey;
+import org.jax.mgi.dbs.mgd.dao.MGI_Reference_AssocDAO;
+import org.jax.mgi.dbs.mgd.dao.MGI_Reference_AssocState;
+import org.jax.mgi.dbs.mgd.lookup.JNumberLookup;
+import org.jax.mgi.shr.config.ConfigException;
+import org.jax.mgi.shr.config.TargetedAlleleLoadCfg;
+import org.jax.mgi.shr.dbutils.dao.SQLStream;
+import org.jax.mgi.shr.exception.MGIException;
+
+/**
+ * @is An object that makes sure every allele the load touches is associated
+ *     to all the configured J-numbers
+ * @has <UL>
+ *      <LI>the configured J-numbers and their reference keys
+ *      <LI>for each allele that is missing references, a bitset over the
+ *      configured J-numbers of the ones it is missing
+ *      </UL>
+ * @does <UL>
+ *       <LI>Collects the missing references of each allele as the alleles
+ *       are checked, then writes all the missing MGI_Reference_Assoc rows
+ *       in one batch and updates the allele caches
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class ReferenceNormalizer {
+
+	// A bitset over the configured J-numbers is held in a long
+	private static final int MAX_JNUMBERS = 64;
+
+	private String[] jNumbers;
+	private Integer[] refsKeys;
+	private long allJNumbers;
+
+	// Missing reference bitsets by allele key, in the order the alleles
+	// were checked
+	private Map missing = new LinkedHashMap();
+
+	private AlleleGraph alleleGraph;
+	private LookupAlleleByKey lookupAlleleByKey;
+
+	/**
+	 * constructor
+	 *
+	 * @throws MGIException
+	 *             thrown if the configuration or the lookups cannot be
+	 *             initialized, or if there are too many configured
+	 *             J-numbers
+	 */
+	public ReferenceNormalizer() throws MGIException {
+		TargetedAlleleLoadCfg cfg = new TargetedAlleleLoadCfg();
+		jNumbers = cfg.getJNumbers();
+		if (jNumbers.length > MAX_JNUMBERS) {
+			throw new ConfigException("More than " + MAX_JNUMBERS
+					+ " J-numbers configured", true);
+		}
+
+		JNumberLookup jnumLookup = new JNumberLookup();
+		refsKeys = new Integer[jNumbers.length];
+		for (int i = 0; i < jNumbers.length; i++) {
+			refsKeys[i] = jnumLookup.lookup(jNumbers[i]);
+		}
+		allJNumbers = jNumbers.length == MAX_JNUMBERS ? -1L
+				: (1L << jNumbers.length) - 1;
+
+		alleleGraph = AlleleGraph.getInstance();
+		lookupAlleleByKey = LookupAlleleByKey.getInstance();
+	}
+
+	/**
+	 * Check an allele and remember which configured J-numbers it is
+	 * missing. An allele is only checked once.
+	 *
+	 * @param allele
+	 *            the allele to check
+	 */
+	public void check(AlleleView allele) {
+		Integer key = allele.getKey();
+		if (missing.containsKey(key)) {
+			return;
+		}
+		long absent = allJNumbers & ~getBits(allele.getJNumbers());
+
+		// Alleles that are complete are remembered too, so they are
+		// not checked again
+		missing.put(key, new Long(absent));
+	}
+
+	/**
+	 * get the alleles checked so far
+	 *
+	 * @return the missing reference bitsets (Longs) by allele key
+	 */
+	public Map getChecked() {
+		return missing;
+	}
+
+	/**
+	 * Restore alleles checked by an earlier run of the load
+	 *
+	 * @param checked
+	 *            the missing reference bitsets (Longs) by allele key
+	 */
+	public void restore(Map checked) {
+		missing.putAll(checked);
+	}
+
+	/**
+	 * Write the missing references of all the checked alleles and add
+	 * them to the allele caches.
+	 *
+	 * @param stream
+	 *            the stream to write the MGI_Reference_Assoc rows to
+	 * @return the number of references created
+	 * @throws MGIException
+	 *             thrown if a reference cannot be written or a cache
+	 *             cannot be updated
+	 */
+	public int flush(SQLStream stream) throws MGIException {
+		int created = 0;
+
+		for (Iterator it = missing.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			Integer key = (Integer) entry.getKey();
+			long absent = ((Long) entry.getValue()).longValue();
+			if (absent == 0) {
+				continue;
+			}
+
+			AlleleView allele = lookupAlleleByKey.lookup(key);
+			List update = new ArrayList();
+			String[] existing = allele.getJNumbers();
+			for (int i = 0; existing != null && i < existing.length; i++) {
+				update.add(existing[i]);
+			}
+
+			for (int i = 0; i < jNumbers.length; i++) {
+				if ((absent & (1L << i)) == 0) {
+					continue;
+				}
+				MGI_Reference_AssocState raState = new MGI_Reference_AssocState();
+				raState.setRefsKey(refsKeys[i]);
+				raState.setObjectKey(key);
+				raState.setMGITypeKey(new Integer(Constants.ALLELE_MGI_TYPE));
+				raState.setRefAssocTypeKey(new Integer(
+						Constants.MOLECULAR_REFERENCE));
+				stream.insert(new MGI_Reference_AssocDAO(raState));
+
+				update.add(jNumbers[i]);
+				created++;
+			}
+
+			// Add the new reference associations to the lookups
+			String[] all = (String[]) update.toArray(new String[0]);
+			alleleGraph.setReferences(all, new AlleleView(allele, all));
+		}
+		missing.clear();
+
+		return created;
+	}
+
+	/**
+	 * get the bitset of the configured J-numbers in a list of J-numbers
+	 *
+	 * @param these
+	 *            the J-numbers associated to an allele
+	 * @return bit i is set if the i'th configured J-number is in the list
+	 */
+	private long getBits(String[] these) {
+		long bits = 0;
+		if (these == null) {
+			return bits;
+		}
+		for (int i = 0; i < these.length; i++) {
+			for (int j = 0; j < jNumbers.length; j++) {
+				if (jNumbers[j].equals(these[i])) {
+					bits |= 1L << j;
+				}
+			}
+		}
+		return bits;
+	}
+
+}
@@ -0,0 +1,188 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.util.List;
+
+import org.jax.mgi.shr.exception.MGIException;
+
+/**
+ * @is An object that holds the database keys that one input record refers
+ *     to, resolved once by the RecordResolver
+ * @has <UL>
+ *      <LI>the marker, parental cell line key, strain key, vector key,
+ *      derivation key and mutation type keys for the record
+ *      <LI>the exception raised for any of those that could not be resolved
+ *      </UL>
+ * @does <UL>
+ *       <LI>Provides the resolved keys to processing, QC and creation.
+ *       Asking for a key that failed to resolve rethrows the original
+ *       exception so callers report the failure exactly as they would have
+ *       if they had done the lookup themselves
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class ResolvedRecord {
+
+	private KnockoutAlleleInput input = null;
+	private Marker marker = null;
+	private Integer parentalKey = null;
+	private Integer strainKey = null;
+	private Integer vectorKey = null;
+	private Integer derivationKey = null;
+	private List mutationTypeKeys = null;
+
+	private MGIException markerError = null;
+	private MGIException parentalKeyError = null;
+	private MGIException strainKeyError = null;
+	private MGIException vectorKeyError = null;
+	private MGIException mutationTypeError = null;
+
+	/**
+	 * constructor
+	 *
+	 * @param input
+	 *            the input record these keys were resolved for
+	 */
+	public ResolvedRecord(KnockoutAlleleInput input) {
+		this.input = input;
+	}
+
+	/**
+	 * get the input record these keys were resolved for
+	 *
+	 * @return the input record
+	 */
+	public KnockoutAlleleInput getInput() {
+		return this.input;
+	}
+
+	/**
+	 * get the marker identified by the gene ID of the record
+	 *
+	 * @return the marker, or null if the MGI ID is secondary or unknown
+	 * @throws MGIException
+	 *             the marker lookup failure, if there was one
+	 */
+	public Marker getMarker() throws MGIException {
+		if (markerError != null) {
+			throw markerError;
+		}
+		return this.marker;
+	}
+
+	/**
+	 * get the parental cell line key configured for the record's parental
+	 * cell line
+	 *
+	 * @return the parental cell line key
+	 * @throws MGIException
+	 *             the configuration lookup failure, if there was one
+	 */
+	public Integer getParentalKey() throws MGIException {
+		if (parentalKeyError != null) {
+			throw parentalKeyError;
+		}
+		return this.parentalKey;
+	}
+
+	/**
+	 * get the strain key of the record's parental cell line
+	 *
+	 * @return the strain key
+	 * @throws MGIException
+	 *             the parental or strain lookup failure, if there was one
+	 */
+	public Integer getStrainKey() throws MGIException {
+		if (parentalKeyError != null) {
+			throw parentalKeyError;
+		}
+		if (strainKeyError != null) {
+			throw strainKeyError;
+		}
+		return this.strainKey;
+	}
+
+	/**
+	 * get the vector key for the record's cassette
+	 *
+	 * @return the vector key, or null if the cassette is not a known vector
+	 * @throws MGIException
+	 *             the vector lookup failure, if there was one
+	 */
+	public Integer getVectorKey() throws MGIException {
+		if (vectorKeyError != null) {
+			throw vectorKeyError;
+		}
+		return this.vectorKey;
+	}
+
+	/**
+	 * get the derivation key for the record's vector, creator, parental
+	 * cell line and allele type
+	 *
+	 * @return the derivation key, or null if the derivation does not exist
+	 *         (yet)
+	 */
+	public Integer getDerivationKey() {
+		return this.derivationKey;
+	}
+
+	/**
+	 * get the allele mutation type keys for the record's mutation type
+	 *
+	 * @return list of Integer VOC_Term keys
+	 * @throws MGIException
+	 *             the vocabulary lookup failure, if there was one
+	 */
+	public List getMutationTypeKeys() throws MGIException {
+		if (mutationTypeError != null) {
+			throw mutationTypeError;
+		}
+		return this.mutationTypeKeys;
+	}
+
+	public void setMarker(Marker marker, MGIException error) {
+		this.marker = marker;
+		this.markerError = error;
+	}
+
+	public void setParentalKey(Integer key, MGIException error) {
+		this.parentalKey = key;
+		this.parentalKeyError = error;
+	}
+
+	public void setStrainKey(Integer key, MGIException error) {
+		this.strainKey = key;
+		this.strainKeyError = error;
+	}
+
+	public void setVectorKey(Integer key, MGIException error) {
+		this.vectorKey = key;
+		this.vectorKeyError = error;
+	}
+
+	public void setDerivationKey(Integer key) {
+		this.derivationKey = key;
+	}
+
+	public void setMutationTypeKeys(List keys, MGIException error) {
+		this.mutationTypeKeys = keys;
+		this.mutationTypeError = error;
+	}
+
+	/**
+	 * override of toString method from Object class
+	 *
+	 * @return the string representation of this instance
+	 */
+	public String toString() {
+		return "<ResolvedRecord: " + input.getMutantCellLine() +
+				" (marker: " + marker +
+				", parental: " + parentalKey +
+				", strain: " + strainKey +
+				", vector: " + vectorKey +
+				", derivation: " + derivationKey +
+				", mutation types: " + mutationTypeKeys + ")>";
+	}
+
+}
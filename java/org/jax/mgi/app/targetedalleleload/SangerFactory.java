@@ -4,12 +4,18 @@ import org.jax.mgi.shr.exception.MGIException;
 
 public class SangerFactory extends KnockoutAlleleFactory {
 
-	public KnockoutAlleleInterpreter getInterpreter() throws MGIException {
-		return new SangerInterpreter();
+	public KnockoutAlleleInterpreter getInterpreter(
+			QualityControlStatistics qcStatistics) throws MGIException {
+		KnockoutAlleleInterpreter interpreter = new SangerInterpreter();
+		interpreter.setStatistics(qcStatistics);
+		return interpreter;
 	}
 
-	public KnockoutAlleleProcessor getProcessor() throws MGIException {
-		return new SangerProcessor();
+	public KnockoutAlleleProcessor getProcessor(
+			QualityControlStatistics qcStatistics) throws MGIException {
+		KnockoutAlleleProcessor processor = new SangerProcessor();
+		processor.setStatistics(qcStatistics);
+		return processor;
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * @is A temporary table that stages rows so that a change to many records
+ *     can be applied with a single joined statement
+ * @has <UL>
+ *      <LI>the table name and column definitions
+ *      <LI>the staged rows
+ *      </UL>
+ * @does <UL>
+ *       <LI>Collects rows, then creates the temporary table and fills it
+ *       with one COPY (or batched INSERTs where COPY is not available).
+ *       The table lives in the session of the connection it is loaded
+ *       on, so the statement that joins it must run on the same
+ *       connection
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class StagingTable {
+
+	private String name;
+	private String[] columns;
+	private String[] types;
+	private List rows = new ArrayList();
+
+	/**
+	 * constructor
+	 *
+	 * @param name
+	 *            the name of the temporary table
+	 * @param columns
+	 *            the column names
+	 * @param types
+	 *            the SQL type of each column
+	 */
+	public StagingTable(String name, String[] columns, String[] types) {
+		this.name = name;
+		this.columns = columns;
+		this.types = types;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * stage a row
+	 *
+	 * @param row
+	 *            the value of each column, in order
+	 */
+	public void add(Object[] row) {
+		rows.add(row);
+	}
+
+	public int size() {
+		return rows.size();
+	}
+
+	/**
+	 * get a staged row as the INSERT that stages it, for logging
+	 *
+	 * @param i
+	 *            the position of the row
+	 * @return the INSERT with the values of the row filled in
+	 */
+	public String render(int i) {
+		return StatementBatcher.render(getInsert(), (Object[]) rows.get(i));
+	}
+
+	/**
+	 * Create the temporary table and load the staged rows into it
+	 *
+	 * @param conn
+	 *            the connection of the session that will use the table
+	 * @throws SQLException
+	 *             thrown if the table cannot be created or loaded
+	 */
+	public void load(Connection conn) throws SQLException {
+		StringBuffer create = new StringBuffer("CREATE TEMP TABLE ");
+		create.append(name).append(" (");
+		for (int i = 0; i < columns.length; i++) {
+			create.append(i == 0 ? "" : ", ").append(columns[i]).append(' ')
+					.append(types[i]);
+		}
+		create.append(")");
+		execute(conn, create.toString());
+
+		if (CopyIn.isSupported(conn)) {
+			StringBuffer data = new StringBuffer();
+			for (Iterator it = rows.iterator(); it.hasNext();) {
+				Object[] row = (Object[]) it.next();
+				for (int i = 0; i < row.length; i++) {
+					CopyIn.append(data, row[i], i == 0);
+				}
+				data.append('\n');
+			}
+			CopyIn.copy(conn, "COPY " + name + " FROM STDIN",
+					new StringReader(data.toString()));
+			return;
+		}
+
+		PreparedStatement stmt = conn.prepareStatement(getInsert());
+		try {
+			for (Iterator it = rows.iterator(); it.hasNext();) {
+				Object[] row = (Object[]) it.next();
+				for (int i = 0; i < row.length; i++) {
+					stmt.setObject(i + 1, row[i]);
+				}
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Drop the temporary table
+	 *
+	 * @param conn
+	 *            the connection the table was loaded on
+	 * @throws SQLException
+	 *             thrown if the table cannot be dropped
+	 */
+	public void drop(Connection conn) throws SQLException {
+		execute(conn, "DROP TABLE IF EXISTS " + name);
+	}
+
+	/**
+	 * the INSERT of a row, with a ? placeholder for each column
+	 */
+	private String getInsert() {
+		StringBuffer insert = new StringBuffer("INSERT INTO ");
+		insert.append(name).append(" (");
+		for (int i = 0; i < columns.length; i++) {
+			insert.append(i == 0 ? "" : ", ").append(columns[i]);
+		}
+		insert.append(") VALUES (");
+		for (int i = 0; i < columns.length; i++) {
+			insert.append(i == 0 ? "?" : ", ?");
+		}
+		insert.append(")");
+		return insert.toString();
+	}
+
+	private static void execute(Connection conn, String sql)
+			throws SQLException {
+		Statement stmt = conn.createStatement();
+		try {
+			stmt.execute(sql);
+		} finally {
+			stmt.close();
+		}
+	}
+
+}
@@ -0,0 +1,423 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jax.mgi.shr.config.ConfigException;
+import org.jax.mgi.shr.config.DatabaseCfg;
+import org.jax.mgi.shr.dbutils.DBException;
+import org.jax.mgi.shr.dbutils.SQLDataManager;
+import org.jax.mgi.shr.dla.log.DLALogger;
+
+/**
+ * @is An object that collects the UPDATE and DELETE statements the load
+ *     issues against existing records and runs them as JDBC batches
+ * @has <UL>
+ *      <LI>the pending parameter lists of the statement shape added last
+ *      <LI>a connection of its own, opened on first use
+ *      <LI>the statements held for the COPY stream, in pipelined mode
+ *      <LI>the batch size and whether execution is prevented by the
+ *      configuration
+ *      </UL>
+ * @does <UL>
+ *       <LI>Batches consecutive statements of one shape (the SQL with ?
+ *       placeholders) and executes them as a prepared statement batch once
+ *       the batch is full or a statement of another shape is added, so
+ *       the statements run in the order they were added
+ *       <LI>Runs the batches in a transaction on its own connection that
+ *       is committed by commit(). The lookups keep reading on the shared
+ *       connection in autocommit, so a failed statement does not abort
+ *       their queries.
+ *       <LI>Applies set-based changes that join a StagingTable in the
+ *       same transaction, after the statements added before them
+ *       <LI>In pipelined mode, holds the statements instead. The COPY stream
+ *       takes the statements held for a batch of records and runs them on
+ *       its own connection after the batch's copies, so the rows and the
+ *       statements of a batch are committed or rolled back together
+ *       <LI>Logs every statement with its values filled in, either as run
+ *       or, if MGD_BCP_PREVENT_EXECUTE is set, as prevented. A prevented
+ *       set-based change logs the INSERT of each staged row before the
+ *       statement that joins them.
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class StatementBatcher {
+
+	private DLALogger logger;
+	private boolean preventExecute;
+	private int batchSize;
+
+	// The shape of the pending statements and their parameter lists
+	private String pendingSql = null;
+	private List pending = new ArrayList();
+
+	private SQLDataManager dbMgr = null;
+	private Connection conn = null;
+	private int executed = 0;
+
+	// The statements held for the COPY stream, null if they are run here
+	private List held = null;
+	private AtomicInteger heldExecuted = new AtomicInteger();
+
+	/**
+	 * a statement held for the COPY stream, with the staging table it
+	 * joins if it is a set-based change
+	 */
+	private static class Held {
+		StagingTable staged;
+		String sql;
+		Object[] params;
+
+		Held(StagingTable staged, String sql, Object[] params) {
+			this.staged = staged;
+			this.sql = sql;
+			this.params = params;
+		}
+	}
+
+	/**
+	 * constructor
+	 *
+	 * @param logger
+	 *            the logger the statements are logged to
+	 * @param preventExecute
+	 *            true if the statements should only be logged
+	 * @param batchSize
+	 *            the number of statements of one shape to send at a time
+	 */
+	public StatementBatcher(DLALogger logger, boolean preventExecute,
+			int batchSize) {
+		this.logger = logger;
+		this.preventExecute = preventExecute;
+		this.batchSize = batchSize < 1 ? 1 : batchSize;
+	}
+
+	/**
+	 * Hold the statements from now on, for the COPY stream to take with
+	 * takeHeld() and run in its transactions with runHeld()
+	 */
+	public void hold() {
+		if (held == null) {
+			held = new ArrayList();
+		}
+	}
+
+	/**
+	 * Take the statements held since the last call
+	 *
+	 * @return the held statements, in the order they were added
+	 */
+	public List takeHeld() {
+		if (held == null || held.isEmpty()) {
+			return new ArrayList();
+		}
+		List taken = held;
+		held = new ArrayList();
+		return taken;
+	}
+
+	/**
+	 * Add a statement to the batch, sending the batch first if it has
+	 * statements of another shape, and after if it is full
+	 *
+	 * @param sql
+	 *            the statement with a ? placeholder for each value
+	 * @param params
+	 *            the values of the placeholders, in order
+	 * @throws DBException
+	 *             thrown if the batch cannot be executed
+	 */
+	public void add(String sql, Object[] params) throws DBException {
+		if (preventExecute) {
+			logger.logdInfo("SQL prevented by CFG. Would have run: "
+					+ render(sql, params), false);
+			return;
+		}
+		if (held != null) {
+			held.add(new Held(null, sql, params));
+			return;
+		}
+
+		if (!sql.equals(pendingSql)) {
+			flush();
+			pendingSql = sql;
+		}
+		pending.add(params);
+
+		if (pending.size() >= batchSize) {
+			flush();
+		}
+	}
+
+	/**
+	 * Load a staging table and run one statement that joins it, in the
+	 * open transaction. The staging table is dropped afterwards. A held
+	 * statement is run when the COPY stream runs its batch.
+	 *
+	 * @param staged
+	 *            the rows the statement applies to
+	 * @param sql
+	 *            the statement, with a ? placeholder for each value
+	 * @param params
+	 *            the values of the placeholders, in order
+	 * @return the number of rows changed, 0 if execution is prevented or
+	 *         the statement is held
+	 * @throws DBException
+	 *             thrown if the table cannot be loaded or the statement
+	 *             fails, in which case the transaction is rolled back
+	 */
+	public int applyStaged(StagingTable staged, String sql, Object[] params)
+			throws DBException {
+		if (staged.size() == 0) {
+			return 0;
+		}
+		if (preventExecute) {
+			for (int i = 0; i < staged.size(); i++) {
+				logger.logdInfo("SQL prevented by CFG. Would have run: "
+						+ staged.render(i), false);
+			}
+			logger.logdInfo("SQL prevented by CFG. Would have run: "
+					+ render(sql, params) + " (" + staged.size() + " rows in "
+					+ staged.getName() + ")", false);
+			return 0;
+		}
+		if (held != null) {
+			held.add(new Held(staged, sql, params));
+			return 0;
+		}
+
+		flush();
+
+		try {
+			int changed = applyStaged(getConnection(), staged, sql, params);
+			executed++;
+			return changed;
+		} catch (SQLException e) {
+			rollback();
+			throw new DBException("Cannot apply " + staged.getName() + ": "
+					+ e.getMessage(), true);
+		}
+	}
+
+	/**
+	 * Run held statements on another connection, in its open transaction,
+	 * batching them the same way. Nothing is committed or rolled back.
+	 *
+	 * @param c
+	 *            the connection
+	 * @param statements
+	 *            the statements taken with takeHeld()
+	 * @return the number of statements run
+	 * @throws SQLException
+	 *             thrown if a statement fails
+	 */
+	public int runHeld(Connection c, List statements) throws SQLException {
+		String sql = null;
+		List batch = new ArrayList();
+		for (Iterator it = statements.iterator(); it.hasNext();) {
+			Held h = (Held) it.next();
+			if (h.staged != null || !h.sql.equals(sql)
+					|| batch.size() >= batchSize) {
+				executeBatch(c, sql, batch);
+				batch.clear();
+			}
+			if (h.staged != null) {
+				applyStaged(c, h.staged, h.sql, h.params);
+				sql = null;
+			} else {
+				sql = h.sql;
+				batch.add(h.params);
+			}
+		}
+		executeBatch(c, sql, batch);
+		heldExecuted.addAndGet(statements.size());
+		return statements.size();
+	}
+
+	/**
+	 * get the number of held statements the COPY stream has run
+	 *
+	 * @return the number of statements
+	 */
+	public int getHeldExecuted() {
+		return heldExecuted.get();
+	}
+
+	/**
+	 * Send all the pending statements and commit the transaction
+	 *
+	 * @return the number of statements run since the last commit
+	 * @throws DBException
+	 *             thrown if a batch or the commit fails, in which case the
+	 *             transaction is rolled back
+	 */
+	public int commit() throws DBException {
+		flush();
+
+		int count = executed;
+		executed = 0;
+		if (conn == null) {
+			return count;
+		}
+
+		try {
+			conn.commit();
+		} catch (SQLException e) {
+			rollback();
+			throw new DBException("Cannot commit batched statements: "
+					+ e.getMessage(), true);
+		}
+		return count;
+	}
+
+	/**
+	 * Close the connection. Statements that have not been committed are
+	 * discarded.
+	 *
+	 * @throws DBException
+	 *             thrown if the connection cannot be closed
+	 */
+	public void close() throws DBException {
+		pending.clear();
+		pendingSql = null;
+		conn = null;
+		if (dbMgr != null) {
+			dbMgr.closeResources();
+			dbMgr = null;
+		}
+	}
+
+	/**
+	 * run the pending statements in the open transaction
+	 */
+	private void flush() throws DBException {
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		String sql = pendingSql;
+		try {
+			executeBatch(getConnection(), sql, pending);
+			executed += pending.size();
+			pending.clear();
+		} catch (SQLException e) {
+			rollback();
+			throw new DBException("Cannot execute batch of " + sql + ": "
+					+ e.getMessage(), true);
+		}
+	}
+
+	/**
+	 * run the parameter lists of one statement as a batch on a connection
+	 */
+	private void executeBatch(Connection c, String sql, List batch)
+			throws SQLException {
+		if (batch.isEmpty()) {
+			return;
+		}
+		PreparedStatement stmt = c.prepareStatement(sql);
+		try {
+			for (Iterator it = batch.iterator(); it.hasNext();) {
+				Object[] params = (Object[]) it.next();
+				for (int i = 0; i < params.length; i++) {
+					stmt.setObject(i + 1, params[i]);
+				}
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		} finally {
+			stmt.close();
+		}
+
+		// Only log the statements once the batch has run
+		for (Iterator it = batch.iterator(); it.hasNext();) {
+			logger.logdInfo("Ran: " + render(sql, (Object[]) it.next()),
+					false);
+		}
+	}
+
+	/**
+	 * load a staging table on a connection and run the statement that
+	 * joins it, then drop the table
+	 */
+	private int applyStaged(Connection c, StagingTable staged, String sql,
+			Object[] params) throws SQLException {
+		staged.load(c);
+		int changed;
+		PreparedStatement stmt = c.prepareStatement(sql);
+		try {
+			for (int i = 0; i < params.length; i++) {
+				stmt.setObject(i + 1, params[i]);
+			}
+			changed = stmt.executeUpdate();
+		} finally {
+			stmt.close();
+		}
+		staged.drop(c);
+		logger.logdInfo("Ran: " + render(sql, params) + " ("
+				+ staged.size() + " rows in " + staged.getName() + ", "
+				+ changed + " changed)", false);
+		return changed;
+	}
+
+	/**
+	 * get the connection, opening it on first use. It never autocommits.
+	 */
+	private Connection getConnection() throws DBException, SQLException {
+		if (conn == null) {
+			if (dbMgr == null) {
+				try {
+					dbMgr = new SQLDataManager(new DatabaseCfg("MGD"));
+				} catch (ConfigException e) {
+					throw new DBException("Cannot configure the batched "
+							+ "statement connection: " + e.getMessage(),
+							true);
+				}
+			}
+			conn = dbMgr.getConnection();
+			conn.setAutoCommit(false);
+		}
+		return conn;
+	}
+
+	private void rollback() {
+		pending.clear();
+		pendingSql = null;
+		if (conn == null) {
+			return;
+		}
+		try {
+			conn.rollback();
+		} catch (SQLException e) {
+			// The original failure is reported
+		}
+	}
+
+	/**
+	 * fill in the placeholders of a statement for logging
+	 */
+	static String render(String sql, Object[] params) {
+		StringBuffer sb = new StringBuffer();
+		int p = 0;
+		for (int i = 0; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (c != '?' || p >= params.length) {
+				sb.append(c);
+			} else if (params[p] instanceof String) {
+				sb.append('\'')
+						.append(((String) params[p++]).replaceAll("'", "''"))
+						.append('\'');
+			} else {
+				sb.append(params[p++]);
+			}
+		}
+		return sb.toString();
+	}
+
+}
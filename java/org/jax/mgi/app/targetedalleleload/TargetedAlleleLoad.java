@@ -1,10 +1,12 @@
 package org.jax.mgi.app.targetedalleleload;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -14,29 +16,27 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.Lock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.Collection;
+import java.util.Collections;
 
+import org.jax.mgi.app.targetedalleleload.lookups.AlleleGraph;
 import org.jax.mgi.app.targetedalleleload.lookups.LookupAlleleByCellLine;
 import org.jax.mgi.app.targetedalleleload.lookups.LookupAlleleByKey;
 import org.jax.mgi.app.targetedalleleload.lookups.LookupAllelesByMarker;
 import org.jax.mgi.app.targetedalleleload.lookups.LookupAllelesByProjectId;
 import org.jax.mgi.app.targetedalleleload.lookups.LookupCellLineCountByAlleleSymbol;
 import org.jax.mgi.app.targetedalleleload.lookups.LookupCelllinesByJnumber;
-import org.jax.mgi.app.targetedalleleload.lookups.LookupDerivationByVectorCreatorParentType;
-import org.jax.mgi.app.targetedalleleload.lookups.LookupMarkerByMGIID;
 import org.jax.mgi.app.targetedalleleload.lookups.LookupMutantCelllineByName;
 import org.jax.mgi.app.targetedalleleload.lookups.LookupStrainKeyByCellLineKey;
-import org.jax.mgi.app.targetedalleleload.lookups.LookupVectorKeyByTerm;
 import org.jax.mgi.dbs.SchemaConstants;
-import org.jax.mgi.dbs.mgd.AccessionLib;
 import org.jax.mgi.dbs.mgd.dao.ALL_Allele_CellLineDAO;
 import org.jax.mgi.dbs.mgd.dao.ALL_Allele_CellLineState;
 import org.jax.mgi.dbs.mgd.dao.ALL_CellLineDAO;
 import org.jax.mgi.dbs.mgd.lookup.CellLineNameLookupByKey;
-import org.jax.mgi.dbs.mgd.lookup.ParentStrainLookupByParentKey;
-import org.jax.mgi.dbs.mgd.lookup.StrainKeyLookup;
 import org.jax.mgi.dbs.mgd.lookup.StrainNameLookup;
 import org.jax.mgi.dbs.mgd.lookup.VocabTermLookup;
 import org.jax.mgi.shr.cache.CacheException;
@@ -52,7 +52,6 @@ import org.jax.mgi.shr.dla.loader.DLALoader;
 import org.jax.mgi.shr.dla.loader.DLALoaderException;
 import org.jax.mgi.shr.exception.MGIException;
 import org.jax.mgi.shr.ioutils.InputDataFile;
-import org.jax.mgi.shr.ioutils.RecordDataIterator;
 
 /**
 * The TargetedAlleleLoad class is the main entry for this load. It is a
@@ -71,6 +70,7 @@ import org.jax.mgi.shr.ioutils.RecordDataIterator;
 
 public class TargetedAlleleLoad extends DLALoader {
 
+    // The statistics of this run
     private QualityControlStatistics qcStats = new QualityControlStatistics();
 
     // String constants for QC reporting
@@ -103,6 +103,8 @@ public class TargetedAlleleLoad extends DLALoader {
     // SUMMARY
     private static final String NUM_ALLELES_CREATED = "Number of alleles created";
     // WARNING
+    private static final String NUM_ALLELES_RENUMBERED = "Number of alleles renumbered because another allele of the marker took the symbol";
+    // WARNING
     private static final String NUM_DUPLICATE_INPUT_REC = "Number of duplicate cell line records in input file";
     // WARNING
     private static final String NUM_BAD_INPUT_REC = "Number of input records that were unable to be processed";
@@ -165,10 +167,66 @@ public class TargetedAlleleLoad extends DLALoader {
     private static final Pattern alleleCreatorPattern = Pattern
 		    .compile(".*<tm\\d{1,2}[ae]{0,1}\\(.*\\)(.*)>");
 
+    // Counters of the statistics above, registered once so recording
+    // them does not look them up
+    private QualityControlStatistics.Counter passedQc = qcStats.counter(
+	"SUMMARY", NUM_CELLLINES_PASSED_QC);
+    private QualityControlStatistics.Counter derivationsNotFound = qcStats.counter(
+	"ERROR", NUM_DERIVATIONS_NOT_FOUND);
+    private QualityControlStatistics.Counter badCellLineProcessing = qcStats.counter(
+	"ERROR", NUM_BAD_CELLLINE_PROCESSING);
+    private QualityControlStatistics.Counter cellLinesMissingAllele = qcStats.counter(
+	"ERROR", NUM_CELLINES_MISSING_ALLELE);
+    private QualityControlStatistics.Counter badAlleleProcessing = qcStats.counter(
+	"ERROR", NUM_BAD_ALLELE_PROCESSING);
+    private QualityControlStatistics.Counter missingParent = qcStats.counter(
+	"ERROR", NUM_MISSING_PARENT);
+    private QualityControlStatistics.Counter withdrawnMarker = qcStats.counter(
+	"ERROR", NUM_WITHDRAWN_MARKER);
+    private QualityControlStatistics.Counter badMarkerId = qcStats.counter(
+	"ERROR", BAD_MARKER_ID);
+    private QualityControlStatistics.Counter derivationChangeWarnings = qcStats.counter(
+	"WARNING", NUM_CELLLINES_CHANGED_DERIVATION);
+    private QualityControlStatistics.Counter allelesRenumbered = qcStats.counter(
+	"WARNING", NUM_ALLELES_RENUMBERED);
+    private QualityControlStatistics.Counter duplicateInputRecords = qcStats.counter(
+	"WARNING", NUM_DUPLICATE_INPUT_REC);
+    private QualityControlStatistics.Counter badInputRecords = qcStats.counter(
+	"WARNING", NUM_BAD_INPUT_REC);
+    private QualityControlStatistics.Counter orphanedAlleles = qcStats.counter(
+	"WARNING", NUM_ORPHANED_ALLELES);
+    private QualityControlStatistics.Counter allelesNoteChanged = qcStats.counter(
+	"SUMMARY", NUM_ALLELES_NOTE_CHANGE);
+    private QualityControlStatistics.Counter cellLinesChangedType = qcStats.counter(
+	"SUMMARY", NUM_CELLLINES_CHANGE_TYPE);
+    private QualityControlStatistics.Counter cellLinesChangedDerivation = qcStats.counter(
+	"SUMMARY", NUM_CELLLINES_CHANGED_DERIVATION);
+    private QualityControlStatistics.Counter cellLinesChangedPipeline = qcStats.counter(
+	"SUMMARY", NUM_CELLLINES_CHANGED_PIPELINE);
+    private QualityControlStatistics.Counter cellLinesChangedNumber = qcStats.counter(
+	"SUMMARY", NUM_CELLLINES_CHANGED_NUMBER);
+    private QualityControlStatistics.Counter cellLinesChangedMarker = qcStats.counter(
+	"SUMMARY", NUM_CELLINES_CHANGED_MARKER);
+    private QualityControlStatistics.Counter allelesChangedTransmission = qcStats.counter(
+	"SUMMARY", NUM_ALLELES_CHANGED_TRANS);
+    private QualityControlStatistics.Counter cellLinesCreated = qcStats.counter(
+	"SUMMARY", NUM_CELLLINES_CREATED);
+    private QualityControlStatistics.Counter allelesCreated = qcStats.counter(
+	"SUMMARY", NUM_ALLELES_CREATED);
+    private QualityControlStatistics.Counter cellLinesChangedCreator = qcStats.counter(
+	"SUMMARY", NUM_CELLLINES_CHANGED_CREATOR);
+    private QualityControlStatistics.Counter cellLinesChangedAllele = qcStats.counter(
+	"SUMMARY", NUM_CELLLINES_CHANGED_ALLELE);
+
     // Standard DLA required classes
-    private RecordDataIterator iter;
+    private String inputFileName;
+    private InputIndex inputRecords;
     private KnockoutAlleleProcessor processor;
     private KnockoutAlleleInterpreter interp;
+
+    // Reads input records again for their sort keys only, the statistics
+    // of a record are recorded when run() reads it
+    private KnockoutAlleleInterpreter keyInterp;
     private KnockoutAlleleFactory alleleFactory;
     private TargetedAlleleLoadCfg cfg;
     private SQLDataManager sqlDBMgr;
@@ -180,20 +238,81 @@ public class TargetedAlleleLoad extends DLALoader {
     private LookupAlleleByCellLine lookupAlleleByCellLine;
     private LookupAllelesByProjectId lookupAllelesByProjectId;
     private LookupAllelesByMarker lookupAllelesByMarker;
-    private LookupDerivationByVectorCreatorParentType derivationLookup;
-    private LookupVectorKeyByTerm lookupVectorKeyByTerm;
-    private LookupMarkerByMGIID lookupMarkerByMGIID;
-    private ParentStrainLookupByParentKey parentStrainLookupByParentKey;
-    private StrainKeyLookup strainKeyLookup;
     private VocabTermLookup vocTermLookup;
     private CellLineNameLookupByKey cellLineNameLookupByKey;
     private LookupStrainKeyByCellLineKey lookupStrainKeyByCellLineKey;
     private StrainNameLookup strainNameLookup;
     private LookupCellLineCountByAlleleSymbol lookupCellLineCountByAlleleSymbol;
 
+    // Publishes changes that span several of the lookups in one step
+    private AlleleGraph alleleGraph;
+
+    // Serializes the allele creation of the records of a marker
+    private MarkerLocks markerLocks;
+
+    // Runs the concurrent lookup queries on connections of their own
+    private DbExecutor dbExecutor;
+
+    // Resolves the foreign keys of each input record
+    private RecordResolver resolver;
+
+    // Collects the configured references missing from existing alleles
+    private ReferenceNormalizer referenceNormalizer;
+
+    // Batches the UPDATE and DELETE statements run against existing rows
+    private StatementBatcher statements;
+
+    // Reserves keys from the table sequences
+    private KeyAllocator keyAllocator;
+
+    // The background BCP writers, if they are used
+    private AsyncBcpStream asyncBcpStream;
+
+    // The COPY stream, if it is used
+    private CopyStream copyStream;
+
+    // The stream that discards the load, if it is used
+    private NullStream nullStream;
+
+    // The engine running the QC checks of the planned update mode
+    // records
+    private QcEngine qcEngine;
+
+    // The number of input records planned and applied at a time
+    private int planWindow;
+
+    // The input positions in processing order when the records are
+    // grouped by marker, null to process them in input order
+    private int[] order;
+
+    // The positions in processing order of the records with the same
+    // marker as the record before them, when grouped by marker
+    private BitSet sameMarker;
+
+    // The plan file the changes are written to, if it is written
+    private ChangePlan changePlan;
+
+    // The changes of the replayed plan by input record position, if a
+    // plan is replayed
+    private Map replayPlan;
+
+    // Progress of the plan phase
+    private int numberOfCelllinesToCheck = 0;
+    private int numberChecked = 0;
+
+    // The checkpoint file, if checkpoints are written
+    private File checkpointFile;
+
+    // The reconciliation of the input and MGI cell lines, if it is used
+    private CellLineReconciler reconciler;
+
     // Class variables to hold global QC data
     private Map alleleProjects = new HashMap();
     private Map alleleNotes = new HashMap();
+
+    // Keep track of which alleles we've updated the notes for
+    // so we only update it once
+    private Set alreadyProcessed = new HashSet();
     private Set alleleProjectIdUpdated = new TreeSet();
     private Set databaseProjectIds = new HashSet();
     private Set databaseCellLines = new HashSet();
@@ -229,8 +348,19 @@ public class TargetedAlleleLoad extends DLALoader {
 	logger.logdDebug("TargetedAlleleLoader sqlDBMgr.database "
 			+ sqlDBMgr.getDatabase());
 
+	// A NullStream named in DLA_LOAD_STREAM discards the load. Nothing is
+	// written to the database, not even the batched statements
+	if (loadStream instanceof NullStream) {
+	    logger.logdInfo("Discarding the load, rows are only counted", false);
+	    nullStream = (NullStream) loadStream;
+	}
+
+	statements = new StatementBatcher(logger,
+		cfg.getPreventBcpExecute() || nullStream != null,
+		cfg.getSqlBatchSize());
+
 	logger.logdDebug("Initializing lookupMutantCelllineByName", true);
-	lookupMutantCelllineByName = new LookupMutantCelllineByName();
+	lookupMutantCelllineByName = LookupMutantCelllineByName.getInstance();
 
 	logger.logdDebug("Initializing lookupAllelesByProjectId", true);
 	lookupAllelesByProjectId = LookupAllelesByProjectId.getInstance();
@@ -245,29 +375,26 @@ public class TargetedAlleleLoad extends DLALoader {
 	lookupCellLineCountByAlleleSymbol = 
 		LookupCellLineCountByAlleleSymbol.getInstance();
 
-	logger.logdDebug("Initializing derivationLookup", true);
-	derivationLookup = 
-		LookupDerivationByVectorCreatorParentType.getInstance();
-
 	logger.logdDebug("Initializing lookupAlleleByCellLine", true);
 	lookupAlleleByCellLine = LookupAlleleByCellLine.getInstance();
 
 	logger.logdDebug("Initializing lookupAlleleByKey", true);
 	lookupAlleleByKey = LookupAlleleByKey.getInstance();
+	alleleGraph = AlleleGraph.getInstance();
+	markerLocks = MarkerLocks.getInstance();
 
-	
-	logger.logdDebug("Initializing parentStrainLookupByParentKey", true);
-	parentStrainLookupByParentKey = 
-		new ParentStrainLookupByParentKey();
-
-	logger.logdDebug("Initializing strainKeyLookup", true);
-	strainKeyLookup = new StrainKeyLookup();
+	logger.logdDebug("Initializing database I/O executor", true);
+	dbExecutor = DbExecutor.getInstance();
+	logger.logdInfo("Concurrent lookup queries run on "
+	    + dbExecutor.getConnections() + " connections, "
+	    + (dbExecutor.isVirtual() ? "on virtual threads"
+		: "on one thread per connection") + "\n", true);
 
-	logger.logdDebug("Initializing lookupVectorKeyByTerm", true);
-	lookupVectorKeyByTerm = new LookupVectorKeyByTerm();
+	logger.logdDebug("Initializing record resolver", true);
+	resolver = new RecordResolver();
 
-	logger.logdDebug("Initializing lookupMarkerByMGIID", true);
-	lookupMarkerByMGIID = LookupMarkerByMGIID.getInstance();
+	logger.logdDebug("Initializing reference normalizer", true);
+	referenceNormalizer = new ReferenceNormalizer();
 
 	logger.logdDebug("Initializing vocTermLookup", true);
 	vocTermLookup = new VocabTermLookup();
@@ -288,22 +415,25 @@ public class TargetedAlleleLoad extends DLALoader {
 	//logger.logdInfo("databaseProjectsIds:", true);
 	//logger.logdInfo(databaseProjectIds.toString(), true);
 
-	logger.logdDebug("Filtering cell lines", true);
-	filterCellLines(databaseCellLines);
+	// The reconciliation finds the cell lines only in MGI once the input
+	// has been read, without holding them in memory
+	if (!cfg.getReconcile()) {
+	    logger.logdDebug("Filtering cell lines", true);
+	    filterCellLines(databaseCellLines);
+	}
 
 	logger.logInfo("Reading input files");
 	logger.logpInfo("Processing " + cfg.getPipeline(), false);
 
 	InputDataFile inputFile = new InputDataFile(cfg);
+	inputFileName = inputFile.getFileName();
 
 	// Get an appropriate Interpreter for the file
-	interp = alleleFactory.getInterpreter();
-
-	// Get an Iterator for going through the input file
-	iter = inputFile.getIterator(interp);
+	interp = alleleFactory.getInterpreter(qcStats);
+	keyInterp = alleleFactory.getInterpreter(new QualityControlStatistics());
 
 	// Get an appropriate Processor for the records in the file
-	processor = alleleFactory.getProcessor();
+	processor = alleleFactory.getProcessor(qcStats);
 
 	logger.logdInfo("Finished initializing Targeted allele load\n", true);
 }
@@ -418,8 +548,8 @@ public class TargetedAlleleLoad extends DLALoader {
 
 	// Initialize the statistics for alleles and cell lines created
 	// by the load so far
-	qcStats.record("SUMMARY", NUM_ALLELES_CREATED, 0);
-	qcStats.record("SUMMARY", NUM_CELLLINES_CREATED, 0);
+	allelesCreated.set(0);
+	cellLinesCreated.set(0);
 
 	// Build a vector that contains a Table object for each table to be
 	// written to in the "load" database.
@@ -436,17 +566,387 @@ public class TargetedAlleleLoad extends DLALoader {
         loadTables.add(Table.getInstance("MGI_NoteChunk", loadDBMgr));
         loadTables.add(Table.getInstance("MGI_Reference_Assoc", loadDBMgr));
 
-	// Initialize writers for each table if a BCP stream if being used.
+	// Stream the rows to the database with COPY or write the BCP files
+	// in the background if configured, otherwise initialize writers for
+	// each table if a BCP stream if being used.
 	//                                                              
-	if (loadStream.isBCP())
+	if (nullStream != null) {
+	    // The rows are discarded, there are no writers to set up
+	} else if (cfg.getUseCopyStream()) {
+	    logger.logdInfo("Streaming inserts with COPY", false);
+	    copyStream = new CopyStream(loadTables, logger,
+		cfg.getCopyBufferSize(), cfg.getCopyBuffers(),
+		cfg.getPipelineRecords());
+	    copyStream.setStatements(statements);
+	    loadStream = copyStream;
+	} else if (cfg.getUseAsyncBcp()) {
+	    logger.logdInfo("Writing BCP files in the background", false);
+	    asyncBcpStream = new AsyncBcpStream(loadTables, logger,
+		cfg.getBcpPath(), cfg.getBcpBufferSize(), cfg.getBcpShards(),
+		cfg.getBcpShardRange(), cfg.getPreventBcpExecute());
+	    loadStream = asyncBcpStream;
+	} else if (loadStream.isBCP())
 	    ((BCP_Stream)loadStream).initBCPWriters(loadTables);
+
+	// Reserve blocks of keys from the table sequences and keep track of
+	// the keys the load uses
+	keyAllocator = new KeyAllocator(sqlDBMgr, logger,
+	    cfg.getPreventBcpExecute(), cfg.getKeyBlockSize());
+	if (nullStream != null) {
+	    keyAllocator.setSynthetic(nullStream);
+	    AccessionAllocator.getInstance().setSynthetic();
+	}
+	keyAllocator.reserve();
+	loadStream = new KeyTrackingStream(loadStream, keyAllocator);
+
+	// Run the update mode QC checks of different markers at the same
+	// time if configured
+	planWindow = cfg.getQcWindow();
+	if (cfg.getUpdateOnlyMode()) {
+	    if (cfg.getQcThreads() > 1) {
+		logger.logdInfo("Running QC checks on " + cfg.getQcThreads()
+		    + " threads", false);
+	    }
+	    qcEngine = new QcEngine(new UpdateChecks(), cfg.getQcThreads());
+	}
+
+	// Apply the changes of an earlier plan instead of checking the
+	// records, if configured
+	String replay = cfg.getReplayPlanFile();
+	if (!replay.equals("")) {
+	    try {
+		replayPlan = ChangePlan.read(new File(replay));
+	    } catch (IOException e) {
+		throw new MGIException("Cannot read plan " + replay + ": "
+		    + e.getMessage());
+	    }
+	    logger.logdInfo("Replaying " + replayPlan.size()
+		+ " changes from plan " + replay, false);
+	}
+
+	// Checkpoints are only consistent when batches of records are
+	// committed while the load runs
+	String checkpoint = cfg.getCheckpointFile();
+	if (!checkpoint.equals("")) {
+	    if (copyStream != null && cfg.getPipelineRecords() > 0) {
+		checkpointFile = new File(checkpoint);
+	    } else {
+		logger.logdInfo("Not writing checkpoints to " + checkpoint
+		    + ", the load is not pipelined", false);
+	    }
+	}
+
+	// Index the input, run() reads the records a window at a time
+	indexInputRecords();
+
+	// Process the records of a marker together if configured
+	if (cfg.getGroupByMarker()) {
+	    sortByMarker();
+	}
+
+	// Class the input cell lines against the provider's cell lines in
+	// MGI by merging the two streams sorted by name, if configured
+	if (cfg.getReconcile()) {
+	    String dir = cfg.getSortDir();
+	    reconciler = new CellLineReconciler(logger, cfg.getSortRecords(),
+		dir.equals("") ? null : new File(dir),
+		cfg.getReconcileFetchSize());
+	    reconciler.reconcile(inputRecords, keyInterp,
+		cfg.getPrimaryJNumber(),
+		cfg.getProjectLogicalDb());
+	}
+
+	// Create all the derivations the input needs up front so the main
+	// loop only ever looks derivations up
+	createMissingDerivations();
+
 	logger.logdInfo("Finished preprocessing Targeted allele load\n", true);
 
     }
 
+    /**
+     * Index the input file. Only the offset of each valid record is kept,
+     * run() reads the records again a window at a time and reports the
+     * records that cannot be interpreted in order
+     * 
+     * @assumes initialize() has found the input file and its interpreter
+     * @effects inputRecords indexes every valid input record
+     * @throws MGIException
+     *             thrown if the input file cannot be read
+     */
+    private void indexInputRecords() throws MGIException {
+	try {
+	    inputRecords = new InputIndex(inputFileName, interp);
+	} catch (IOException e) {
+	    throw new MGIException("Cannot read input file " + inputFileName
+		+ ": " + e.getMessage());
+	}
+	logger.logdInfo("Indexed " + inputRecords.size() + " input records\n",
+	    true);
+    }
+
+    /**
+     * Create every derivation (vector, creator, parental cell line, allele
+     * type) needed by the input records that does not already exist.
+     * Records that run() will skip before it needs the derivation (duplicate
+     * cell lines, missing parents, bad markers, and cell lines that are not
+     * handled in this mode) are not considered. The input is read a window
+     * at a time, in processing order
+     * 
+     * @assumes indexInputRecords() has been called
+     * @effects new derivations are inserted and added to the derivation
+     *          lookup cache
+     * @throws MGIException
+     *             thrown if a derivation cannot be created
+     */
+    private void createMissingDerivations() throws MGIException {
+
+	logger.logdInfo("Creating missing derivations\n", true);
+
+	// Distinct missing derivations, by compound key, with the first
+	// record that needs each one
+	Map missing = new TreeMap();
+	Set seen = new HashSet();
+
+	int position = 0;
+	while (position < inputRecords.size()) {
+	    int end = getWindowEnd(position);
+
+	    List records = new ArrayList();
+	    Set geneIds = new HashSet();
+	    for (int i = position; i < end; i++) {
+		Object next = inputRecords.read(getInputPosition(i), keyInterp);
+		records.add(next);
+		String geneId = getGeneId(next);
+		if (!geneId.equals("")) {
+		    geneIds.add(geneId);
+		}
+	    }
+	    resolver.prefetchMarkers(geneIds);
+	    position = end;
+
+	    Iterator it = records.iterator();
+	    while (it.hasNext()) {
+		Object next = it.next();
+		if (!(next instanceof KnockoutAlleleInput)) {
+		    continue;
+		}
+		KnockoutAlleleInput in = (KnockoutAlleleInput) next;
+
+		if (!seen.add(in.getMutantCellLine())
+			|| in.getParentCellLine().equals("")
+			|| in.getParentCellLine().equals("-")
+			|| in.getParentCellLine().equals("[ENTERYOURDATAVALUE]")) {
+		    continue;
+		}
+
+		// Update mode only touches cell lines already in the
+		// database, create mode only the ones that are not
+		boolean exists = lookupMutantCelllineByName.lookup(
+		    in.getMutantCellLine()) != null;
+		if (exists != cfg.getUpdateOnlyMode()) {
+		    continue;
+		}
+
+		ResolvedRecord resolved = resolver.resolve(in);
+		if (resolved.getDerivationKey() != null) {
+		    continue;
+		}
+
+		Integer vectorKey;
+		Integer parentKey;
+		try {
+		    Marker mrk = resolved.getMarker();
+		    if (mrk == null || mrk.getStatusKey().equals(
+			    Constants.MARKER_WITHDRAWN)) {
+			continue;
+		    }
+		    vectorKey = resolved.getVectorKey();
+		    parentKey = resolved.getParentalKey();
+		} catch (MGIException e) {
+		    // Reported when run() gets to this record
+		    continue;
+		}
+		if (vectorKey == null) {
+		    continue;
+		}
+
+		String dCompoundKey = resolver.getDerivationCompoundKey(
+		    vectorKey, parentKey);
+		if (!missing.containsKey(dCompoundKey)) {
+		    missing.put(dCompoundKey, resolved);
+		}
+	    }
+	}
+
+	Iterator it = missing.values().iterator();
+	while (it.hasNext()) {
+	    createDerivation((ResolvedRecord) it.next());
+	}
+
+	logger.logdInfo("Created " + missing.size() + " derivations\n", true);
+    }
+
+    /**
+     * Create the derivation for the vector and parental cell line of a
+     * record
+     * 
+     * @param resolved
+     *            a record using the new derivation
+     * @return the key of the new derivation
+     * @throws MGIException
+     *             thrown if a lookup fails or the derivation cannot be
+     *             inserted
+     */
+    private Integer createDerivation(ResolvedRecord resolved)
+	    throws MGIException {
+
+	// CREATE THE NEW DERIVATION AND INSERT IT
+	Derivation d = new Derivation();
+
+	String cassette = resolved.getInput().getCassette();
+	Integer vectorKey = resolved.getVectorKey();
+	Integer creatorKey = resolver.getCreatorKey();
+	Integer parentKey = resolved.getParentalKey();
+	Integer typeKey = (Integer) Constants.ALLELE_TYPE_KEY;
+
+	String creatorName = vocTermLookup.lookup(creatorKey);
+	String typeName = vocTermLookup.lookup(typeKey);
+	String parentName = cellLineNameLookupByKey.lookup(parentKey);
+	String strainName = strainNameLookup
+	    .lookup(lookupStrainKeyByCellLineKey.lookup(parentKey));
+
+	// Derivation name is Creator+Type+Parental+Strain+Vector
+	String name = creatorName + " " + typeName + " " + parentName + " "
+	    + strainName + " " + cassette;
+
+	d.setName(name);
+	d.setDescription(null);
+	d.setVectorKey(vectorKey);
+	d.setVectorTypeKey(new Integer(Constants.VECTOR_TYPE_KEY));
+	d.setParentCellLineKey(parentKey);
+	d.setDerivationTypeKey(typeKey);
+	d.setCreatorKey(creatorKey);
+	d.setRefsKey(null);
+
+	// Inserting a new derivation automatically adds it to the
+	// singleton derivation lookup cache
+	d.insert(loadStream);
+
+	String s = "Creating derivation for " + name;
+	qcStats.record("WARNING", s);
+	logger.logdInfo(s, true);
+
+	return d.getDerivationKey();
+    }
+
+    /**
+     * Write a checkpoint once the records processed so far are committed.
+     * The state is copied now, the file is written by the COPY stream
+     * after it commits the batch's rows and statements together. It is
+     * not written if the batch fails, so a resumed run starts after the
+     * last committed batch
+     * 
+     * @param position
+     *            the number of input records processed
+     * @throws MGIException
+     *             thrown if the MGI ID allocator cannot be reached
+     */
+    private void checkpoint(int position) throws MGIException {
+	if (checkpointFile == null) {
+	    return;
+	}
+
+	final Checkpoint cp = new Checkpoint(inputRecords.size(), position);
+	cp.setGrouped(order != null);
+	cp.setStatistics(qcStats.getStatistics());
+	cp.setAlleleProjects(alleleProjects);
+	cp.setAlleleNotes(alleleNotes);
+	cp.setAlreadyProcessed(alreadyProcessed);
+	cp.setAlleleProjectIdUpdated(alleleProjectIdUpdated);
+	cp.setDatabaseProjectIds(databaseProjectIds);
+	cp.setDatabaseCellLines(databaseCellLines);
+	cp.setReferences(referenceNormalizer.getChecked());
+	cp.setKeys(keyAllocator.getUsed());
+	cp.setAccession(AccessionAllocator.getInstance().getLast());
+
+	copyStream.afterCommit(new Callable() {
+	    public Object call() throws IOException {
+		cp.write(checkpointFile);
+		return null;
+	    }
+	});
+    }
+
+    /**
+     * Restore the state of an interrupted run from its last checkpoint
+     * 
+     * @return the number of input records the interrupted run processed,
+     *         0 if there is no checkpoint
+     * @throws MGIException
+     *             thrown if the checkpoint cannot be read, or does not
+     *             match the input file or the database
+     */
+    private int resume() throws MGIException {
+	if (checkpointFile == null) {
+	    return 0;
+	}
+
+	Checkpoint cp;
+	try {
+	    cp = Checkpoint.read(checkpointFile);
+	} catch (IOException e) {
+	    throw new MGIException("Cannot read checkpoint " + checkpointFile
+		+ ": " + e.getMessage());
+	}
+	if (cp == null) {
+	    return 0;
+	}
+	if (cp.getInputSize() != inputRecords.size()) {
+	    throw new MGIException("Checkpoint " + checkpointFile + " is for "
+		+ cp.getInputSize() + " input records, the input has "
+		+ inputRecords.size());
+	}
+	if (cp.isGrouped() != (order != null)) {
+	    throw new MGIException("Checkpoint " + checkpointFile + " was "
+		+ (cp.isGrouped() ? "" : "not ") + "written grouped by marker, "
+		+ "set TAL_GROUP_BY_MARKER the same way to resume");
+	}
+
+	// Everything the checkpoint used must have been committed
+	keyAllocator.checkCommitted(cp.getKeys());
+	AccessionAllocator.getInstance().checkCommitted(cp.getAccession());
+
+	Iterator levels = cp.getStatistics().entrySet().iterator();
+	while (levels.hasNext()) {
+	    Map.Entry level = (Map.Entry) levels.next();
+	    Iterator counts = ((Map) level.getValue()).entrySet().iterator();
+	    while (counts.hasNext()) {
+		Map.Entry count = (Map.Entry) counts.next();
+		qcStats.record((String) level.getKey(), (String) count.getKey(),
+		    ((Integer) count.getValue()).intValue());
+	    }
+	}
+	alleleProjects.putAll(cp.getAlleleProjects());
+	alleleNotes.putAll(cp.getAlleleNotes());
+	alreadyProcessed.addAll(cp.getAlreadyProcessed());
+	alleleProjectIdUpdated.addAll(cp.getAlleleProjectIdUpdated());
+	databaseProjectIds.clear();
+	databaseProjectIds.addAll(cp.getDatabaseProjectIds());
+	databaseCellLines.clear();
+	databaseCellLines.addAll(cp.getDatabaseCellLines());
+	referenceNormalizer.restore(cp.getReferences());
+
+	logger.logdInfo("Resuming after input record " + cp.getPosition()
+	    + " from checkpoint " + checkpointFile + "\n", true);
+	return cp.getPosition();
+    }
+
     /**
      * read the knockout allele input file and run the process that creates new
-     * alleles in MGD
+     * alleles in MGD. The input is handled a window of records at a time:
+     * the changes of the window are planned first, then applied in input
+     * order
      * 
      * @assumes nothing
      * @effects the data will be created for loading Alleles and associated ES
@@ -459,31 +959,171 @@ public class TargetedAlleleLoad extends DLALoader {
 
 	logger.logdInfo("Running Targeted allele load\n", true);
 
-	// Keep track of which alleles we've updated the notes for
-	// so we only update it once
-	Set alreadyProcessed = new HashSet();
-	
-	int numberOfCelllinesToCheck = databaseCellLines.size();
-	int numberChecked = 0;
+	// Pick up after the last checkpoint of an interrupted run
+	int position = resume();
 
-	// For each input record
-	while (iter.hasNext()) {
-	    // Instance the input records
-	    KnockoutAlleleInput in = null;
+	numberOfCelllinesToCheck = reconciler == null
+	    ? databaseCellLines.size() : reconciler.getDatabaseCellLines();
 
+	// Write the changes of this run for auditing, after those of the
+	// interrupted run if resuming
+	String planFile = cfg.getPlanFile();
+	if (!planFile.equals("")) {
 	    try {
-		in = (KnockoutAlleleInput) iter.next();
-	    } catch (MGIException e) {
-		logger.logdInfo(e.toString(), true);
-		qcStats.record("WARNING", NUM_BAD_INPUT_REC);
+		changePlan = new ChangePlan(new File(planFile), position > 0);
+	    } catch (IOException e) {
+		throw new MGIException("Cannot write plan " + planFile + ": "
+		    + e.getMessage());
+	    }
+	}
+
+	while (position < inputRecords.size()) {
+	    // Decide what the next window of records changes, then make
+	    // the changes
+	    PlannedWindow window = new PlannedWindow();
+	    int end = plan(position, window);
+	    apply(window);
+
+	    if (changePlan != null) {
+		try {
+		    changePlan.write(window.changes);
+		} catch (IOException e) {
+		    throw new MGIException("Cannot write plan " + planFile
+			+ ": " + e.getMessage());
+		}
+	    }
+
+	    // Everything written so far belongs to completely processed
+	    // records. In pipelined mode they are committed in the background,
+	    // in one transaction with the statements held for them
+	    if (copyStream != null && copyStream.endRecords(end - position)) {
+		checkpoint(end);
+	    }
+	    position = end;
+	}
+
+	inputRecords.close();
+	if (qcEngine != null) {
+	    qcEngine.close();
+	}
+	if (changePlan != null) {
+	    try {
+		changePlan.close();
+	    } catch (IOException e) {
+		throw new MGIException("Cannot write plan " + planFile + ": "
+		    + e.getMessage());
+	    }
+	}
+
+	// Create all the missing reference associations found during QC
+	int numReferences = referenceNormalizer.flush(loadStream);
+	logger.logdInfo("Created " + numReferences
+	    + " missing reference associations\n", true);
+
+	logger.logdInfo(markerLocks.getReport(), true);
+	
+	logger.logdInfo("Finished running Targeted allele load\n", true);
+    
+    } // end protected void run()
+
+    /**
+     * The outcome of planning a window of input records: the planned
+     * changes, and what the window found out about the input that the
+     * load's state is updated with when the window is applied
+     */
+    private static class PlannedWindow {
+	// The planned changes, in input order
+	List changes = new ArrayList();
+
+	// The project IDs and mutant cell lines of the window (lower case),
+	// which are in the input
+	Set projectIds = new HashSet();
+	Set cellLines = new HashSet();
+
+	// The mutant cell lines processed by the window
+	Set processed = new HashSet();
+
+	// The existing alleles whose references are checked
+	List referenceChecks = new ArrayList();
+
+	// The number of records checked, and the statistics of the
+	// records that were skipped, by counter
+	int checked = 0;
+	Map counts = new HashMap();
+
+	void count(QualityControlStatistics.Counter counter) {
+	    int[] n = (int[]) counts.get(counter);
+	    if (n == null) {
+		n = new int[1];
+		counts.put(counter, n);
+	    }
+	    n[0]++;
+	}
+    }
+
+    /**
+     * Plan the changes of a window of input records. The records that
+     * cannot be loaded are reported, but nothing is written, and the
+     * caches and the state of the load are left as they are; what the
+     * window changes is returned in the window, and applied by apply()
+     * 
+     * @param position
+     *            the first input record of the window
+     * @param window
+     *            receives the planned changes, in input order, and the
+     *            state changes of the window
+     * @return the input record after the window
+     * @throws MGIException
+     *             thrown if a lookup or a QC check fails unexpectedly
+     */
+    private int plan(int position, PlannedWindow window)
+	    throws MGIException {
+	List changes = window.changes;
+
+	// The alleles the window creates, by marker key
+	Map groups = new HashMap();
+
+	int start = position;
+	int end = getWindowEnd(position);
+
+	// Read the records of the window, only a window of records is held
+	// in memory
+	List records = new ArrayList();
+	for (int i = start; i < end; i++) {
+	    records.add(inputRecords.read(getInputPosition(i), interp));
+	}
+
+	// Look up the markers of the window concurrently, instead of one
+	// query at a time as the records are resolved
+	Set geneIds = new HashSet();
+	for (Iterator it = records.iterator(); it.hasNext();) {
+	    String geneId = getGeneId(it.next());
+	    if (!geneId.equals("")) {
+		geneIds.add(geneId);
+	    }
+	}
+	resolver.prefetchMarkers(geneIds);
+
+	for (; position < end; position++) {
+	    // Instance the input records
+	    int input = getInputPosition(position);
+	    Object next = records.get(position - start);
+	    if (next instanceof MGIException) {
+		logger.logdInfo(next.toString(), true);
+		window.count(badInputRecords);
 		continue;
 	    }
+	    KnockoutAlleleInput in = (KnockoutAlleleInput) next;
+
+	    // Resolve every key this record refers to once, processing,
+	    // QC and creation all share the result
+	    ResolvedRecord resolved = resolver.resolve(in);
 
 	    // Keep track of the projects and mutant cell lines we've already
 	    // seen
 	   
-	    databaseProjectIds.remove(in.getProjectId().toLowerCase());
-	    databaseCellLines.remove(in.getMutantCellLine().toLowerCase());
+	    window.projectIds.add(in.getProjectId().toLowerCase());
+	    window.cellLines.add(in.getMutantCellLine().toLowerCase());
 
 	    // If this record is not appropriate to be handled by this
 	    // processor, skip it. The only reason we included it in the
@@ -493,20 +1133,19 @@ public class TargetedAlleleLoad extends DLALoader {
 	    //	continue;
 	    //}
 
-	    if (alreadyProcessed.contains(in.getMutantCellLine())) {
+	    if (alreadyProcessed.contains(in.getMutantCellLine())
+		    || !window.processed.add(in.getMutantCellLine())) {
 		String m = "Multiple input records for: ";
 		m += in.getMutantCellLine() + "\n";
 		logger.logdInfo(m, false);
-		qcStats.record("WARNING", NUM_DUPLICATE_INPUT_REC);
+		window.count(duplicateInputRecords);
 		continue;
-	    } else {
-		alreadyProcessed.add(in.getMutantCellLine());
 	    }
 
 	    if (in.getParentCellLine().equals("")
 		    || in.getParentCellLine().equals("-")
 		    || in.getParentCellLine().equals("[ENTERYOURDATAVALUE]")) {
-		qcStats.record("ERROR", NUM_MISSING_PARENT);
+		window.count(missingParent);
 
 		String m = "Missing parental cell line, skipping record: "
 		    + in.getMutantCellLine() + " (parental: "
@@ -518,13 +1157,14 @@ public class TargetedAlleleLoad extends DLALoader {
 	    // sc - Log and skip if the marker is secondary - this lookup only includes preferred IDs
 	    Marker mrk = null;
 	    try {
-		mrk = lookupMarkerByMGIID.lookup(in.getGeneId());
-	    } catch (Exception e) {
-		//pass
+		mrk = resolved.getMarker();
+	    } catch (MGIException e) {
+		logger.logdInfo("Cannot look up marker " + in.getGeneId()
+		    + ": " + e.getMessage(), false);
 	    }
 
 	    if (mrk == null) {
-		qcStats.record("ERROR", BAD_MARKER_ID);
+		window.count(badMarkerId);
 		String m = "Invalid/Secondary Marker ID : skipping record\n" + in.toString() + "\n";
 		logger.logcInfo(m, false);
 		continue;
@@ -533,7 +1173,7 @@ public class TargetedAlleleLoad extends DLALoader {
 
 	    //  sc - log and skip if marker has been withdrawn
 	    if (mrk.getStatusKey().equals(Constants.MARKER_WITHDRAWN)) {
-		qcStats.record("ERROR", NUM_WITHDRAWN_MARKER);
+		window.count(withdrawnMarker);
 		String m = "Marker has been withdrawn : skipping record\n" + in.toString() + "\n";
 		logger.logcInfo(m, false);
 		continue;
@@ -543,9 +1183,12 @@ public class TargetedAlleleLoad extends DLALoader {
 	    KnockoutAllele constructed = null;
 
 	    try {
-		constructed = processor.process(in);
+		// The sequence number takes the alleles planned for the
+		// marker earlier in the window into account
+		processor.setGroup((MarkerGroup) groups.get(mrk.getKey()));
+		constructed = processor.process(in, resolved);
 	    } catch (KeyNotFoundException e) {
-		qcStats.record("ERROR", NUM_BAD_ALLELE_PROCESSING);
+		window.count(badAlleleProcessing);
 
 		String m = "Could not create allele (bad key), check: "
 				+ in.getMutantCellLine() + "\n" + in + "\n";
@@ -557,7 +1200,7 @@ public class TargetedAlleleLoad extends DLALoader {
 		logger.logcInfo(m, false);
 		continue;
 	    } catch (MGIException e) {
-		qcStats.record("ERROR", NUM_BAD_ALLELE_PROCESSING);
+		window.count(badAlleleProcessing);
 
 		String m = "Could not process, skipping record: "
 		    + in.getMutantCellLine() + "\n" + in + "\n";
@@ -578,7 +1221,7 @@ public class TargetedAlleleLoad extends DLALoader {
 	    }
 	    // not sure if this can happen because exception caught above and continue
 	    if (constructed == null) {
-		qcStats.record("ERROR", NUM_BAD_ALLELE_PROCESSING);
+		window.count(badAlleleProcessing);
 
 		String m = "Allele creation error, check: ";
 		m += in.getMutantCellLine();
@@ -593,19 +1236,14 @@ public class TargetedAlleleLoad extends DLALoader {
 	    MutantCellLine esCell = lookupMutantCelllineByName.lookup(in
 		.getMutantCellLine());
 
-	    if (numberChecked % 1000 == 0) {
-		String m = "Processed " + numberChecked + " " +
-		    "celllines (of " + numberOfCelllinesToCheck + ")\n";
-		logger.logdInfo(m, true);
-	    }
-	    numberChecked++;
+	    window.checked++;
 
 	    // Update mode or create mode
 	    if (cfg.getUpdateOnlyMode()) {
 		if (esCell != null) {
 		    // Mutant ES Cell found in MGI, check the associated allele
 		    // Find the existing associated allele
-		    KnockoutAllele existing = lookupAlleleByCellLine.lookup(in
+		    AlleleView existing = lookupAlleleByCellLine.lookup(in
 				    .getMutantCellLine());
 		    
 		    if (existing == null) {
@@ -630,295 +1268,723 @@ public class TargetedAlleleLoad extends DLALoader {
 			    String m = LOG_ALLELE_NOT_FOUND.replaceAll(
 					    "~~INPUT_MCL~~", in.getMutantCellLine());
 			    logger.logdInfo(m, true);
-			    qcStats.record("ERROR", NUM_CELLINES_MISSING_ALLELE);
+			    window.count(cellLinesMissingAllele);
 			    continue;
 		    }
 
 		    // ********************************************************
 		    // Ensure that all cfg references are associated to
-		    // this allele
+		    // this allele. The missing references of all alleles
+		    // are written in one batch at the end of the run
 		    // ********************************************************
-		    existing.normalizeReferences(loadStream);
+		    window.referenceChecks.add(existing);
 
 		    // ********************************************************
-		    // BEGIN QC CHECKS
+		    // QC CHECKS
 		    // ********************************************************
-
-		    try {
-			if (!isMatchingGene(existing, constructed)) {
-			    // Check the allele to marker association, if it has
-			    // changed,
-			    // report to the log for manual curation.
-			    logMarkerChanged(in, constructed, existing);
-			} else if (alleleProjects.get(existing.getKey()) != null
-				|| (!existing.getProjectId().equals(
-				    constructed.getProjectId())
-				    && !isTypeChange(existing, constructed)
-				    && !isGroupChange(existing, constructed)
-				    && !isCreatorChange(existing, constructed) && !isDerivationChange(
-				    esCell, in))) {
-			    // We can only update the project ID once all cell lines
-			    // for the allele have been
-			    // verified to require the same change
-
-			    // The extra "alleleProjects.get(existing) != null ||"
-			    // check is to see if there are project IDs that have
-			    // NOT
-			    // changed from the original, when others have. The
-			    // existence of an entry in alleleProjects means we've
-			    // updated this project ID before.
-
-			    // The project ID changed, but the type, group,
-			    // creator, derivation and marker didn't change, we
-			    // can just try to update the allele project ID
-			    // in place
-
-			    if (alleleProjects.get(existing.getKey()) == null) {
-				alleleProjects
-				    .put(existing.getKey(), new HashSet());
-		}
-
-			    // Record the updated project ID for this allele symbol
-			    Set projSet = (Set) alleleProjects.get(existing
-				.getKey());
-			    projSet.add(constructed.getProjectId());
-			    alleleProjects.put(existing.getKey(), projSet);
-
-			    // save the new project ID for this allele symbol
-			    String m = existing.getSymbol() + "\t"
-				+ existing.getProjectId() + "\t"
-				+ constructed.getProjectId() + "\t"
-				+ in.getMutantCellLine();
-			    alleleProjectIdUpdated.add(m);
-
-			} else if (!existing.getSymbol().equals(
-				constructed.getSymbol())) {
-			    // If the associated allele symbol has changed at all,
-			    // then we need to change it and update the derivation
-
-			    // Symbols don't match
-			    // The marker didn't change (checked previously)
-			    // so one of these attributes changed.
-			    // 1- Parental cell line
-			    // 2- Type
-			    // 3- IKMC group
-			    // 4- Creator
-			    // 5- Vector
-
-			    if (isTypeChange(existing, constructed)) {
-				logTypeChange(in, constructed, existing);
-			    }
-
-			    if (isGroupChange(existing, constructed)) {
-				logGroupChange(in, constructed, existing);
-			    }
-
-			    if (isCreatorChange(existing, constructed)) {
-				logCreatorChange(in, constructed, existing);
-			    }
-
-			    if (isNumberChange(existing, constructed)) {
-				logNumberChange(in, constructed, existing);
-			    }
-
-			    // Re-associate the cell line to a new allele
-			    logAlleleChanged(in, constructed, esCell, existing);
-			    changeMutantCellLineAssociation(in, esCell, existing,
-				constructed);
-
-			} else if (!esCell.getDerivationKey().equals(
-				getDerivationKey(in))) {
-			    // Check the derivation (this implicitly checks the
-			    // parental cell line, the creator, the vector and the
-			    // allele type)
-
-			    // This QC check is a street sweeper. Derivation
-			    // changes, by themselves, should not happen.
-			    // If ONLY the derivation changed and nothing else
-			    // (which was checked previously in the if-then)
-			    // then we can go ahead and change the derivation
-			    // association, but we will skip updating the note
-			    // if it also changed.
-
-			    logDerivationChange(in, esCell, existing);
-			    changeDerivationKey(getDerivationKey(in), esCell);
-
-			} else {
-
-			    // Compress the note fields to discount any extra spaces
-			    // that might have snuck in
-			    String existingNote =  existing.getNote();
-			    if (existingNote == null) {
-				existingNote = ""; 
-			    }
-			    existingNote = existingNote.replaceAll("\\n", "").replaceAll(" ", "");
-			    String constructedNote = constructed.getNote()
-				.replaceAll("\\n", "").replaceAll(" ", "");
-
-			    // The extra "|| alleleNotes.get(existing) != null"
-			    // check is to see if there are notes that have NOT
-			    // changed from the original, when others have. The
-			    // existence of an entry in alleleNotes means we've
-			    // updated this note before.
-			    if (!existingNote.equals(constructedNote)
-				    || alleleNotes.get(existing.getKey()) != null) {
-				// If we get this far in the QC checks, then
-				// we can be sure that the creator, the type,
-				// the vector, and the parental cell line are all
-				// the same. The only thing left that could have
-				// changed are the coordinates
-
-				if (alleleNotes.get(existing.getKey()) == null) {
-					alleleNotes.put(existing.getKey(),
-							new HashSet());
-				}
-
-				// save the new molecular note for this allele
-				// symbol
-				Set notes = (Set) alleleNotes
-						.get(existing.getKey());
-				notes.add(constructed.getNote());
-				alleleNotes.put(existing.getKey(), notes);
-			    }
-			}
-
-		    } catch (MGIException e) {
-			    logger.logdInfo(e.getMessage(), false);
+		    QcCase qc = new QcCase(input, resolved, constructed,
+			esCell, existing);
+		    if (replayPlan == null || isReplayed(qc)) {
+			changes.add(qc);
 		    }
-
-		    // ********************************************************
-		    // END QC CHECKS
-		    // ********************************************************
-		    // done with QC checks. skip on to the next record
-		    qcStats.record("SUMMARY", NUM_CELLLINES_PASSED_QC);
-
-		    continue;
-
 		} // end of if (esCell != null)
+
 	    // end of if (cfg.getUpdateOnlyMode())
-	    } else { 
+	    } else if (esCell == null) {
 
 		// Only create anything if the cell line doesn't exist
 		// the QC checking process (which occurs if this load
 		// is run when the cfg.getUpdateOnlyMode() is true)
 
-		// If the cell line was not found in the database,
-		// create a new cell line and associated objects
-		if (esCell == null) {
-		    Integer mclKey = null;
-		    try {
-			mclKey = createMutantCellLine(in, false);
-		    } catch (MGIException e) {
-			qcStats.record("ERROR", NUM_BAD_CELLLINE_PROCESSING);
-			String m = "Could not create mutant cell line, "
-			    + "skipping record: " + in.getMutantCellLine()
-			    + "\n" + in + "\n";
-			try {
-			    // Just the first message of the exception needs
-			    // to be reported
-			    BufferedReader reader = new BufferedReader(
-					    new StringReader(e.getMessage()));
-			    m += reader.readLine();
-			} catch (IOException e1) {
-			    m = "Could not process "
-				+ in.getMutantCellLine()
-				+ " then something bad happened trying to report what happened.";
+		// If the cell line was not found in the database, a new
+		// cell line is created, along with a new allele unless
+		// the project already has an allele with this symbol
+		QcCase create = new QcCase(input, resolved, constructed,
+		    null, null);
+		MarkerGroup group = (MarkerGroup) groups.get(mrk.getKey());
+		if (findProjectAllele(constructed) == null && (group == null
+			|| !group.contains(constructed.getProjectId(),
+			    constructed.getSymbol()))) {
+		    create.setDecision(QcCase.CREATE_ALLELE);
+		} else {
+		    create.setDecision(QcCase.CREATE_CELLLINE);
+		}
+		if (replayPlan == null || isReplayed(create)) {
+		    changes.add(create);
+		    if (create.getDecision() == QcCase.CREATE_ALLELE) {
+			if (group == null) {
+			    group = new MarkerGroup();
+			    groups.put(mrk.getKey(), group);
 			}
-			logger.logdInfo(m, false);
-			continue;
+			group.add(constructed, resolved.getParentalKey());
 		    }
+		}
+	    }
+	} // end for (; position < end; position++)
+	processor.setGroup(null);
 
-		    if (mclKey == null) {
-			qcStats.record("ERROR", NUM_BAD_CELLLINE_PROCESSING);
-			String m = "Mutant cell line not created, "
-			    + "skipping record: " + in.getMutantCellLine()
-			    + "\n" + in + "\n";
-			logger.logdInfo(m, false);
-			continue;
-		    }
+	// Check the cell lines of different markers at the same time
+	if (qcEngine != null) {
+	    qcEngine.plan(changes);
+	}
+	return position;
+    }
 
-		    // lookup existing alleles for this project
-		    String projectId = in.getProjectId();
-		    Map alleles = lookupAllelesByProjectId.lookup(projectId);
-		    Integer alleleKey = null;
-		    if (alleles != null) {
-			// try to get the allele identified by the constructed
-			// symbol
-			Map allele = (Map) alleles.get(constructed.getSymbol());
-			if (allele != null) {
-			    // found an allele with this same symbol
-			    alleleKey = (Integer) allele.get("key");
-			}
-		    }
+    /**
+     * get the input record at a position of the processing order
+     * 
+     * @param position
+     *            the position in the processing order
+     * @return the position in the input file
+     */
+    private int getInputPosition(int position) {
+	return order == null ? position : order[position];
+    }
 
-		    if (alleleKey == null) {
-			// did not find appropriate allele. create a new allele
-			createAllele(constructed, in, alleles);
-			alleleKey = constructed.getKey();
-		    }
+    /**
+     * Get the end of the window of records starting at a position. When
+     * the records are grouped by marker the window is extended to the end
+     * of the marker group, so a group is planned and applied as a unit
+     * 
+     * @param position
+     *            the first record of the window, in processing order
+     * @return the position after the window
+     */
+    private int getWindowEnd(int position) {
+	int end = Math.min(inputRecords.size(), position + planWindow);
+	if (order == null) {
+	    return end;
+	}
+	while (end < inputRecords.size() && sameMarker.get(end)) {
+	    end++;
+	}
+	return end;
+    }
 
-		    // if an appropriate allele cannot be found or created,
-		    // report the error and skip on to the next record
-		    if (alleleKey == null) {
-			String m = "Could not create allele: ";
-			m += constructed + "\n";
-			m += in + "\n";
-			logger.logdInfo(m, false);
-			continue;
-		    }
+    /**
+     * get the marker MGI ID of an input record, empty for a record that
+     * could not be read
+     */
+    private static String getGeneId(Object record) {
+	if (record instanceof KnockoutAlleleInput) {
+	    return ((KnockoutAlleleInput) record).getGeneId();
+	}
+	return "";
+    }
 
-		    KnockoutAllele lookedUpAllele = lookupAlleleByKey.lookup(alleleKey);
-		    if (lookedUpAllele == null)
-		    {   
-			// This is fatal.  We should not continue because
-			// the caches do not contain the correct set of
-			// alleles
-			String m = "Cannot find allele for allele key: " + 
-			    alleleKey + "\n";
-			logger.logcInfo(m, false);
-			m += " Check that the logicalDB ("+ cfg.getProjectLogicalDb() +
-			    ") is in the LookupAlleleByCellLine cache query";
-			logger.logdInfo(m, false);
-			throw new MGIException("Invalid configuration. Can't find allele when one certainly exists.");
-		    }
-		    associateCellLineToAllele(alleleKey, mclKey);
-		} // end if (esCell == null) 
+    /**
+     * Sort the input records by marker, project and parental cell line,
+     * with an external sort of one line per record, so the records of a
+     * marker are processed together. Records with the same keys keep
+     * their input order, and records that could not be read come first.
+     * 
+     * @assumes indexInputRecords() has been called
+     * @effects order holds the input positions in processing order, and
+     *          sameMarker the positions that continue a marker group
+     * @throws MGIException
+     *             thrown if the sort cannot write its temporary files
+     */
+    private void sortByMarker() throws MGIException {
+	String dir = cfg.getSortDir();
+	ExternalSort sort = new ExternalSort(cfg.getSortRecords(),
+	    dir.equals("") ? null : new File(dir));
+	StringBuffer line = new StringBuffer();
+	try {
+	    for (int i = 0; i < inputRecords.size(); i++) {
+		Object next = inputRecords.read(i, keyInterp);
+		line.setLength(0);
+		if (next instanceof KnockoutAlleleInput) {
+		    KnockoutAlleleInput in = (KnockoutAlleleInput) next;
+		    CopyIn.append(line, in.getGeneId(), true);
+		    CopyIn.append(line, in.getProjectId(), false);
+		    CopyIn.append(line, in.getParentCellLine(), false);
+		} else {
+		    CopyIn.append(line, "", true);
+		    CopyIn.append(line, "", false);
+		    CopyIn.append(line, "", false);
+		}
+		// Zero padded, so equal keys sort in input order
+		String position = Integer.toString(i);
+		line.append('\t');
+		for (int pad = position.length(); pad < 10; pad++) {
+		    line.append('0');
+		}
+		line.append(position);
+		sort.add(line.toString());
+	    }
 
-	    } // end of if (cfg.getUpdateOnlyMode()) else clause
-	} // end while (iter.hasNext())
-	
-	logger.logdInfo("Finished running Targeted allele load\n", true);
-    
-    } // end protected void run()
+	    order = new int[inputRecords.size()];
+	    sameMarker = new BitSet(order.length);
+	    int i = 0;
+	    String sorted;
+	    String lastGeneId = null;
+	    while ((sorted = sort.readLine()) != null) {
+		// The marker MGI ID is the first key
+		String geneId = sorted.substring(0, sorted.indexOf('\t'));
+		if (geneId.equals(lastGeneId)) {
+		    sameMarker.set(i);
+		}
+		lastGeneId = geneId;
+		order[i++] = Integer.parseInt(sorted.substring(sorted
+		    .lastIndexOf('\t') + 1));
+	    }
+	    logger.logdInfo("Sorted " + i + " input records by marker in "
+		+ Math.max(1, sort.getRuns()) + " runs\n", true);
+	} catch (IOException e) {
+	    throw new MGIException("Cannot sort the input records: "
+		+ e.getMessage());
+	} finally {
+	    sort.close();
+	}
+    }
+
+    /**
+     * Take the decision for a record from the replayed plan instead of
+     * checking it
+     * 
+     * @param c
+     *            the planned change of the record
+     * @return false if the replayed plan does not change the record
+     * @throws MGIException
+     *             thrown if the replayed plan is not for this input file
+     */
+    private boolean isReplayed(QcCase c) throws MGIException {
+	ChangePlan.PlannedChange planned = (ChangePlan.PlannedChange)
+	    replayPlan.get(new Integer(c.getPosition()));
+	if (planned == null) {
+	    return false;
+	}
+	String cellLine = c.getInput().getMutantCellLine();
+	if (!cellLine.equals(planned.getCellLine())) {
+	    throw new MGIException("The replayed plan has "
+		+ planned.getCellLine() + " for input record "
+		+ c.getPosition() + ", the input has " + cellLine);
+	}
+
+	int decision = planned.getDecision();
+	if (c.isCreate()) {
+	    // The cell line is created with the allele it is planned
+	    // with now
+	    if (decision != QcCase.CREATE_ALLELE
+		    && decision != QcCase.CREATE_CELLLINE) {
+		logger.logdInfo("Not replaying "
+		    + QcCase.getDecisionName(decision) + " for "
+		    + cellLine + ", the cell line does not exist\n", false);
+		return false;
+	    }
+	    return true;
+	}
+	if (decision == QcCase.CREATE_ALLELE
+		|| decision == QcCase.CREATE_CELLLINE) {
+	    logger.logdInfo("Not replaying "
+		+ QcCase.getDecisionName(decision) + " for " + cellLine
+		+ ", the cell line exists\n", false);
+	    return false;
+	}
+	c.setChanges(planned.isTypeChange(), planned.isGroupChange(),
+	    planned.isCreatorChange(), planned.isNumberChange());
+	c.setDecision(decision);
+	return true;
+    }
+
+    /**
+     * Find the allele of the project with the symbol of a constructed
+     * allele
+     * 
+     * @param constructed
+     *            the constructed allele
+     * @return the allele key, or null if the project has no such allele
+     * @throws MGIException
+     *             thrown if the lookup fails
+     */
+    private Integer findProjectAllele(KnockoutAllele constructed)
+	    throws MGIException {
+	Lock lock = alleleGraph.readLock();
+	lock.lock();
+	try {
+	    Map alleles = lookupAllelesByProjectId.lookup(constructed
+		.getProjectId());
+	    if (alleles == null) {
+		return null;
+	    }
+	    Map allele = (Map) alleles.get(constructed.getSymbol());
+	    if (allele == null) {
+		return null;
+	    }
+	    return (Integer) allele.get("key");
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Is the symbol of a constructed allele taken by another allele of its
+     * marker?
+     * 
+     * @param constructed
+     *            the constructed allele
+     * @param resolved
+     *            the resolved input record
+     * @return true if an allele of the marker has the symbol
+     * @throws MGIException
+     *             thrown if the lookup fails
+     */
+    private boolean isSymbolTaken(KnockoutAllele constructed,
+	    ResolvedRecord resolved) throws MGIException {
+	// The alleles of the marker and the alleles by key must agree
+	Lock lock = alleleGraph.readLock();
+	lock.lock();
+	try {
+	    Set keys = lookupAllelesByMarker.lookup(resolved.getMarker()
+		.getSymbol());
+	    if (keys == null) {
+		return false;
+	    }
+	    for (Iterator it = keys.iterator(); it.hasNext();) {
+		AlleleView a = lookupAlleleByKey.lookup((Integer) it.next());
+		if (a != null
+			&& a.getSymbol().equals(constructed.getSymbol())) {
+		    return true;
+		}
+	    }
+	    return false;
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Update the state of the load with what the window found out, then
+     * apply the planned changes of the window in input order
+     * 
+     * @param window
+     *            the planned window
+     * @throws MGIException
+     *             thrown if a change cannot be made
+     */
+    private void apply(PlannedWindow window) throws MGIException {
+
+	// Keep track of the projects and mutant cell lines we've already
+	// seen
+	databaseProjectIds.removeAll(window.projectIds);
+	databaseCellLines.removeAll(window.cellLines);
+	alreadyProcessed.addAll(window.processed);
+
+	for (Iterator it = window.counts.entrySet().iterator(); it.hasNext();) {
+	    Map.Entry entry = (Map.Entry) it.next();
+	    ((QualityControlStatistics.Counter) entry.getKey())
+		.add(((int[]) entry.getValue())[0]);
+	}
+
+	for (int i = 0; i < window.checked; i++) {
+	    if (numberChecked % 1000 == 0) {
+		String m = "Processed " + numberChecked + " " +
+		    "celllines (of " + numberOfCelllinesToCheck + ")\n";
+		logger.logdInfo(m, true);
+	    }
+	    numberChecked++;
+	}
+
+	for (Iterator it = window.referenceChecks.iterator(); it.hasNext();) {
+	    referenceNormalizer.check((AlleleView) it.next());
+	}
+
+	// Partitions in which a cell line was re-associated
+	Set dirty = new HashSet();
+
+	for (Iterator it = window.changes.iterator(); it.hasNext();) {
+	    QcCase c = (QcCase) it.next();
+	    if (c.isCreate()) {
+		createCellLine(c);
+		continue;
+	    }
+
+	    // A re-association changes the allele caches, so the later
+	    // cell lines of the marker are checked against the current
+	    // state of their allele
+	    if (dirty.contains(c.getPartition())) {
+		AlleleView current = lookupAlleleByKey.lookup(c.getExisting()
+		    .getKey());
+		if (current != null) {
+		    c.setExisting(current);
+		}
+		if (replayPlan == null) {
+		    c.reset();
+		}
+	    }
+	    if (!c.isEvaluated()) {
+		// The changes of all earlier records have been applied
+		evaluateQc(c, Collections.EMPTY_SET, Collections.EMPTY_SET);
+	    }
+	    applyQc(c);
+	    if (c.getDecision() == QcCase.REASSOCIATE) {
+		dirty.add(c.getPartition());
+	    }
+	}
+    }
+
+    /**
+     * Create a new cell line, and its allele if the project does not have
+     * an allele with the constructed symbol yet
+     * 
+     * @param c
+     *            the planned creation
+     * @throws MGIException
+     *             thrown if the created allele cannot be found in the
+     *             caches
+     */
+    private void createCellLine(QcCase c) throws MGIException {
+	ResolvedRecord resolved = c.getResolved();
+	KnockoutAlleleInput in = resolved.getInput();
+	KnockoutAllele constructed = c.getConstructed();
+
+	Integer mclKey = null;
+	try {
+	    mclKey = createMutantCellLine(resolved, false);
+	} catch (MGIException e) {
+	    badCellLineProcessing.increment();
+	    String m = "Could not create mutant cell line, "
+		+ "skipping record: " + in.getMutantCellLine()
+		+ "\n" + in + "\n";
+	    try {
+		// Just the first message of the exception needs
+		// to be reported
+		BufferedReader reader = new BufferedReader(
+				new StringReader(e.getMessage()));
+		m += reader.readLine();
+	    } catch (IOException e1) {
+		m = "Could not process "
+		    + in.getMutantCellLine()
+		    + " then something bad happened trying to report what happened.";
+	    }
+	    logger.logdInfo(m, false);
+	    return;
+	}
+
+	if (mclKey == null) {
+	    badCellLineProcessing.increment();
+	    String m = "Mutant cell line not created, "
+		+ "skipping record: " + in.getMutantCellLine()
+		+ "\n" + in + "\n";
+	    logger.logdInfo(m, false);
+	    return;
+	}
+
+	// Find or create the allele under the lock of the marker, the
+	// sequence number was assigned under the same lock
+	Integer alleleKey = null;
+	Lock markerLock = markerLocks.lock(resolved.getMarker().getKey());
+	try {
+	    // try to get the allele of this project identified by the
+	    // constructed symbol
+	    alleleKey = findProjectAllele(constructed);
+
+	    if (alleleKey == null && isSymbolTaken(constructed, resolved)) {
+		// Another allele of the marker was created with this
+		// symbol after the sequence number was assigned, assign it
+		// again. The group of the marker has been planned already.
+		constructed = processor.process(in, resolved);
+		c.setConstructed(constructed);
+		allelesRenumbered.increment();
+		alleleKey = findProjectAllele(constructed);
+	    }
+
+	    if (alleleKey == null) {
+		// did not find appropriate allele. create a new allele
+		createAllele(constructed, resolved);
+		alleleKey = constructed.getKey();
+	    }
+	} finally {
+	    markerLock.unlock();
+	}
+
+	// if an appropriate allele cannot be found or created,
+	// report the error and skip on to the next record
+	if (alleleKey == null) {
+	    String m = "Could not create allele: ";
+	    m += constructed + "\n";
+	    m += in + "\n";
+	    logger.logdInfo(m, false);
+	    return;
+	}
+
+	AlleleView lookedUpAllele = lookupAlleleByKey.lookup(alleleKey);
+	if (lookedUpAllele == null)
+	{   
+	    // This is fatal.  We should not continue because
+	    // the caches do not contain the correct set of
+	    // alleles
+	    String m = "Cannot find allele for allele key: " + 
+		alleleKey + "\n";
+	    logger.logcInfo(m, false);
+	    m += " Check that the logicalDB ("+ cfg.getProjectLogicalDb() +
+		") is in the LookupAlleleByCellLine cache query";
+	    logger.logdInfo(m, false);
+	    throw new MGIException("Invalid configuration. Can't find allele when one certainly exists.");
+	}
+	associateCellLineToAllele(alleleKey, mclKey);
+    }
+
+    /**
+     * Run the QC checks of an existing cell line and decide what has to
+     * change. Nothing is logged or written, so records of different
+     * markers can be checked at the same time
+     * 
+     * @param c
+     *            the record
+     * @param projects
+     *            keys of alleles whose project ID was updated by records
+     *            whose outcome has not been applied yet
+     * @param notes
+     *            keys of alleles whose note was updated by records whose
+     *            outcome has not been applied yet
+     */
+    private void evaluateQc(QcCase c, Set projects, Set notes) {
+	AlleleView existing = c.getExisting();
+	KnockoutAllele constructed = c.getConstructed();
+	MutantCellLine esCell = c.getEsCell();
+	ResolvedRecord resolved = c.getResolved();
+	Integer key = existing.getKey();
+
+	// Other cell lines of this allele already changed the project ID
+	// or note, this one has to go through the full checks
+	boolean projectUpdated = alleleProjects.get(key) != null
+	    || projects.contains(key);
+	boolean noteUpdated = alleleNotes.get(key) != null
+	    || notes.contains(key);
+
+	// Most cell lines have not changed at all. If the marker,
+	// project ID, symbol, derivation and note fingerprints all
+	// match none of the checks below can fire
+	if (!projectUpdated && !noteUpdated
+		&& isUnchanged(existing, constructed, esCell, resolved)) {
+	    c.setDecision(QcCase.UNCHANGED);
+	    return;
+	}
+
+	try {
+	    if (!isMatchingGene(existing, constructed)) {
+		// Check the allele to marker association, if it has
+		// changed, report to the log for manual curation.
+		c.setDecision(QcCase.MARKER_CHANGED);
+	    } else if (projectUpdated
+		    || (!existing.getProjectId().equals(
+			constructed.getProjectId())
+			&& !isTypeChange(existing, constructed)
+			&& !isGroupChange(existing, constructed)
+			&& !isCreatorChange(existing, constructed)
+			&& !isDerivationChange(esCell, resolved))) {
+		// We can only update the project ID once all cell lines
+		// for the allele have been verified to require the same
+		// change
+
+		// The extra "projectUpdated ||" check is to see if there
+		// are project IDs that have NOT changed from the original,
+		// when others have.
+
+		// The project ID changed, but the type, group, creator,
+		// derivation and marker didn't change, we can just try to
+		// update the allele project ID in place
+		c.setDecision(QcCase.PROJECT_UPDATE);
+	    } else if (!existing.getSymbol().equals(constructed.getSymbol())) {
+		// If the associated allele symbol has changed at all,
+		// then we need to change it and update the derivation
+
+		// Symbols don't match
+		// The marker didn't change (checked previously)
+		// so one of these attributes changed.
+		// 1- Parental cell line
+		// 2- Type
+		// 3- IKMC group
+		// 4- Creator
+		// 5- Vector
+		c.setChanges(isTypeChange(existing, constructed),
+		    isGroupChange(existing, constructed),
+		    isCreatorChange(existing, constructed),
+		    isNumberChange(existing, constructed));
+		c.setDecision(QcCase.REASSOCIATE);
+	    } else if (!esCell.getDerivationKey().equals(
+		    getDerivationKey(resolved))) {
+		// Check the derivation (this implicitly checks the
+		// parental cell line, the creator, the vector and the
+		// allele type)
+
+		// This QC check is a street sweeper. Derivation
+		// changes, by themselves, should not happen.
+		// If ONLY the derivation changed and nothing else
+		// (which was checked previously in the if-then)
+		// then we can go ahead and change the derivation
+		// association, but we will skip updating the note
+		// if it also changed.
+		c.setDecision(QcCase.DERIVATION_CHANGE);
+	    } else {
+		// Compare the note fields discounting any extra spaces
+		// that might have snuck in. The notes are only
+		// compared in full when the fingerprints match
+		boolean sameNote = existing.getNoteFingerprint() ==
+		    constructed.getNoteFingerprint()
+		    && Fingerprint.sameNote(existing.getNote(),
+			constructed.getNote());
+
+		// The extra "|| noteUpdated" check is to see if there are
+		// notes that have NOT changed from the original, when
+		// others have.
+		if (!sameNote || noteUpdated) {
+		    // If we get this far in the QC checks, then
+		    // we can be sure that the creator, the type,
+		    // the vector, and the parental cell line are all
+		    // the same. The only thing left that could have
+		    // changed are the coordinates
+		    c.setDecision(QcCase.NOTE_UPDATE);
+		} else {
+		    c.setDecision(QcCase.NONE);
+		}
+	    }
+	} catch (MGIException e) {
+	    c.setFailure(e);
+	}
+    }
+
+    /**
+     * Log, count and write the outcome of the QC checks of an existing
+     * cell line
+     * 
+     * @param c
+     *            the record, checked by evaluateQc()
+     */
+    private void applyQc(QcCase c) {
+	KnockoutAlleleInput in = c.getInput();
+	AlleleView existing = c.getExisting();
+	KnockoutAllele constructed = c.getConstructed();
+	MutantCellLine esCell = c.getEsCell();
+	ResolvedRecord resolved = c.getResolved();
+
+	if (c.getFailure() != null) {
+	    logger.logdInfo(c.getFailure().getMessage(), false);
+	}
+
+	try {
+	    switch (c.getDecision()) {
+	    case QcCase.MARKER_CHANGED:
+		logMarkerChanged(in, constructed, existing);
+		break;
+
+	    case QcCase.PROJECT_UPDATE:
+		if (alleleProjects.get(existing.getKey()) == null) {
+		    alleleProjects.put(existing.getKey(), new HashSet());
+		}
+
+		// Record the updated project ID for this allele symbol
+		Set projSet = (Set) alleleProjects.get(existing.getKey());
+		projSet.add(constructed.getProjectId());
+		alleleProjects.put(existing.getKey(), projSet);
+
+		// save the new project ID for this allele symbol
+		String m = existing.getSymbol() + "\t"
+		    + existing.getProjectId() + "\t"
+		    + constructed.getProjectId() + "\t"
+		    + in.getMutantCellLine();
+		alleleProjectIdUpdated.add(m);
+		break;
+
+	    case QcCase.REASSOCIATE:
+		if (c.isTypeChange()) {
+		    logTypeChange(in, constructed, existing);
+		}
+
+		if (c.isGroupChange()) {
+		    logGroupChange(in, constructed, existing);
+		}
+
+		if (c.isCreatorChange()) {
+		    logCreatorChange(in, constructed, existing);
+		}
+
+		if (c.isNumberChange()) {
+		    logNumberChange(in, constructed, existing);
+		}
+
+		// Re-associate the cell line to a new allele, under the lock
+		// of the marker its sequence number was assigned under
+		logAlleleChanged(resolved, constructed, esCell, existing);
+		Lock markerLock = markerLocks.lock(constructed.getMarkerKey());
+		try {
+		    changeMutantCellLineAssociation(resolved, esCell, existing,
+			constructed);
+		} finally {
+		    markerLock.unlock();
+		}
+		break;
+
+	    case QcCase.DERIVATION_CHANGE:
+		logDerivationChange(resolved, esCell, existing);
+		changeDerivationKey(getDerivationKey(resolved), esCell);
+		break;
+
+	    case QcCase.NOTE_UPDATE:
+		if (alleleNotes.get(existing.getKey()) == null) {
+		    alleleNotes.put(existing.getKey(), new HashSet());
+		}
+
+		// save the new molecular note for this allele symbol
+		Set notes = (Set) alleleNotes.get(existing.getKey());
+		notes.add(constructed.getNote());
+		alleleNotes.put(existing.getKey(), notes);
+		break;
+	    }
+	} catch (MGIException e) {
+	    logger.logdInfo(e.getMessage(), false);
+	}
+
+	// done with QC checks
+	passedQc.increment();
+    }
+
+    /**
+     * The update mode QC checks, as run by the QC engine
+     */
+    private class UpdateChecks implements QcEngine.Checks {
+
+	public boolean isIndependent(QcCase c) {
+	    // Finding a missing derivation can log
+	    return c.getResolved().getDerivationKey() != null;
+	}
+
+	public void evaluate(QcCase c, Set projects, Set notes) {
+	    evaluateQc(c, projects, notes);
+	}
+    }
 
     // Logging helper functions
     private void logMarkerChanged(KnockoutAlleleInput in,
-		    KnockoutAllele constructed, KnockoutAllele existing) {
+		    KnockoutAllele constructed, AlleleView existing) {
 	    String m = LOG_MARKER_CHANGED
 			    .replaceAll("~~INPUT_MCL~~", in.getMutantCellLine())
 			    .replaceAll("~~EXISTING_MARKER~~", existing.getSymbol())
 			    .replaceAll("~~INPUT_MARKER~~", constructed.getSymbol());
 
 	    logger.logcInfo(m, false);
-	    qcStats.record("SUMMARY", NUM_CELLINES_CHANGED_MARKER);
+	    cellLinesChangedMarker.increment();
     }
 
-    private void logDerivationChange(KnockoutAlleleInput in,
-	    MutantCellLine esCell, KnockoutAllele existing) throws MGIException {
+    private void logDerivationChange(ResolvedRecord resolved,
+	    MutantCellLine esCell, AlleleView existing) throws MGIException {
+	KnockoutAlleleInput in = resolved.getInput();
 	String m = LOG_CELLLINE_DERIVATION_CHANGED
 	    .replaceAll("~~INPUT_MCL~~", in.getMutantCellLine())
 	    .replaceAll("~~EXISTING_SYMBOL~~", existing.getSymbol())
 	    .replaceAll("~~EXISTING_DERIVATION~~",
 		esCell.getDerivationKey().toString())
 	    .replaceAll("~~INPUT_DERIVATION~~",
-		getDerivationKey(in).toString());
+		getDerivationKey(resolved).toString());
 	logger.logcInfo(m, false);
-	qcStats.record("SUMMARY", NUM_CELLLINES_CHANGED_DERIVATION);
+	cellLinesChangedDerivation.increment();
     }
 
-    private void logAlleleChanged(KnockoutAlleleInput in,
+    private void logAlleleChanged(ResolvedRecord resolved,
 	    KnockoutAllele constructed, MutantCellLine esCell,
-	    KnockoutAllele existing) throws MGIException {
+	    AlleleView existing) throws MGIException {
+	KnockoutAlleleInput in = resolved.getInput();
 	String m = LOG_CELLLINE_ALLELE_CHANGED
 	    .replaceAll("~~INPUT_MCL~~", in.getMutantCellLine())
 	    .replaceAll("~~EXISTING_SYMBOL~~", existing.getSymbol())
@@ -926,50 +1992,50 @@ public class TargetedAlleleLoad extends DLALoader {
 	    .replaceAll("~~EXISTING_DERIVATION~~",
 		esCell.getDerivationKey().toString())
 	    .replaceAll("~~INPUT_DERIVATION~~",
-		getDerivationKey(in).toString());
+		getDerivationKey(resolved).toString());
 	logger.logcInfo(m, false);
-	qcStats.record("SUMMARY", NUM_CELLLINES_CHANGED_DERIVATION);
-	qcStats.record("SUMMARY", NUM_CELLLINES_CHANGED_ALLELE);
+	cellLinesChangedDerivation.increment();
+	cellLinesChangedAllele.increment();
     }
 
     private void logNumberChange(KnockoutAlleleInput in,
-	    KnockoutAllele constructed, KnockoutAllele existing) {
+	    KnockoutAllele constructed, AlleleView existing) {
 	String m = LOG_CELLLINE_NUMBER_CHANGED
 	    .replaceAll("~~INPUT_MCL~~", in.getMutantCellLine())
 	    .replaceAll("~~EXISTING_SYMBOL~~", existing.getSymbol())
 	    .replaceAll("~~INPUT_SYMBOL~~", constructed.getSymbol());
 	logger.logcInfo(m, false);
-	qcStats.record("SUMMARY", NUM_CELLLINES_CHANGED_NUMBER);
+	cellLinesChangedNumber.increment();
     }
 
     private void logCreatorChange(KnockoutAlleleInput in,
-	    KnockoutAllele constructed, KnockoutAllele existing) {
+	    KnockoutAllele constructed, AlleleView existing) {
 	String m = LOG_CELLLINE_CREATOR_CHANGED
 	    .replaceAll("~~INPUT_MCL~~", in.getMutantCellLine())
 	    .replaceAll("~~EXISTING_SYMBOL~~", existing.getSymbol())
 	    .replaceAll("~~INPUT_SYMBOL~~", constructed.getSymbol());
 	logger.logcInfo(m, false);
-	qcStats.record("SUMMARY", NUM_CELLLINES_CHANGED_CREATOR);
+	cellLinesChangedCreator.increment();
     }
 
     private void logGroupChange(KnockoutAlleleInput in,
-	    KnockoutAllele constructed, KnockoutAllele existing) {
+	    KnockoutAllele constructed, AlleleView existing) {
 	String m = LOG_CELLLINE_GROUP_CHANGED
 	    .replaceAll("~~INPUT_MCL~~", in.getMutantCellLine())
 	    .replaceAll("~~EXISTING_SYMBOL~~", existing.getSymbol())
 	    .replaceAll("~~INPUT_SYMBOL~~", constructed.getSymbol());
 	logger.logcInfo(m, false);
-	qcStats.record("SUMMARY", NUM_CELLLINES_CHANGED_PIPELINE);
+	cellLinesChangedPipeline.increment();
     }
 
     private void logTypeChange(KnockoutAlleleInput in,
-	    KnockoutAllele constructed, KnockoutAllele existing) {
+	    KnockoutAllele constructed, AlleleView existing) {
 	String m = LOG_CELLLINE_TYPE_CHANGED
 	    .replaceAll("~~INPUT_MCL~~", in.getMutantCellLine())
 	    .replaceAll("~~EXISTING_SYMBOL~~", existing.getSymbol())
 	    .replaceAll("~~INPUT_SYMBOL~~", constructed.getSymbol());
 	logger.logcInfo(m, false);
-	qcStats.record("SUMMARY", NUM_CELLLINES_CHANGE_TYPE);
+	cellLinesChangedType.increment();
     }
 
     /**
@@ -987,7 +2053,7 @@ public class TargetedAlleleLoad extends DLALoader {
      * @param second
      * @return true if both alleles have the same creator, false otherwise
      */
-    private boolean isCreatorChange(KnockoutAllele first, KnockoutAllele second) {
+    private boolean isCreatorChange(AlleleView first, AlleleView second) {
 	Matcher regexMatcher;
 	String firstCreator;
 	String secondCreator;
@@ -1031,7 +2097,7 @@ public class TargetedAlleleLoad extends DLALoader {
      * @param second
      * @return true if both alleles have the same sequence, false otherwise
      */
-    private boolean isNumberChange(KnockoutAllele first, KnockoutAllele second) {
+    private boolean isNumberChange(AlleleView first, AlleleView second) {
 	Matcher regexMatcher;
 	String firstNumber;
 	String secondNumber;
@@ -1066,7 +2132,7 @@ public class TargetedAlleleLoad extends DLALoader {
      * @param allele
      * @return the type of allele passed in
      */
-    private String getAlleleType(KnockoutAllele allele) {
+    private String getAlleleType(AlleleView allele) {
 	Matcher regexMatcher;
 	String type;
 
@@ -1100,7 +2166,7 @@ public class TargetedAlleleLoad extends DLALoader {
      * @param second
      * @return true if both alleles have the same type, false otherwise
      */
-    private boolean isTypeChange(KnockoutAllele first, KnockoutAllele second) {
+    private boolean isTypeChange(AlleleView first, AlleleView second) {
 	String firstType = getAlleleType(first);
 	String secondType = getAlleleType(second);
 
@@ -1129,7 +2195,7 @@ public class TargetedAlleleLoad extends DLALoader {
      * @param second
      * @return true if different IKMC groups, false if same group
      */
-    private boolean isGroupChange(KnockoutAllele first, KnockoutAllele second) {
+    private boolean isGroupChange(AlleleView first, AlleleView second) {
 	String firstIkmcGroup;
 	String secondIkmcGroup;
 	Matcher regexMatcher;
@@ -1162,13 +2228,13 @@ public class TargetedAlleleLoad extends DLALoader {
      * MutantCellLine object
      * 
      * @param esCell
-     * @param in
+     * @param resolved
      * @return true if different derivation key, false if same
      */
     private boolean isDerivationChange(MutantCellLine esCell,
-	    KnockoutAlleleInput in) throws MGIException {
+	    ResolvedRecord resolved) throws MGIException {
 	Integer key = esCell.getDerivationKey();
-	Integer newKey = getDerivationKey(in);
+	Integer newKey = getDerivationKey(resolved);
 	if (key.equals(newKey)) {
 	    // is not different
 	    return false;
@@ -1177,6 +2243,42 @@ public class TargetedAlleleLoad extends DLALoader {
 	return true;
     }
 
+    /**
+     * Checks whether an existing cell line and its allele match the input
+     * record exactly, so no QC check can apply. The combined fingerprints
+     * are compared first and the attributes only on a fingerprint match
+     * 
+     * @param existing
+     *            the allele the cell line is associated with
+     * @param constructed
+     *            the allele constructed from the input record
+     * @param esCell
+     *            the existing cell line
+     * @param resolved
+     *            the keys resolved for the input record
+     * @return true if nothing changed, false otherwise
+     */
+    private boolean isUnchanged(AlleleView existing,
+	    KnockoutAllele constructed, MutantCellLine esCell,
+	    ResolvedRecord resolved) {
+	Integer derivationKey = resolved.getDerivationKey();
+	if (derivationKey == null) {
+	    return false;
+	}
+
+	if (existing.getFingerprint(esCell.getDerivationKey()) !=
+		constructed.getFingerprint(derivationKey)) {
+	    return false;
+	}
+
+	return isMatchingGene(existing, constructed)
+	    && existing.getProjectId() != null
+	    && existing.getProjectId().equals(constructed.getProjectId())
+	    && existing.getSymbol().equals(constructed.getSymbol())
+	    && derivationKey.equals(esCell.getDerivationKey())
+	    && Fingerprint.sameNote(existing.getNote(), constructed.getNote());
+    }
+
     /**
      * Checks if two KnockoutAllele objects belong to the same gene. The gene is
      * identified by gene_key
@@ -1185,7 +2287,7 @@ public class TargetedAlleleLoad extends DLALoader {
      * @param second
      * @return
      */
-    private boolean isMatchingGene(KnockoutAllele first, KnockoutAllele second) {
+    private boolean isMatchingGene(AlleleView first, AlleleView second) {
 	Integer existingGeneKey = first.getMarkerKey();
 	Integer constructedGeneKey = second.getMarkerKey();
 	if (existingGeneKey.equals(constructedGeneKey)) {
@@ -1194,98 +2296,85 @@ public class TargetedAlleleLoad extends DLALoader {
 	return false;
     }
 
-    private Integer getDerivationKey(KnockoutAlleleInput in)
+    /**
+     * Find the derivation of a record
+     * 
+     * @param resolved
+     *            the keys resolved for the record
+     * @return the derivation key
+     * @throws MGIException
+     *             thrown if the vector or the parental cell line is not
+     *             known, or the derivation does not exist
+     */
+    private Integer getDerivationKey(ResolvedRecord resolved)
 	    throws MGIException {
 
+	// The resolver already found the derivation if it exists
+	Integer derivationKey = resolved.getDerivationKey();
+	if (derivationKey != null) {
+	    return derivationKey;
+	}
+
 	// Find the derivation key for this ES Cell
 	// The correct derivation is found by combining:
 	// * cassette
 	// * parental cell line
 	// * mutation type
 	// * creator
+	KnockoutAlleleInput in = resolved.getInput();
 	String cassette = in.getCassette();
-	String parent = in.getParentCellLine();
-	String aType = in.getMutationType();
 
-	Integer vectorKey = lookupVectorKeyByTerm.lookup(cassette);
+	Integer vectorKey;
+	try {
+	    vectorKey = resolved.getVectorKey();
+	} catch (MGIException e) {
+	    throw new MGIException("Cannot find vector for cassette: "
+		+ cassette + ": " + e.getMessage());
+	}
 
 	if (vectorKey == null) {
 	    throw new MGIException("Cannot find vector for cassette: "
 		+ cassette);
 	}
 
-	Integer creatorKey = new Integer(cfg.getCreatorKey());
 	Integer parentKey;
 
 	try {
-	    parentKey = cfg.getParentalKey(parent);
+	    parentKey = resolved.getParentalKey();
 	} catch (ConfigException e) {
 	    String s = in.getParentCellLine();
 	    s += " Does not exist in CFG file! Skipping record";
 	    logger.logdInfo(s, true);
-	    qcStats.record("ERROR", NUM_DERIVATIONS_NOT_FOUND);
+	    derivationsNotFound.increment();
 	    throw new MGIException("Cannot find parental cell line key for "
 		+ in.getParentCellLine());
 	}
-	Integer typeKey = (Integer) Constants.ALLELE_TYPE_KEY;
 
-	String dCompoundKey = vectorKey.toString();
-	dCompoundKey += "|" + creatorKey.toString();
-	dCompoundKey += "|" + parentKey.toString();
-	dCompoundKey += "|" + typeKey.toString();
-
-	Integer derivationKey = derivationLookup.lookup(dCompoundKey);
+	derivationKey = resolver.lookupDerivationKey(vectorKey, parentKey);
 
 	if (derivationKey == null) {
-	    // CREATE THE NEW DERIVATION AND INSERT IT
-	    Derivation d = new Derivation();
-
-	    String creatorName = vocTermLookup.lookup(creatorKey);
-	    String typeName = vocTermLookup.lookup(typeKey);
-	    String parentName = cellLineNameLookupByKey.lookup(parentKey);
-	    String strainName = strainNameLookup
-		.lookup(lookupStrainKeyByCellLineKey.lookup(parentKey));
-
-	    // Derivation name is Creator+Type+Parental+Strain+Vector
-	    String name = creatorName + " " + typeName + " " + parentName + " "
-		+ strainName + " " + cassette;
-
-	    d.setName(name);
-	    d.setDescription(null);
-	    d.setVectorKey(vectorKey);
-	    d.setVectorTypeKey(new Integer(Constants.VECTOR_TYPE_KEY));
-	    d.setParentCellLineKey(parentKey);
-	    d.setDerivationTypeKey(typeKey);
-	    d.setCreatorKey(creatorKey);
-	    d.setRefsKey(null);
-
-	    // Inserting a new derivation automatically adds it to the
-	    // singleton derivation lookup cache
-	    d.insert(loadStream);
-
-	    derivationKey = d.getDerivationKey();
-
-	    String s = "Creating derivation for " + name;
-	    qcStats.record("WARNING", s);
-	    logger.logdInfo(s, true);
+	    // All derivations are created by createMissingDerivations()
+	    throw new MGIException("Cannot find derivation for: "
+		+ in.getMutantCellLine());
 	}
 
+	resolved.setDerivationKey(derivationKey);
 	return derivationKey;
     }
 
     private void changeDerivationKey(Integer newDerivationKey,
 	    MutantCellLine esCell) throws MGIException {
 	// Update the derivation key for this cell line
-	String query = "UPDATE ALL_Cellline SET ";
-	query += "_derivation_key = " + newDerivationKey;
-	query += " WHERE _cellline_key = " + esCell.getMCLKey();
-	executeQuery(query);
-	qcStats.record("WARNING", NUM_CELLLINES_CHANGED_DERIVATION);
+	executeQuery("UPDATE ALL_Cellline SET _derivation_key = ?"
+	    + " WHERE _cellline_key = ?",
+	    new Object[] { newDerivationKey, esCell.getMCLKey() });
+	derivationChangeWarnings.increment();
     }
 
-    private void changeMutantCellLineAssociation(KnockoutAlleleInput in,
-		MutantCellLine esCell, KnockoutAllele oldAllele,
+    private void changeMutantCellLineAssociation(ResolvedRecord resolved,
+		MutantCellLine esCell, AlleleView oldAllele,
 		KnockoutAllele newAllele) throws MGIException {
+	KnockoutAlleleInput in = resolved.getInput();
 
 	// Prevent the cell line from being moved to a different
 	// allele if the transmission has changed
@@ -1299,7 +2388,7 @@ public class TargetedAlleleLoad extends DLALoader {
 		.replaceAll("~~CONSTRUCTED_ALLELE~~", newAllele.getSymbol());
 
 	    logger.logcInfo(m, false);
-	    qcStats.record("SUMMARY", NUM_ALLELES_CHANGED_TRANS);
+	    allelesChangedTransmission.increment();
 	    return;
 	}
 
@@ -1330,17 +2419,13 @@ public class TargetedAlleleLoad extends DLALoader {
 
 	// Change the derivation _after_ the orphan is created...
 	// Changing the allele requires that the derivation key changes.
-	changeDerivationKey(getDerivationKey(in), esCell);
+	changeDerivationKey(getDerivationKey(resolved), esCell);
 
 	// Remove the association existing allele <-> cellline association
 	// from the database
-	String query = "DELETE FROM ALL_Allele_Cellline";
-	query += " WHERE _Allele_key = ";
-	query += oldAllele.getKey();
-	query += " AND _MutantCellLine_key = ";
-	query += esCell.getMCLKey();
-
-	executeQuery(query);
+	executeQuery("DELETE FROM ALL_Allele_Cellline"
+	    + " WHERE _Allele_key = ? AND _MutantCellLine_key = ?",
+	    new Object[] { oldAllele.getKey(), esCell.getMCLKey() });
 
 	// Lookup existing alleles for this project
 	String projectId = in.getProjectId();
@@ -1373,13 +2458,13 @@ public class TargetedAlleleLoad extends DLALoader {
 
 	// Turns out that the cellline didn't match any existing alleles,
 	// create a new allele and association the cellline
-	createAllele(newAllele, in, alleles);
+	createAllele(newAllele, resolved);
 	associateCellLineToAllele(newAllele.getKey(), esCell.getMCLKey());
 
 	// Guarantee that the ES cell logical DB is correct
 	updateAccessionLogicalDb(esCell);
 
-	qcStats.record("SUMMARY", NUM_CELLLINES_CHANGED_ALLELE);
+	cellLinesChangedAllele.increment();
 
     }
 
@@ -1387,19 +2472,16 @@ public class TargetedAlleleLoad extends DLALoader {
      * Update the allele status to approved (TR 10492)
      * 
      * @param allele
-     *            the allele to update. Must be a KnockoutAllele object
+     *            the allele to update
      * @throws ConfigException
      * @throws DBException
      */
-    private void setAlleleApproved(KnockoutAllele allele)
+    private void setAlleleApproved(AlleleView allele)
 	    throws ConfigException, DBException {
 
 	// Only update the status if it is not approved already
 	if (allele.getStatus().intValue() != Constants.ALLELE_STATUS_APPROVED) {
-	    String q = "UPDATE ALL_Allele SET _Allele_Status_key = "
-		+ Constants.ALLELE_STATUS_APPROVED
-		+ " WHERE _Allele_key = " + allele.getKey();
-	    executeQuery(q);
+	    setAlleleStatus(allele.getKey(), Constants.ALLELE_STATUS_APPROVED);
 	}
     }
 
@@ -1413,17 +2495,31 @@ public class TargetedAlleleLoad extends DLALoader {
      */
     private void updateAccessionLogicalDb(MutantCellLine esCell)
 	    throws ConfigException, DBException {
-	String query;
-	query = "UPDATE ACC_Accession SET _LogicalDB_key = ";
-	query += cfg.getEsCellLogicalDb();
-	query += " WHERE _object_key = " + esCell.getMCLKey();
-	query += " AND _MGIType_key = " + Constants.ESCELL_MGITYPE_KEY;
-	query += " AND accID = '" + esCell.getCellLine() + "'";
-
-	executeQuery(query);
+	executeQuery("UPDATE ACC_Accession SET _LogicalDB_key = ?"
+	    + " WHERE _object_key = ? AND _MGIType_key = ? AND accID = ?",
+	    new Object[] { cfg.getEsCellLogicalDb(), esCell.getMCLKey(),
+		new Integer(Constants.ESCELL_MGITYPE_KEY), esCell.getCellLine() });
+    }
+
+    /**
+     * Update the allele status. Approving and deleting share one statement
+     * shape so that the batched updates of an allele stay in order.
+     * 
+     * @param alleleKey
+     *            the allele to update
+     * @param statusKey
+     *            the new allele status
+     * @throws ConfigException
+     * @throws DBException
+     */
+    private void setAlleleStatus(Integer alleleKey, int statusKey)
+	    throws ConfigException, DBException {
+	executeQuery("UPDATE ALL_Allele SET _Allele_Status_key = ?"
+	    + " WHERE _Allele_key = ?",
+	    new Object[] { new Integer(statusKey), alleleKey });
     }
 
-    private void createOrphanMCL(MutantCellLine esCell, KnockoutAllele oldAllele)
+    private void createOrphanMCL(MutantCellLine esCell, AlleleView oldAllele)
 	    throws MGIException {
 	// Create the mutant cell line
 	MutantCellLine mcl = new MutantCellLine();
@@ -1442,20 +2538,17 @@ public class TargetedAlleleLoad extends DLALoader {
 	associateCellLineToAllele(oldAllele.getKey(), mclDAO.getKey().getKey());
 
 	// Set the old allele to deleted status
-	String query = "UPDATE ALL_Allele SET _Allele_Status_key = "
-	    + Constants.ALLELE_STATUS_DELETED + " WHERE _Allele_key = "
-	    + oldAllele.getKey();
-
-	executeQuery(query);
+	setAlleleStatus(oldAllele.getKey(), Constants.ALLELE_STATUS_DELETED);
 
-	qcStats.record("WARNING", NUM_ORPHANED_ALLELES);
+	orphanedAlleles.increment();
 	logger.logcInfo("Orphaned allele " + oldAllele.getSymbol() + "\n",
 	    false);
     }
 
-    private Integer createMutantCellLine(KnockoutAlleleInput in, boolean orphan)
-	    throws MGIException {
-	Integer derivationKey = getDerivationKey(in);
+    private Integer createMutantCellLine(ResolvedRecord resolved,
+	    boolean orphan) throws MGIException {
+	KnockoutAlleleInput in = resolved.getInput();
+	Integer derivationKey = getDerivationKey(resolved);
 
 	// Create the mutant cell line
 	MutantCellLine mcl = new MutantCellLine();
@@ -1465,12 +2558,7 @@ public class TargetedAlleleLoad extends DLALoader {
 	mcl.setIsMutant(new Boolean(true));
 
 	// Get the stain key of the parental cell line
-	Integer parentalCellLineKey = cfg
-	    .getParentalKey(in.getParentCellLine());
-	String strainName = parentStrainLookupByParentKey
-	    .lookup(parentalCellLineKey);
-	Integer strainKey = strainKeyLookup.lookup(strainName);
-	mcl.setStrainKey(strainKey);
+	mcl.setStrainKey(resolved.getStrainKey());
 
 	mcl.setCreationDate(currentTime);
 	mcl.setModificationDate(currentTime);
@@ -1485,7 +2573,7 @@ public class TargetedAlleleLoad extends DLALoader {
 	// cell line if it is not an orphan MCL
 	if (!orphan) {
 	    // Add the recently created cell line to the cache
-	    lookupMutantCelllineByName.addToCache(in.getMutantCellLine(), mcl);
+	    alleleGraph.addCellLine(in.getMutantCellLine(), mcl);
 
 	    // Create the MutantCellLine Accession object
 	    // note the missing AccID parameter which indicates this is
@@ -1499,7 +2587,7 @@ public class TargetedAlleleLoad extends DLALoader {
 	    );
 	    mclAccId.insert(loadStream);
 
-	    qcStats.record("SUMMARY", NUM_CELLLINES_CREATED);
+	    cellLinesCreated.increment();
 	}
 
 	return mclDAO.getKey().getKey();
@@ -1516,7 +2604,7 @@ public class TargetedAlleleLoad extends DLALoader {
 	    loadStream.insert(aclDAO);
 
 	    // Update the allele status
-    KnockoutAllele lookedUpAllele = lookupAlleleByKey.lookup(alleleKey);
+    AlleleView lookedUpAllele = lookupAlleleByKey.lookup(alleleKey);
     if (lookedUpAllele == null)
     {   
 	    String m = "Cannot find allele for allele key: " + 
@@ -1531,7 +2619,9 @@ public class TargetedAlleleLoad extends DLALoader {
     }
 
     private KnockoutAllele createAllele(KnockoutAllele constructed,
-	    KnockoutAlleleInput in, Map alleles) throws MGIException {
+	    ResolvedRecord resolved) throws MGIException {
+	KnockoutAlleleInput in = resolved.getInput();
+
 	// Persist the constructed allele
 	constructed.insert(loadStream);
 
@@ -1544,33 +2634,14 @@ public class TargetedAlleleLoad extends DLALoader {
 	mcls.add(in.getMutantCellLine());
 	allele.put("mutantCellLines", mcls);
 	allele.put("parentCellLine", in.getParentCellLine());
-	allele.put("parentCellLineKey",
-			cfg.getParentalKey(in.getParentCellLine()));
-
-	if (alleles == null) {
-	    alleles = new HashMap();
-	}
-
-	// Include the new allele in the cached allelesByProjectID map
-	alleles.put(constructed.getSymbol(), allele);
-	lookupAllelesByProjectId.addToCache(in.getProjectId(), alleles);
-
-	// add the newly created allele to the allele cache
-	lookupAlleleByKey.addToCache(constructed.getKey(), constructed);
-
-	// add the newly created allele to the alleleByMarker cache
-	Marker mrk = lookupMarkerByMGIID.lookup(in.getGeneId());
-	String markerSymbol = mrk.getSymbol();
+	allele.put("parentCellLineKey", resolved.getParentalKey());
 
-	Set alleleSet = null;
-	alleleSet = lookupAllelesByMarker.lookup(markerSymbol);
-	if (alleleSet == null) {
-	    alleleSet = new HashSet();
-	}
-	alleleSet.add(constructed.getKey());
-	lookupAllelesByMarker.addToCache(markerSymbol, alleleSet);
+	// Add the newly created allele to the allele, alleleByMarker and
+	// allelesByProjectID caches in one step
+	alleleGraph.addAllele(in.getProjectId(), allele, constructed.toView(),
+		resolved.getMarker().getSymbol());
 
-	qcStats.record("SUMMARY", NUM_ALLELES_CREATED);
+	allelesCreated.increment();
 
 	return constructed;
     }
@@ -1591,13 +2662,21 @@ public class TargetedAlleleLoad extends DLALoader {
 
 	// After processing ALL the input records, there is now enough
 	// data to determine if the allele level attributes can be changed.
+	// The changes are staged and applied as one statement per attribute.
+	StagingTable projectUpdates = new StagingTable("tal_project_update",
+	    new String[] { "_Allele_key", "oldProjectId", "newProjectId" },
+	    new String[] { "int", "text", "text" });
+	StagingTable noteDeletes = new StagingTable("tal_note_delete",
+	    new String[] { "_Allele_key", "_Note_key" },
+	    new String[] { "int", "int" });
+
 	if (alleleProjects.size() > 0) {
 	    // These alleles need to have their project ID updated
 	    Iterator projectIt = alleleProjects.entrySet().iterator();
 	    while (projectIt.hasNext()) {
 		Map.Entry entry = (Map.Entry) projectIt.next();
 		Integer key = (Integer) entry.getKey();
-		KnockoutAllele existing = lookupAlleleByKey.lookup(key);
+		AlleleView existing = lookupAlleleByKey.lookup(key);
 
 		List projects = new ArrayList((Set) entry.getValue());
 
@@ -1610,14 +2689,8 @@ public class TargetedAlleleLoad extends DLALoader {
 
 		    String newProjectId = (String) projects.get(0);
 
-		    String query = "UPDATE ACC_Accession" + " SET accID = '"
-			+ newProjectId + "'" + " WHERE _Object_key = "
-			+ existing.getKey() + " AND _LogicalDB_key = "
-			+ cfg.getProjectLogicalDb()
-			+ " AND _MGIType_key = "
-			+ Constants.ALLELE_MGI_TYPE + " AND accID = '"
-			+ existing.getProjectId() + "'";
-		    executeQuery(query);
+		    projectUpdates.add(new Object[] { existing.getKey(),
+			existing.getProjectId(), newProjectId });
 		}
 	    }
 	}
@@ -1628,7 +2701,7 @@ public class TargetedAlleleLoad extends DLALoader {
 	    while (noteIt.hasNext()) {
 		Map.Entry entry = (Map.Entry) noteIt.next();
 		Integer key = (Integer) entry.getKey();
-		KnockoutAllele a = lookupAlleleByKey.lookup(key);
+		AlleleView a = lookupAlleleByKey.lookup(key);
 		List notes = new ArrayList((Set) entry.getValue());
 
 		if (notes.size() != 1) {
@@ -1646,19 +2719,30 @@ public class TargetedAlleleLoad extends DLALoader {
 		    // If a note exists
 		    // Delete the existing note
 		    if (a.getNoteKey() != null) {
-			String query = "DELETE FROM MGI_Note WHERE ";
-			query += "_Note_key = ";
-			query += a.getNoteKey();
-
-			executeQuery(query);
+			noteDeletes.add(new Object[] { a.getKey(),
+			    a.getNoteKey() });
 		    }
 		    // Attach the new note to the existing allele
-		    a.updateNote(loadStream, (String) notes.get(0));
-		    qcStats.record("SUMMARY", NUM_ALLELES_NOTE_CHANGE);
+		    new KnockoutAllele(a).updateNote(loadStream,
+			(String) notes.get(0));
+		    allelesNoteChanged.increment();
 		}
 	    }
 	}
 
+	statements.applyStaged(projectUpdates,
+	    "UPDATE ACC_Accession a SET accID = s.newProjectId"
+		+ " FROM tal_project_update s"
+		+ " WHERE a._Object_key = s._Allele_key"
+		+ " AND a._LogicalDB_key = ? AND a._MGIType_key = ?"
+		+ " AND a.accID = s.oldProjectId",
+	    new Object[] { cfg.getProjectLogicalDb(),
+		new Integer(Constants.ALLELE_MGI_TYPE) });
+	statements.applyStaged(noteDeletes,
+	    "DELETE FROM MGI_Note n USING tal_note_delete s"
+		+ " WHERE n._Note_key = s._Note_key",
+	    new Object[0]);
+
 	// LOG THE RESULTS OF THE LOAD
 
 	TreeMap qc = null;
@@ -1711,7 +2795,12 @@ public class TargetedAlleleLoad extends DLALoader {
 	    }
 	}
 
-	if (databaseCellLines.size() > 0 || databaseProjectIds.size() > 0
+	// The cell lines only in MGI are counted by the reconciliation
+	// when it is used
+	int numDatabaseCellLines = reconciler == null ? databaseCellLines
+	    .size() : reconciler.getCount(CellLineReconciler.DATABASE_ONLY);
+
+	if (numDatabaseCellLines > 0 || databaseProjectIds.size() > 0
 		|| alleleProjectIdUpdated.size() > 0) {
 	    logger.logdInfo(
 		"Number of project IDs that exist in the MGI database, but not in file: "
@@ -1722,10 +2811,10 @@ public class TargetedAlleleLoad extends DLALoader {
 
 	    logger.logdInfo(
 		"Number of celllines that exist in the MGI database, but not in file: "
-		    + databaseCellLines.size(), false);
+		    + numDatabaseCellLines, false);
 	    logger.logpInfo(
 		"Number of celllines that exist in the MGI database, but not in file: "
-		    + databaseCellLines.size(), false);
+		    + numDatabaseCellLines, false);
 
 	    logger.logdInfo("Number of alleles that changed project IDs: "
 		+ alleleProjectIdUpdated.size(), false);
@@ -1736,22 +2825,42 @@ public class TargetedAlleleLoad extends DLALoader {
 	    logger.logcInfo("\nANOMALIES", false);
 	}
 
-	if (databaseCellLines.size() > 0) {
+	if (numDatabaseCellLines > 0) {
 	    logger.logdInfo(
 		"\nCelllines that exist in the MGI database, but not in the input file: "
-		    + databaseCellLines.size(), false);
+		    + numDatabaseCellLines, false);
 	    logger.logcInfo(
 		"\nCelllines that exist in the MGI database, but not in the input file: "
-		    + databaseCellLines.size(), false);
+		    + numDatabaseCellLines, false);
 
 	    logger.logdInfo("\nAllele\tExisting Project\tES Cell Line", false);
 	    logger.logcInfo("\nAllele\tExisting Project\tES Cell Line", false);
+	}
 
+	if (reconciler != null) {
+	    // Streamed from the reconciliation, sorted by cell line
+	    try {
+		BufferedReader reader = reconciler.openDatabaseOnly();
+		try {
+		    String lbl;
+		    while ((lbl = reader.readLine()) != null) {
+			logger.logdInfo(lbl, false);
+			logger.logcInfo(lbl, false);
+		    }
+		} finally {
+		    reader.close();
+		}
+	    } catch (IOException e) {
+		throw new MGIException("Cannot read the cell lines only in MGI: "
+		    + e.getMessage());
+	    }
+	    reconciler.close();
+	} else if (databaseCellLines.size() > 0) {
 	    iterator = databaseCellLines.iterator();
 	    Set s = new TreeSet();
 	    while (iterator.hasNext()) {
 		String label = (String) iterator.next();
-		KnockoutAllele a = lookupAlleleByCellLine.lookup(label);
+		AlleleView a = lookupAlleleByCellLine.lookup(label);
 		if (a != null) {
 		    s.add(a.getSymbol() + "\t" + a.getProjectId() + "\t"
 					+ label.toUpperCase());					
@@ -1826,13 +2935,36 @@ public class TargetedAlleleLoad extends DLALoader {
 	logger.logdInfo("\n", false);
 	logger.logcInfo("\n", false);
 
+	// Run the remaining batched statements and commit them before the
+	// database writer is closed. Statements held for a pipelined COPY
+	// stream are run with its last batch instead
+	int numStatements = statements.commit();
+
+	// Wait for the background BCP writers to finish their files
+	if (asyncBcpStream != null) {
+	    asyncBcpStream.closeWriters();
+	}
+
 	// Close the database writer
 	loadStream.close();
+	statements.close();
+	logger.logdInfo("Batched statements run: "
+	    + (numStatements + statements.getHeldExecuted()), false);
+
+	// Return the unused keys to the table sequences
+	keyAllocator.commit();
 
 	// If any new MGI IDs have been generated during processing, the
 	// ACC_AccessionMax table needs to be updated with the new maximum
 	// value.
-	AccessionLib.commitAccessionMax();
+	AccessionAllocator.getInstance().commit();
+
+	// The load is complete, a later run starts from the beginning
+	if (checkpointFile != null) {
+	    checkpointFile.delete();
+	}
+
+	dbExecutor.close();
 
 	logger.logdInfo("Finished postprocessing Targeted allele load\n", true);
 
@@ -1841,15 +2973,10 @@ public class TargetedAlleleLoad extends DLALoader {
     }
 
     // Helper function to log queries when run in debug mode
-    // otherwise execute the query.
-    private void executeQuery(String query) throws ConfigException, DBException {
-	if (cfg.getPreventBcpExecute()) {
-	    logger.logdInfo("SQL prevented by CFG. Would have run: " + query,
-				false);
-	} else {
-	    logger.logdInfo("Ran: " + query, false);
-	    sqlDBMgr.executeUpdate(query);
-	}
+    // otherwise add the query to the batched statements.
+    private void executeQuery(String query, Object[] params)
+	    throws ConfigException, DBException {
+	statements.add(query, params);
     }
 
 }
@@ -0,0 +1,202 @@
+package org.jax.mgi.app.targetedalleleload.lookups;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.jax.mgi.app.targetedalleleload.AlleleView;
+import org.jax.mgi.app.targetedalleleload.Derivation;
+import org.jax.mgi.app.targetedalleleload.MutantCellLine;
+import org.jax.mgi.shr.exception.MGIException;
+
+/**
+ * @is The in-memory graph of the alleles, cell lines, projects, markers and
+ *     derivations of the load, made of the caches of the lookups
+ * @has <UL>
+ *      <LI>the alleles by key, by marker, by project ID and by mutant cell
+ *      line, and their J numbers
+ *      <LI>the mutant cell lines by name
+ *      <LI>the derivations by vector, creator, parental cell line and type
+ *      <LI>a read-write lock guarding changes to the caches
+ *      </UL>
+ * @does <UL>
+ *       <LI>Publishes the changes that span several caches atomically: a
+ *       new allele is added to the allele by key, alleles by marker and
+ *       alleles by project ID caches under one write lock, so a reader
+ *       holding the read lock sees the allele in all of them or in none
+ *       <LI>Publishes the allele by key first, so a reader that finds the
+ *       key of a new allele in another cache can always look it up, even
+ *       without the read lock
+ *       <LI>Never changes a set or map that was handed out by a lookup, a
+ *       changed value is a copy that replaces the cached one. The caches
+ *       themselves are concurrent maps, so a single lookup needs no lock.
+ *       <LI>New mutant cell lines and derivations are added through the
+ *       graph as well, under the same write lock
+ *       <LI>The lookups take the write lock when a single cache is changed
+ *       through addToCache
+ *       <LI>A reader that looks an allele up in one cache and follows it
+ *       into another holds the read lock for the whole read
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+public class AlleleGraph {
+
+	private static AlleleGraph _instance;
+
+	private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * get the graph, creating it on first use
+	 *
+	 * @return the graph
+	 */
+	public static synchronized AlleleGraph getInstance() {
+		if (_instance == null) {
+			_instance = new AlleleGraph();
+		}
+		return _instance;
+	}
+
+	/**
+	 * This implements the singleton pattern, so the constructor is private
+	 * and can only be called by the class method "getInstance"
+	 */
+	private AlleleGraph() {
+	}
+
+	/**
+	 * Get the lock to hold while reading several caches that must agree
+	 * with each other
+	 *
+	 * @return the read lock
+	 */
+	public Lock readLock() {
+		return lock.readLock();
+	}
+
+	/**
+	 * Get the lock held while a cache is changed
+	 *
+	 * @return the write lock
+	 */
+	Lock writeLock() {
+		return lock.writeLock();
+	}
+
+	/**
+	 * Add a new allele to the allele by key, alleles by marker and alleles
+	 * by project ID caches in one step
+	 *
+	 * @param projectId
+	 *            the project ID of the allele
+	 * @param allele
+	 *            the allele details cached by project ID: the project ID,
+	 *            key, symbol, mutant cell lines, parental cell line and
+	 *            parental cell line key
+	 * @param view
+	 *            the allele cached by key
+	 * @param markerSymbol
+	 *            the symbol of the marker of the allele
+	 * @throws MGIException
+	 *             thrown if a cache cannot be read or changed
+	 */
+	public void addAllele(String projectId, Map allele, AlleleView view,
+			String markerSymbol) throws MGIException {
+		LookupAlleleByKey byKey = LookupAlleleByKey.getInstance();
+		LookupAllelesByMarker byMarker = LookupAllelesByMarker.getInstance();
+		LookupAllelesByProjectId byProject = LookupAllelesByProjectId
+				.getInstance();
+
+		lock.writeLock().lock();
+		try {
+			byKey.addToCache(view.getKey(), view);
+
+			HashSet alleleSet = byMarker.lookup(markerSymbol);
+			alleleSet = alleleSet == null ? new HashSet() : new HashSet(
+					alleleSet);
+			alleleSet.add(view.getKey());
+			byMarker.addToCache(markerSymbol, alleleSet);
+
+			Map alleles = byProject.lookup(projectId);
+			alleles = alleles == null ? new HashMap() : new HashMap(alleles);
+			alleles.put(allele.get("symbol"), allele);
+			byProject.addToCache(projectId, alleles);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Replace the J numbers of an allele in the J numbers by allele key and
+	 * allele by key caches in one step
+	 *
+	 * @param jnumbers
+	 *            all the J numbers of the allele
+	 * @param view
+	 *            the allele with those J numbers
+	 * @throws MGIException
+	 *             thrown if a cache cannot be changed
+	 */
+	public void setReferences(String[] jnumbers, AlleleView view)
+			throws MGIException {
+		LookupJNumbersByAlleleKey byAllele = LookupJNumbersByAlleleKey
+				.getInstance();
+		LookupAlleleByKey byKey = LookupAlleleByKey.getInstance();
+
+		lock.writeLock().lock();
+		try {
+			byAllele.addToCache(view.getKey(), jnumbers);
+			byKey.addToCache(view.getKey(), view);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Add a new mutant cell line to the mutant cell line by name cache
+	 *
+	 * @param name
+	 *            the mutant cell line name
+	 * @param mcl
+	 *            the mutant cell line
+	 * @throws MGIException
+	 *             thrown if the cache cannot be changed
+	 */
+	public void addCellLine(String name, MutantCellLine mcl)
+			throws MGIException {
+		LookupMutantCelllineByName byName = LookupMutantCelllineByName
+				.getInstance();
+
+		lock.writeLock().lock();
+		try {
+			byName.addToCache(name, mcl);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Add a new derivation to the derivation by vector, creator, parental
+	 * cell line and type cache
+	 *
+	 * @param d
+	 *            the derivation, with its key
+	 * @throws MGIException
+	 *             thrown if the cache cannot be changed
+	 */
+	public void addDerivation(Derivation d) throws MGIException {
+		LookupDerivationByVectorCreatorParentType byKeys =
+				LookupDerivationByVectorCreatorParentType.getInstance();
+
+		lock.writeLock().lock();
+		try {
+			byKeys.addToCache(d);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+}
@@ -3,8 +3,12 @@ package org.jax.mgi.app.targetedalleleload.lookups;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
 
-import org.jax.mgi.app.targetedalleleload.KnockoutAllele;
+import org.jax.mgi.app.targetedalleleload.AlleleView;
+import org.jax.mgi.app.targetedalleleload.Marker;
 import org.jax.mgi.dbs.SchemaConstants;
 import org.jax.mgi.shr.cache.CacheException;
 import org.jax.mgi.shr.cache.FullCachedLookup;
@@ -41,6 +45,15 @@ extends FullCachedLookup
 	private static LookupMarkerByMGIID lookupMarkerByMGIID;
 	private static DLALogger logger;
 
+	// The allele key range of the init query run by initCache
+	private String firstRange = "";
+
+	// Hands the row groups of initCache to the worker threads, while it runs
+	private ParallelGroupInterpreter workers = null;
+
+	// Why alleles were left out of the cache, logged once it is initialized
+	private ConcurrentLinkedQueue skipped = new ConcurrentLinkedQueue();
+
     public static LookupAlleleByCellLine getInstance() 
     throws MGIException 
     {
@@ -77,7 +90,34 @@ extends FullCachedLookup
 
 		logger = DLALogger.getInstance();
 		//logger.setDebug(true);
-		this.initCache();
+
+		// The rows of the cache are interpreted on several threads, which
+		// only read the caches of the other lookups. The J numbers are
+		// all cached already, the markers of the alleles are cached here.
+		String provider = new TargetedAlleleLoadCfg().getProviderLabcode();
+		lookupMarkerByMGIID.prefetchByMarkerKey("SELECT a._Marker_key "
+				+ "FROM ALL_Allele a WHERE a.symbol like '%tm%" + provider
+				+ ">'");
+
+		PartitionedInit init = new PartitionedInit("a._Allele_key",
+				"SELECT min(_Allele_key), max(_Allele_key) FROM ALL_Allele");
+		firstRange = init.getFirstRange();
+		init.start(new PartitionedInit.Query() {
+			public String getQuery(String range) {
+				return getInitQuery(range);
+			}
+		}, getRowDataInterpreter());
+		workers = ParallelGroupInterpreter.wrap(getRowDataInterpreter());
+		this.initCache(new ConcurrentHashMap());
+		if (workers != null) {
+			workers.merge(cache);
+			workers = null;
+		}
+		init.merge(cache);
+		for (Iterator it = skipped.iterator(); it.hasNext();) {
+			logger.logdInfo((String) it.next(), true);
+		}
+		skipped.clear();
 		//this.setDebug(true);
 	}
 
@@ -92,10 +132,10 @@ extends FullCachedLookup
 	 * @throws CacheException
 	 *             thrown if there is an error accessing the configuration
 	 */
-	public KnockoutAllele lookup(String name) 
+	public AlleleView lookup(String name) 
 	throws DBException, CacheException 
 	{
-		return (KnockoutAllele) super.lookupNullsOk(name);
+		return (AlleleView) super.lookupNullsOk(name);
 	}
 
 
@@ -113,11 +153,17 @@ extends FullCachedLookup
 	 * @throws CacheException
 	 *             thrown if there is an error with the cache
 	 */
-	protected void addToCache(String cellLine, KnockoutAllele koAllele)
+	protected void addToCache(String cellLine, AlleleView koAllele)
 	throws DBException, CacheException 
 	{
-		// Replace the current value if it exists
-		super.cache.put(cellLine.toLowerCase(), koAllele);
+		Lock lock = AlleleGraph.getInstance().writeLock();
+		lock.lock();
+		try {
+			// Replace the current value if it exists
+			super.cache.put(cellLine.toLowerCase(), koAllele);
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -139,6 +185,18 @@ extends FullCachedLookup
 	 * @return the initialization query
 	 */
 	public String getFullInitQuery() 
+	{
+	    return getInitQuery(firstRange);
+	}
+
+	/**
+	 * the initialization query restricted to a range of allele keys
+	 * 
+	 * @param range
+	 *            the condition on a._Allele_key, empty for all alleles
+	 * @return the initialization query
+	 */
+	private String getInitQuery(String range) 
 	{
 	    TargetedAlleleLoadCfg cfg;
 	    String provider;
@@ -186,6 +244,7 @@ extends FullCachedLookup
 		"and acc2._Object_key = a._Allele_key " +
 		"and acc2._LogicalDB_key in (125,126,138,143,166) " +
 		"and acc2._MGIType_key=11 " +
+		range +
 		"order by alleleKey, cellLine" ;
 	}
 
@@ -197,75 +256,52 @@ extends FullCachedLookup
 	 */
 	public RowDataInterpreter getRowDataInterpreter() 
 	{
+		// The groups of the init query are interpreted by the workers
+		if (workers != null) {
+			return workers;
+		}
 		class Interpreter 
 		implements MultiRowInterpreter 
 		{
+			// The rows are interpreted on the threads reading the key
+			// ranges and on the worker threads, so only the caches of
+			// the other lookups are read and nothing is logged here
+
 			public Object interpret(RowReference ref) 
 			throws DBException 
 			{
-				logger.logdDebug(
-						"LookupAlleleByCellLine, RowDataInterpreter.interpret\n", 
-						true);
 				return new RowData(ref);
 			}
 
 			public Object interpretKey(RowReference row) 
 			throws DBException 
 			{
-				logger.logdDebug(
-						"LookupAlleleByCellLine, RowDataInterpreter.interpretKey\n", 
-						true);
 				return row.getString("cellLine");
 			}
 
 			public Object interpretRows(Vector v) {
-				logger.logdDebug(
-						"LookupAlleleByCellLine, RowDataInterpreter.interpretRows\n", 
-						true);
 				RowData rd = (RowData) v.get(0);
 
-				String completeNote = "";
-
-				KnockoutAllele koAllele = null;
+				String[] jNumbers = lookupJNumbersByAlleleKey
+						.lookupCached(rd.alleleKey);
 
-				try {
-					koAllele = new KnockoutAllele();
-				} catch (MGIException e) {
-					logger.logdInfo(e.getMessage(), true);
+				// If the marker can't be found then this allele is BAD,
+				// report it and skip
+				Marker marker = lookupMarkerByMGIID.lookupCached(rd.geneMgiid);
+				if (marker == null) {
+					skipped.add("Cannot find marker " + rd.geneMgiid
+							+ " of allele " + rd.alleleSymbol + ", cell line "
+							+ rd.cellLine + " is not cached");
 					return null;
 				}
 
-				koAllele.setName(rd.alleleName);
-				koAllele.setSymbol(rd.alleleSymbol);
-				koAllele.setKey(rd.alleleKey);
-				koAllele.setTypeKey(rd.alleleType);
-				koAllele.setTransmissionKey(rd.alleleTrans);
-				koAllele.setProjectId(rd.projectId);
-				koAllele.setNote(rd.alleleNote);
-				koAllele.setNoteKey(rd.alleleNoteKey);
-				koAllele.setNoteModifiedByKey(rd.alleleNoteModifiedBy);
-
-				// Lookup the jnumbers, if we can't find any
-				// then this allele is BAD, report the exception
-				// and skip
-				try {
-					koAllele.setJNumbers(lookupJNumbersByAlleleKey
-							.lookup(rd.alleleKey));
-				} catch (MGIException e) {
-					logger.logdInfo(e.getMessage(), true);
-					return null;
-				}
-
-				try {
-					koAllele.setMarkerKey(lookupMarkerByMGIID.lookup(
-							rd.geneMgiid).getKey());
-				} catch (MGIException e) {
-					logger.logdInfo(e.getMessage(), true);
-					return null;
-				}
-				logger.logdDebug(
-						"LookupAlleleByCellLine, new entry: \n"+koAllele, 
-						true);
+				// Cached alleles are read-only views, the writer
+				// machinery is only created when an allele changes
+				AlleleView koAllele = new AlleleView(rd.alleleKey,
+						marker.getKey(), rd.alleleType, rd.alleleTrans,
+						rd.alleleSymbol, rd.alleleName, rd.projectId,
+						rd.alleleNote, rd.alleleNoteKey,
+						rd.alleleNoteModifiedBy, jNumbers);
 
 				return new KeyValue(rd.cellLine, koAllele);
 			}
@@ -296,10 +332,6 @@ extends FullCachedLookup
 		public RowData(RowReference row) 
 		throws DBException 
 		{
-			logger.logdDebug(
-					"LookupAlleleByCellLine, RowData.constructor\n", 
-					true);
-
 			alleleKey = row.getInt("alleleKey");
 			projectId = row.getString("projectId");
 			alleleType = row.getInt("alleleType");
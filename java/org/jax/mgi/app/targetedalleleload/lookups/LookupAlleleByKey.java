@@ -1,11 +1,12 @@
 package org.jax.mgi.app.targetedalleleload.lookups;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 
-import org.jax.mgi.app.targetedalleleload.KnockoutAllele;
+import org.jax.mgi.app.targetedalleleload.AlleleView;
 import org.jax.mgi.shr.cache.CacheException;
 import org.jax.mgi.shr.config.ConfigException;
 import org.jax.mgi.shr.dbutils.DBException;
@@ -31,7 +32,7 @@ public class LookupAlleleByKey
 
         private static LookupAlleleByKey _instance;
         private static DLALogger logger;
-        private Map cache = new HashMap();
+        private Map cache = new ConcurrentHashMap();
 
 
         // No args get instance instantiates it's own 
@@ -68,7 +69,7 @@ public class LookupAlleleByKey
     		Set celllines = lookupAlleleByCellline.getKeySet();
         	Iterator it = celllines.iterator();
         	String cellline;
-    		KnockoutAllele ka;
+    		AlleleView ka;
 
     		while (it.hasNext())
         	{
@@ -113,10 +114,10 @@ public class LookupAlleleByKey
          * @throws CacheException
          * thrown if there is an error accessing the configuration
          */
-        public KnockoutAllele lookup(Integer alleleKey) 
+        public AlleleView lookup(Integer alleleKey) 
         throws DBException,CacheException 
         {
-                return (KnockoutAllele) cache.get(alleleKey);
+                return (AlleleView) cache.get(alleleKey);
         }
 
         /**
@@ -134,11 +135,17 @@ public class LookupAlleleByKey
          * @throws CacheException
          * thrown if there is an error with the cache
          */
-        public void addToCache(Integer alleleKey, KnockoutAllele koAllele)
+        public void addToCache(Integer alleleKey, AlleleView koAllele)
         throws DBException, CacheException 
         {
-                // Replace the current value if it exists
-                cache.put(alleleKey, koAllele);
+                Lock lock = AlleleGraph.getInstance().writeLock();
+                lock.lock();
+                try {
+                        // Replace the current value if it exists
+                        cache.put(alleleKey, koAllele);
+                } finally {
+                        lock.unlock();
+                }
         }
 
 
@@ -1,10 +1,12 @@
 package org.jax.mgi.app.targetedalleleload.lookups;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 
 import org.jax.mgi.dbs.SchemaConstants;
 import org.jax.mgi.shr.cache.CacheException;
@@ -40,13 +42,16 @@ extends FullCachedLookup
 	private static DLALogger logger;
 
 	// provide a static cache so that all instances share one cache
-	private static HashMap cache = new HashMap();
+	private static Map cache = new ConcurrentHashMap();
 
 	// indicator of whether or not the cache has been initialized
 	private static boolean hasBeenInitialized = false;
 
 	private TargetedAlleleLoadCfg cfg = null;
 
+	// Hands the row groups of initCache to the worker threads, while it runs
+	private ParallelGroupInterpreter workers = null;
+
 	public static LookupAllelesByMarker getInstance() 
 	throws MGIException 
 	{
@@ -75,7 +80,12 @@ extends FullCachedLookup
 		// since cache is static make sure you do not reinit
 		if (!hasBeenInitialized) {
 			cfg = new TargetedAlleleLoadCfg();
+			workers = ParallelGroupInterpreter.wrap(getRowDataInterpreter());
 			initCache(cache);
+			if (workers != null) {
+				workers.merge(cache);
+				workers = null;
+			}
 			hasBeenInitialized = true;
 		}
 
@@ -157,8 +167,14 @@ extends FullCachedLookup
 	public void addToCache(String symbol, Set alleles) 
 	throws DBException, CacheException 
 	{
-		// Replace the current value if it exists
-		super.cache.put(symbol.toLowerCase(), alleles);
+		Lock lock = AlleleGraph.getInstance().writeLock();
+		lock.lock();
+		try {
+			// Replace the current value if it exists
+			super.cache.put(symbol, alleles);
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -169,6 +185,10 @@ extends FullCachedLookup
 	 */
 	public RowDataInterpreter getRowDataInterpreter() 
 	{
+		// The groups of the init query are interpreted by the workers
+		if (workers != null) {
+			return workers;
+		}
 		class Interpreter 
 		implements MultiRowInterpreter 
 		{
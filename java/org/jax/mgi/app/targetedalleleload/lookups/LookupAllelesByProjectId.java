@@ -7,6 +7,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 
 import org.jax.mgi.dbs.SchemaConstants;
 import org.jax.mgi.shr.cache.CacheException;
@@ -43,6 +45,9 @@ extends FullCachedLookup
 
 	private static LookupAllelesByProjectId _instance;
 
+	// Hands the row groups of initCache to the worker threads, while it runs
+	private ParallelGroupInterpreter workers = null;
+
 	/**
 	 * If the lookup has not been initialized, initialize it and return,
 	 * otherwise just return the previously initialized instance.
@@ -80,7 +85,12 @@ extends FullCachedLookup
 		}
 
 		this.logicalDb = cfg.getProjectLogicalDb();
-		initCache(cache);
+		workers = ParallelGroupInterpreter.wrap(getRowDataInterpreter());
+		initCache(new ConcurrentHashMap());
+		if (workers != null) {
+			workers.merge(cache);
+			workers = null;
+		}
 	}
 
 	/**
@@ -152,8 +162,14 @@ extends FullCachedLookup
 	public void addToCache(String projectId, Map alleleMap)
 	throws DBException, CacheException 
 	{
-		// Replace the current value if it exists
-		cache.put(projectId.toLowerCase(), alleleMap);
+		Lock lock = AlleleGraph.getInstance().writeLock();
+		lock.lock();
+		try {
+			// Replace the current value if it exists
+			cache.put(projectId.toLowerCase(), alleleMap);
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -164,6 +180,10 @@ extends FullCachedLookup
 	 */
 	public RowDataInterpreter getRowDataInterpreter() 
 	{
+		// The groups of the init query are interpreted by the workers
+		if (workers != null) {
+			return workers;
+		}
 		class Interpreter 
 		implements MultiRowInterpreter 
 		{
@@ -176,50 +196,47 @@ extends FullCachedLookup
 			public Object interpretKey(RowReference row) 
 			throws DBException 
 			{
-				String key = row.getString("projectid") + ","
-						+ row.getString("symbol") + ","
-						+ row.getString("parentCellLine");
-				return key;
+				return row.getString("projectid");
 			}
 
+			/**
+			 * build the alleles of a project. The rows of an allele are
+			 * the consecutive rows with the same symbol and parental cell
+			 * line; a later allele with the same symbol replaces an
+			 * earlier one. A project is built from its own rows only, so
+			 * projects can be built at the same time.
+			 */
 			public Object interpretRows(Vector v) 
 			{
 				RowData rd = (RowData) v.get(0);
 				String projectId = rd.projectId;
-				String symbol = rd.symbol;
-				Map alleles = null;
-
-				try {
-					alleles = lookup(projectId);
-				} catch (Exception e) {
-					logger.logdInfo(e.toString(), false);
-				}
+				Map alleles = new HashMap();
 
-				if (alleles == null) {
-					alleles = new HashMap();
-				}
+				String group = null;
+				List mcls = null;
 
-				Map allele = new HashMap();
+				for (Iterator it = v.iterator(); it.hasNext();) {
+					rd = (RowData) it.next();
 
-				// Create the allele with all the data from this row
-				allele.put("projectid", rd.projectId);
-				allele.put("key", rd.key);
-				allele.put("symbol", symbol);
-				allele.put("parentCellLine", rd.parentCellLine);
-				allele.put("parentCellLineKey", rd.parentCellLineKey);
+					if (!rd.group.equals(group)) {
+						group = rd.group;
+						mcls = new ArrayList();
 
-				List mcls = new ArrayList();
+						// Create the allele with all the data from this row
+						Map allele = new HashMap();
+						allele.put("projectid", rd.projectId);
+						allele.put("key", rd.key);
+						allele.put("symbol", rd.symbol);
+						allele.put("parentCellLine", rd.parentCellLine);
+						allele.put("parentCellLineKey", rd.parentCellLineKey);
+						allele.put("mutantCellLines", mcls);
 
-				for (Iterator it = v.iterator(); it.hasNext();) {
-					rd = (RowData) it.next();
+						// add the new allele to the map
+						alleles.put(rd.symbol, allele);
+					}
 					mcls.add(rd.mutantCellLine);
 				}
 
-				allele.put("mutantCellLines", mcls);
-
-				// add the new allele to the map
-				alleles.put(symbol, allele);
-
 				return new KeyValue(projectId, alleles);
 			}
 		}
@@ -238,6 +255,7 @@ extends FullCachedLookup
 		protected String mutantCellLine;
 		protected String parentCellLine;
 		protected Integer parentCellLineKey;
+		protected String group;
 
 		public RowData(RowReference row) 
 		throws DBException 
@@ -247,6 +265,7 @@ extends FullCachedLookup
 			key = row.getInt("allelekey");
 			mutantCellLine = row.getString("mutantCellLine");
 			parentCellLineKey = row.getInt("parentCellLine_key");
+			group = symbol + "," + row.getString("parentCellLine");
 
 			// do the same transform to the cell line name that
 			// is done to the input record cell line name
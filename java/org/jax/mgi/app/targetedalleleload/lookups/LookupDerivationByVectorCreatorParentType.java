@@ -1,5 +1,8 @@
 package org.jax.mgi.app.targetedalleleload.lookups;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
 import org.jax.mgi.app.targetedalleleload.Derivation;
 import org.jax.mgi.dbs.SchemaConstants;
 import org.jax.mgi.shr.cache.CacheException;
@@ -54,7 +57,7 @@ extends FullCachedLookup
 	throws ConfigException, DBException, CacheException
 	{
 		super(SQLDataManagerFactory.getShared(SchemaConstants.MGD));
-		initCache(cache);
+		initCache(new ConcurrentHashMap());
 	}
 
 	/**
@@ -112,7 +115,13 @@ extends FullCachedLookup
 		value += "|" + d.getParentCellLineKey();
 		value += "|" + d.getDerivationTypeKey();
 
-		super.cache.put(value, d.getDerivationKey());
+		Lock lock = AlleleGraph.getInstance().writeLock();
+		lock.lock();
+		try {
+			super.cache.put(value, d.getDerivationKey());
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 
 import org.jax.mgi.dbs.SchemaConstants;
 import org.jax.mgi.shr.cache.CacheException;
@@ -38,6 +40,12 @@ extends FullCachedLookup
 	private static LookupJNumbersByAlleleKey _instance;
     private static DLALogger logger;
 
+	// The allele key range of the init query run by initCache
+	private String firstRange = "";
+
+	// Hands the row groups of initCache to the worker threads, while it runs
+	private ParallelGroupInterpreter workers = null;
+
 	public static LookupJNumbersByAlleleKey getInstance() 
 	throws MGIException 
 	{
@@ -64,7 +72,22 @@ extends FullCachedLookup
 	throws MGIException 
 	{
 		super(SQLDataManagerFactory.getShared(SchemaConstants.MGD));
-		initCache(cache);
+		PartitionedInit init = new PartitionedInit("mra._Object_key",
+				"SELECT min(_Object_key), max(_Object_key) "
+						+ "FROM MGI_Reference_Assoc WHERE _MGIType_key = 11");
+		firstRange = init.getFirstRange();
+		init.start(new PartitionedInit.Query() {
+			public String getQuery(String range) {
+				return getInitQuery(range);
+			}
+		}, getRowDataInterpreter());
+		workers = ParallelGroupInterpreter.wrap(getRowDataInterpreter());
+		initCache(new ConcurrentHashMap());
+		if (workers != null) {
+			workers.merge(cache);
+			workers = null;
+		}
+		init.merge(cache);
 	}
 
 	/**
@@ -87,6 +110,21 @@ extends FullCachedLookup
 		return (String[]) super.lookupNullsOk(key);
 	}
 
+	/**
+	 * look up the jnumbers of an allele in the cache only. The cache is
+	 * fully initialized when the lookup is created, so this never queries
+	 * the database and can be called from several threads at once.
+	 * 
+	 * @param key
+	 *            the allele key to lookup
+	 * @return the J numbers associated to this allele, or null if there
+	 *         are none
+	 */
+	public String[] lookupCached(Integer key) 
+	{
+		return (String[]) cache.get(key);
+	}
+
 	/**
 	 * add a new allele to the cache
 	 * 
@@ -105,8 +143,14 @@ extends FullCachedLookup
 	public void addToCache(Integer alleleKey, String[] jnumbers)
 	throws DBException, CacheException 
 	{
-		// Replace the current value if it exists
-		cache.put(alleleKey, jnumbers);
+		Lock lock = AlleleGraph.getInstance().writeLock();
+		lock.lock();
+		try {
+			// Replace the current value if it exists
+			cache.put(alleleKey, jnumbers);
+		} finally {
+			lock.unlock();
+		}
 	}
 
 
@@ -117,6 +161,18 @@ extends FullCachedLookup
 	 * @return the initialization query
 	 */
 	public String getFullInitQuery() 
+	{
+		return getInitQuery(firstRange);
+	}
+
+	/**
+	 * the initialization query restricted to a range of allele keys
+	 * 
+	 * @param range
+	 *            the condition on mra._Object_key, empty for all alleles
+	 * @return the initialization query
+	 */
+	private String getInitQuery(String range) 
 	{
 			return "SELECT distinct jnumid, " +
 				"mra._object_key as _allele_key " + 
@@ -129,6 +185,7 @@ extends FullCachedLookup
 				"AND acc2._Object_key = mra._Object_key " + 
 				"AND acc2._LogicalDB_key in (125,126,138,143,166) " +
 				"AND acc2._MGIType_key=11 " +
+				range +
 				"ORDER BY mra._object_key " ;
 	}
 
@@ -141,6 +198,10 @@ extends FullCachedLookup
 	 */
 	public RowDataInterpreter getRowDataInterpreter()
 	{
+		// The groups of the init query are interpreted by the workers
+		if (workers != null) {
+			return workers;
+		}
 		class Interpreter 
 		implements MultiRowInterpreter 
 		{
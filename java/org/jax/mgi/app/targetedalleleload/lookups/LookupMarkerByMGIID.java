@@ -1,5 +1,11 @@
 package org.jax.mgi.app.targetedalleleload.lookups;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.jax.mgi.app.targetedalleleload.DbExecutor;
 import org.jax.mgi.app.targetedalleleload.Marker;
 import org.jax.mgi.dbs.SchemaConstants;
 import org.jax.mgi.shr.cache.CacheException;
@@ -8,8 +14,10 @@ import org.jax.mgi.shr.cache.KeyValue;
 import org.jax.mgi.shr.cache.LazyCachedLookup;
 import org.jax.mgi.shr.config.ConfigException;
 import org.jax.mgi.shr.dbutils.DBException;
+import org.jax.mgi.shr.dbutils.ResultsNavigator;
 import org.jax.mgi.shr.dbutils.RowDataInterpreter;
 import org.jax.mgi.shr.dbutils.RowReference;
+import org.jax.mgi.shr.dbutils.SQLDataManager;
 import org.jax.mgi.shr.dbutils.SQLDataManagerFactory;
 import org.jax.mgi.shr.exception.MGIException;
 
@@ -74,6 +82,136 @@ extends LazyCachedLookup
 		return (Marker) super.lookupNullsOk(mgiid);
 	}
 
+	/**
+	 * look up a marker in the cache only, without querying the database
+	 * for an MGI ID that is not cached. Nothing is added to the cache, so
+	 * this can be called from several threads at once while nothing else
+	 * adds to it.
+	 * 
+	 * @param mgiid
+	 *            the primary MGI ID of the marker
+	 * @return the cached marker, or null if it is not cached
+	 */
+	public Marker lookupCached(String mgiid) 
+	{
+		return (Marker) cache.get(mgiid);
+	}
+
+	/**
+	 * Look up the markers of the MGI IDs that are not cached yet with
+	 * concurrent queries, instead of one query per lookup, and cache them.
+	 * An ID without a marker is not cached and is queried again when it is
+	 * looked up.
+	 * 
+	 * @param mgiids
+	 *            the primary MGI IDs of the markers
+	 * @throws MGIException
+	 *             thrown if a query fails
+	 */
+	public void prefetch(Collection mgiids) 
+	throws MGIException 
+	{
+		final RowDataInterpreter interpreter = getRowDataInterpreter();
+		List calls = new ArrayList();
+		for (Iterator it = mgiids.iterator(); it.hasNext();) {
+			final String mgiid = (String) it.next();
+			if (cache.containsKey(mgiid)) {
+				continue;
+			}
+			calls.add(new DbExecutor.Call() {
+				public Object call(SQLDataManager dbMgr) 
+				throws Exception 
+				{
+					ResultsNavigator rn = dbMgr.executeQuery(getAddQuery(mgiid));
+					try {
+						if (!rn.next()) {
+							return null;
+						}
+						return interpreter.interpret(rn.getRowReference());
+					} finally {
+						rn.close();
+					}
+				}
+			});
+		}
+		if (calls.isEmpty()) {
+			return;
+		}
+
+		List found = DbExecutor.getInstance().invokeAll(calls);
+		for (Iterator it = found.iterator(); it.hasNext();) {
+			KeyValue kv = (KeyValue) it.next();
+			if (kv != null) {
+				addToCache((String) kv.key, (Marker) kv.value);
+			}
+		}
+	}
+
+	/**
+	 * Look up the markers with the keys a query selects with one query,
+	 * instead of one query per marker, and cache them
+	 * 
+	 * @param markerKeys
+	 *            a query of marker keys
+	 * @throws MGIException
+	 *             thrown if the query fails
+	 */
+	public void prefetchByMarkerKey(String markerKeys) 
+	throws MGIException 
+	{
+		final RowDataInterpreter interpreter = getRowDataInterpreter();
+		final String sql = getQuery("AND a2._Object_key IN (" + markerKeys
+				+ ") ");
+		List found;
+		try {
+			found = (List) DbExecutor.getInstance().run(new DbExecutor.Call() {
+				public Object call(SQLDataManager dbMgr) 
+				throws Exception 
+				{
+					List markers = new ArrayList();
+					ResultsNavigator rn = dbMgr.executeQuery(sql);
+					try {
+						while (rn.next()) {
+							markers.add(interpreter.interpret(rn
+									.getRowReference()));
+						}
+					} finally {
+						rn.close();
+					}
+					return markers;
+				}
+			});
+		} catch (MGIException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MGIException("Cannot look up markers: "
+					+ e.getMessage());
+		}
+		for (Iterator it = found.iterator(); it.hasNext();) {
+			KeyValue kv = (KeyValue) it.next();
+			addToCache((String) kv.key, (Marker) kv.value);
+		}
+	}
+
+	/**
+	 * Add a marker to the cache
+	 * 
+	 * @param mgiid
+	 *            the primary MGI ID of the marker
+	 * @param marker
+	 *            the marker
+	 * @throws DBException
+	 *             thrown if there is an error with the database
+	 * @throws CacheException
+	 *             thrown if there is an error with the cache
+	 */
+	public void addToCache(String mgiid, Marker marker)
+	throws DBException, CacheException 
+	{
+		// Replace the current value if it exists
+		cache.put(mgiid, marker);
+	}
+
 	/**
 	 * get the query for fully initializing the cache mouse markers annotated to
 	 * MGI ID
@@ -97,12 +235,24 @@ extends LazyCachedLookup
     public String getAddQuery(Object addObject)
     {
     	String MGIID = (String)addObject;
+    	return getQuery("AND a2.accId = '" + MGIID + "' ");
+    }
+
+    /**
+     * the marker query restricted by a condition
+     * 
+     * @param condition the condition on the accession, starting with AND
+     * 
+     * @return the query string
+     */
+    private String getQuery(String condition)
+    {
     	return "SELECT a2.accID as mgiid, a2._Object_key as markerKey, " +
 		"m.symbol, m.chromosome , " +
     		"m._marker_status_key as statusKey " +
 		"FROM ACC_Accession a2, MRK_Marker m " +
 		"WHERE a2._MGIType_key = 2 " + 
-		"AND a2.accId = '" + MGIID + "' " +
+		condition +
 		"AND a2._LogicalDB_key = 1 " +
 		"AND a2.preferred = 1 " +
 		"AND a2.prefixPart = 'MGI:' " +
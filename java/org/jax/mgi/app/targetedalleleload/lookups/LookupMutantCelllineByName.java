@@ -1,5 +1,8 @@
 package org.jax.mgi.app.targetedalleleload.lookups;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
 import org.jax.mgi.app.targetedalleleload.MutantCellLine;
 import org.jax.mgi.dbs.SchemaConstants;
 import org.jax.mgi.shr.cache.CacheException;
@@ -29,6 +32,21 @@ public class LookupMutantCelllineByName
 extends FullCachedLookup 
 {
 
+	// Singleton pattern implementation
+	private static LookupMutantCelllineByName _instance;
+
+	// The cell line key range of the init query run by initCache
+	private String firstRange = "";
+
+	public static synchronized LookupMutantCelllineByName getInstance()
+	throws MGIException 
+	{
+		if (_instance == null) {
+			_instance = new LookupMutantCelllineByName();
+		}
+		return _instance;
+	}
+
 	/**
 	 * constructor
 	 * 
@@ -38,12 +56,24 @@ extends FullCachedLookup
 	 *             thrown if there is an error accessing the db
 	 * @throws ConfigException
 	 *             thrown if there is an error accessing the configuration file
+	 * @throws MGIException
+	 *             thrown if a key range cannot be read
 	 */
-	public LookupMutantCelllineByName()
-	throws CacheException, DBException, ConfigException 
+	private LookupMutantCelllineByName()
+	throws MGIException 
 	{
 		super(SQLDataManagerFactory.getShared(SchemaConstants.MGD));
-		initCache(cache);
+		PartitionedInit init = new PartitionedInit("c._CellLine_key",
+				"SELECT min(_CellLine_key), max(_CellLine_key) "
+						+ "FROM ALL_CellLine");
+		firstRange = init.getFirstRange();
+		init.start(new PartitionedInit.Query() {
+			public String getQuery(String range) {
+				return getInitQuery(range);
+			}
+		}, getRowDataInterpreter());
+		initCache(new ConcurrentHashMap());
+		init.merge(cache);
 	}
 
 	/**
@@ -74,6 +104,17 @@ extends FullCachedLookup
 	 * @return the full initialization query
 	 */
 	public String getFullInitQuery() {
+		return getInitQuery(firstRange);
+	}
+
+	/**
+	 * the initialization query restricted to a range of cell line keys
+	 * 
+	 * @param range
+	 *            the condition on c._CellLine_key, empty for all cell lines
+	 * @return the initialization query
+	 */
+	private String getInitQuery(String range) {
 
 		return "SELECT a.accID, a._logicalDB_key, ldb.name as ldbName, " +
 				"c._CellLine_key, c.cellLine, c._CellLine_Type_key, " +
@@ -90,7 +131,8 @@ extends FullCachedLookup
 				"AND c._CellLine_Type_key = v._Term_key " +
 				"AND c._Strain_key = s._Strain_key " +
 				"AND c._Derivation_key is not null " +
-				"AND a._LogicalDB_Key in (108,109,137,142,165)" ;
+				"AND a._LogicalDB_Key in (108,109,137,142,165)" +
+				range ;
 	}
 
 	/**
@@ -111,8 +153,14 @@ extends FullCachedLookup
 	public void addToCache(String accId, MutantCellLine mcl)
 	throws DBException, CacheException 
 	{
-		// Replace the current value if it exists
-		super.cache.put(accId.toLowerCase(), mcl);
+		Lock lock = AlleleGraph.getInstance().writeLock();
+		lock.lock();
+		try {
+			// Replace the current value if it exists
+			super.cache.put(accId.toLowerCase(), mcl);
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -4,7 +4,7 @@ import java.util.Iterator;
 import java.util.Set;
 import java.util.Vector;
 
-import org.jax.mgi.app.targetedalleleload.KnockoutAllele;
+import org.jax.mgi.app.targetedalleleload.AlleleView;
 import org.jax.mgi.dbs.SchemaConstants;
 import org.jax.mgi.shr.cache.CacheException;
 import org.jax.mgi.shr.cache.FullCachedLookup;
@@ -81,10 +81,10 @@ extends FullCachedLookup
 	 * @throws DBException thrown if there is an error accessing the database
 	 * @throws CacheException thrown if there is an error accessing the configuration
 	 */
-	public KnockoutAllele lookup(Integer key) 
+	public AlleleView lookup(Integer key) 
 	throws DBException, CacheException 
 	{
-		return (KnockoutAllele) super.lookupNullsOk(key);
+		return (AlleleView) super.lookupNullsOk(key);
 	}
 
 
@@ -101,7 +101,7 @@ extends FullCachedLookup
 	 * @throws CacheException
 	 *             thrown if there is an error with the cache
 	 */
-	protected void addToCache(Integer key, KnockoutAllele koAllele)
+	protected void addToCache(Integer key, AlleleView koAllele)
 	throws DBException, CacheException 
 	{
 		// Replace the current value if it exists
@@ -208,44 +208,36 @@ extends FullCachedLookup
 
 				String completeNote = "";
 
-				KnockoutAllele koAllele = null;
-
-				try {
-					koAllele = new KnockoutAllele();
-				} catch (MGIException e) {
-					logger.logdInfo(e.getMessage(), true);
-					return null;
-				}
-
-				koAllele.setName(rd.alleleName);
-				koAllele.setSymbol(rd.alleleSymbol);
-				koAllele.setKey(rd.alleleKey);
-				koAllele.setTypeKey(rd.alleleType);
-				koAllele.setTransmissionKey(rd.alleleTrans);
-				koAllele.setProjectId(rd.projectId);
-				koAllele.setNote(rd.alleleNote);
-				koAllele.setNoteKey(rd.alleleNoteKey);
-				koAllele.setNoteModifiedByKey(rd.alleleNoteModifiedBy);
+				String[] jNumbers = null;
+				Integer markerKey = null;
 
 				// Lookup the jnumber in the database, if we can't find
 				// any there, this allele is BAD, report the exception
 				// and skip
 				try {
-					koAllele.setJNumbers(lookupJNumbersByAlleleKey
-							.lookup(rd.alleleKey));
+					jNumbers = lookupJNumbersByAlleleKey
+							.lookup(rd.alleleKey);
 				} catch (MGIException e) {
 					logger.logdInfo(e.getMessage(), true);
 					return null;
 				}
 
 				try {
-					koAllele.setMarkerKey(lookupMarkerByMGIID.lookup(
-							rd.geneMgiid).getKey());
+					markerKey = lookupMarkerByMGIID.lookup(
+							rd.geneMgiid).getKey();
 				} catch (MGIException e) {
 					logger.logdInfo(e.getMessage(), true);
 					return null;
 				}
 
+				// Cached alleles are read-only views, the writer
+				// machinery is only created when an allele changes
+				AlleleView koAllele = new AlleleView(rd.alleleKey,
+						markerKey, rd.alleleType, rd.alleleTrans,
+						rd.alleleSymbol, rd.alleleName, rd.projectId,
+						rd.alleleNote, rd.alleleNoteKey,
+						rd.alleleNoteModifiedBy, jNumbers);
+
 				return new KeyValue(rd.alleleKey, koAllele);
 			}
 		}
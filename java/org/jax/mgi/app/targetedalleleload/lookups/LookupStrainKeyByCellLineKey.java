@@ -1,6 +1,7 @@
 package org.jax.mgi.app.targetedalleleload.lookups;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jax.mgi.dbs.SchemaConstants;
 import org.jax.mgi.shr.cache.CacheException;
@@ -11,6 +12,7 @@ import org.jax.mgi.shr.dbutils.DBException;
 import org.jax.mgi.shr.dbutils.RowDataInterpreter;
 import org.jax.mgi.shr.dbutils.RowReference;
 import org.jax.mgi.shr.dbutils.SQLDataManagerFactory;
+import org.jax.mgi.shr.exception.MGIException;
 
 /**
  * @is a FullCachedLookup for caching cell line strain keys by their 
@@ -28,11 +30,14 @@ extends FullCachedLookup
 {
 
 	// provide a static cache so that all instances share one cache
-	private static HashMap cache = new HashMap();
+	private static Map cache = new ConcurrentHashMap();
 
 	// indicator of whether or not the cache has been initialized
 	private static boolean hasBeenInitialized = false;
 
+	// The cell line key range of the init query run by initCache
+	private String firstRange = "";
+
 	/**
 	 * constructor
 	 * 
@@ -42,14 +47,26 @@ extends FullCachedLookup
 	 *             thrown if there is an error accessing the db
 	 * @throws ConfigException
 	 *             thrown if there is an error accessing the cfg file
+	 * @throws MGIException
+	 *             thrown if a key range cannot be read
 	 */
 	public LookupStrainKeyByCellLineKey() 
-	throws CacheException, DBException, ConfigException 
+	throws MGIException 
 	{
 		super(SQLDataManagerFactory.getShared(SchemaConstants.MGD));
 		// since cache is static make sure you do not reinit
 		if (!hasBeenInitialized) {
+			PartitionedInit init = new PartitionedInit("_CellLine_key",
+					"SELECT min(_CellLine_key), max(_CellLine_key) "
+							+ "FROM ALL_CellLine");
+			firstRange = init.getFirstRange();
+			init.start(new PartitionedInit.Query() {
+				public String getQuery(String range) {
+					return getInitQuery(range);
+				}
+			}, getRowDataInterpreter());
 			initCache(cache);
+			init.merge(cache);
 		}
 		hasBeenInitialized = true;
 	}
@@ -83,7 +100,20 @@ extends FullCachedLookup
 	 */
 	public String getFullInitQuery() 
 	{
-		return "SELECT _CellLine_key, _Strain_key FROM ALL_CellLine";
+		return getInitQuery(firstRange);
+	}
+
+	/**
+	 * the initialization query restricted to a range of cell line keys
+	 * 
+	 * @param range
+	 *            the condition on _CellLine_key, empty for all cell lines
+	 * @return the initialization query
+	 */
+	private String getInitQuery(String range) 
+	{
+		return "SELECT _CellLine_key, _Strain_key FROM ALL_CellLine "
+				+ "WHERE 1 = 1" + range;
 	}
 
 	/**
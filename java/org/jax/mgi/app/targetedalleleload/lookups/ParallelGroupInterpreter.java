@@ -0,0 +1,200 @@
+package org.jax.mgi.app.targetedalleleload.lookups;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.jax.mgi.shr.cache.KeyValue;
+import org.jax.mgi.shr.config.TargetedAlleleLoadCfg;
+import org.jax.mgi.shr.dbutils.DBException;
+import org.jax.mgi.shr.dbutils.InterpretException;
+import org.jax.mgi.shr.dbutils.MultiRowInterpreter;
+import org.jax.mgi.shr.dbutils.RowDataInterpreter;
+import org.jax.mgi.shr.dbutils.RowReference;
+import org.jax.mgi.shr.exception.MGIException;
+
+/**
+ * @is A MultiRowInterpreter that interprets the row groups of another one
+ *     on worker threads
+ * @has <UL>
+ *      <LI>the interpreter of a lookup
+ *      <LI>a fork-join pool of the configured number of threads, shared by
+ *      all the lookups
+ *      <LI>the groups handed to the pool that have not been collected yet,
+ *      and the values of the groups collected so far, in the order they
+ *      were read
+ *      <LI>a limit on the number of groups handed to the pool and not
+ *      finished yet
+ *      </UL>
+ * @does <UL>
+ *       <LI>Interprets each row on the thread reading the query, since a
+ *       row reference is only valid until the next row is read, and hands
+ *       each group of rows to the pool, so the values of the cache are
+ *       built while the next rows are fetched. Once the limit of groups is
+ *       in the pool, the reading thread waits for one to finish, so only a
+ *       few copies of the rows are held at a time.
+ *       <LI>Collects the values of the finished groups at the head of the
+ *       read order as the rows are read, so the groups and their rows are
+ *       released as soon as they are interpreted
+ *       <LI>Returns no value for a group, the cache strategy skips it. The
+ *       values are put in the cache after the query is read, in the order
+ *       of the groups, so a key found in several groups keeps the value of
+ *       the last one as it does when the groups are interpreted on the
+ *       reading thread.
+ *       <LI>The groups of a lookup must not depend on each other or on the
+ *       cache being filled
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+class ParallelGroupInterpreter implements MultiRowInterpreter {
+
+	// The groups in the pool per worker thread, before reading waits
+	private static final int GROUPS_PER_THREAD = 4;
+
+	private static int threads = 0;
+	private static ForkJoinPool pool;
+
+	private MultiRowInterpreter interpreter;
+	private LinkedList results = new LinkedList();
+	private List values = new ArrayList();
+	private Semaphore inFlight;
+
+	/**
+	 * Wrap the interpreter of a lookup, if groups are interpreted on
+	 * worker threads
+	 *
+	 * @param interpreter
+	 *            the interpreter of the lookup
+	 * @return the wrapping interpreter, or null if the groups are
+	 *         interpreted on the reading thread
+	 * @throws MGIException
+	 *             thrown if the configuration cannot be read
+	 */
+	static ParallelGroupInterpreter wrap(RowDataInterpreter interpreter)
+			throws MGIException {
+		if (!(interpreter instanceof MultiRowInterpreter)
+				|| getPool() == null) {
+			return null;
+		}
+		return new ParallelGroupInterpreter(
+				(MultiRowInterpreter) interpreter);
+	}
+
+	private ParallelGroupInterpreter(MultiRowInterpreter interpreter) {
+		this.interpreter = interpreter;
+		this.inFlight = new Semaphore(threads * GROUPS_PER_THREAD);
+	}
+
+	public Object interpret(RowReference row) throws DBException,
+			InterpretException {
+		return interpreter.interpret(row);
+	}
+
+	public Object interpretKey(RowReference row) throws DBException,
+			InterpretException {
+		return interpreter.interpretKey(row);
+	}
+
+	public Object interpretRows(Vector v) throws DBException {
+		collect();
+		try {
+			inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DBException("Interrupted interpreting cache rows", false);
+		}
+
+		final Vector rows = new Vector(v);
+		results.add(pool.submit(new Callable() {
+			public Object call() throws Exception {
+				try {
+					return interpreter.interpretRows(rows);
+				} finally {
+					inFlight.release();
+				}
+			}
+		}));
+		return null;
+	}
+
+	/**
+	 * keep the values of the finished groups at the head of the read
+	 * order and release the groups. A group that failed is left for
+	 * merge() to report.
+	 */
+	private void collect() {
+		while (!results.isEmpty()) {
+			Future f = (Future) results.getFirst();
+			if (!f.isDone()) {
+				return;
+			}
+			try {
+				values.add(f.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				return;
+			}
+			results.removeFirst();
+		}
+	}
+
+	/**
+	 * Wait for the groups read so far and put their values in the cache,
+	 * in the order the groups were read. Groups interpreted as null are
+	 * skipped.
+	 *
+	 * @param cache
+	 *            the cache
+	 * @throws MGIException
+	 *             thrown if a group could not be interpreted
+	 */
+	void merge(Map cache) throws MGIException {
+		try {
+			for (Iterator it = results.iterator(); it.hasNext();) {
+				values.add(((Future) it.next()).get());
+			}
+			for (Iterator it = values.iterator(); it.hasNext();) {
+				KeyValue kv = (KeyValue) it.next();
+				if (kv != null) {
+					cache.put(kv.key, kv.value);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MGIException("Interrupted interpreting cache rows");
+		} catch (ExecutionException e) {
+			throw new MGIException("Cannot interpret cache rows: "
+					+ e.getCause());
+		} finally {
+			results.clear();
+			values.clear();
+		}
+	}
+
+	/**
+	 * the pool, created on first use, or null if there is one thread
+	 */
+	private static synchronized ForkJoinPool getPool()
+			throws MGIException {
+		if (threads == 0) {
+			threads = Math.max(1,
+					new TargetedAlleleLoadCfg().getInitThreads());
+			if (threads > 1) {
+				pool = new ForkJoinPool(threads);
+			}
+		}
+		return pool;
+	}
+
+}
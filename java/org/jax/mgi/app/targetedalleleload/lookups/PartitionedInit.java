@@ -0,0 +1,262 @@
+package org.jax.mgi.app.targetedalleleload.lookups;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.jax.mgi.app.targetedalleleload.DbExecutor;
+import org.jax.mgi.shr.cache.KeyValue;
+import org.jax.mgi.shr.config.TargetedAlleleLoadCfg;
+import org.jax.mgi.shr.dbutils.MultiRowInterpreter;
+import org.jax.mgi.shr.dbutils.ResultsNavigator;
+import org.jax.mgi.shr.dbutils.RowDataInterpreter;
+import org.jax.mgi.shr.dbutils.RowReference;
+import org.jax.mgi.shr.dbutils.SQLDataManager;
+import org.jax.mgi.shr.exception.MGIException;
+
+/**
+ * @is The initialization of a full cache split into ranges of a key column
+ * @has <UL>
+ *      <LI>the bounds of the key ranges
+ *      <LI>the queries of all but the first range, running
+ *      </UL>
+ * @does <UL>
+ *       <LI>Reads the lowest and highest key and splits them into the
+ *       configured number of ranges of equal width
+ *       <LI>Runs the init query of each range after the first on a
+ *       connection of its own, interpreting its rows into a map of its
+ *       own. The first range is left to the lookup's initCache, so the
+ *       cache is still initialized the way the cache strategy does it.
+ *       <LI>Interprets the rows of the ranges at the same time, so the
+ *       interpreter of a lookup must not query the database or log, and
+ *       must only read caches nothing else adds to meanwhile
+ *       <LI>Merges the maps into the cache in key order, so a cache key
+ *       found in several ranges keeps the value of the highest range, as
+ *       it would with one query sorted by the key column
+ *       <LI>Rows of one cache key must fall in one range, so a lookup with
+ *       a multi-row interpreter splits by a column its rows are grouped
+ *       by
+ *       </UL>
+ * @company The Jackson Laboratory
+ */
+
+class PartitionedInit {
+
+	/**
+	 * The init query of a lookup restricted to a range of keys
+	 */
+	interface Query {
+		/**
+		 * @param range
+		 *            the condition on the key column, starting with AND,
+		 *            or an empty string for all keys
+		 * @return the query
+		 */
+		public String getQuery(String range);
+	}
+
+	private String column;
+	private long[] bounds = null;
+	private List futures = new ArrayList();
+
+	/**
+	 * Split a key column into the configured number of ranges
+	 *
+	 * @param column
+	 *            the key column, as the init query names it
+	 * @param boundsQuery
+	 *            a query of the lowest and the highest key
+	 * @throws MGIException
+	 *             thrown if the bounds cannot be read
+	 */
+	PartitionedInit(String column, final String boundsQuery)
+			throws MGIException {
+		this.column = column;
+		int parts = new TargetedAlleleLoadCfg().getInitPartitions();
+		if (parts < 2) {
+			return;
+		}
+
+		long[] minMax;
+		try {
+			minMax = (long[]) DbExecutor.getInstance().run(
+					new DbExecutor.Call() {
+						public Object call(SQLDataManager dbMgr)
+								throws Exception {
+							ResultsNavigator rn = dbMgr
+									.executeQuery(boundsQuery);
+							try {
+								if (!rn.next()) {
+									return null;
+								}
+								RowReference row = rn.getRowReference();
+								Integer min = row.getInt(1);
+								Integer max = row.getInt(2);
+								if (min == null || max == null) {
+									return null;
+								}
+								return new long[] { min.intValue(),
+										max.intValue() };
+							}
+							finally {
+								rn.close();
+							}
+						}
+					});
+		} catch (MGIException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MGIException("Cannot read the key range of "
+					+ column + ": " + e.getMessage());
+		}
+		if (minMax == null) {
+			// No rows, one query will do
+			return;
+		}
+
+		long width = (minMax[1] - minMax[0] + parts) / parts;
+		bounds = new long[parts + 1];
+		for (int i = 0; i < parts; i++) {
+			bounds[i] = minMax[0] + i * width;
+		}
+		bounds[parts] = minMax[1] + 1;
+	}
+
+	/**
+	 * Get the condition of the first range, for the query initCache runs
+	 *
+	 * @return the condition, empty if the keys are not split
+	 */
+	String getFirstRange() {
+		return getRange(0);
+	}
+
+	/**
+	 * Start the queries of all but the first range
+	 *
+	 * @param query
+	 *            the init query of the lookup
+	 * @param interpreter
+	 *            the interpreter of the lookup
+	 */
+	void start(final Query query, final RowDataInterpreter interpreter)
+			throws MGIException {
+		if (bounds == null) {
+			return;
+		}
+		DbExecutor executor = DbExecutor.getInstance();
+		for (int i = 1; i < bounds.length - 1; i++) {
+			final String sql = query.getQuery(getRange(i));
+			futures.add(executor.submit(new DbExecutor.Call() {
+				public Object call(SQLDataManager dbMgr) throws Exception {
+					return read(dbMgr, sql, interpreter);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Wait for the queries of the ranges and merge their maps into the
+	 * cache, in range order
+	 *
+	 * @param cache
+	 *            the cache, initialized with the first range
+	 * @throws MGIException
+	 *             thrown if a query fails
+	 */
+	void merge(Map cache) throws MGIException {
+		MGIException failure = null;
+		for (Iterator it = futures.iterator(); it.hasNext();) {
+			try {
+				Map part = (Map) ((Future) it.next()).get();
+				if (failure == null) {
+					cache.putAll(part);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MGIException("Interrupted initializing the cache "
+						+ "by " + column);
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = new MGIException("Cannot initialize the cache "
+							+ "by " + column + ": " + e.getCause());
+				}
+			}
+		}
+		futures.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * the condition of a range, empty if the keys are not split
+	 */
+	private String getRange(int i) {
+		if (bounds == null) {
+			return "";
+		}
+		return " AND " + column + " >= " + bounds[i] + " AND " + column
+				+ " < " + bounds[i + 1] + " ";
+	}
+
+	/**
+	 * read the rows of a query into a map the way the full cache strategy
+	 * does: a row at a time, or a group of consecutive rows with the same
+	 * key at a time for a multi-row interpreter, on the worker threads if
+	 * there are any. Rows interpreted as null are skipped.
+	 */
+	private static Map read(SQLDataManager dbMgr, String sql,
+			RowDataInterpreter interpreter) throws Exception {
+		Map part = new HashMap();
+		ParallelGroupInterpreter workers = ParallelGroupInterpreter
+				.wrap(interpreter);
+		if (workers != null) {
+			interpreter = workers;
+		}
+		MultiRowInterpreter multi = interpreter instanceof MultiRowInterpreter ? (MultiRowInterpreter) interpreter
+				: null;
+		Vector group = new Vector();
+		Object groupKey = null;
+
+		ResultsNavigator rn = dbMgr.executeQuery(sql);
+		try {
+			while (rn.next()) {
+				RowReference row = rn.getRowReference();
+				if (multi == null) {
+					put(part, interpreter.interpret(row));
+					continue;
+				}
+				Object key = multi.interpretKey(row);
+				if (!group.isEmpty() && !key.equals(groupKey)) {
+					put(part, multi.interpretRows(group));
+					group = new Vector();
+				}
+				groupKey = key;
+				group.add(multi.interpret(row));
+			}
+			if (!group.isEmpty()) {
+				put(part, multi.interpretRows(group));
+			}
+		} finally {
+			rn.close();
+		}
+		if (workers != null) {
+			workers.merge(part);
+		}
+		return part;
+	}
+
+	private static void put(Map part, Object interpreted) {
+		if (interpreted != null) {
+			KeyValue kv = (KeyValue) interpreted;
+			part.put(kv.key, kv.value);
+		}
+	}
+
+}
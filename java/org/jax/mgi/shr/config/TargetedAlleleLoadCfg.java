@@ -54,6 +54,381 @@ public class TargetedAlleleLoadCfg extends InputDataCfg {
 		return getConfigBoolean("MGD_BCP_PREVENT_EXECUTE").booleanValue();
 	}
 
+	/**
+	 * Get the number of UPDATE or DELETE statements of the same shape to
+	 * send to the database in one batch
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 500
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getSqlBatchSize() throws ConfigException {
+		return getConfigInteger("TAL_SQL_BATCH_SIZE", new Integer(500))
+				.intValue();
+	}
+
+	/**
+	 * Should inserted rows be streamed to the database with COPY instead
+	 * of being written to BCP files?
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is false
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public boolean getUseCopyStream() throws ConfigException {
+		return getConfigBoolean("TAL_COPY_STREAM", Boolean.FALSE)
+				.booleanValue();
+	}
+
+	/**
+	 * Get the number of characters of COPY data to buffer before the
+	 * buffered rows are sent to the database
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 1048576
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getCopyBufferSize() throws ConfigException {
+		return getConfigInteger("TAL_COPY_BUFFER_SIZE", new Integer(1048576))
+				.intValue();
+	}
+
+	/**
+	 * Get the number of filled COPY buffers that may wait to be sent to
+	 * the database before the load waits for them
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 4
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getCopyBuffers() throws ConfigException {
+		return getConfigInteger("TAL_COPY_BUFFERS", new Integer(4))
+				.intValue();
+	}
+
+	/**
+	 * Get the number of processed input records the COPY stream commits
+	 * at a time while the load runs, 0 to commit only at the end
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 0
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getPipelineRecords() throws ConfigException {
+		return getConfigInteger("TAL_PIPELINE_RECORDS", new Integer(0))
+				.intValue();
+	}
+
+	/**
+	 * Should the BCP files be written by a background writer per table?
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is false
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public boolean getUseAsyncBcp() throws ConfigException {
+		return getConfigBoolean("TAL_ASYNC_BCP", Boolean.FALSE)
+				.booleanValue();
+	}
+
+	/**
+	 * Get the write buffer size in bytes of each background BCP writer
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 4194304
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getBcpBufferSize() throws ConfigException {
+		return getConfigInteger("TAL_BCP_BUFFER_SIZE", new Integer(4194304))
+				.intValue();
+	}
+
+	/**
+	 * Get the number of files the background BCP writers split each table
+	 * into. The files of a table are loaded at the same time.
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 1
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getBcpShards() throws ConfigException {
+		return getConfigInteger("TAL_BCP_SHARDS", new Integer(1)).intValue();
+	}
+
+	/**
+	 * Get the number of consecutive keys the background BCP writers put in
+	 * the same file
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 10000
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getBcpShardRange() throws ConfigException {
+		return getConfigInteger("TAL_BCP_SHARD_RANGE", new Integer(10000))
+				.intValue();
+	}
+
+	/**
+	 * Get the directory the BCP files are written to
+	 * 
+	 * @assumes The "MGD_BCP_PATH" constant is defined in the config file
+	 * @effects Nothing
+	 * @return The configuration value
+	 * @throws ConfigException
+	 *             if the value is not found
+	 */
+	public String getBcpPath() throws ConfigException {
+		return getConfigString("MGD_BCP_PATH");
+	}
+
+	/**
+	 * Get the file the load writes its checkpoints to when pipelined, and
+	 * resumes from when it exists
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is no checkpoints
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public String getCheckpointFile() throws ConfigException {
+		return getConfigString("TAL_CHECKPOINT_FILE", "");
+	}
+
+	/**
+	 * Get the number of threads the update mode QC checks run on
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 1
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getQcThreads() throws ConfigException {
+		return getConfigInteger("TAL_QC_THREADS", new Integer(1)).intValue();
+	}
+
+	/**
+	 * Get the number of input records the load plans and applies the
+	 * changes of at a time
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 10000
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getQcWindow() throws ConfigException {
+		return getConfigInteger("TAL_QC_WINDOW", new Integer(10000))
+				.intValue();
+	}
+
+	/**
+	 * Get the file the load writes the changes it makes to
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is no plan file
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public String getPlanFile() throws ConfigException {
+		return getConfigString("TAL_PLAN_FILE", "");
+	}
+
+	/**
+	 * Get the plan file whose changes the load makes instead of checking
+	 * the input records
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is no replay
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public String getReplayPlanFile() throws ConfigException {
+		return getConfigString("TAL_PLAN_REPLAY", "");
+	}
+
+	/**
+	 * Get the number of keys to reserve from a table's sequence at a time
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 1000
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getKeyBlockSize() throws ConfigException {
+		return getConfigInteger("TAL_KEY_BLOCK_SIZE", new Integer(1000))
+				.intValue();
+	}
+
+	/**
+	 * Get the number of MGI accession numbers to reserve at a time
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 1000
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getAccessionBlockSize() throws ConfigException {
+		return getConfigInteger("TAL_ACCESSION_BLOCK_SIZE", new Integer(1000))
+				.intValue();
+	}
+
+	/**
+	 * Should the input records be sorted so the records of a marker are
+	 * processed together?
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is false
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public boolean getGroupByMarker() throws ConfigException {
+		return getConfigBoolean("TAL_GROUP_BY_MARKER", Boolean.FALSE)
+				.booleanValue();
+	}
+
+	/**
+	 * Get the number of records an external sort sorts in memory at a time
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 100000
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getSortRecords() throws ConfigException {
+		return getConfigInteger("TAL_SORT_RECORDS", new Integer(100000))
+				.intValue();
+	}
+
+	/**
+	 * Get the directory of the temporary files of an external sort
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is the system temporary
+	 *         directory
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public String getSortDir() throws ConfigException {
+		return getConfigString("TAL_SORT_DIR", "");
+	}
+
+	/**
+	 * Should the input cell lines be reconciled with MGI by merging sorted
+	 * streams, instead of holding the MGI cell lines in memory?
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is false
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public boolean getReconcile() throws ConfigException {
+		return getConfigBoolean("TAL_RECONCILE", Boolean.FALSE)
+				.booleanValue();
+	}
+
+	/**
+	 * Get the number of MGI cell lines the reconciliation fetches at a time
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 10000
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getReconcileFetchSize() throws ConfigException {
+		return getConfigInteger("TAL_RECONCILE_FETCH_SIZE", new Integer(10000))
+				.intValue();
+	}
+
+	/**
+	 * Get the number of locks the markers are striped over. The sequence
+	 * numbers of a marker are assigned, and its alleles created, under the
+	 * lock of its stripe.
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 64
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getMarkerLockStripes() throws ConfigException {
+		return getConfigInteger("TAL_MARKER_LOCK_STRIPES", new Integer(64))
+				.intValue();
+	}
+
+	/**
+	 * Get the number of MGD connections concurrent database calls, such as
+	 * lookup queries, are made on at a time
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 4
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getDbConnections() throws ConfigException {
+		return getConfigInteger("TAL_DB_CONNECTIONS", new Integer(4))
+				.intValue();
+	}
+
+	/**
+	 * Get the number of key ranges the largest lookups are initialized in,
+	 * each queried on a connection of its own
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 1
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getInitPartitions() throws ConfigException {
+		return getConfigInteger("TAL_INIT_PARTITIONS", new Integer(1))
+				.intValue();
+	}
+
+	/**
+	 * Get the number of threads the row groups of the multi-row lookups are
+	 * interpreted on while their init queries are read
+	 * 
+	 * @assumes Nothing
+	 * @effects Nothing
+	 * @return The configuration value, default is 1
+	 * @throws ConfigException
+	 *             if the value cannot be read
+	 */
+	public int getInitThreads() throws ConfigException {
+		return getConfigInteger("TAL_INIT_THREADS", new Integer(1))
+				.intValue();
+	}
+
 	/**
 	 * Is the load in update only mode?
 	 * 
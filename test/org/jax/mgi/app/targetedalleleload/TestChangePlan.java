@@ -0,0 +1,148 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.jax.mgi.shr.exception.MGIException;
+
+public class TestChangePlan
+extends TestCase
+{
+
+	private File file;
+
+	public void setUp() throws Exception {
+		file = File.createTempFile("TestChangePlan", ".plan");
+	}
+
+	public void tearDown() {
+		file.delete();
+	}
+
+	private QcCase qcCase(int position, String cellLine, int decision,
+			String existingSymbol) throws MGIException {
+		SangerAlleleInput input = new SangerAlleleInput();
+		input.setESCellName(cellLine);
+		input.setProjectId("72416");
+
+		KnockoutAllele constructed = new KnockoutAllele();
+		constructed.setSymbol("Pax6<tm1a(EUCOMM)Wtsi>");
+		constructed.setProjectId("72416");
+
+		AlleleView existing = existingSymbol == null ? null : new AlleleView(
+				new Integer(1), new Integer(2), null, null, existingSymbol,
+				null, "72415", null, null, null, new String[0]);
+
+		QcCase c = new QcCase(position, new ResolvedRecord(input),
+				constructed, null, existing);
+		c.setDecision(decision);
+		return c;
+	}
+
+	private Map writeAndRead(List cases) throws IOException {
+		ChangePlan plan = new ChangePlan(file, false);
+		plan.write(cases);
+		plan.close();
+		return ChangePlan.read(file);
+	}
+
+	public void testRoundTrip() throws Exception {
+		QcCase reassociate = qcCase(7, "EPD0001_3_E04", QcCase.REASSOCIATE,
+				"Pax6<tm1e(EUCOMM)Wtsi>");
+		reassociate.setChanges(true, false, true, false);
+		QcCase create = qcCase(3, "EPD0001_3_E05", QcCase.CREATE_CELLLINE,
+				null);
+
+		Map plan = writeAndRead(Arrays.asList(new Object[] { reassociate,
+				create }));
+		assertEquals(2, plan.size());
+
+		// Read back in input order
+		assertEquals("[3, 7]", plan.keySet().toString());
+
+		ChangePlan.PlannedChange c = (ChangePlan.PlannedChange) plan
+				.get(new Integer(7));
+		assertEquals(7, c.getPosition());
+		assertEquals("EPD0001_3_E04", c.getCellLine());
+		assertEquals(QcCase.REASSOCIATE, c.getDecision());
+		assertTrue(c.isTypeChange());
+		assertFalse(c.isGroupChange());
+		assertTrue(c.isCreatorChange());
+		assertFalse(c.isNumberChange());
+
+		c = (ChangePlan.PlannedChange) plan.get(new Integer(3));
+		assertEquals("EPD0001_3_E05", c.getCellLine());
+		assertEquals(QcCase.CREATE_CELLLINE, c.getDecision());
+		assertFalse(c.isTypeChange());
+		assertFalse(c.isGroupChange());
+		assertFalse(c.isCreatorChange());
+		assertFalse(c.isNumberChange());
+	}
+
+	public void testUnchangedLeftOut() throws Exception {
+		List cases = new ArrayList();
+		cases.add(qcCase(0, "EPD0001_3_E04", QcCase.NONE, null));
+		cases.add(qcCase(1, "EPD0001_3_E05", QcCase.UNCHANGED,
+				"Pax6<tm1a(EUCOMM)Wtsi>"));
+		cases.add(qcCase(2, "EPD0001_3_E06", QcCase.NOTE_UPDATE,
+				"Pax6<tm1a(EUCOMM)Wtsi>"));
+		Map plan = writeAndRead(cases);
+		assertEquals("[2]", plan.keySet().toString());
+	}
+
+	public void testEscapedCellLine() throws Exception {
+		String cellLine = "EPD0001\t3\\E04\n";
+		Map plan = writeAndRead(Arrays.asList(new Object[] { qcCase(0,
+				cellLine, QcCase.CREATE_ALLELE, null) }));
+		assertEquals(cellLine, ((ChangePlan.PlannedChange) plan
+				.get(new Integer(0))).getCellLine());
+	}
+
+	public void testAppendedLineWins() throws Exception {
+		ChangePlan plan = new ChangePlan(file, false);
+		plan.write(Arrays.asList(new Object[] { qcCase(4, "EPD0001_3_E04",
+				QcCase.PROJECT_UPDATE, "Pax6<tm1a(EUCOMM)Wtsi>") }));
+		plan.close();
+
+		// A resumed run appends to the plan
+		plan = new ChangePlan(file, true);
+		plan.write(Arrays.asList(new Object[] { qcCase(4, "EPD0001_3_E04",
+				QcCase.NOTE_UPDATE, "Pax6<tm1a(EUCOMM)Wtsi>") }));
+		plan.close();
+
+		Map read = ChangePlan.read(file);
+		assertEquals(1, read.size());
+		assertEquals(QcCase.NOTE_UPDATE, ((ChangePlan.PlannedChange) read
+				.get(new Integer(4))).getDecision());
+	}
+
+	public void testNotAPlanLine() throws Exception {
+		FileWriter out = new FileWriter(file);
+		out.write("4\tEPD0001_3_E04\tSOMETHING\t\t\\N\tx\t\\N\t72416\n");
+		out.close();
+		try {
+			ChangePlan.read(file);
+			fail("unknown decision was read");
+		} catch (IOException e) {
+			// expected
+		}
+
+		out = new FileWriter(file);
+		out.write("x\tEPD0001_3_E04\tNOTE_UPDATE\t\t\\N\tx\t\\N\t72416\n");
+		out.close();
+		try {
+			ChangePlan.read(file);
+			fail("line without a position was read");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class TestCheckpoint
+extends TestCase
+{
+
+	private File file;
+
+	public void setUp() throws Exception {
+		file = File.createTempFile("TestCheckpoint", ".ckpt");
+		file.delete();
+	}
+
+	public void tearDown() {
+		file.delete();
+		new File(file.getPath() + ".tmp").delete();
+	}
+
+	private static Set set(String[] values) {
+		Set s = new HashSet();
+		for (int i = 0; i < values.length; i++) {
+			s.add(values[i]);
+		}
+		return s;
+	}
+
+	private Checkpoint checkpoint() {
+		Checkpoint cp = new Checkpoint(2500, 1200);
+		cp.setGrouped(true);
+
+		Map counts = new HashMap();
+		counts.put("Alleles created", new Integer(17));
+		Map statistics = new HashMap();
+		statistics.put("SUMMARY", counts);
+		cp.setStatistics(statistics);
+
+		Map projects = new HashMap();
+		projects.put("72416", set(new String[] { "EPD0001_3_E04" }));
+		cp.setAlleleProjects(projects);
+		Map notes = new HashMap();
+		notes.put("tm1a(EUCOMM)Wtsi", set(new String[] { "EPD0001_3_E04",
+				"EPD0001_3_E05" }));
+		cp.setAlleleNotes(notes);
+
+		cp.setAlreadyProcessed(set(new String[] { "EPD0001_3_E04" }));
+		cp.setAlleleProjectIdUpdated(set(new String[] { "72416" }));
+		cp.setDatabaseProjectIds(set(new String[] { "72416", "72417" }));
+		cp.setDatabaseCellLines(set(new String[] { "EPD0001_3_E05" }));
+
+		Map references = new LinkedHashMap();
+		references.put(new Integer(1234), "J:136110");
+		cp.setReferences(references);
+
+		Map keys = new LinkedHashMap();
+		keys.put("ALL_Allele", new Long(600123));
+		keys.put("ALL_CellLine", new Long(700456));
+		cp.setKeys(keys);
+		cp.setAccession(4440123);
+		return cp;
+	}
+
+	public void testReadMissing() throws Exception {
+		assertNull(Checkpoint.read(file));
+	}
+
+	public void testRoundTrip() throws Exception {
+		Checkpoint written = checkpoint();
+		written.write(file);
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+
+		Checkpoint cp = Checkpoint.read(file);
+		assertEquals(2500, cp.getInputSize());
+		assertEquals(1200, cp.getPosition());
+		assertTrue(cp.isGrouped());
+		assertEquals(written.getStatistics(), cp.getStatistics());
+		assertEquals(written.getAlleleProjects(), cp.getAlleleProjects());
+		assertEquals(written.getAlleleNotes(), cp.getAlleleNotes());
+		assertEquals(written.getAlreadyProcessed(), cp.getAlreadyProcessed());
+		assertEquals(written.getAlleleProjectIdUpdated(), cp
+				.getAlleleProjectIdUpdated());
+		assertEquals(written.getDatabaseProjectIds(), cp
+				.getDatabaseProjectIds());
+		assertEquals(written.getDatabaseCellLines(), cp
+				.getDatabaseCellLines());
+		assertEquals(written.getReferences(), cp.getReferences());
+		assertEquals(written.getKeys(), cp.getKeys());
+		assertEquals(4440123, cp.getAccession());
+
+		// The keys keep the order of the tables
+		assertEquals("[ALL_Allele, ALL_CellLine]", cp.getKeys().keySet()
+				.toString());
+	}
+
+	public void testWriteReplaces() throws Exception {
+		checkpoint().write(file);
+		new Checkpoint(2500, 1800).write(file);
+		assertEquals(1800, Checkpoint.read(file).getPosition());
+	}
+
+	public void testCopiesCollections() throws Exception {
+		Set processed = set(new String[] { "EPD0001_3_E04" });
+		Set cellLines = set(new String[] { "EPD0001_3_E05" });
+		Map projects = new HashMap();
+		projects.put("72416", cellLines);
+
+		Checkpoint cp = new Checkpoint(10, 5);
+		cp.setAlreadyProcessed(processed);
+		cp.setAlleleProjects(projects);
+
+		processed.add("EPD0001_3_E06");
+		cellLines.add("EPD0001_3_E06");
+		projects.put("72417", new HashSet());
+
+		assertEquals(1, cp.getAlreadyProcessed().size());
+		assertEquals(1, cp.getAlleleProjects().size());
+		assertEquals(1, ((Set) cp.getAlleleProjects().get("72416")).size());
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestCopyIn
+extends TestCase
+{
+
+	private String append(Object value, boolean first) {
+		StringBuffer row = new StringBuffer();
+		CopyIn.append(row, value, first);
+		return row.toString();
+	}
+
+	public void testAppendPlain() {
+		assertEquals("EPD0001_3_E04", append("EPD0001_3_E04", true));
+		assertEquals("\tEPD0001_3_E04", append("EPD0001_3_E04", false));
+		assertEquals("\t42", append(new Integer(42), false));
+		assertEquals("", append("", true));
+	}
+
+	public void testAppendNull() {
+		assertEquals("\\N", append(null, true));
+		assertEquals("\t\\N", append(null, false));
+	}
+
+	public void testAppendEscapes() {
+		assertEquals("a\\tb", append("a\tb", true));
+		assertEquals("a\\nb", append("a\nb", true));
+		assertEquals("a\\rb", append("a\rb", true));
+		assertEquals("a\\\\b", append("a\\b", true));
+
+		// A literal backslash N is not the null marker
+		assertEquals("\\\\N", append("\\N", true));
+	}
+
+	public void testAppendKeepsColumns() {
+		StringBuffer row = new StringBuffer();
+		CopyIn.append(row, "tm1a(EUCOMM)Wtsi", true);
+		CopyIn.append(row, "Exon 4\tflanked\nby loxP", false);
+		CopyIn.append(row, null, false);
+		String[] columns = row.toString().split("\t", -1);
+		assertEquals(3, columns.length);
+		assertEquals("tm1a(EUCOMM)Wtsi", columns[0]);
+		assertEquals("Exon 4\\tflanked\\nby loxP", columns[1]);
+		assertEquals("\\N", columns[2]);
+	}
+
+	public void testAppendRow() {
+		Date date = new Date(0);
+		List values = new ArrayList();
+		values.add(new Integer(1));
+		values.add(Boolean.TRUE);
+		values.add(Boolean.FALSE);
+		values.add(date);
+		values.add(null);
+
+		StringBuffer row = new StringBuffer();
+		CopyIn.appendRow(row, values);
+		assertEquals("1\t1\t0\t" + new Timestamp(0).toString() + "\t\\N\n",
+				row.toString());
+	}
+
+}
@@ -0,0 +1,201 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import junit.framework.TestCase;
+
+import org.jax.mgi.shr.dbutils.DBException;
+import org.jax.mgi.shr.dla.log.DLALogger;
+
+public class TestCopyStream
+extends TestCase
+{
+
+	private static final String UPDATE =
+			"UPDATE ALL_Allele SET _Note_key = ? WHERE _Allele_key = ?";
+
+	private File file;
+
+	// What the fake database has committed, and the open transaction
+	private List committed = new ArrayList();
+	private List open = new ArrayList();
+	private int rollbacks = 0;
+
+	// The statements fail while this is set
+	private boolean failStatements = false;
+
+	public void setUp() throws Exception {
+		file = File.createTempFile("TestCopyStream", ".ckpt");
+		file.delete();
+	}
+
+	public void tearDown() {
+		file.delete();
+		new File(file.getPath() + ".tmp").delete();
+	}
+
+	/**
+	 * a connection that keeps the rows and statements of the open
+	 * transaction until it is committed or rolled back
+	 */
+	private Connection connection() {
+		final InvocationHandler statement = new InvocationHandler() {
+			public Object invoke(Object proxy, Method m, Object[] args)
+					throws Throwable {
+				if (m.getName().equals("executeBatch")) {
+					if (failStatements) {
+						throw new SQLException("deadlock detected");
+					}
+					open.add(UPDATE);
+					return new int[] { 1 };
+				}
+				return null;
+			}
+		};
+		return (Connection) Proxy.newProxyInstance(getClass()
+				.getClassLoader(), new Class[] { Connection.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method m, Object[] args) {
+						String name = m.getName();
+						if (name.equals("commit")) {
+							committed.addAll(open);
+							open.clear();
+						} else if (name.equals("rollback")) {
+							open.clear();
+							rollbacks++;
+						} else if (name.equals("prepareStatement")) {
+							return Proxy.newProxyInstance(getClass()
+									.getClassLoader(),
+									new Class[] { PreparedStatement.class },
+									statement);
+						}
+						return null;
+					}
+				});
+	}
+
+	private CopyStream.CopyRunner copyRunner() {
+		return new CopyStream.CopyRunner() {
+			public void copy(Connection conn, String sql, Reader data)
+					throws SQLException {
+				try {
+					BufferedReader rows = new BufferedReader(data);
+					String row;
+					while ((row = rows.readLine()) != null) {
+						open.add(row);
+					}
+				} catch (IOException e) {
+					throw new SQLException(e.getMessage());
+				}
+			}
+		};
+	}
+
+	private static List row(int key) {
+		List values = new ArrayList();
+		values.add(new Integer(key));
+		values.add("tm" + key + "a(EUCOMM)Wtsi");
+		return values;
+	}
+
+	/**
+	 * process one record: copy its allele and update its note
+	 */
+	private void process(CopyStream stream, StatementBatcher statements,
+			int position) throws Exception {
+		int key = position + 1;
+		stream.insert("ALL_Allele", row(key));
+		statements.add(UPDATE, new Object[] { new Integer(100 + key),
+				new Integer(key) });
+		assertTrue(stream.endRecords(1));
+
+		final Checkpoint cp = new Checkpoint(3, key);
+		stream.afterCommit(new Callable() {
+			public Object call() throws IOException {
+				cp.write(file);
+				return null;
+			}
+		});
+	}
+
+	private CopyStream stream(StatementBatcher statements) throws Exception {
+		CopyStream stream = new CopyStream(connection(), copyRunner(),
+				DLALogger.getInstance(), 1 << 16, 2, 1);
+		stream.setStatements(statements);
+		return stream;
+	}
+
+	public void testStatementsCommitWithRows() throws Exception {
+		StatementBatcher statements = new StatementBatcher(
+				DLALogger.getInstance(), false, 10);
+		CopyStream stream = stream(statements);
+		process(stream, statements, 0);
+		stream.close();
+
+		assertEquals(2, committed.size());
+		assertEquals("1\ttm1a(EUCOMM)Wtsi", committed.get(0));
+		assertEquals(UPDATE, committed.get(1));
+		assertEquals(1, stream.getBatchesCommitted());
+		assertEquals(1, statements.getHeldExecuted());
+		assertEquals(1, Checkpoint.read(file).getPosition());
+	}
+
+	public void testFailedBatchResumesFromCheckpoint() throws Exception {
+		StatementBatcher statements = new StatementBatcher(
+				DLALogger.getInstance(), false, 10);
+		CopyStream stream = stream(statements);
+		process(stream, statements, 0);
+		stream.afterCommit(new Callable() {
+			public Object call() {
+				failStatements = true;
+				return null;
+			}
+		});
+
+		// The statement of the second record fails after its row is
+		// copied, so neither is committed
+		process(stream, statements, 1);
+		try {
+			stream.close();
+			fail("the failed batch was not reported");
+		} catch (DBException e) {
+			// expected
+		}
+		assertEquals(2, committed.size());
+		assertEquals(1, rollbacks);
+		assertEquals(1, stream.getBatchesCommitted());
+
+		// The checkpoint of the failed batch was not written
+		Checkpoint cp = Checkpoint.read(file);
+		assertEquals(1, cp.getPosition());
+
+		// Resume after the checkpoint
+		failStatements = false;
+		statements = new StatementBatcher(DLALogger.getInstance(), false, 10);
+		stream = stream(statements);
+		for (int position = cp.getPosition(); position < 3; position++) {
+			process(stream, statements, position);
+		}
+		stream.close();
+
+		assertEquals(6, committed.size());
+		assertEquals("1\ttm1a(EUCOMM)Wtsi", committed.get(0));
+		assertEquals("2\ttm2a(EUCOMM)Wtsi", committed.get(2));
+		assertEquals(UPDATE, committed.get(3));
+		assertEquals("3\ttm3a(EUCOMM)Wtsi", committed.get(4));
+		assertEquals(3, Checkpoint.read(file).getPosition());
+	}
+
+}
@@ -0,0 +1,143 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestExternalSort
+extends TestCase
+{
+
+	private File dir;
+
+	public void setUp() throws Exception {
+		dir = File.createTempFile("TestExternalSort", "");
+		dir.delete();
+		dir.mkdir();
+	}
+
+	public void tearDown() {
+		File[] files = dir.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+		dir.delete();
+	}
+
+	private static List readAll(ExternalSort sort) throws Exception {
+		List sorted = new ArrayList();
+		String line;
+		while ((line = sort.readLine()) != null) {
+			sorted.add(line);
+		}
+		return sorted;
+	}
+
+	/**
+	 * a sort line as the load writes it: the keys, then the zero padded
+	 * input position
+	 */
+	private static String line(String geneId, String projectId, int position) {
+		String p = Integer.toString(position);
+		StringBuffer line = new StringBuffer();
+		line.append(geneId).append('\t').append(projectId).append('\t');
+		for (int pad = p.length(); pad < 10; pad++) {
+			line.append('0');
+		}
+		return line.append(p).toString();
+	}
+
+	public void testEmpty() throws Exception {
+		ExternalSort sort = new ExternalSort(4, dir);
+		assertNull(sort.readLine());
+		assertEquals(0, sort.getRuns());
+		sort.close();
+	}
+
+	public void testOneRunInMemory() throws Exception {
+		ExternalSort sort = new ExternalSort(100, dir);
+		sort.add("c");
+		sort.add("a");
+		sort.add("b");
+		assertEquals("[a, b, c]", readAll(sort).toString());
+		assertEquals(1, sort.getRuns());
+		sort.close();
+	}
+
+	public void testMergesRuns() throws Exception {
+		List lines = new ArrayList();
+		for (int i = 0; i < 50; i++) {
+			lines.add("MGI:" + ((i * 37) % 101));
+		}
+		ExternalSort sort = new ExternalSort(7, dir);
+		for (int i = 0; i < lines.size(); i++) {
+			sort.add((String) lines.get(i));
+		}
+		List sorted = readAll(sort);
+		assertEquals(8, sort.getRuns());
+
+		Collections.sort(lines);
+		assertEquals(lines, sorted);
+		sort.close();
+	}
+
+	public void testKeepsDuplicates() throws Exception {
+		ExternalSort sort = new ExternalSort(2, dir);
+		sort.add("b");
+		sort.add("a");
+		sort.add("b");
+		sort.add("a");
+		sort.add("b");
+		assertEquals("[a, a, b, b, b]", readAll(sort).toString());
+		sort.close();
+	}
+
+	public void testEqualKeysInInputOrder() throws Exception {
+		// Equal keys fall in different runs
+		String[] geneIds = { "MGI:2", "MGI:1", "MGI:2", "MGI:1", "MGI:2",
+				"MGI:1", "MGI:2" };
+		ExternalSort sort = new ExternalSort(2, dir);
+		for (int i = 0; i < geneIds.length; i++) {
+			sort.add(line(geneIds[i], "72416", i));
+		}
+		List sorted = readAll(sort);
+		assertEquals(4, sort.getRuns());
+
+		int[] expected = { 1, 3, 5, 0, 2, 4, 6 };
+		assertEquals(expected.length, sorted.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(line(geneIds[expected[i]], "72416", expected[i]),
+					sorted.get(i));
+		}
+		sort.close();
+	}
+
+	public void testTabSortsFirst() throws Exception {
+		// A shorter first key sorts first, whatever follows it
+		ExternalSort sort = new ExternalSort(1, dir);
+		sort.add(line("MGI:10", "1", 0));
+		sort.add(line("MGI:1", "9", 1));
+		sort.add(line("MGI:1 ", "0", 2));
+		List sorted = readAll(sort);
+		assertEquals(line("MGI:1", "9", 1), sorted.get(0));
+		assertEquals(line("MGI:1 ", "0", 2), sorted.get(1));
+		assertEquals(line("MGI:10", "1", 0), sorted.get(2));
+		sort.close();
+	}
+
+	public void testCloseDeletesRuns() throws Exception {
+		ExternalSort sort = new ExternalSort(1, dir);
+		sort.add("b");
+		sort.add("a");
+		sort.add("c");
+		assertEquals("a", sort.readLine());
+		assertEquals(3, dir.listFiles().length);
+		sort.close();
+		assertEquals(0, dir.listFiles().length);
+		assertEquals(0, sort.getRuns());
+	}
+
+}
@@ -0,0 +1,82 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import junit.framework.TestCase;
+
+public class TestFingerprint
+extends TestCase
+{
+
+	public String [] notes = {
+			"",
+			" ",
+			"\n",
+			"Exon 4 is flanked by loxP sites",
+			"Exon 4 is flanked by loxP  sites",
+			"Exon 4 is flanked\nby loxP sites",
+			" Exon 4 is flanked by loxP sites \n",
+			"Exon4isflankedbyloxPsites",
+			"Exon 4 is flanked by loxP sites.",
+			"Exon 5 is flanked by loxP sites",
+			"Exon 4 is flanked\tby loxP sites",
+			"Exon 4 is flanked\r\nby loxP sites",
+			"Exon 4 is flanked by loxP site s"
+	};
+
+	/**
+	 * the comparison the QC note check made before notes were
+	 * fingerprinted
+	 */
+	private boolean baselineSameNote(String first, String second) {
+		String firstNote = first.replaceAll("\\n", "").replaceAll(" ", "");
+		String secondNote = second.replaceAll("\\n", "").replaceAll(" ", "");
+		return firstNote.equals(secondNote);
+	}
+
+	public void testSameNoteMatchesBaseline() {
+		for (int i = 0; i < notes.length; i++) {
+			for (int j = 0; j < notes.length; j++) {
+				assertEquals("notes " + i + " and " + j,
+						baselineSameNote(notes[i], notes[j]),
+						Fingerprint.sameNote(notes[i], notes[j]));
+			}
+		}
+	}
+
+	public void testOfNoteMatchesBaseline() {
+		for (int i = 0; i < notes.length; i++) {
+			for (int j = 0; j < notes.length; j++) {
+				if (baselineSameNote(notes[i], notes[j])) {
+					assertEquals("notes " + i + " and " + j,
+							Fingerprint.ofNote(notes[i]),
+							Fingerprint.ofNote(notes[j]));
+				} else {
+					assertTrue("notes " + i + " and " + j,
+							Fingerprint.ofNote(notes[i]) !=
+							Fingerprint.ofNote(notes[j]));
+				}
+			}
+		}
+	}
+
+	public void testNullNote() {
+		assertTrue(Fingerprint.sameNote(null, null));
+		assertTrue(Fingerprint.sameNote(null, " \n"));
+		assertFalse(Fingerprint.sameNote(null, "loxP"));
+		assertEquals(Fingerprint.ofNote(""), Fingerprint.ofNote(null));
+	}
+
+	public void testCombineSeparatesValues() {
+		long ab = Fingerprint.combine(Fingerprint.combine(
+				Fingerprint.start(), "ab"), "c");
+		long bc = Fingerprint.combine(Fingerprint.combine(
+				Fingerprint.start(), "a"), "bc");
+		assertTrue(ab != bc);
+
+		long nullValue = Fingerprint.combine(Fingerprint.start(),
+				(Object) null);
+		long emptyValue = Fingerprint.combine(Fingerprint.start(), "");
+		assertEquals(nullValue, emptyValue);
+		assertTrue(nullValue != Fingerprint.start());
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.jax.mgi.shr.dbutils.DBException;
+
+public class TestKeyAllocator
+extends TestCase
+{
+
+	private KeyAllocator keys;
+	private NullStream stream;
+
+	public void setUp() throws Exception {
+		keys = new KeyAllocator(null, null, true, 3);
+		stream = new NullStream();
+		keys.setSynthetic(stream);
+		keys.reserve();
+	}
+
+	private void record(String table, long key) throws DBException {
+		keys.record(table, new Integer((int) key));
+	}
+
+	public void testFirstBlockStartsAtFirstKey() throws Exception {
+		record("ALL_Allele", 500);
+		record("ALL_Allele", 501);
+		record("ALL_Allele", 502);
+		assertEquals(new Long(502), keys.getUsed().get("ALL_Allele"));
+	}
+
+	public void testNextBlockFollowsUsedBlock() throws Exception {
+		// 500 to 502, then 503 to 505
+		for (long k = 500; k <= 505; k++) {
+			record("ALL_CellLine", k);
+		}
+		assertEquals(new Long(505), keys.getUsed().get("ALL_CellLine"));
+
+		// 506 is in the third block
+		record("ALL_CellLine", 506);
+		assertEquals(new Long(506), keys.getUsed().get("ALL_CellLine"));
+	}
+
+	public void testNextBlockMustFollowUsedBlock() throws Exception {
+		// 500 to 502, then something else takes 503 to 507
+		record("ALL_Allele", 500);
+		record("ALL_Allele", 501);
+		stream.reserve("ALL_Allele", 0, 5);
+		try {
+			record("ALL_Allele", 502);
+			fail("a block that does not follow the used block was accepted");
+		} catch (DBException e) {
+			// expected
+		}
+	}
+
+	public void testKeysOutOfOrderWithinBlocks() throws Exception {
+		record("MGI_Note", 100);
+		record("MGI_Note", 102);
+		record("MGI_Note", 101);
+		record("MGI_Note", 103);
+		assertEquals(new Long(103), keys.getUsed().get("MGI_Note"));
+	}
+
+	public void testKeyBelowBlockFails() throws Exception {
+		record("ALL_Allele", 500);
+		try {
+			record("ALL_Allele", 499);
+			fail("key below the reserved block was accepted");
+		} catch (DBException e) {
+			// expected
+		}
+	}
+
+	public void testKeyAboveBlockFails() throws Exception {
+		record("ALL_Allele", 500);
+		try {
+			record("ALL_Allele", 503);
+			fail("key above the reserved block was accepted");
+		} catch (DBException e) {
+			// expected
+		}
+		assertEquals(new Long(500), keys.getUsed().get("ALL_Allele"));
+	}
+
+	public void testTablesHaveTheirOwnBlocks() throws Exception {
+		record("ALL_Allele", 500);
+		record("VOC_Annot", 9000);
+		record("ALL_Allele", 501);
+		record("VOC_Annot", 9001);
+
+		Map used = keys.getUsed();
+		assertEquals(2, used.size());
+		assertEquals(new Long(501), used.get("ALL_Allele"));
+		assertEquals(new Long(9001), used.get("VOC_Annot"));
+	}
+
+	public void testUntrackedTable() throws Exception {
+		assertFalse(keys.isTracked("ACC_Accession"));
+		record("ACC_Accession", 1);
+		assertTrue(keys.getUsed().isEmpty());
+	}
+
+	public void testPreventedWithoutSyntheticKeys() throws Exception {
+		KeyAllocator prevented = new KeyAllocator(null, null, true, 3);
+		prevented.record("ALL_Allele", new Integer(500));
+		prevented.record("ALL_Allele", new Integer(9000));
+		assertTrue(prevented.getUsed().isEmpty());
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import junit.framework.TestCase;
+
+public class TestMarkerLocks
+extends TestCase
+{
+
+	public void testStripes() {
+		MarkerLocks locks = new MarkerLocks(4);
+		Lock lock = locks.lock(new Integer(10));
+		lock.unlock();
+
+		// The same marker always gets the same lock
+		assertSame(lock, locks.lock(new Integer(10)));
+		lock.unlock();
+
+		// Small keys take their stripe from the key modulo the stripes
+		assertSame(lock, locks.lock(new Integer(14)));
+		lock.unlock();
+		Lock other = locks.lock(new Integer(11));
+		other.unlock();
+		assertNotSame(lock, other);
+
+		// Markers without a key share the first stripe
+		assertSame(locks.lock(new Integer(0)), locks.lock(null));
+	}
+
+	public void testHighBitsSpread() {
+		// Keys that differ only above the low 16 bits get different stripes
+		MarkerLocks locks = new MarkerLocks(16);
+		Lock low = locks.lock(new Integer(0x00001));
+		Lock high = locks.lock(new Integer(0x10001));
+		assertNotSame(low, high);
+	}
+
+	public void testOneStripe() {
+		MarkerLocks locks = new MarkerLocks(0);
+		assertSame(locks.lock(new Integer(1)), locks.lock(new Integer(2)));
+		assertTrue(locks.getReport().startsWith("Marker locks: 1 stripes"));
+	}
+
+	public void testUncontended() {
+		MarkerLocks locks = new MarkerLocks(4);
+		Lock lock = locks.lock(new Integer(1));
+
+		// Reentrant, the holder gets the lock again at once
+		locks.lock(new Integer(1));
+		locks.lock(new Integer(5));
+		lock.unlock();
+		lock.unlock();
+		lock.unlock();
+		locks.lock(new Integer(2)).unlock();
+
+		assertTrue(locks.getReport(), locks.getReport().startsWith(
+				"Marker locks: 4 stripes, 4 acquisitions, 0 contended (0%)"));
+		assertTrue(locks.getReport(), locks.getReport().indexOf(
+				"0 stripes contended") >= 0);
+	}
+
+	public void testContended() throws Exception {
+		final MarkerLocks locks = new MarkerLocks(4);
+		ReentrantLock held = (ReentrantLock) locks.lock(new Integer(6));
+
+		// Another marker on the same stripe has to wait
+		Thread waiter = new Thread() {
+			public void run() {
+				locks.lock(new Integer(2)).unlock();
+			}
+		};
+		waiter.start();
+		while (!held.hasQueuedThreads()) {
+			Thread.sleep(1);
+		}
+		held.unlock();
+		waiter.join();
+
+		String report = locks.getReport();
+		assertTrue(report, report.startsWith(
+				"Marker locks: 4 stripes, 2 acquisitions, 1 contended (50%)"));
+		assertTrue(report, report.indexOf("1 stripes contended, busiest"
+				+ " stripe 2 with 1 contended acquisitions") >= 0);
+	}
+
+}
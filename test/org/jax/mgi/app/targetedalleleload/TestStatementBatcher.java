@@ -0,0 +1,55 @@
+package org.jax.mgi.app.targetedalleleload;
+
+import junit.framework.TestCase;
+
+public class TestStatementBatcher
+extends TestCase
+{
+
+	public void testRenderValues() {
+		String sql = "UPDATE ALL_Cellline SET _derivation_key = ?"
+				+ " WHERE _cellline_key = ?";
+		assertEquals("UPDATE ALL_Cellline SET _derivation_key = 1001"
+				+ " WHERE _cellline_key = 42",
+				StatementBatcher.render(sql, new Object[] {
+						new Integer(1001), new Integer(42) }));
+	}
+
+	public void testRenderQuotesStrings() {
+		String sql = "UPDATE ACC_Accession SET accID = ? WHERE accID = ?";
+		assertEquals("UPDATE ACC_Accession SET accID = 'O''Brien'"
+				+ " WHERE accID = '72416'",
+				StatementBatcher.render(sql, new Object[] { "O'Brien",
+						"72416" }));
+	}
+
+	public void testRenderNull() {
+		assertEquals("UPDATE ALL_Allele SET _Note_key = null",
+				StatementBatcher.render("UPDATE ALL_Allele SET _Note_key = ?",
+						new Object[] { null }));
+	}
+
+	public void testRenderMissingParams() {
+		// Placeholders without a value are left in place
+		assertEquals("DELETE FROM MGI_Note WHERE _Note_key = 7 AND x = ?",
+				StatementBatcher.render(
+						"DELETE FROM MGI_Note WHERE _Note_key = ? AND x = ?",
+						new Object[] { new Integer(7) }));
+		assertEquals("SELECT 1", StatementBatcher.render("SELECT 1",
+				new Object[0]));
+	}
+
+	public void testRenderStagedRow() {
+		StagingTable staged = new StagingTable("tal_project_update",
+				new String[] { "_Object_key", "newProjectId" },
+				new String[] { "int", "text" });
+		staged.add(new Object[] { new Integer(12), "72416" });
+		staged.add(new Object[] { new Integer(13), "it's" });
+		assertEquals(2, staged.size());
+		assertEquals("INSERT INTO tal_project_update (_Object_key, "
+				+ "newProjectId) VALUES (12, '72416')", staged.render(0));
+		assertEquals("INSERT INTO tal_project_update (_Object_key, "
+				+ "newProjectId) VALUES (13, 'it''s')", staged.render(1));
+	}
+
+}